@@ -31,6 +31,13 @@ public class ASCIILocationInformation extends LocationInformation {
   private final int offset;
   private final int lineNo;
   private final int column;
+  private int endOffset = -1;
+
+  /**
+   * The snapshot of the object and the property list source, if the source was retained while
+   * parsing. Otherwise {@code null}.
+   */
+  ASCIISourceSnapshot snapshot;
 
   ASCIILocationInformation(int offset, int lineNo, int column) {
     this.offset = offset;
@@ -47,6 +54,19 @@ public class ASCIILocationInformation extends LocationInformation {
     return this.offset;
   }
 
+  /**
+   * Gets the offset after the last character of the NSObject inside the file.
+   *
+   * @return The end offset of the NSObject.
+   */
+  public int getEndOffset() {
+    return this.endOffset;
+  }
+
+  void setEndOffset(int endOffset) {
+    this.endOffset = endOffset;
+  }
+
   /**
    * Gets the line number.
    *
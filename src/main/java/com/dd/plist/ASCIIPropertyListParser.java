@@ -22,17 +22,19 @@
  */
 package com.dd.plist;
 
-import java.io.CharArrayWriter;
+import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InputStreamReader;
 import java.io.Reader;
+import java.io.UncheckedIOException;
 import java.io.UnsupportedEncodingException;
-import java.nio.file.Files;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
 import java.nio.file.Path;
 import java.text.ParseException;
-import java.util.LinkedList;
-import java.util.List;
+import java.util.Arrays;
 import java.util.Objects;
 
 /**
@@ -159,39 +161,117 @@ public final class ASCIIPropertyListParser {
    */
   public static final char MULTILINE_COMMENT_END_TOKEN = '/';
 
-  /** Property list source data */
-  private final char[] data;
+  /** The initial size of the buffer holding the property list data read from a reader. */
+  private static final int BUFFER_SIZE = 8192;
 
-  /** Current parsing index */
+  /** Character class of whitespace characters. */
+  private static final byte WHITESPACE = 1;
+
+  /** Character class of line break characters. */
+  private static final byte LINE_BREAK = 2;
+
+  /** Character class of the characters that terminate an unquoted string. */
+  private static final byte STRING_TERMINATOR = 4;
+
+  /**
+   * The character classes of all ASCII characters, combined as bit mask. All other characters do
+   * not belong to any class.
+   */
+  private static final byte[] CHARACTER_CLASSES = new byte[128];
+
+  static {
+    for (char c :
+        new char[] {
+          WHITESPACE_SPACE, WHITESPACE_TAB, WHITESPACE_NEWLINE, WHITESPACE_CARRIAGE_RETURN
+        }) {
+      CHARACTER_CLASSES[c] |= WHITESPACE | STRING_TERMINATOR;
+    }
+    CHARACTER_CLASSES[WHITESPACE_NEWLINE] |= LINE_BREAK;
+    CHARACTER_CLASSES[WHITESPACE_CARRIAGE_RETURN] |= LINE_BREAK;
+    for (char c :
+        new char[] {
+          ARRAY_ITEM_DELIMITER_TOKEN,
+          DICTIONARY_ITEM_DELIMITER_TOKEN,
+          DICTIONARY_ASSIGN_TOKEN,
+          ARRAY_END_TOKEN
+        }) {
+      CHARACTER_CLASSES[c] |= STRING_TERMINATOR;
+    }
+  }
+
+  /**
+   * Property list source data. If the data is read from a reader, this buffer only contains a
+   * window of it, which is moved forward and enlarged as needed.
+   */
+  private char[] data;
+
+  /** The index after the last valid character in the data buffer. */
+  private int limit;
+
+  /**
+   * The position of the character at index 0 of the data buffer in the property list. Parsing
+   * positions that are reported to the user or that have to survive a refill of the buffer are
+   * expressed as {@code offset + index}.
+   */
+  private int offset;
+
+  /** The reader providing the data following the buffer or {@code null} if all data is buffered. */
+  private Reader reader;
+
+  /**
+   * The position of the first character that has to be retained in the buffer when it is refilled
+   * or -1 if only the characters from the current parsing position onward are needed anymore.
+   */
+  private int mark = -1;
+
+  /**
+   * The complete source of the property list if it is retained for incremental writing, otherwise
+   * {@code null}.
+   */
+  private String source;
+
+  /** The snapshot shared by all parsed objects other than strings and containers. */
+  private ASCIISourceSnapshot leafSnapshot;
+
+  /** The table of canonical keys and values, or {@code null} if they are not shared. */
+  private CanonicalizationTable table;
+
+  /** Buffer in which quoted strings that contain escape sequences are unescaped. */
+  private char[] unescapeBuffer;
+
+  /** Current parsing index in the data buffer */
   private int index;
 
   /** Current line number. */
   private int lineNo = 1;
 
-  /** The index at which the current line began. */
+  /** The position at which the current line began. */
   private int lineBeginning = -1;
 
   /**
-   * Creates a new parser for the given property list content.
+   * Creates a new parser for property list content that is read from a reader. The content is read
+   * incrementally while parsing, only a window of it is held in memory.
    *
-   * @param propertyListContent The content of the property list that is to be parsed.
-   * @param encoding The name of a supported {@link java.nio.charset.Charset charset} to decode the
-   *     property list.
-   * @throws java.io.UnsupportedEncodingException If no support for the named charset is available
-   *     in this instance of the Java virtual machine.
+   * @param reader The reader providing the content of the property list.
    */
-  private ASCIIPropertyListParser(byte[] propertyListContent, String encoding)
-      throws UnsupportedEncodingException {
-    this(new String(propertyListContent, encoding).toCharArray());
+  private ASCIIPropertyListParser(Reader reader) {
+    this.data = new char[BUFFER_SIZE];
+    this.reader = reader;
   }
 
   /**
-   * Creates a new parser for the given property list content.
+   * Creates a new parser for the given property list content. The content is parsed in place, it is
+   * not copied.
    *
-   * @param propertyListContent The content of the property list that is to be parsed.
+   * @param propertyListContent An array containing the content of the property list.
+   * @param start The index of the first character of the property list in the array.
+   * @param end The index after the last character of the property list in the array.
    */
-  private ASCIIPropertyListParser(char[] propertyListContent) {
+  private ASCIIPropertyListParser(char[] propertyListContent, int start, int end) {
     this.data = propertyListContent;
+    this.index = start;
+    this.limit = end;
+    this.offset = -start;
   }
 
   /**
@@ -238,9 +318,7 @@ public final class ASCIIPropertyListParser {
    *     in this instance of the Java virtual machine.
    */
   public static NSObject parse(Path path, String encoding) throws IOException, ParseException {
-    try (InputStream fileInputStream = Files.newInputStream(path)) {
-      return parse(fileInputStream, encoding);
-    }
+    return parse(PropertyListParser.readAll(path), encoding);
   }
 
   /**
@@ -253,9 +331,7 @@ public final class ASCIIPropertyListParser {
    * @throws java.io.IOException If an error occurs while reading from the input stream.
    */
   public static NSObject parse(Path path) throws IOException, ParseException {
-    try (InputStream fileInputStream = Files.newInputStream(path)) {
-      return parse(fileInputStream);
-    }
+    return parse(PropertyListParser.readAll(path));
   }
 
   /**
@@ -302,16 +378,7 @@ public final class ASCIIPropertyListParser {
    */
   public static NSObject parse(Reader reader) throws ParseException, IOException {
     Objects.requireNonNull(reader, "The specified reader is null");
-
-    CharArrayWriter charArrayWriter = new CharArrayWriter();
-    char[] buf = new char[4096];
-    int read;
-    while ((read = reader.read(buf)) >= 0) {
-      charArrayWriter.write(buf, 0, read);
-    }
-
-    ASCIIPropertyListParser parser = new ASCIIPropertyListParser(charArrayWriter.toCharArray());
-    return parser.parse();
+    return parse(new ASCIIPropertyListParser(reader));
   }
 
   /**
@@ -323,8 +390,82 @@ public final class ASCIIPropertyListParser {
    * @throws java.text.ParseException If an error occurs during parsing.
    */
   public static NSObject parse(String plistData) throws ParseException {
-    ASCIIPropertyListParser parser = new ASCIIPropertyListParser(plistData.toCharArray());
-    return parser.parse();
+    return parse((CharSequence) plistData);
+  }
+
+  /**
+   * Parses an ASCII property list from a {@link CharSequence}, for example a {@link CharBuffer}.
+   * The characters are parsed in place, no copy of the complete property list is created.
+   *
+   * @param plistData A character sequence containing the property list's data.
+   * @return The root object of the property list. This is usually a {@link NSDictionary} but can
+   *     also be a {@link NSArray}.
+   * @throws java.text.ParseException If an error occurs during parsing.
+   */
+  public static NSObject parse(CharSequence plistData) throws ParseException {
+    return parse(plistData, false);
+  }
+
+  /**
+   * Parses an ASCII property list from a {@link CharSequence}, optionally retaining its source.
+   *
+   * <p>If the source is retained, the {@link ASCIILocationInformation} of each parsed object keeps
+   * a reference to the source of the property list along with the state of the object at parse
+   * time. {@link ASCIIPropertyListWriter#writeIncremental(NSObject, java.io.Writer)} can then write
+   * the property list after modifications by copying all unmodified parts verbatim, including
+   * comments and formatting, and only generating the modified parts anew.
+   *
+   * @param plistData A character sequence containing the property list's data.
+   * @param retainSource Whether the source should be retained for incremental writing.
+   * @return The root object of the property list. This is usually a {@link NSDictionary} but can
+   *     also be a {@link NSArray}.
+   * @throws java.text.ParseException If an error occurs during parsing.
+   */
+  public static NSObject parse(CharSequence plistData, boolean retainSource) throws ParseException {
+    return parse(plistData, retainSource, null);
+  }
+
+  /**
+   * Parses an ASCII property list from a {@link CharSequence}, sharing equal keys and values
+   * through a canonicalization table. Shared values are frozen and have no location information.
+   *
+   * @param plistData A character sequence containing the property list's data.
+   * @param table The table of canonical keys and values, which may be shared with other parses.
+   * @return The root object of the property list. This is usually a {@link NSDictionary} but can
+   *     also be a {@link NSArray}.
+   * @throws java.text.ParseException If an error occurs during parsing.
+   * @see CanonicalizationTable
+   */
+  public static NSObject parse(CharSequence plistData, CanonicalizationTable table)
+      throws ParseException {
+    Objects.requireNonNull(table, "The specified canonicalization table is null");
+    return parse(plistData, false, table);
+  }
+
+  private static NSObject parse(
+      CharSequence plistData, boolean retainSource, CanonicalizationTable table)
+      throws ParseException {
+    ASCIIPropertyListParser parser;
+    if (retainSource) {
+      String source = plistData.toString();
+      parser = new ASCIIPropertyListParser(new CharSequenceReader(source));
+      parser.source = source;
+      parser.leafSnapshot = new ASCIISourceSnapshot(source, null);
+    } else if (plistData instanceof CharBuffer && ((CharBuffer) plistData).hasArray()) {
+      CharBuffer buffer = (CharBuffer) plistData;
+      int start = buffer.arrayOffset() + buffer.position();
+      parser = new ASCIIPropertyListParser(buffer.array(), start, start + buffer.remaining());
+    } else {
+      parser = new ASCIIPropertyListParser(new CharSequenceReader(plistData));
+    }
+    parser.table = table;
+
+    try {
+      return parse(parser);
+    } catch (IOException ex) {
+      throw new IllegalStateException(
+          "Reading from a character sequence never causes an I/O error");
+    }
   }
 
   /**
@@ -336,17 +477,54 @@ public final class ASCIIPropertyListParser {
    * @throws ParseException If an error occurs during parsing.
    */
   public static NSObject parse(byte[] bytes) throws ParseException {
-    String charset = ByteOrderMarkReader.detect(bytes);
+    return parse(ByteBuffer.wrap(bytes), null);
+  }
+
+  /**
+   * Parses an ASCII property list from a byte array, sharing equal keys and values through a
+   * canonicalization table. Shared values are frozen and have no location information.
+   *
+   * @param bytes The ASCII property list data.
+   * @param table The table of canonical keys and values, which may be shared with other parses.
+   * @return The root object of the property list. This is usually a {@link NSDictionary} but can
+   *     also be a {@link NSArray}.
+   * @throws ParseException If an error occurs during parsing.
+   * @see CanonicalizationTable
+   */
+  public static NSObject parse(byte[] bytes, CanonicalizationTable table) throws ParseException {
+    Objects.requireNonNull(table, "The specified canonicalization table is null");
+    return parse(ByteBuffer.wrap(bytes), table);
+  }
+
+  /**
+   * Parses an ASCII property list from the data between the position and the limit of a buffer. The
+   * position of the buffer is not changed. The encoding is detected from the byte order mark,
+   * defaulting to UTF-8.
+   *
+   * @param data The ASCII property list data.
+   * @param table The table of canonical keys and values, may be {@code null}.
+   * @return The root object of the property list. This is usually a {@link NSDictionary} but can
+   *     also be a {@link NSArray}.
+   * @throws ParseException If an error occurs during parsing.
+   */
+  static NSObject parse(ByteBuffer data, CanonicalizationTable table) throws ParseException {
+    String charset = ByteOrderMarkReader.detect(data);
     if (charset == null) {
       charset = "UTF-8";
     }
 
     try {
-      return parse(bytes, charset);
+      ASCIIPropertyListParser parser =
+          new ASCIIPropertyListParser(
+              new InputStreamReader(new ByteBufferInputStream(data), charset));
+      parser.table = table;
+      return parse(parser);
     } catch (UnsupportedEncodingException e) {
       // Unlikely to happen as only standard codepages are requested
       throw new RuntimeException(
           "Unsupported property list encoding (" + charset + "): " + e.getMessage());
+    } catch (IOException ex) {
+      throw new IllegalStateException("Reading from a byte buffer never causes an I/O error");
     }
   }
 
@@ -364,8 +542,28 @@ public final class ASCIIPropertyListParser {
    */
   public static NSObject parse(byte[] bytes, String encoding)
       throws ParseException, UnsupportedEncodingException {
-    ASCIIPropertyListParser parser = new ASCIIPropertyListParser(bytes, encoding);
-    return parser.parse();
+    ASCIIPropertyListParser parser =
+        new ASCIIPropertyListParser(
+            new InputStreamReader(new ByteArrayInputStream(bytes), encoding));
+    try {
+      return parse(parser);
+    } catch (UnsupportedEncodingException ex) {
+      throw ex;
+    } catch (IOException ex) {
+      throw new IllegalStateException("Reading from a byte array never causes an I/O error");
+    }
+  }
+
+  /**
+   * Parses the property list with the given parser. I/O errors that occur while the parser reads
+   * from its reader are unwrapped.
+   */
+  private static NSObject parse(ASCIIPropertyListParser parser) throws ParseException, IOException {
+    try {
+      return parser.parse();
+    } catch (UncheckedIOException ex) {
+      throw ex.getCause();
+    }
   }
 
   /**
@@ -375,7 +573,7 @@ public final class ASCIIPropertyListParser {
    * @return Whether the given tokens occur at the current parsing position.
    */
   private boolean acceptSequence(char... sequence) {
-    if (this.index + sequence.length > this.data.length) {
+    if (!this.available(sequence.length)) {
       return false;
     }
 
@@ -397,7 +595,7 @@ public final class ASCIIPropertyListParser {
    */
   private boolean accept(char... acceptableSymbols) {
     boolean symbolPresent = false;
-    if (this.index < this.data.length) {
+    if (this.available(1)) {
       for (char c : acceptableSymbols) {
         if (this.data[this.index] == c) {
           symbolPresent = true;
@@ -417,7 +615,7 @@ public final class ASCIIPropertyListParser {
    * @return Whether the symbol can be accepted or not.
    */
   private boolean accept(char acceptableSymbol) {
-    return this.index < this.data.length && this.data[this.index] == acceptableSymbol;
+    return this.available(1) && this.data[this.index] == acceptableSymbol;
   }
 
   /**
@@ -434,13 +632,13 @@ public final class ASCIIPropertyListParser {
         excString.append(" or '").append(expectedSymbols[i]).append("'");
       }
 
-      if (this.index < this.data.length) {
+      if (this.available(1)) {
         excString.append(" but found '").append(this.data[this.index]).append("'");
       } else {
         excString.append(" but reached end of input");
       }
 
-      throw this.createParseException(excString.toString(), this.index);
+      throw this.createParseException(excString.toString());
     }
   }
 
@@ -453,10 +651,9 @@ public final class ASCIIPropertyListParser {
   private void expect(char expectedSymbol) throws ParseException {
     if (!this.accept(expectedSymbol)) {
       throw this.createParseException(
-          this.index < this.data.length
+          this.available(1)
               ? "Expected '" + expectedSymbol + "' but found '" + this.data[this.index] + "'"
-              : "Expected '" + expectedSymbol + "' but reached end of input",
-          this.index);
+              : "Expected '" + expectedSymbol + "' but reached end of input");
     }
   }
 
@@ -489,17 +686,139 @@ public final class ASCIIPropertyListParser {
     if (this.data[this.index] == WHITESPACE_NEWLINE) {
       // \n or \r\n
       this.lineNo++;
-      this.lineBeginning = this.index;
+      this.lineBeginning = this.position();
     }
     if (this.data[this.index] == WHITESPACE_CARRIAGE_RETURN
-        && !(this.index + 1 < this.data.length
-            && this.data[this.index + 1] == WHITESPACE_NEWLINE)) {
+        && !(this.available(2) && this.data[this.index + 1] == WHITESPACE_NEWLINE)) {
       // Single \r
       this.lineNo++;
-      this.lineBeginning = this.index;
+      this.lineBeginning = this.position();
     }
   }
 
+  /**
+   * Gets the position in the property list that corresponds to the current parsing index.
+   *
+   * @return The current parsing position.
+   */
+  private int position() {
+    return this.offset + this.index;
+  }
+
+  /**
+   * Gets the symbol at the current parsing position.
+   *
+   * @return The current symbol.
+   * @throws ParseException If the end of the input has been reached.
+   */
+  private char current() throws ParseException {
+    if (!this.available(1)) {
+      throw this.createParseException("Reached end of input unexpectedly.");
+    }
+    return this.data[this.index];
+  }
+
+  /**
+   * Checks whether the given number of symbols are available from the current parsing index onward,
+   * reading more data if required.
+   *
+   * @param count The number of symbols.
+   * @return Whether the data buffer contains at least the given number of symbols from the current
+   *     parsing index onward.
+   */
+  private boolean available(int count) {
+    return this.index + count <= this.limit || this.fill(count);
+  }
+
+  /**
+   * Reads more data from the reader into the buffer. Characters before the current parsing index or
+   * the mark are discarded, the buffer is enlarged if it is still too small.
+   *
+   * @param count The number of symbols that should be available from the current parsing index
+   *     onward.
+   * @return Whether the given number of symbols is available.
+   */
+  private boolean fill(int count) {
+    if (this.reader == null) {
+      return false;
+    }
+
+    int discard = this.mark >= 0 ? this.mark - this.offset : this.index;
+    if (discard > 0) {
+      System.arraycopy(this.data, discard, this.data, 0, this.limit - discard);
+      this.limit -= discard;
+      this.index -= discard;
+      this.offset += discard;
+    }
+
+    try {
+      while (this.index + count > this.limit) {
+        if (this.limit == this.data.length) {
+          this.data = Arrays.copyOf(this.data, this.data.length * 2);
+        }
+
+        int read = this.reader.read(this.data, this.limit, this.data.length - this.limit);
+        if (read < 0) {
+          this.reader = null;
+          return false;
+        }
+        this.limit += read;
+      }
+    } catch (IOException ex) {
+      throw new UncheckedIOException(ex);
+    }
+    return true;
+  }
+
+  /**
+   * Marks the current parsing position, so that the symbols from this position onward are retained
+   * in the buffer until {@link #unmark()} is called.
+   *
+   * @return The marked position.
+   */
+  private int mark() {
+    return this.mark = this.position();
+  }
+
+  /** Removes the mark set by {@link #mark()}. */
+  private void unmark() {
+    this.mark = -1;
+  }
+
+  /**
+   * Gets the index in the data buffer of the given position. The position must not be before the
+   * mark.
+   *
+   * @param position The position.
+   * @return The index in the data buffer.
+   */
+  private int indexOf(int position) {
+    return position - this.offset;
+  }
+
+  /**
+   * Checks whether a symbol belongs to one of the given character classes.
+   *
+   * @param c The symbol.
+   * @param characterClasses The character classes, combined as bit mask.
+   * @return Whether the symbol belongs to one of the character classes.
+   */
+  private static boolean isCharacterClass(char c, int characterClasses) {
+    return c < CHARACTER_CLASSES.length && (CHARACTER_CLASSES[c] & characterClasses) != 0;
+  }
+
+  /**
+   * Creates a string from the symbols between the mark and the current parsing index and removes
+   * the mark.
+   *
+   * @return The marked input.
+   */
+  private String readMarkedInput() {
+    int start = this.indexOf(this.mark);
+    this.unmark();
+    return new String(this.data, start, this.index - start);
+  }
+
   /** Skips all whitespaces and comments from the current parsing position onward. */
   private void skipWhitespacesAndComments() {
     boolean commentSkipped;
@@ -507,8 +826,7 @@ public final class ASCIIPropertyListParser {
       commentSkipped = false;
 
       // Skip whitespaces
-      while (this.accept(
-          WHITESPACE_CARRIAGE_RETURN, WHITESPACE_NEWLINE, WHITESPACE_SPACE, WHITESPACE_TAB)) {
+      while (this.available(1) && isCharacterClass(this.data[this.index], WHITESPACE)) {
         this.trackLineBreak();
         this.skip();
       }
@@ -516,15 +834,18 @@ public final class ASCIIPropertyListParser {
       // Skip single line comments "//..."
       if (this.acceptSequence(COMMENT_BEGIN_TOKEN, SINGLELINE_COMMENT_SECOND_TOKEN)) {
         this.skip(2);
-        this.readInputUntil(WHITESPACE_CARRIAGE_RETURN, WHITESPACE_NEWLINE);
+        while (this.available(1) && !isCharacterClass(this.data[this.index], LINE_BREAK)) {
+          this.skip();
+        }
         commentSkipped = true;
       }
 
       // Skip multi line comments "/* ... */"
       else if (this.acceptSequence(COMMENT_BEGIN_TOKEN, MULTILINE_COMMENT_SECOND_TOKEN)) {
         this.skip(2);
-        while (this.index < this.data.length) {
-          if (this.acceptSequence(MULTILINE_COMMENT_SECOND_TOKEN, MULTILINE_COMMENT_END_TOKEN)) {
+        while (this.available(1)) {
+          if (this.data[this.index] == MULTILINE_COMMENT_SECOND_TOKEN
+              && this.acceptSequence(MULTILINE_COMMENT_SECOND_TOKEN, MULTILINE_COMMENT_END_TOKEN)) {
             this.skip(2);
             break;
           }
@@ -539,35 +860,15 @@ public final class ASCIIPropertyListParser {
   }
 
   /**
-   * Reads input until one of the given symbols is found.
-   *
-   * @param symbols The symbols that can occur after the string to read.
-   * @return The input until one the given symbols.
-   */
-  private String readInputUntil(char... symbols) {
-    StringBuilder strBuf = new StringBuilder();
-    while (this.index < this.data.length && !this.accept(symbols)) {
-      strBuf.append(this.data[this.index]);
-      this.skip();
-    }
-
-    return strBuf.toString();
-  }
-
-  /**
-   * Reads input until the given symbol is found.
+   * Skips input until the given symbol is found.
    *
-   * @param symbol The symbol that can occur after the string to read.
-   * @return The input until the given symbol.
+   * @param symbol The symbol that can occur after the input to skip.
    */
-  private String readInputUntil(char symbol) {
-    StringBuilder strBuf = new StringBuilder();
-    while (this.index < this.data.length && !this.accept(symbol)) {
-      strBuf.append(this.data[this.index]);
+  private void skipInputUntil(char symbol) {
+    while (this.available(1) && this.data[this.index] != symbol) {
       this.trackLineBreak();
       this.skip();
     }
-    return strBuf.toString();
   }
 
   /**
@@ -577,23 +878,18 @@ public final class ASCIIPropertyListParser {
    * @throws ParseException If an error occurred during parsing
    */
   public NSObject parse() throws ParseException {
-    this.index = 0;
-    if (this.data.length == 0) {
+    if (!this.available(1)) {
       throw new ParseException("The property list is empty.", 0);
     }
 
     // Skip Unicode byte order mark (BOM)
-    if (this.data[0] == '\uFEFF') {
+    if (this.data[this.index] == '\uFEFF') {
       this.skip(1);
     }
 
     this.skipWhitespacesAndComments();
     this.expect(DICTIONARY_BEGIN_TOKEN, ARRAY_BEGIN_TOKEN, COMMENT_BEGIN_TOKEN);
-    try {
-      return this.parseObject();
-    } catch (ArrayIndexOutOfBoundsException ex) {
-      throw this.createParseException("Reached end of input unexpectedly.", this.index);
-    }
+    return this.parseObject();
   }
 
   /**
@@ -603,18 +899,19 @@ public final class ASCIIPropertyListParser {
    * @see ASCIIPropertyListParser#index
    */
   private NSObject parseObject() throws ParseException {
-    LocationInformation loc =
-        new ASCIILocationInformation(this.index, this.lineNo, this.index - this.lineBeginning);
+    ASCIILocationInformation loc =
+        new ASCIILocationInformation(
+            this.position(), this.lineNo, this.position() - this.lineBeginning);
     NSObject result;
-    switch (this.data[this.index]) {
+    switch (this.current()) {
       case ARRAY_BEGIN_TOKEN:
         {
-          result = this.parseArray();
+          result = this.parseArray(loc);
           break;
         }
       case DICTIONARY_BEGIN_TOKEN:
         {
-          result = this.parseDictionary();
+          result = this.parseDictionary(loc);
           break;
         }
       case DATA_BEGIN_TOKEN:
@@ -626,16 +923,14 @@ public final class ASCIIPropertyListParser {
         {
           String quotedString = this.parseQuotedString();
           // apple dates are quoted strings of length 20 and after the 4 year digits a dash is found
+          long millis = NSDate.INVALID_DATE;
           if (quotedString.length() == 20 && quotedString.charAt(4) == DATE_DATE_FIELD_DELIMITER) {
-            try {
-              result = new NSDate(quotedString);
-            } catch (Exception ex) {
-              // not a date? --> return string
-              result = new NSString(quotedString);
-            }
-          } else {
-            result = new NSString(quotedString);
+            millis = NSDate.parseDateMillis(quotedString);
           }
+          result =
+              millis != NSDate.INVALID_DATE
+                  ? NSDate.fromMillis(millis)
+                  : new NSString(quotedString);
 
           break;
         }
@@ -654,7 +949,17 @@ public final class ASCIIPropertyListParser {
         }
     }
 
-    if (result != null) {
+    NSObject canonical = this.table != null ? this.table.canonicalize(result) : null;
+    if (canonical != null) {
+      result = canonical;
+    } else if (result != null) {
+      loc.setEndOffset(this.position());
+      if (this.source != null && loc.snapshot == null) {
+        loc.snapshot =
+            result instanceof NSString
+                ? new ASCIISourceSnapshot(this.source, ((NSString) result).getContent())
+                : this.leafSnapshot;
+      }
       result.setLocationInformation(loc);
     }
 
@@ -665,37 +970,58 @@ public final class ASCIIPropertyListParser {
    * Parses an array from the current parsing position. The prerequisite for calling this method is,
    * that an array begin token has been read.
    *
+   * @param loc The location of the array, which receives the snapshot of the array if the source is
+   *     retained.
    * @return The array found at the parsing position.
    */
-  private NSArray parseArray() throws ParseException {
+  private NSArray parseArray(ASCIILocationInformation loc) throws ParseException {
+    ASCIISourceSnapshot snapshot =
+        this.source != null ? new ASCIISourceSnapshot(this.source, null) : null;
     // Skip begin token
     this.skip();
     this.skipWhitespacesAndComments();
-    List<NSObject> objects = new LinkedList<>();
+    NSArray array = new NSArray();
     while (!this.accept(ARRAY_END_TOKEN)) {
-      objects.add(this.parseObject());
+      NSObject object = this.parseObject();
+      array.add(object);
+      int entryEnd = this.position();
       this.skipWhitespacesAndComments();
-      if (this.accept(ARRAY_ITEM_DELIMITER_TOKEN)) {
+      boolean delimited = this.accept(ARRAY_ITEM_DELIMITER_TOKEN);
+      if (delimited) {
         this.skip();
-      } else {
+        entryEnd = this.position();
+      }
+
+      if (snapshot != null) {
+        snapshot.addEntry(null, object, entryEnd, delimited);
+      }
+
+      if (!delimited) {
         break; // must have reached end of array
       }
 
       this.skipWhitespacesAndComments();
     }
 
+    loc.snapshot = snapshot;
+
     // parse end token
     this.read(ARRAY_END_TOKEN);
-    return new NSArray(objects.toArray(new NSObject[0]));
+    array.trimToSize();
+    return array;
   }
 
   /**
    * Parses a dictionary from the current parsing position. The prerequisite for calling this method
    * is, that a dictionary begin token has been read.
    *
+   * @param loc The location of the dictionary, which receives the snapshot of the dictionary if the
+   *     source is retained.
    * @return The dictionary found at the parsing position.
    */
-  private NSDictionary parseDictionary() throws ParseException {
+  private NSDictionary parseDictionary(ASCIILocationInformation loc) throws ParseException {
+    ASCIISourceSnapshot snapshot =
+        this.source != null ? new ASCIISourceSnapshot(this.source, null) : null;
     // Skip begin token
     this.skip();
     this.skipWhitespacesAndComments();
@@ -708,6 +1034,9 @@ public final class ASCIIPropertyListParser {
       } else {
         keyString = this.parseString();
       }
+      if (this.table != null) {
+        keyString = this.table.key(keyString);
+      }
 
       this.skipWhitespacesAndComments();
 
@@ -719,11 +1048,16 @@ public final class ASCIIPropertyListParser {
       dict.put(keyString, object);
       this.skipWhitespacesAndComments();
       this.read(DICTIONARY_ITEM_DELIMITER_TOKEN);
+      if (snapshot != null) {
+        snapshot.addEntry(keyString, object, this.position(), true);
+      }
       this.skipWhitespacesAndComments();
     }
 
     // skip end token
     this.skip();
+    dict.trimToSize();
+    loc.snapshot = snapshot;
 
     return dict;
   }
@@ -736,7 +1070,7 @@ public final class ASCIIPropertyListParser {
    * @return The data object found at the parsing position.
    */
   private NSObject parseData() throws ParseException {
-    int dataStartIndex = this.index;
+    int dataStartIndex = this.position();
     NSObject obj = null;
     // Skip begin token
     this.skip();
@@ -762,15 +1096,27 @@ public final class ASCIIPropertyListParser {
       } else if (this.accept(DATA_GSDATE_BEGIN_TOKEN)) {
         // Date
         this.skip();
-        String dateString = this.readInputUntil(DATA_END_TOKEN);
-        obj = new NSDate(dateString);
+        this.mark();
+        this.skipInputUntil(DATA_END_TOKEN);
+        int dateStartIndex = this.indexOf(this.mark);
+        long millis =
+            NSDate.parseDateMillis(
+                CharBuffer.wrap(this.data, dateStartIndex, this.index - dateStartIndex));
+        this.unmark();
+        if (millis == NSDate.INVALID_DATE) {
+          throw this.createParseException(
+              "The NSDate object has an invalid format.", dataStartIndex);
+        }
+        obj = NSDate.fromMillis(millis);
       } else if (this.accept(DATA_GSINT_BEGIN_TOKEN, DATA_GSREAL_BEGIN_TOKEN)) {
         // Number
         this.skip();
-        String numberString = this.readInputUntil(DATA_END_TOKEN);
-        try {
-          obj = new NSNumber(numberString);
-        } catch (IllegalArgumentException ex) {
+        int numberStartIndex = this.mark();
+        this.skipInputUntil(DATA_END_TOKEN);
+        obj =
+            NSNumber.parse(CharBuffer.wrap(this.data), this.indexOf(numberStartIndex), this.index);
+        this.unmark();
+        if (obj == null) {
           throw this.createParseException(
               "The NSNumber object has an invalid format.", dataStartIndex);
         }
@@ -783,12 +1129,18 @@ public final class ASCIIPropertyListParser {
       // skip DATA_BASE64_BEGIN_TOKEN token
       this.skip();
 
-      String dataString = this.readInputUntil(DATA_BASE64_END_TOKEN);
+      int base64StartIndex = this.mark();
+      this.skipInputUntil(DATA_BASE64_END_TOKEN);
 
       try {
-        obj = new NSData(dataString);
+        obj =
+            new NSData(
+                NSData.decodeBase64(
+                    CharBuffer.wrap(this.data), this.indexOf(base64StartIndex), this.index));
       } catch (IOException e) {
         throw this.createParseException("The NSData object could be parsed.", dataStartIndex);
+      } finally {
+        this.unmark();
       }
 
       // skip DATA_BASE64_END_TOKEN token
@@ -797,21 +1149,13 @@ public final class ASCIIPropertyListParser {
       // parse data end token
       this.read(DATA_END_TOKEN);
     } else {
-      String dataString = this.readInputUntil(DATA_END_TOKEN);
-      dataString = dataString.replaceAll("\\s+", "");
-
-      int numBytes = dataString.length() / 2;
-      byte[] bytes = new byte[numBytes];
-      int nibble1, nibble2;
-      for (int bi = 0, ci = 0; bi < bytes.length; bi++, ci += 2) {
-        nibble1 = Character.digit(dataString.charAt(ci), 16);
-        nibble2 = Character.digit(dataString.charAt(ci + 1), 16);
-        if (nibble1 == -1 || nibble2 == -1) {
-          throw this.createParseException(
-              "The NSData object contains non-hexadecimal characters.", dataStartIndex);
-        }
-
-        bytes[bi] = (byte) (nibble1 << 4 | nibble2);
+      this.mark();
+      this.skipInputUntil(DATA_END_TOKEN);
+      byte[] bytes = this.decodeHex(this.indexOf(this.mark), this.index);
+      this.unmark();
+      if (bytes == null) {
+        throw this.createParseException(
+            "The NSData object contains non-hexadecimal characters.", dataStartIndex);
       }
 
       obj = new NSData(bytes);
@@ -823,22 +1167,59 @@ public final class ASCIIPropertyListParser {
     return obj;
   }
 
+  /**
+   * Decodes hexadecimal data. Whitespace between the hexadecimal digits is ignored.
+   *
+   * @param start The index in the data buffer of the first character of the hexadecimal data.
+   * @param end The index in the data buffer after the last character of the hexadecimal data.
+   * @return The decoded bytes or {@code null} if the data contains other characters than whitespace
+   *     and hexadecimal digits.
+   */
+  private byte[] decodeHex(int start, int end) {
+    byte[] bytes = new byte[(end - start) / 2];
+    int numBytes = 0;
+    int highNibble = -1;
+    for (int i = start; i < end; i++) {
+      char c = this.data[i];
+      int nibble = Character.digit(c, 16);
+      if (nibble == -1) {
+        if (isCharacterClass(c, WHITESPACE) || c == '\u000B' || c == '\f') {
+          continue;
+        }
+        return null;
+      }
+
+      if (highNibble == -1) {
+        highNibble = nibble;
+      } else {
+        bytes[numBytes++] = (byte) (highNibble << 4 | nibble);
+        highNibble = -1;
+      }
+    }
+
+    return numBytes == bytes.length ? bytes : Arrays.copyOf(bytes, numBytes);
+  }
+
   /**
    * Attempts to parse a plain string as a date if possible.
    *
    * @return An NSDate if the string represents such an object. Otherwise, an NSString is returned.
    */
   private NSObject parseDateString() {
-    String numericalString = this.parseString();
-    if (numericalString.length() > 4 && numericalString.charAt(4) == DATE_DATE_FIELD_DELIMITER) {
-      try {
-        return new NSDate(numericalString);
-      } catch (Exception ex) {
-        // An exception occurs if the string is not actually a date but just a string
+    this.mark();
+    this.skipUnquotedString();
+    int startIndex = this.indexOf(this.mark);
+    int length = this.index - startIndex;
+    if (length > 4 && this.data[startIndex + 4] == DATE_DATE_FIELD_DELIMITER) {
+      // Hyphenated identifiers are common, so they are checked without creating a string first
+      long millis = NSDate.parseDateMillis(CharBuffer.wrap(this.data, startIndex, length));
+      if (millis != NSDate.INVALID_DATE) {
+        this.unmark();
+        return NSDate.fromMillis(millis);
       }
     }
 
-    return new NSString(numericalString);
+    return new NSString(this.readMarkedInput());
   }
 
   /**
@@ -848,15 +1229,20 @@ public final class ASCIIPropertyListParser {
    * @return The string found at the current parsing position.
    */
   private String parseString() {
-    return this.readInputUntil(
-        WHITESPACE_SPACE,
-        WHITESPACE_TAB,
-        WHITESPACE_NEWLINE,
-        WHITESPACE_CARRIAGE_RETURN,
-        ARRAY_ITEM_DELIMITER_TOKEN,
-        DICTIONARY_ITEM_DELIMITER_TOKEN,
-        DICTIONARY_ASSIGN_TOKEN,
-        ARRAY_END_TOKEN);
+    this.mark();
+    this.skipUnquotedString();
+    return this.readMarkedInput();
+  }
+
+  /**
+   * Skips a plain string from the current parsing position onward.
+   *
+   * @see #parseString()
+   */
+  private void skipUnquotedString() {
+    while (this.available(1) && !isCharacterClass(this.data[this.index], STRING_TERMINATOR)) {
+      this.skip();
+    }
   }
 
   /**
@@ -867,43 +1253,139 @@ public final class ASCIIPropertyListParser {
    * @throws ParseException If an error occurred during parsing.
    */
   private String parseQuotedString() throws ParseException {
-    int startIndex = this.index;
     // Skip begin token
     this.skip();
+    int start = this.mark();
 
-    StringBuilder stringBuilder = new StringBuilder();
-    boolean unescapedBackslash = true;
-    EscapeSequenceHandler escapeSequenceHandler = null;
-
-    while (this.data[this.index] != QUOTEDSTRING_END_TOKEN || escapeSequenceHandler != null) {
-      char c = this.data[this.index];
-
-      if (escapeSequenceHandler != null) {
-        if (escapeSequenceHandler.handleNextChar(c)) {
-          escapeSequenceHandler = null;
-        }
-      } else if (c == QUOTEDSTRING_ESCAPE_TOKEN) {
-        escapeSequenceHandler = new EscapeSequenceHandler(stringBuilder);
-      } else {
-        stringBuilder.append(c);
+    // Strings without escape sequences are created from the input in one copy
+    char c;
+    while ((c = this.current()) != QUOTEDSTRING_END_TOKEN) {
+      if (c == QUOTEDSTRING_ESCAPE_TOKEN) {
+        return this.parseEscapedQuotedString(start);
       }
 
-      this.trackLineBreak();
+      if (isCharacterClass(c, LINE_BREAK)) {
+        this.trackLineBreak();
+      }
       this.skip();
     }
 
-    if (escapeSequenceHandler != null) {
-      escapeSequenceHandler.handleEndOfString();
+    String string = this.readMarkedInput();
+    // skip end token
+    this.skip();
+    return string;
+  }
+
+  /**
+   * Parses the remainder of a quoted string that contains escape sequences. The prerequisite for
+   * calling this method is, that the current parsing position is at the first escape token of the
+   * string and that the beginning of the string is marked.
+   *
+   * @param start The position of the first character of the string.
+   * @return The quoted string with all special characters unescaped.
+   * @throws ParseException If an error occurred during parsing.
+   */
+  private String parseEscapedQuotedString(int start) throws ParseException {
+    int length = this.position() - start;
+    char[] chars = this.unescapeBuffer;
+    if (chars == null || chars.length < length + 16) {
+      chars = this.unescapeBuffer = new char[Math.max(64, 2 * length)];
+    }
+    System.arraycopy(this.data, this.indexOf(start), chars, 0, length);
+
+    char c;
+    while ((c = this.current()) != QUOTEDSTRING_END_TOKEN) {
+      if (c == QUOTEDSTRING_ESCAPE_TOKEN) {
+        c = this.readEscapeSequence();
+      } else if (isCharacterClass(c, LINE_BREAK)) {
+        this.trackLineBreak();
+      }
+
+      if (length == chars.length) {
+        chars = this.unescapeBuffer = Arrays.copyOf(chars, 2 * length);
+      }
+      chars[length++] = c;
+      this.skip();
     }
 
+    this.unmark();
     // skip end token
     this.skip();
+    return new String(chars, 0, length);
+  }
+
+  /**
+   * Reads an escape sequence in a quoted string. The prerequisite for calling this method is, that
+   * the current parsing position is at the escape token. Afterwards the parsing position is at the
+   * last character of the escape sequence.
+   *
+   * @return The character represented by the escape sequence.
+   * @throws ParseException If the escape sequence is invalid.
+   */
+  private char readEscapeSequence() throws ParseException {
+    int escapeStart = this.position();
+    this.skip();
+    char c = this.current();
+    switch (c) {
+      case '\\':
+      case '"':
+      case '\'':
+        return c;
+      case 'b':
+        return '\b';
+      case 'n':
+        return '\n';
+      case 'r':
+        return '\r';
+      case 't':
+        return '\t';
+      case 'U':
+      case 'u':
+        return this.readEscapedCharacterReference(escapeStart, 16, 4, 0);
+      case '0':
+      case '1':
+      case '2':
+      case '3':
+      case '4':
+      case '5':
+      case '6':
+      case '7':
+        return this.readEscapedCharacterReference(escapeStart, 8, 2, c - '0');
+      default:
+        throw this.createParseException(
+            "The property list contains an invalid escape sequence: \\" + c, escapeStart);
+    }
+  }
 
-    return stringBuilder.toString();
+  /**
+   * Reads the digits of a hexadecimal or octal character reference in an escape sequence.
+   *
+   * @param escapeStart The position of the escape token.
+   * @param radix The radix of the digits.
+   * @param digits The number of digits that follow the current parsing position.
+   * @param value The value of the digits that were already read.
+   * @return The referenced character.
+   * @throws ParseException If one of the digits is invalid.
+   */
+  private char readEscapedCharacterReference(int escapeStart, int radix, int digits, int value)
+      throws ParseException {
+    for (int i = 0; i < digits; i++) {
+      this.skip();
+      int digit = Character.digit(this.current(), radix);
+      if (digit == -1) {
+        String sequence =
+            new String(this.data, this.indexOf(escapeStart), this.position() - escapeStart + 1);
+        throw this.createParseException(
+            "The property list contains a string with an invalid escape sequence: " + sequence,
+            escapeStart);
+      }
+      value = value * radix + digit;
+    }
+    return (char) value;
   }
 
   private ParseException createParseException(String message) {
-    return this.createParseException(message, this.index);
+    return this.createParseException(message, this.position());
   }
 
   private ParseException createParseException(String message, int index) {
@@ -911,124 +1393,36 @@ public final class ASCIIPropertyListParser {
         message + " (" + this.lineNo + ":" + (index - this.lineBeginning) + ")", index);
   }
 
-  private class EscapeSequenceHandler {
+  /** Reader that provides the characters of a character sequence without copying them at once. */
+  private static final class CharSequenceReader extends Reader {
 
-    private final int startIndex;
-    private final StringBuilder stringBuilder;
-    private int unicodeReferenceRadix = 0;
-    private StringBuilder unicodeReference;
+    private final CharSequence sequence;
+    private int position;
 
-    public EscapeSequenceHandler(StringBuilder stringBuilder) {
-      this.startIndex = ASCIIPropertyListParser.this.index;
-      this.stringBuilder = stringBuilder;
-    }
-
-    public boolean handleNextChar(char c) throws ParseException {
-      switch (this.unicodeReferenceRadix) {
-        case 8:
-          return this.handleNextCharOfOctalEscapeSequence(c);
-        case 16:
-          return this.handleNextCharOfHexEscapeSequence(c);
-        default:
-          return this.handleFirstChar(c);
-      }
-    }
-
-    public void handleEndOfString() throws ParseException {
-      String sequence =
-          new String(
-              ASCIIPropertyListParser.this.data,
-              this.startIndex,
-              ASCIIPropertyListParser.this.index - this.startIndex + 1);
-      throw ASCIIPropertyListParser.this.createParseException(
-          "The property list contains a string with an incomplete escape sequence: " + sequence,
-          this.startIndex);
-    }
-
-    private boolean handleFirstChar(char c) throws ParseException {
-      switch (c) {
-        case '\\':
-        case '"':
-        case '\'':
-          this.stringBuilder.append(c);
-          return true;
-        case 'b':
-          this.stringBuilder.append('\b');
-          return true;
-        case 'n':
-          this.stringBuilder.append('\n');
-          return true;
-        case 'r':
-          this.stringBuilder.append('\r');
-          return true;
-        case 't':
-          this.stringBuilder.append('\t');
-          return true;
-        case 'U':
-        case 'u':
-          this.unicodeReferenceRadix = 16;
-          this.unicodeReference = new StringBuilder(4);
-          return false;
-        case '0':
-        case '1':
-        case '2':
-        case '3':
-        case '4':
-        case '5':
-        case '6':
-        case '7':
-          this.unicodeReferenceRadix = 8;
-          this.unicodeReference = new StringBuilder(3);
-          this.unicodeReference.append(c);
-          return false;
-        default:
-          throw ASCIIPropertyListParser.this.createParseException(
-              "The property list contains an invalid escape sequence: \\" + c, this.startIndex);
-      }
+    CharSequenceReader(CharSequence sequence) {
+      this.sequence = sequence;
     }
 
-    private boolean handleNextCharOfHexEscapeSequence(char c) throws ParseException {
-      if (Character.digit(c, 16) == -1) {
-        String sequence =
-            new String(
-                ASCIIPropertyListParser.this.data,
-                this.startIndex,
-                ASCIIPropertyListParser.this.index - this.startIndex + 1);
-        throw ASCIIPropertyListParser.this.createParseException(
-            "The property list contains a string with an invalid escape sequence: " + sequence,
-            this.startIndex);
+    @Override
+    public int read(char[] buffer, int offset, int length) {
+      int remaining = this.sequence.length() - this.position;
+      if (remaining <= 0) {
+        return -1;
       }
 
-      this.unicodeReference.append(c);
-      if (this.unicodeReference.length() == 4) {
-        char escapedChar = (char) Integer.parseInt(this.unicodeReference.toString(), 16);
-        this.stringBuilder.append(escapedChar);
-        return true;
+      int count = Math.min(length, remaining);
+      if (this.sequence instanceof String) {
+        ((String) this.sequence).getChars(this.position, this.position + count, buffer, offset);
+      } else {
+        for (int i = 0; i < count; i++) {
+          buffer[offset + i] = this.sequence.charAt(this.position + i);
+        }
       }
-
-      return false;
+      this.position += count;
+      return count;
     }
 
-    private boolean handleNextCharOfOctalEscapeSequence(char c) throws ParseException {
-      if (Character.digit(c, 8) == -1) {
-        String sequence =
-            new String(
-                ASCIIPropertyListParser.this.data,
-                this.startIndex,
-                ASCIIPropertyListParser.this.index - this.startIndex + 1);
-        throw ASCIIPropertyListParser.this.createParseException(
-            "The property list contains a string with an invalid escape sequence: " + sequence,
-            this.startIndex);
-      }
-
-      this.unicodeReference.append(c);
-      if (this.unicodeReference.length() == 3) {
-        char escapedChar = (char) Integer.parseInt(this.unicodeReference.toString(), 8);
-        this.stringBuilder.append(escapedChar);
-        return true;
-      }
-
-      return false;
-    }
+    @Override
+    public void close() {}
   }
 }
@@ -24,7 +24,9 @@ package com.dd.plist;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.io.OutputStreamWriter;
+import java.io.Writer;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
@@ -66,10 +68,20 @@ public final class ASCIIPropertyListWriter {
    * @throws IOException If an error occurs during the writing process.
    */
   public static void write(NSDictionary root, Path path) throws IOException {
-    try (OutputStreamWriter w =
-        new OutputStreamWriter(Files.newOutputStream(path), StandardCharsets.US_ASCII)) {
-      w.write(root.toASCIIPropertyList());
-    }
+    write(root, path, false);
+  }
+
+  /**
+   * Saves a property list with the given object as root into an ASCII file.
+   *
+   * @param root The root object.
+   * @param path The output file path.
+   * @param compact Whether the property list should be written without indentation and line breaks.
+   *     Otherwise, each nesting level is put on its own line and indented by a tab.
+   * @throws IOException If an error occurs during the writing process.
+   */
+  public static void write(NSDictionary root, Path path, boolean compact) throws IOException {
+    write(root, path, false, compact);
   }
 
   /**
@@ -99,10 +111,20 @@ public final class ASCIIPropertyListWriter {
    * @throws IOException If an error occurs during the writing process.
    */
   public static void write(NSArray root, Path path) throws IOException {
-    try (OutputStreamWriter w =
-        new OutputStreamWriter(Files.newOutputStream(path), StandardCharsets.US_ASCII)) {
-      w.write(root.toASCIIPropertyList());
-    }
+    write(root, path, false);
+  }
+
+  /**
+   * Saves a property list with the given object as root into an ASCII file.
+   *
+   * @param root The root object.
+   * @param path The output file path.
+   * @param compact Whether the property list should be written without indentation and line breaks.
+   *     Otherwise, each nesting level is put on its own line and indented by a tab.
+   * @throws IOException If an error occurs during the writing process.
+   */
+  public static void write(NSArray root, Path path, boolean compact) throws IOException {
+    write(root, path, false, compact);
   }
 
   /**
@@ -132,10 +154,21 @@ public final class ASCIIPropertyListWriter {
    * @throws IOException If an error occurs during the writing process.
    */
   public static void writeGnuStep(NSDictionary root, Path path) throws IOException {
-    try (OutputStreamWriter w =
-        new OutputStreamWriter(Files.newOutputStream(path), StandardCharsets.US_ASCII)) {
-      w.write(root.toGnuStepASCIIPropertyList());
-    }
+    writeGnuStep(root, path, false);
+  }
+
+  /**
+   * Saves a property list with the given object as root into an ASCII file.
+   *
+   * @param root The root object.
+   * @param path The output file path.
+   * @param compact Whether the property list should be written without indentation and line breaks.
+   *     Otherwise, each nesting level is put on its own line and indented by a tab.
+   * @throws IOException If an error occurs during the writing process.
+   */
+  public static void writeGnuStep(NSDictionary root, Path path, boolean compact)
+      throws IOException {
+    write(root, path, true, compact);
   }
 
   /**
@@ -165,9 +198,229 @@ public final class ASCIIPropertyListWriter {
    * @throws IOException If an error occurs during the writing process.
    */
   public static void writeGnuStep(NSArray root, Path path) throws IOException {
+    writeGnuStep(root, path, false);
+  }
+
+  /**
+   * Saves a property list with the given object as root into an ASCII file.
+   *
+   * @param root The root object.
+   * @param path The output file path.
+   * @param compact Whether the property list should be written without indentation and line breaks.
+   *     Otherwise, each nesting level is put on its own line and indented by a tab.
+   * @throws IOException If an error occurs during the writing process.
+   */
+  public static void writeGnuStep(NSArray root, Path path, boolean compact) throws IOException {
+    write(root, path, true, compact);
+  }
+
+  /**
+   * Saves a property list with the given object as root in ASCII format into an output stream. This
+   * method does not close the specified output stream.
+   *
+   * @param root The root object.
+   * @param out The output stream.
+   * @throws IOException If an error occurs during the writing process.
+   * @throws IllegalArgumentException If the root object is neither an {@link NSDictionary} nor an
+   *     {@link NSArray}.
+   */
+  public static void write(NSObject root, OutputStream out) throws IOException {
+    write(root, out, false);
+  }
+
+  /**
+   * Saves a property list with the given object as root in ASCII format into an output stream. This
+   * method does not close the specified output stream.
+   *
+   * @param root The root object.
+   * @param out The output stream.
+   * @param compact Whether the property list should be written without indentation and line breaks.
+   *     Otherwise, each nesting level is put on its own line and indented by a tab.
+   * @throws IOException If an error occurs during the writing process.
+   * @throws IllegalArgumentException If the root object is neither an {@link NSDictionary} nor an
+   *     {@link NSArray}.
+   */
+  public static void write(NSObject root, OutputStream out, boolean compact) throws IOException {
+    write(root, new OutputStreamWriter(out, StandardCharsets.US_ASCII), compact);
+  }
+
+  /**
+   * Saves a property list with the given object as root in ASCII format into a writer. The property
+   * list is generated while the object tree is traversed, so that the complete document is never
+   * held in memory. This method does not close the specified writer.
+   *
+   * <p>All non-ASCII characters are escaped, so the output only consists of ASCII characters.
+   *
+   * @param root The root object.
+   * @param out The writer.
+   * @throws IOException If an error occurs during the writing process.
+   * @throws IllegalArgumentException If the root object is neither an {@link NSDictionary} nor an
+   *     {@link NSArray}.
+   */
+  public static void write(NSObject root, Writer out) throws IOException {
+    write(root, out, false);
+  }
+
+  /**
+   * Saves a property list with the given object as root in ASCII format into a writer. This method
+   * does not close the specified writer.
+   *
+   * @param root The root object.
+   * @param out The writer.
+   * @param compact Whether the property list should be written without indentation and line breaks.
+   *     Otherwise, each nesting level is put on its own line and indented by a tab.
+   * @throws IOException If an error occurs during the writing process.
+   * @throws IllegalArgumentException If the root object is neither an {@link NSDictionary} nor an
+   *     {@link NSArray}.
+   * @see #write(NSObject, Writer)
+   */
+  public static void write(NSObject root, Writer out, boolean compact) throws IOException {
+    write(root, out, false, compact);
+  }
+
+  /**
+   * Saves a property list with the given object as root in GnuStep ASCII format into an output
+   * stream. This method does not close the specified output stream.
+   *
+   * @param root The root object.
+   * @param out The output stream.
+   * @throws IOException If an error occurs during the writing process.
+   * @throws IllegalArgumentException If the root object is neither an {@link NSDictionary} nor an
+   *     {@link NSArray}.
+   */
+  public static void writeGnuStep(NSObject root, OutputStream out) throws IOException {
+    writeGnuStep(root, out, false);
+  }
+
+  /**
+   * Saves a property list with the given object as root in GnuStep ASCII format into an output
+   * stream. This method does not close the specified output stream.
+   *
+   * @param root The root object.
+   * @param out The output stream.
+   * @param compact Whether the property list should be written without indentation and line breaks.
+   *     Otherwise, each nesting level is put on its own line and indented by a tab.
+   * @throws IOException If an error occurs during the writing process.
+   * @throws IllegalArgumentException If the root object is neither an {@link NSDictionary} nor an
+   *     {@link NSArray}.
+   */
+  public static void writeGnuStep(NSObject root, OutputStream out, boolean compact)
+      throws IOException {
+    writeGnuStep(root, new OutputStreamWriter(out, StandardCharsets.US_ASCII), compact);
+  }
+
+  /**
+   * Saves a property list with the given object as root in GnuStep ASCII format into a writer. The
+   * property list is generated while the object tree is traversed, so that the complete document is
+   * never held in memory. This method does not close the specified writer.
+   *
+   * @param root The root object.
+   * @param out The writer.
+   * @throws IOException If an error occurs during the writing process.
+   * @throws IllegalArgumentException If the root object is neither an {@link NSDictionary} nor an
+   *     {@link NSArray}.
+   */
+  public static void writeGnuStep(NSObject root, Writer out) throws IOException {
+    writeGnuStep(root, out, false);
+  }
+
+  /**
+   * Saves a property list with the given object as root in GnuStep ASCII format into a writer. This
+   * method does not close the specified writer.
+   *
+   * @param root The root object.
+   * @param out The writer.
+   * @param compact Whether the property list should be written without indentation and line breaks.
+   *     Otherwise, each nesting level is put on its own line and indented by a tab.
+   * @throws IOException If an error occurs during the writing process.
+   * @throws IllegalArgumentException If the root object is neither an {@link NSDictionary} nor an
+   *     {@link NSArray}.
+   * @see #writeGnuStep(NSObject, Writer)
+   */
+  public static void writeGnuStep(NSObject root, Writer out, boolean compact) throws IOException {
+    write(root, out, true, compact);
+  }
+
+  /**
+   * Saves a property list that was parsed with its source retained into an ASCII file. The file is
+   * encoded in UTF-8.
+   *
+   * @param root The root object.
+   * @param path The output file path.
+   * @throws IOException If an error occurs during the writing process.
+   * @throws IllegalArgumentException If the root object is neither an {@link NSDictionary} nor an
+   *     {@link NSArray}.
+   * @see #writeIncremental(NSObject, Writer)
+   */
+  public static void writeIncremental(NSObject root, Path path) throws IOException {
+    checkRoot(root);
+
+    try (OutputStreamWriter w =
+        new OutputStreamWriter(Files.newOutputStream(path), StandardCharsets.UTF_8)) {
+      writeIncremental(root, w);
+    }
+  }
+
+  /**
+   * Saves a property list that was parsed with its source retained into a writer. This method does
+   * not close the specified writer.
+   *
+   * <p>All parts of the property list that have not been modified since parsing are copied verbatim
+   * from the source, including comments and formatting. Dictionaries and arrays whose entries were
+   * modified are generated anew, but still copy their unmodified entries from the source. Modified
+   * strings and all added objects are generated in the Apple ASCII format. Thus, only the modified
+   * parts of a large property list, such as an Xcode project file, are generated, while the rest of
+   * the tree is merely compared to the source by identity.
+   *
+   * <p>Changes to the byte array returned by {@link NSData#bytes()} are not detected. If the root
+   * object was not parsed with its source retained, the whole property list is generated anew.
+   *
+   * @param root The root object.
+   * @param out The writer.
+   * @throws IOException If an error occurs during the writing process.
+   * @throws IllegalArgumentException If the root object is neither an {@link NSDictionary} nor an
+   *     {@link NSArray}.
+   * @see ASCIIPropertyListParser#parse(CharSequence, boolean)
+   */
+  public static void writeIncremental(NSObject root, Writer out) throws IOException {
+    checkRoot(root);
+
+    TextOutput ascii = new TextOutput(out);
+    new IncrementalASCIIWriter(ascii).write(root);
+    ascii.flush();
+  }
+
+  private static void write(NSObject root, Path path, boolean gnuStep, boolean compact)
+      throws IOException {
     try (OutputStreamWriter w =
         new OutputStreamWriter(Files.newOutputStream(path), StandardCharsets.US_ASCII)) {
-      w.write(root.toGnuStepASCIIPropertyList());
+      write(root, w, gnuStep, compact);
+    }
+  }
+
+  private static void write(NSObject root, Writer out, boolean gnuStep, boolean compact)
+      throws IOException {
+    checkRoot(root);
+
+    TextOutput ascii = new TextOutput(out, compact);
+    root.toASCIIPropertyList(ascii, gnuStep);
+    ascii.flush();
+  }
+
+  /**
+   * Checks that an object can be the root of an ASCII property list. The ASCII format only allows a
+   * dictionary or an array as the root object.
+   *
+   * @param root The root object.
+   * @throws IllegalArgumentException If the root object is neither a dictionary nor an array.
+   */
+  private static void checkRoot(NSObject root) {
+    Objects.requireNonNull(root, "The root object is null.");
+    if (!(root instanceof NSDictionary) && !(root instanceof NSArray)) {
+      throw new IllegalArgumentException(
+          "The root of an ASCII property list must be a dictionary or an array, but is a "
+              + root.getClass().getSimpleName()
+              + ".");
     }
   }
 }
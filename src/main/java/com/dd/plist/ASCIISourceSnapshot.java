@@ -0,0 +1,136 @@
+/*
+ * plist - An open source library to parse and generate property lists
+ * Copyright (C) 2026 Daniel Dreibrodt
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.dd.plist;
+
+import java.util.Arrays;
+
+/**
+ * The state of an object at the time it was parsed from an ASCII property list, together with the
+ * source of that property list. For dictionaries and arrays the entries and the positions at which
+ * they end in the source are recorded, so that unmodified parts of a property list can be copied
+ * verbatim when it is written again.
+ *
+ * @author Daniel Dreibrodt
+ * @see ASCIIPropertyListWriter#writeIncremental(NSObject, java.io.Writer)
+ */
+final class ASCIISourceSnapshot {
+
+  /** The complete source of the property list. */
+  final String source;
+
+  /** The content of a parsed string or {@code null} for all other objects. */
+  final String content;
+
+  private String[] keys;
+  private NSObject[] values;
+  private int[] entryEnds;
+  private int count;
+  private boolean lastEntryDelimited = true;
+
+  /**
+   * Creates a snapshot of a parsed object.
+   *
+   * @param source The complete source of the property list.
+   * @param content The content of the object if it is a string, {@code null} otherwise.
+   */
+  ASCIISourceSnapshot(String source, String content) {
+    this.source = source;
+    this.content = content;
+  }
+
+  /**
+   * Records an entry of a dictionary or array.
+   *
+   * @param key The key of the dictionary entry or {@code null} for an array element.
+   * @param value The value of the entry.
+   * @param end The position in the source after the entry, including its delimiter if present.
+   * @param delimited Whether the entry is followed by a delimiter.
+   */
+  void addEntry(String key, NSObject value, int end, boolean delimited) {
+    if (this.values == null) {
+      this.keys = new String[8];
+      this.values = new NSObject[8];
+      this.entryEnds = new int[8];
+    } else if (this.count == this.values.length) {
+      this.keys = Arrays.copyOf(this.keys, 2 * this.count);
+      this.values = Arrays.copyOf(this.values, 2 * this.count);
+      this.entryEnds = Arrays.copyOf(this.entryEnds, 2 * this.count);
+    }
+
+    this.keys[this.count] = key;
+    this.values[this.count] = value;
+    this.entryEnds[this.count] = end;
+    this.count++;
+    this.lastEntryDelimited = delimited;
+  }
+
+  /**
+   * Gets the number of recorded entries.
+   *
+   * @return The number of entries.
+   */
+  int count() {
+    return this.count;
+  }
+
+  /**
+   * Gets the key of a recorded dictionary entry.
+   *
+   * @param i The index of the entry.
+   * @return The key.
+   */
+  String key(int i) {
+    return this.keys[i];
+  }
+
+  /**
+   * Gets the value of a recorded entry.
+   *
+   * @param i The index of the entry.
+   * @return The value.
+   */
+  NSObject value(int i) {
+    return this.values[i];
+  }
+
+  /**
+   * Gets the position in the source after a recorded entry, including its delimiter if present.
+   *
+   * @param i The index of the entry.
+   * @return The end position of the entry.
+   */
+  int entryEnd(int i) {
+    return this.entryEnds[i];
+  }
+
+  /**
+   * Gets whether a recorded entry is followed by a delimiter. Array elements are separated by
+   * delimiters, only the last element may lack one.
+   *
+   * @param i The index of the entry.
+   * @return Whether the entry is delimited.
+   */
+  boolean isDelimited(int i) {
+    return i < this.count - 1 || this.lastEntryDelimited;
+  }
+}
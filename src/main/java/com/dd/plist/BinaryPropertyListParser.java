@@ -28,8 +28,8 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.UnsupportedEncodingException;
 import java.math.BigInteger;
+import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
-import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.HashMap;
 import java.util.HashSet;
@@ -69,9 +69,18 @@ public final class BinaryPropertyListParser {
       "FieldCanBeLocal") // Useful when the features of different format versions are implemented
   private int minorVersion;
 
-  /** The property list data. */
+  /** The array containing the property list data. */
   private byte[] bytes;
 
+  /**
+   * The index of the first byte of the property list data in the array. All offsets within the
+   * property list are relative to this index.
+   */
+  private int start;
+
+  /** The length of the property list data. */
+  private int length;
+
   /** Length of an object reference in bytes */
   private int objectRefSize;
 
@@ -80,13 +89,25 @@ public final class BinaryPropertyListParser {
   private int offsetTableOffset;
   private final HashMap<Integer, NSObject> parsedObjects = new HashMap<>();
 
+  /** The table of canonical keys and values, or {@code null} if they are not shared. */
+  private final CanonicalizationTable table;
+
+  /**
+   * Whether the numbers in arrays keep their location information, instead of being stored as
+   * primitive values.
+   */
+  private final boolean withLocationInformation;
+
   /**
    * Protected constructor so that instantiation is fully controlled by the static parse methods.
    *
+   * @param table The table of canonical keys and values, may be {@code null}.
+   * @param withLocationInformation Whether the numbers in arrays keep their location information.
    * @see BinaryPropertyListParser#parse(byte[])
    */
-  private BinaryPropertyListParser() {
-    /* empty */
+  private BinaryPropertyListParser(CanonicalizationTable table, boolean withLocationInformation) {
+    this.table = table;
+    this.withLocationInformation = withLocationInformation;
   }
 
   /**
@@ -114,9 +135,7 @@ public final class BinaryPropertyListParser {
    *     occurs on the input stream.
    */
   public static NSObject parse(Path path) throws IOException, PropertyListFormatException {
-    try (InputStream fileInputStream = Files.newInputStream(path)) {
-      return parse(fileInputStream);
-    }
+    return parse(PropertyListParser.readAll(path));
   }
 
   /**
@@ -145,8 +164,147 @@ public final class BinaryPropertyListParser {
    */
   public static NSObject parse(byte[] data)
       throws PropertyListFormatException, UnsupportedEncodingException {
-    BinaryPropertyListParser parser = new BinaryPropertyListParser();
-    return parser.doParse(data);
+    return parse(data, 0, data.length, null, false);
+  }
+
+  /**
+   * Parses a binary property list file.
+   *
+   * @param f The binary property list file
+   * @param withLocationInformation If set to {@code true}, all parsed objects keep their location
+   *     information (See {@link NSObject#getLocationInformation()}). Otherwise, arrays that only
+   *     contain numbers of a single type store them as primitive values, and these numbers have no
+   *     location information.
+   * @return The root object of the property list. This is usually a {@link NSDictionary} but can
+   *     also be a {@link NSArray}.
+   * @throws PropertyListFormatException When the property list's format could not be parsed.
+   * @throws java.io.IOException If a {@link NSString} object could not be decoded or an I/O error
+   *     occurs on the input stream.
+   */
+  public static NSObject parse(File f, boolean withLocationInformation)
+      throws IOException, PropertyListFormatException {
+    return parse(f.toPath(), withLocationInformation);
+  }
+
+  /**
+   * Parses a binary property list file.
+   *
+   * @param path The path to the binary property list file
+   * @param withLocationInformation If set to {@code true}, all parsed objects keep their location
+   *     information (See {@link NSObject#getLocationInformation()}). Otherwise, arrays that only
+   *     contain numbers of a single type store them as primitive values, and these numbers have no
+   *     location information.
+   * @return The root object of the property list. This is usually a {@link NSDictionary} but can
+   *     also be a {@link NSArray}.
+   * @throws PropertyListFormatException When the property list's format could not be parsed.
+   * @throws java.io.IOException If a {@link NSString} object could not be decoded or an I/O error
+   *     occurs on the input stream.
+   */
+  public static NSObject parse(Path path, boolean withLocationInformation)
+      throws IOException, PropertyListFormatException {
+    return parse(PropertyListParser.readAll(path), withLocationInformation);
+  }
+
+  /**
+   * Parses a binary property list from an input stream. This method does not close the specified
+   * input stream.
+   *
+   * @param is The input stream that points to the property list's data.
+   * @param withLocationInformation If set to {@code true}, all parsed objects keep their location
+   *     information (See {@link NSObject#getLocationInformation()}). Otherwise, arrays that only
+   *     contain numbers of a single type store them as primitive values, and these numbers have no
+   *     location information.
+   * @return The root object of the property list. This is usually a {@link NSDictionary} but can
+   *     also be a {@link NSArray}.
+   * @throws PropertyListFormatException When the property list's format could not be parsed.
+   * @throws java.io.IOException If a {@link NSString} object could not be decoded or an I/O error
+   *     occurs on the input stream.
+   */
+  public static NSObject parse(InputStream is, boolean withLocationInformation)
+      throws IOException, PropertyListFormatException {
+    return parse(PropertyListParser.readAll(is), withLocationInformation);
+  }
+
+  /**
+   * Parses a binary property list from a byte array.
+   *
+   * @param data The binary property list's data.
+   * @param withLocationInformation If set to {@code true}, all parsed objects keep their location
+   *     information (See {@link NSObject#getLocationInformation()}). Otherwise, arrays that only
+   *     contain numbers of a single type store them as primitive values, and these numbers have no
+   *     location information.
+   * @return The root object of the property list. This is usually a {@link NSDictionary} but can
+   *     also be a {@link NSArray}.
+   * @throws PropertyListFormatException When the property list's format could not be parsed.
+   */
+  public static NSObject parse(byte[] data, boolean withLocationInformation)
+      throws PropertyListFormatException {
+    return parse(data, 0, data.length, null, withLocationInformation);
+  }
+
+  /**
+   * Parses a binary property list from a byte array, sharing equal keys and values through a
+   * canonicalization table. Shared values are frozen and have no location information.
+   *
+   * @param data The binary property list's data.
+   * @param table The table of canonical keys and values, which may be shared with other parses.
+   * @return The root object of the property list. This is usually a {@link NSDictionary} but can
+   *     also be a {@link NSArray}.
+   * @throws PropertyListFormatException When the property list's format could not be parsed.
+   * @see CanonicalizationTable
+   */
+  public static NSObject parse(byte[] data, CanonicalizationTable table)
+      throws PropertyListFormatException {
+    Objects.requireNonNull(table, "The specified canonicalization table is null");
+    return parse(data, 0, data.length, table, false);
+  }
+
+  /**
+   * Parses a binary property list that is stored in a part of a byte array. The data is parsed in
+   * place, without being copied.
+   *
+   * @param data The array containing the binary property list's data.
+   * @param offset The index of the first byte of the property list.
+   * @param length The length of the property list.
+   * @return The root object of the property list. This is usually a {@link NSDictionary} but can
+   *     also be a {@link NSArray}.
+   * @param table The table of canonical keys and values, may be {@code null}.
+   * @param withLocationInformation Whether the numbers in arrays keep their location information.
+   * @throws PropertyListFormatException When the property list's format could not be parsed.
+   */
+  static NSObject parse(
+      byte[] data,
+      int offset,
+      int length,
+      CanonicalizationTable table,
+      boolean withLocationInformation)
+      throws PropertyListFormatException {
+    BinaryPropertyListParser parser = new BinaryPropertyListParser(table, withLocationInformation);
+    return parser.doParse(data, offset, length);
+  }
+
+  /**
+   * Parses a binary property list from the data between the position and the limit of a buffer. The
+   * position of the buffer is not changed. If the buffer is backed by an array, the data is parsed
+   * in place. Otherwise, it is copied into an array first, as the parser needs random access to the
+   * data.
+   *
+   * @param data The buffer containing the binary property list's data.
+   * @param table The table of canonical keys and values, may be {@code null}.
+   * @return The root object of the property list. This is usually a {@link NSDictionary} but can
+   *     also be a {@link NSArray}.
+   * @throws PropertyListFormatException When the property list's format could not be parsed.
+   */
+  static NSObject parse(ByteBuffer data, CanonicalizationTable table)
+      throws PropertyListFormatException {
+    if (data.hasArray()) {
+      return parse(
+          data.array(), data.arrayOffset() + data.position(), data.remaining(), table, false);
+    }
+
+    byte[] bytes = new byte[data.remaining()];
+    data.duplicate().get(bytes);
+    return parse(bytes, 0, bytes.length, table, false);
   }
 
   /**
@@ -256,22 +414,31 @@ public final class BinaryPropertyListParser {
   }
 
   /**
-   * Parses a binary property list from a byte array.
+   * Parses a binary property list that is stored in a part of a byte array.
    *
-   * @param data The binary property list's data.
+   * @param data The array containing the binary property list's data.
+   * @param offset The index of the first byte of the property list.
+   * @param length The length of the property list.
    * @return The root object of the property list. This is usually a {@link NSDictionary} but can
    *     also be a {@link NSArray}.
    * @throws PropertyListFormatException When the property list's format could not be parsed.
    */
-  private NSObject doParse(byte[] data) throws PropertyListFormatException {
+  private NSObject doParse(byte[] data, int offset, int length) throws PropertyListFormatException {
     Objects.requireNonNull(data);
-    if (data.length < 8) {
+    if (offset < 0 || length < 0 || length > data.length - offset) {
+      throw new IndexOutOfBoundsException(
+          "offset " + offset + ", length " + length + ", array length " + data.length);
+    }
+
+    if (length < 8) {
       throw new PropertyListFormatException(
           "The available binary property list data is too short.");
     }
 
     this.bytes = data;
-    String magic = new String(copyOfRange(this.bytes, 0, 8), StandardCharsets.US_ASCII);
+    this.start = offset;
+    this.length = length;
+    String magic = new String(this.bytes, this.start, 8, StandardCharsets.US_ASCII);
     if (!magic.startsWith("bplist")
         || magic.length() < 8
         || !Character.isDigit(magic.charAt(6))
@@ -300,21 +467,21 @@ public final class BinaryPropertyListParser {
       // Version 1.0+ is not even supported by OS X's own parser
     }
 
-    if (this.bytes.length < 40 /* header + trailer length */) {
+    if (this.length < 40 /* header + trailer length */) {
       throw new PropertyListFormatException(
           "The binary property list does not contain a complete object offset table.");
     }
 
     // Parse trailer, last 32 bytes of the file
-    byte[] trailer = copyOfRange(this.bytes, this.bytes.length - 32, this.bytes.length);
+    int trailer = this.start + this.length - 32;
 
     try {
       // Trailer starts with 6 null bytes (index 0 to 5)
-      this.offsetSize = (int) parseUnsignedInt(trailer, 6, 7);
-      this.objectRefSize = (int) parseUnsignedInt(trailer, 7, 8);
-      long numObjectsValue = parseUnsignedInt(trailer, 8, 16);
-      long topObjectValue = parseUnsignedInt(trailer, 16, 24);
-      long offsetTableOffsetValue = parseUnsignedInt(trailer, 24, 32);
+      this.offsetSize = (int) parseUnsignedInt(this.bytes, trailer + 6, trailer + 7);
+      this.objectRefSize = (int) parseUnsignedInt(this.bytes, trailer + 7, trailer + 8);
+      long numObjectsValue = parseUnsignedInt(this.bytes, trailer + 8, trailer + 16);
+      long topObjectValue = parseUnsignedInt(this.bytes, trailer + 16, trailer + 24);
+      long offsetTableOffsetValue = parseUnsignedInt(this.bytes, trailer + 24, trailer + 32);
 
       // Validate consistency of the trailer against the actual data size.
       if (this.offsetSize < 1
@@ -322,12 +489,12 @@ public final class BinaryPropertyListParser {
           || numObjectsValue < 0
           || numObjectsValue > Integer.MAX_VALUE
           || topObjectValue < 0
-          || topObjectValue >= this.bytes.length - 32
+          || topObjectValue >= this.length - 32
           || offsetTableOffsetValue < 0
-          || offsetTableOffsetValue > this.bytes.length
+          || offsetTableOffsetValue > this.length
           || Math.addExact(
                   offsetTableOffsetValue, Math.multiplyExact(numObjectsValue + 1, this.offsetSize))
-              > this.bytes.length) {
+              > this.length) {
         throw new PropertyListFormatException(
             "The binary property list contains a corrupted object offset table.");
       }
@@ -364,7 +531,7 @@ public final class BinaryPropertyListParser {
     int offset = this.getObjectOffset(obj);
     LocationInformation loc = new BinaryLocationInformation(obj, offset);
 
-    byte type = this.bytes[offset];
+    byte type = this.bytes[this.start + offset];
     int objType = (type & 0xF0) >> 4;
     int objInfo = type & 0x0F;
     NSObject result;
@@ -436,7 +603,10 @@ public final class BinaryPropertyListParser {
           "The encoding of the NSString at offset " + offset + " is not supported.", loc, ex);
     }
 
-    if (result != null) {
+    NSObject canonical = this.table != null ? this.table.canonicalize(result) : null;
+    if (canonical != null) {
+      result = canonical;
+    } else if (result != null) {
       result.setLocationInformation(loc);
     }
 
@@ -450,7 +620,7 @@ public final class BinaryPropertyListParser {
     }
 
     int endOffset = this.safeAddOffset(offset, 9, "NSDate");
-    return new NSDate(this.bytes, offset + 1, endOffset);
+    return new NSDate(this.bytes, this.start + offset + 1, this.start + endOffset);
   }
 
   private NSData parseData(int offset, int objInfo) throws PropertyListFormatException {
@@ -458,7 +628,7 @@ public final class BinaryPropertyListParser {
     int length = lengthAndOffset[0];
     int dataOffset = offset + lengthAndOffset[1];
     int dataEndOffset = this.safeAddOffset(dataOffset, length, "NSData");
-    return new NSData(copyOfRange(this.bytes, dataOffset, dataEndOffset));
+    return new NSData(copyOfRange(this.bytes, this.start + dataOffset, this.start + dataEndOffset));
   }
 
   private NSObject parseSimpleObject(int offset, int objInfo, int obj)
@@ -484,7 +654,8 @@ public final class BinaryPropertyListParser {
 
   private UID parseUid(int obj, int offset, int length) throws PropertyListFormatException {
     int endOffset = this.safeAddOffset(offset, length + 1, "UID");
-    return new UID(String.valueOf(obj), copyOfRange(this.bytes, offset + 1, endOffset));
+    return new UID(
+        String.valueOf(obj), this.bytes, this.start + offset + 1, this.start + endOffset);
   }
 
   private NSNumber parseNumber(int offset, int objInfo, int numberType)
@@ -493,7 +664,7 @@ public final class BinaryPropertyListParser {
     int length = (int) Math.pow(2, objInfo);
     int endOffset = this.safeAddOffset(offset, length + 1, "NSNumber");
     try {
-      return new NSNumber(this.bytes, offset + 1, endOffset, numberType);
+      return new NSNumber(this.bytes, this.start + offset + 1, this.start + endOffset, numberType);
     } catch (IndexOutOfBoundsException ex) {
       throw new PropertyListFormatException(buildLengthError(offset, "NSNumber"), ex);
     }
@@ -515,7 +686,7 @@ public final class BinaryPropertyListParser {
     }
 
     int strEndIndex = this.safeAddOffset(strOffset, length, "NSString content");
-    return new NSString(this.bytes, strOffset, strEndIndex, charsetName);
+    return new NSString(this.bytes, this.start + strOffset, this.start + strEndIndex, charsetName);
   }
 
   private NSArray parseArray(int offset, int objInfo, ParsedObjectStack stack)
@@ -531,6 +702,10 @@ public final class BinaryPropertyListParser {
       int objRef = this.parseObjectReferenceFromList(arrayOffset, i);
       array.setValue(i, this.parseObject(stack, objRef));
     }
+    // Keep the locations of the elements if location information was requested
+    if (!this.withLocationInformation) {
+      array.packNumbers();
+    }
     return array;
   }
 
@@ -564,7 +739,7 @@ public final class BinaryPropertyListParser {
     int valueListOffset = keyListOffset + (length * this.objectRefSize);
     this.validateObjectReferenceListLength(valueListOffset, length, "NSDictionary values");
 
-    NSDictionary dict = new NSDictionary();
+    NSDictionary dict = new NSDictionary(length);
     for (int i = 0; i < length; i++) {
       int keyRef = this.parseObjectReferenceFromList(keyListOffset, i);
       int valRef = this.parseObjectReferenceFromList(valueListOffset, i);
@@ -575,7 +750,8 @@ public final class BinaryPropertyListParser {
       }
 
       NSObject val = this.parseObject(stack, valRef);
-      dict.put(key.toString(), val);
+      String keyString = key.toString();
+      dict.put(this.table != null ? this.table.key(keyString) : keyString, val);
     }
     return dict;
   }
@@ -585,7 +761,7 @@ public final class BinaryPropertyListParser {
       int lengthValue = objInfo;
       int lengthLength = 1;
       if (objInfo == 0xF) {
-        int int_type = this.bytes[Math.addExact(offset, 1)];
+        int int_type = this.bytes[this.start + Math.addExact(offset, 1)];
         int intType = (int_type & 0xF0) >> 4;
         if (intType != 0x1) {
           System.err.println(
@@ -599,10 +775,16 @@ public final class BinaryPropertyListParser {
         int intStartOffset = Math.addExact(offset, 2);
         int intEndOffset = this.safeAddOffset(offset, lengthLength, "length integer");
         if (intLength < 3) {
-          lengthValue = (int) parseUnsignedInt(this.bytes, intStartOffset, intEndOffset);
+          lengthValue =
+              (int)
+                  parseUnsignedInt(
+                      this.bytes, this.start + intStartOffset, this.start + intEndOffset);
         } else {
           lengthValue =
-              new BigInteger(copyOfRange(this.bytes, intStartOffset, intEndOffset)).intValue();
+              new BigInteger(
+                      copyOfRange(
+                          this.bytes, this.start + intStartOffset, this.start + intEndOffset))
+                  .intValue();
         }
       }
 
@@ -629,7 +811,7 @@ public final class BinaryPropertyListParser {
         return numCharacters;
       }
 
-      int currentByte = this.bytes[tempOffset];
+      int currentByte = this.bytes[this.start + tempOffset];
       if ((currentByte & 0x80) != 0x80) {
         length++;
       } else {
@@ -659,7 +841,8 @@ public final class BinaryPropertyListParser {
 
   private boolean hasUtf8Sequence(int offset, int n) {
     for (int i = 1; i <= n; i++) {
-      if (((offset + i) >= this.offsetTableOffset) || ((this.bytes[offset + i] & 0xC0) != 0x80)) {
+      if (((offset + i) >= this.offsetTableOffset)
+          || ((this.bytes[this.start + offset + i] & 0xC0) != 0x80)) {
         return false;
       }
     }
@@ -698,7 +881,8 @@ public final class BinaryPropertyListParser {
 
   private int parseObjectReference(int offset) throws PropertyListFormatException {
     // No offset validation required here, already covered in calling methods
-    return (int) parseUnsignedInt(this.bytes, offset, offset + this.objectRefSize);
+    int index = this.start + offset;
+    return (int) parseUnsignedInt(this.bytes, index, index + this.objectRefSize);
   }
 
   private int getObjectOffset(int obj) throws PropertyListFormatException {
@@ -707,8 +891,8 @@ public final class BinaryPropertyListParser {
           "The given binary property list contains an invalid object identifier (" + obj + ").");
     }
 
-    int startOffset = this.offsetTableOffset + obj * this.offsetSize;
-    int offset = (int) parseUnsignedInt(this.bytes, startOffset, startOffset + this.offsetSize);
+    int startIndex = this.start + this.offsetTableOffset + obj * this.offsetSize;
+    int offset = (int) parseUnsignedInt(this.bytes, startIndex, startIndex + this.offsetSize);
     if (offset > this.offsetTableOffset) {
       throw new PropertyListFormatException(
           "The given binary property list contains an invalid object offset ("
@@ -742,7 +926,7 @@ public final class BinaryPropertyListParser {
   private String buildTypeError(int offset, String objectType) {
     return String.format(
         "The %s at offset %d has an unknown or unsupported type (0x%02x)",
-        objectType, offset, this.bytes[offset]);
+        objectType, offset, this.bytes[this.start + offset]);
   }
 
   private static String buildLengthError(int offset, String objectType) {
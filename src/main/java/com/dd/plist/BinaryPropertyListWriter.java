@@ -30,6 +30,7 @@ import java.io.IOException;
 import java.io.OutputStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.IdentityHashMap;
 import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.Objects;
@@ -56,6 +57,13 @@ public final class BinaryPropertyListWriter {
 
   // map from object to its ID
   private final Map<NSObject, Integer> idMap = new LinkedHashMap<>();
+
+  // map from each object instance to its ID, which also finds objects whose hash code changes while
+  // they are written because other threads modify a concurrent dictionary contained in them
+  private final Map<NSObject, Integer> instanceIds = new IdentityHashMap<>();
+
+  // map from concurrent dictionary to the snapshot of its entries that is written
+  private final Map<ConcurrentNSDictionary, NSDictionary> snapshots = new IdentityHashMap<>();
   private int idSizeInBytes;
 
   /**
@@ -76,29 +84,29 @@ public final class BinaryPropertyListWriter {
    * @param root Object root
    * @return Version code
    */
-  private static int getMinimumRequiredVersion(NSObject root) {
+  private int getMinimumRequiredVersion(NSObject root) {
     int minVersion = VERSION_00;
     if (root == null) {
       minVersion = VERSION_10;
     }
     if (root instanceof NSDictionary) {
-      NSDictionary dict = (NSDictionary) root;
-      for (NSObject o : dict.getHashMap().values()) {
+      NSDictionary dict = (NSDictionary) this.writtenObject(root);
+      for (NSObject o : dict.storedValues()) {
         int v = getMinimumRequiredVersion(o);
         if (v > minVersion) minVersion = v;
       }
     } else if (root instanceof NSArray) {
       NSArray array = (NSArray) root;
-      for (NSObject o : array.getArray()) {
-        int v = getMinimumRequiredVersion(o);
+      for (int i = 0; i < array.count(); i++) {
+        int v = getMinimumRequiredVersion(array.storedObjectAtIndex(i));
         if (v > minVersion) minVersion = v;
       }
     } else if (root instanceof NSSet) {
       // Sets are only allowed in property lists v1+
       minVersion = VERSION_10;
       NSSet set = (NSSet) root;
-      for (NSObject o : set.allObjects()) {
-        int v = getMinimumRequiredVersion(o);
+      for (NSObject o : set.storedObjects()) {
+        int v = getMinimumRequiredVersion(NSNull.unwrap(o));
         if (v > minVersion) minVersion = v;
       }
     }
@@ -196,7 +204,8 @@ public final class BinaryPropertyListWriter {
     Objects.requireNonNull(root, "The root object is null.");
     Objects.requireNonNull(out, "The output stream is null.");
 
-    int minVersion = getMinimumRequiredVersion(root);
+    BinaryPropertyListWriter w = new BinaryPropertyListWriter(out, VERSION_00);
+    int minVersion = w.getMinimumRequiredVersion(root);
     if (minVersion > VERSION_00) {
       String versionString =
           minVersion == VERSION_10
@@ -209,7 +218,6 @@ public final class BinaryPropertyListWriter {
               + ") is not yet supported.");
     }
 
-    BinaryPropertyListWriter w = new BinaryPropertyListWriter(out, minVersion);
     w.write(root);
   }
 
@@ -295,7 +303,7 @@ public final class BinaryPropertyListWriter {
       // number of objects
       this.writeLong(this.idMap.size());
       // top object
-      this.writeLong(this.idMap.get(root));
+      this.writeLong(this.getID(root));
       // offset table offset
       this.writeLong(offsetTableOffset);
     }
@@ -304,13 +312,37 @@ public final class BinaryPropertyListWriter {
   }
 
   void assignID(NSObject obj) {
-    if (!this.idMap.containsKey(obj)) {
-      this.idMap.put(obj, this.idMap.size());
+    obj = this.writtenObject(obj);
+    if (!this.instanceIds.containsKey(obj)) {
+      Integer id = this.idMap.get(obj);
+      if (id == null) {
+        id = this.idMap.size();
+        this.idMap.put(obj, id);
+      }
+      this.instanceIds.put(obj, id);
     }
   }
 
   int getID(NSObject obj) {
-    return this.idMap.get(obj);
+    obj = this.writtenObject(obj);
+    Integer id = this.instanceIds.get(obj);
+    return id != null ? id : this.idMap.get(obj);
+  }
+
+  /**
+   * Gets the object that is written for the given object. Other threads may modify a {@link
+   * ConcurrentNSDictionary} while it is written, so all parts of the output are written from one
+   * snapshot of its entries, which is taken when the dictionary is first encountered.
+   *
+   * @param obj The object.
+   * @return The snapshot of a concurrent dictionary, or the given object.
+   */
+  NSObject writtenObject(NSObject obj) {
+    if (obj instanceof ConcurrentNSDictionary) {
+      return this.snapshots.computeIfAbsent(
+          (ConcurrentNSDictionary) obj, ConcurrentNSDictionary::snapshot);
+    }
+    return obj;
   }
 
   private static int computeIdSizeInBytes(int numberOfIds) {
@@ -0,0 +1,94 @@
+/*
+ * plist - An open source library to parse and generate property lists
+ * Copyright (C) 2026 Daniel Dreibrodt
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.dd.plist;
+
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * An input stream that reads the data between the position and the limit of a byte buffer. The
+ * position of the buffer itself is not changed.
+ */
+class ByteBufferInputStream extends InputStream {
+  private final ByteBuffer buffer;
+
+  /** The position to which the stream is reset, initially the beginning of the data. */
+  private int mark;
+
+  /**
+   * Creates a {@code ByteBufferInputStream} instance.
+   *
+   * @param buffer The buffer containing the data.
+   */
+  public ByteBufferInputStream(ByteBuffer buffer) {
+    this.buffer = buffer.duplicate();
+    this.mark = buffer.position();
+  }
+
+  @Override
+  public int read() {
+    return this.buffer.hasRemaining() ? this.buffer.get() & 0xFF : -1;
+  }
+
+  @Override
+  public int read(byte[] b, int off, int len) {
+    if (off < 0 || len < 0 || len > b.length - off) {
+      throw new IndexOutOfBoundsException();
+    } else if (len == 0) {
+      return 0;
+    } else if (!this.buffer.hasRemaining()) {
+      return -1;
+    }
+
+    int n = Math.min(len, this.buffer.remaining());
+    this.buffer.get(b, off, n);
+    return n;
+  }
+
+  @Override
+  public long skip(long n) {
+    int skipped = (int) Math.max(0, Math.min(n, this.buffer.remaining()));
+    this.buffer.position(this.buffer.position() + skipped);
+    return skipped;
+  }
+
+  @Override
+  public int available() {
+    return this.buffer.remaining();
+  }
+
+  @Override
+  public boolean markSupported() {
+    return true;
+  }
+
+  @Override
+  public synchronized void mark(int readlimit) {
+    this.mark = this.buffer.position();
+  }
+
+  @Override
+  public synchronized void reset() {
+    this.buffer.position(this.mark);
+  }
+}
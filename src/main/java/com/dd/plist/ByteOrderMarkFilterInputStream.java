@@ -26,14 +26,25 @@ package com.dd.plist;
 import java.io.FilterInputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.util.LinkedList;
-import java.util.Queue;
 
-/** An input stream that filters the Byte Order Mark from the input. */
+/**
+ * An input stream that filters the Byte Order Mark from the input. The beginning of the input is
+ * read into a small buffer once to detect the BOM. Afterwards, all reads are passed directly to the
+ * underlying input stream.
+ */
 class ByteOrderMarkFilterInputStream extends FilterInputStream {
+  /** The length of the longest Byte Order Mark. */
+  private static final int MAX_BOM_LENGTH = 4;
+
   private final boolean closeStream;
-  private boolean readingBom = true;
-  private final Queue<Integer> consumedBytes = new LinkedList<>();
+
+  /** The bytes that were read to detect the BOM. */
+  private final byte[] head = new byte[MAX_BOM_LENGTH];
+
+  /** The index of the next byte in the head that was not yet returned, or -1 before detection. */
+  private int headOffset = -1;
+
+  private int headLength;
 
   /**
    * Creates a {@code ByteOrderMarkFilterInputStream} instance.
@@ -49,26 +60,70 @@ class ByteOrderMarkFilterInputStream extends FilterInputStream {
 
   @Override
   public int read() throws IOException {
-    if (this.readingBom) {
-      int b;
-      ByteOrderMarkReader bomReader = new ByteOrderMarkReader();
-      do {
-        b = super.read();
-        this.consumedBytes.add(b);
-        this.readingBom = bomReader.readByte(b);
-      } while (this.readingBom);
-
-      if (bomReader.getDetectedCharset() != null) {
-        this.consumedBytes.clear();
-        return b;
-      }
+    if (this.remainingHead() > 0) {
+      return this.head[this.headOffset++] & 0xFF;
+    }
+
+    return this.in.read();
+  }
+
+  @Override
+  public int read(byte[] b, int off, int len) throws IOException {
+    if (off < 0 || len < 0 || len > b.length - off) {
+      throw new IndexOutOfBoundsException();
+    } else if (len == 0) {
+      return 0;
     }
 
-    if (this.consumedBytes.size() > 0) {
-      return this.consumedBytes.poll();
+    int remaining = this.remainingHead();
+    if (remaining > 0) {
+      int n = Math.min(remaining, len);
+      System.arraycopy(this.head, this.headOffset, b, off, n);
+      this.headOffset += n;
+      return n;
     }
 
-    return super.read();
+    return this.in.read(b, off, len);
+  }
+
+  @Override
+  public long skip(long n) throws IOException {
+    if (n <= 0) {
+      return 0;
+    }
+
+    int remaining = this.remainingHead();
+    if (remaining > 0) {
+      int skipped = (int) Math.min(remaining, n);
+      this.headOffset += skipped;
+      return skipped;
+    }
+
+    return this.in.skip(n);
+  }
+
+  @Override
+  public int available() throws IOException {
+    if (this.headOffset < 0) {
+      return this.in.available();
+    }
+
+    return this.headLength - this.headOffset + this.in.available();
+  }
+
+  @Override
+  public boolean markSupported() {
+    return false;
+  }
+
+  @Override
+  public synchronized void mark(int readlimit) {
+    /* not supported */
+  }
+
+  @Override
+  public synchronized void reset() throws IOException {
+    throw new IOException("mark/reset not supported");
   }
 
   @Override
@@ -77,4 +132,32 @@ class ByteOrderMarkFilterInputStream extends FilterInputStream {
       super.close();
     }
   }
+
+  /**
+   * Detects and skips the BOM if that has not been done yet.
+   *
+   * @return The number of bytes in the head that were read, are not part of the BOM and have not
+   *     been returned yet.
+   * @throws IOException If the underlying input stream throws an exception.
+   */
+  private int remainingHead() throws IOException {
+    if (this.headOffset < 0) {
+      // Only read as many bytes as necessary to rule out or detect a BOM
+      ByteOrderMarkReader bomReader = new ByteOrderMarkReader();
+      boolean readingBom = true;
+      while (readingBom && this.headLength < MAX_BOM_LENGTH) {
+        int n = this.in.read(this.head, this.headLength, MAX_BOM_LENGTH - this.headLength);
+        if (n < 0) {
+          break;
+        }
+
+        for (int end = this.headLength + n; this.headLength < end; this.headLength++) {
+          readingBom = readingBom && bomReader.readByte(this.head[this.headLength] & 0xFF);
+        }
+      }
+      this.headOffset = bomReader.getDetectedLength();
+    }
+
+    return this.headLength - this.headOffset;
+  }
 }
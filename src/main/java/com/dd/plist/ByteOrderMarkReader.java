@@ -23,6 +23,8 @@
 
 package com.dd.plist;
 
+import java.nio.ByteBuffer;
+
 /**
  * Reads Byte Order Marks for various Unicode encodings.
  *
@@ -44,6 +46,7 @@ class ByteOrderMarkReader {
   private final boolean[] charsetPossible = {true, true, true, true, true};
   private int offset;
   private String charset;
+  private int length;
 
   /**
    * Gets the charset that was detected.
@@ -54,6 +57,15 @@ class ByteOrderMarkReader {
     return this.charset;
   }
 
+  /**
+   * Gets the length of the Byte Order Mark that was detected.
+   *
+   * @return The number of bytes that make up the detected BOM, or 0 if no charset was detected.
+   */
+  public int getDetectedLength() {
+    return this.length;
+  }
+
   /**
    * Processes a byte that was read from the input.
    *
@@ -70,6 +82,7 @@ class ByteOrderMarkReader {
           matchingCharset = true;
           if (this.offset + 1 == bom.length) {
             this.charset = Charsets[c];
+            this.length = bom.length;
           }
         } else {
           this.charsetPossible[c] = false;
@@ -88,23 +101,40 @@ class ByteOrderMarkReader {
    * @return The name of the detected charset, or <c>null</c> if no BOM was detected.
    */
   public static String detect(byte[] bytes) {
+    return detect(ByteBuffer.wrap(bytes));
+  }
+
+  /**
+   * Detects the encoding of input data that is available as a complete buffer. The data between the
+   * position and the limit of the buffer is inspected, the position is not changed.
+   *
+   * @param data The input data.
+   * @return The name of the detected charset, or <c>null</c> if no BOM was detected.
+   */
+  static String detect(ByteBuffer data) {
+    int start = data.position();
+    int length = data.remaining();
     // Check for byte order marks
-    if (bytes.length > 2) {
-      if (bytes[0] == (byte) 0xFE && bytes[1] == (byte) 0xFF) {
+    if (length > 2) {
+      if (data.get(start) == (byte) 0xFE && data.get(start + 1) == (byte) 0xFF) {
         return "UTF-16";
-      } else if (bytes[0] == (byte) 0xFF && bytes[1] == (byte) 0xFE) {
-        if (bytes.length > 4 && bytes[2] == (byte) 0x00 && bytes[3] == (byte) 0x00) {
+      } else if (data.get(start) == (byte) 0xFF && data.get(start + 1) == (byte) 0xFE) {
+        if (length > 4
+            && data.get(start + 2) == (byte) 0x00
+            && data.get(start + 3) == (byte) 0x00) {
           return "UTF-32";
         }
         return "UTF-16";
-      } else if (bytes.length > 3) {
-        if (bytes[0] == (byte) 0xEF && bytes[1] == (byte) 0xBB && bytes[2] == (byte) 0xBF) {
+      } else if (length > 3) {
+        if (data.get(start) == (byte) 0xEF
+            && data.get(start + 1) == (byte) 0xBB
+            && data.get(start + 2) == (byte) 0xBF) {
           return "UTF-8";
-        } else if (bytes.length > 4
-            && bytes[0] == (byte) 0x00
-            && bytes[1] == (byte) 0x00
-            && bytes[2] == (byte) 0xFE
-            && bytes[3] == (byte) 0xFF) {
+        } else if (length > 4
+            && data.get(start) == (byte) 0x00
+            && data.get(start + 1) == (byte) 0x00
+            && data.get(start + 2) == (byte) 0xFE
+            && data.get(start + 3) == (byte) 0xFF) {
           return "UTF-32";
         }
       }
@@ -0,0 +1,186 @@
+/*
+ * plist - An open source library to parse and generate property lists
+ * Copyright (C) 2026 Daniel Dreibrodt
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.dd.plist;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A table of canonical dictionary keys and leaf values that the property list parsers use to share
+ * a single instance among all equal keys and values. Property lists often repeat the same keys and
+ * values many times, for example the keys of the records in an array or the {@code isa} values in
+ * Xcode project files. Parsing with a canonicalization table stores each of them only once, which
+ * reduces the memory used by the parsed objects and makes comparing them cheaper.
+ *
+ * <p>Strings, numbers, dates and UIDs are canonicalized. Canonical values are frozen (see {@link
+ * NSObject#freeze()}), as they can occur at many places in the parsed property lists, and they do
+ * not carry location information. Data objects, arrays, dictionaries and sets are never shared.
+ *
+ * <p>A table can be used for a single parse or it can be shared among many parses, also
+ * concurrently by multiple threads, so that the objects of all property lists parsed with it share
+ * their keys and values. The number of entries is bounded: once the table is full, further keys and
+ * values are still looked up, but new ones are no longer added. Long strings are never added.
+ *
+ * @author Daniel Dreibrodt
+ * @see PropertyListParser#parse(byte[], CanonicalizationTable)
+ */
+public final class CanonicalizationTable {
+
+  /** The default maximum number of entries. */
+  public static final int DEFAULT_MAX_SIZE = 4096;
+
+  /** The maximum length of strings that are added to the table. */
+  private static final int MAX_STRING_LENGTH = 256;
+
+  private final int maxSize;
+  private final AtomicInteger size = new AtomicInteger();
+  private final ConcurrentHashMap<String, String> keys = new ConcurrentHashMap<>();
+  private final ConcurrentHashMap<NSObject, NSObject> values = new ConcurrentHashMap<>();
+
+  /** Creates an empty canonicalization table with up to {@link #DEFAULT_MAX_SIZE} entries. */
+  public CanonicalizationTable() {
+    this(DEFAULT_MAX_SIZE);
+  }
+
+  /**
+   * Creates an empty canonicalization table.
+   *
+   * @param maxSize The maximum number of keys and values in the table.
+   * @throws IllegalArgumentException If the maximum size is negative.
+   */
+  public CanonicalizationTable(int maxSize) {
+    if (maxSize < 0) {
+      throw new IllegalArgumentException("The maximum size must not be negative: " + maxSize);
+    }
+    this.maxSize = maxSize;
+  }
+
+  /**
+   * Gets the number of keys and values in this table. While the table is used by multiple threads,
+   * the number may slightly exceed the maximum size.
+   *
+   * @return The number of entries.
+   */
+  public int size() {
+    return this.size.get();
+  }
+
+  /**
+   * Removes all keys and values from this table. Objects that have already been parsed keep sharing
+   * their keys and values.
+   */
+  public void clear() {
+    this.keys.clear();
+    this.values.clear();
+    this.size.set(0);
+  }
+
+  /**
+   * Gets the canonical instance of a dictionary key.
+   *
+   * @param key The key.
+   * @return The canonical instance of the key, or the key itself if it is not in the table and
+   *     cannot be added.
+   */
+  String key(String key) {
+    String canonical = this.keys.get(key);
+    if (canonical != null) {
+      return canonical;
+    }
+
+    if (key.length() <= MAX_STRING_LENGTH && this.reserve()) {
+      canonical = this.keys.putIfAbsent(key, key);
+      if (canonical != null) {
+        this.size.decrementAndGet();
+        return canonical;
+      }
+    }
+    return key;
+  }
+
+  /**
+   * Gets the canonical instance of a parsed object.
+   *
+   * @param object The parsed object.
+   * @return The frozen canonical instance of the object, which may be the object itself, or {@code
+   *     null} if the object cannot be shared or it is not in the table and cannot be added.
+   */
+  NSObject canonicalize(NSObject object) {
+    if (object instanceof NSNumber) {
+      NSNumber number = (NSNumber) object;
+      switch (number.type()) {
+        case NSNumber.BOOLEAN:
+          return NSNumber.valueOf(number.boolValue());
+        case NSNumber.INTEGER:
+          long value = number.longValue();
+          if (value >= Byte.MIN_VALUE && value <= Byte.MAX_VALUE) {
+            return NSNumber.valueOf(value);
+          }
+          break;
+        default:
+          // NaN is not equal to itself and -0.0 is equal to 0.0, so both cannot be shared
+          double d = number.doubleValue();
+          if (Double.isNaN(d) || d == 0 && 1 / d < 0) {
+            return null;
+          }
+          break;
+      }
+    } else if (object instanceof NSString) {
+      if (((NSString) object).getContent().length() > MAX_STRING_LENGTH) {
+        return null;
+      }
+    } else if (object instanceof NSDate) {
+      if (!((NSDate) object).hasMillisecondPrecision()) {
+        return null;
+      }
+    } else if (!(object instanceof UID)) {
+      return null;
+    }
+
+    NSObject canonical = this.values.get(object);
+    if (canonical == null && this.reserve()) {
+      // Freeze before publishing the object to other threads
+      object.freeze();
+      canonical = this.values.putIfAbsent(object, object);
+      if (canonical != null) {
+        this.size.decrementAndGet();
+      } else {
+        canonical = object;
+      }
+    }
+    return canonical;
+  }
+
+  /**
+   * Reserves an entry in this table.
+   *
+   * @return Whether the table was not full.
+   */
+  private boolean reserve() {
+    if (this.size.incrementAndGet() > this.maxSize) {
+      this.size.decrementAndGet();
+      return false;
+    }
+    return true;
+  }
+}
@@ -0,0 +1,407 @@
+/*
+ * plist - An open source library to parse and generate property lists
+ * Copyright (C) 2026 Daniel Dreibrodt
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.dd.plist;
+
+import java.util.*;
+
+/**
+ * Insertion-ordered map that stores the entries of a dictionary. Up to {@link #MAX_COMPACT_SIZE}
+ * entries are kept in two parallel arrays and looked up by a linear scan, which needs a fraction of
+ * the memory of a hash map. When the map grows beyond that size, or when a hash map is explicitly
+ * requested through {@link #toHashMap()}, the entries are moved into a {@link LinkedHashMap}, which
+ * is used from then on.
+ *
+ * <p>Null keys are not supported.
+ *
+ * @author Daniel Dreibrodt
+ */
+final class CompactMap extends AbstractMap<String, NSObject> {
+
+  /** The maximum number of entries that are stored in arrays. */
+  static final int MAX_COMPACT_SIZE = 8;
+
+  private static final String[] NO_KEYS = {};
+  private static final NSObject[] NO_VALUES = {};
+
+  private String[] keys;
+  private NSObject[] values;
+  private int size;
+
+  /** The hash map that stores the entries once the map has been promoted, otherwise null. */
+  private LinkedHashMap<String, NSObject> map;
+
+  /** The number of structural modifications in compact mode, used to detect concurrent changes. */
+  private int modCount;
+
+  /** Creates an empty map. */
+  CompactMap() {
+    this.keys = NO_KEYS;
+    this.values = NO_VALUES;
+  }
+
+  /**
+   * Creates an empty map that can hold the given number of entries without growing.
+   *
+   * @param expectedSize The expected number of entries.
+   */
+  CompactMap(int expectedSize) {
+    if (expectedSize < 0) {
+      throw new IllegalArgumentException("Illegal capacity: " + expectedSize);
+    } else if (expectedSize > MAX_COMPACT_SIZE) {
+      this.map = new LinkedHashMap<>(hashMapCapacity(expectedSize));
+    } else if (expectedSize == 0) {
+      this.keys = NO_KEYS;
+      this.values = NO_VALUES;
+    } else {
+      this.keys = new String[expectedSize];
+      this.values = new NSObject[expectedSize];
+    }
+  }
+
+  /**
+   * Gets the hash map that stores the entries of this map. If the entries are still stored in
+   * arrays, they are moved into a new hash map first. Changes to the returned hash map are directly
+   * reflected in this map.
+   *
+   * @return The hash map.
+   */
+  LinkedHashMap<String, NSObject> toHashMap() {
+    if (this.map == null) {
+      this.promote(this.size);
+    }
+    return this.map;
+  }
+
+  /** Shrinks the arrays that store the entries to the current number of entries. */
+  void trimToSize() {
+    if (this.map == null && this.size < this.keys.length) {
+      this.keys = this.size == 0 ? NO_KEYS : Arrays.copyOf(this.keys, this.size);
+      this.values = this.size == 0 ? NO_VALUES : Arrays.copyOf(this.values, this.size);
+    }
+  }
+
+  @Override
+  public int size() {
+    return this.map != null ? this.map.size() : this.size;
+  }
+
+  @Override
+  public boolean isEmpty() {
+    return this.size() == 0;
+  }
+
+  @Override
+  public boolean containsKey(Object key) {
+    return this.map != null ? this.map.containsKey(key) : this.indexOf(key) >= 0;
+  }
+
+  @Override
+  public boolean containsValue(Object value) {
+    if (this.map != null) {
+      return this.map.containsValue(value);
+    }
+
+    for (int i = 0; i < this.size; i++) {
+      if (Objects.equals(value, this.values[i])) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  @Override
+  public NSObject get(Object key) {
+    if (this.map != null) {
+      return this.map.get(key);
+    }
+
+    int i = this.indexOf(key);
+    return i >= 0 ? this.values[i] : null;
+  }
+
+  @Override
+  public NSObject put(String key, NSObject value) {
+    if (this.map != null) {
+      return this.map.put(key, value);
+    }
+
+    Objects.requireNonNull(key);
+    int i = this.indexOf(key);
+    if (i >= 0) {
+      NSObject previous = this.values[i];
+      this.values[i] = value;
+      return previous;
+    }
+
+    if (this.size == MAX_COMPACT_SIZE) {
+      this.promote(this.size + 1);
+      return this.map.put(key, value);
+    }
+
+    if (this.size == this.keys.length) {
+      int capacity = Math.min(MAX_COMPACT_SIZE, Math.max(4, this.size * 2));
+      this.keys = Arrays.copyOf(this.keys, capacity);
+      this.values = Arrays.copyOf(this.values, capacity);
+    }
+    this.keys[this.size] = key;
+    this.values[this.size] = value;
+    this.size++;
+    this.modCount++;
+    return null;
+  }
+
+  @Override
+  public NSObject remove(Object key) {
+    if (this.map != null) {
+      return this.map.remove(key);
+    }
+
+    int i = this.indexOf(key);
+    if (i < 0) {
+      return null;
+    }
+
+    NSObject previous = this.values[i];
+    this.removeAt(i);
+    return previous;
+  }
+
+  @Override
+  public void clear() {
+    if (this.map != null) {
+      this.map.clear();
+    } else {
+      Arrays.fill(this.keys, 0, this.size, null);
+      Arrays.fill(this.values, 0, this.size, null);
+      this.size = 0;
+      this.modCount++;
+    }
+  }
+
+  @Override
+  public Set<String> keySet() {
+    return this.map != null ? this.map.keySet() : super.keySet();
+  }
+
+  @Override
+  public Collection<NSObject> values() {
+    return this.map != null ? this.map.values() : super.values();
+  }
+
+  @Override
+  public Set<Entry<String, NSObject>> entrySet() {
+    return this.map != null ? this.map.entrySet() : new EntrySet();
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (this.map != null) {
+      return this.map.equals(o);
+    } else if (o == this) {
+      return true;
+    } else if (!(o instanceof Map) || ((Map<?, ?>) o).size() != this.size) {
+      return false;
+    }
+
+    Map<?, ?> other = (Map<?, ?>) o;
+    for (int i = 0; i < this.size; i++) {
+      NSObject value = this.values[i];
+      if (value == null
+          ? other.get(this.keys[i]) != null || !other.containsKey(this.keys[i])
+          : !value.equals(other.get(this.keys[i]))) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  @Override
+  public int hashCode() {
+    if (this.map != null) {
+      return this.map.hashCode();
+    }
+
+    int hash = 0;
+    for (int i = 0; i < this.size; i++) {
+      hash += this.keys[i].hashCode() ^ Objects.hashCode(this.values[i]);
+    }
+    return hash;
+  }
+
+  private int indexOf(Object key) {
+    if (key == null) {
+      return -1;
+    }
+
+    for (int i = 0; i < this.size; i++) {
+      String k = this.keys[i];
+      if (k == key || k.equals(key)) {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  private void removeAt(int i) {
+    int moved = this.size - i - 1;
+    System.arraycopy(this.keys, i + 1, this.keys, i, moved);
+    System.arraycopy(this.values, i + 1, this.values, i, moved);
+    this.size--;
+    this.keys[this.size] = null;
+    this.values[this.size] = null;
+    this.modCount++;
+  }
+
+  private void promote(int expectedSize) {
+    LinkedHashMap<String, NSObject> promoted = new LinkedHashMap<>(hashMapCapacity(expectedSize));
+    for (int i = 0; i < this.size; i++) {
+      promoted.put(this.keys[i], this.values[i]);
+    }
+    this.map = promoted;
+    this.keys = null;
+    this.values = null;
+    this.size = 0;
+    this.modCount++;
+  }
+
+  private static int hashMapCapacity(int expectedSize) {
+    return (int) Math.min(Integer.MAX_VALUE, (long) Math.ceil(expectedSize / 0.75));
+  }
+
+  /** The entry set view of a map in compact mode. */
+  private final class EntrySet extends AbstractSet<Entry<String, NSObject>> {
+    @Override
+    public Iterator<Entry<String, NSObject>> iterator() {
+      return CompactMap.this.map != null
+          ? CompactMap.this.map.entrySet().iterator()
+          : new EntryIterator();
+    }
+
+    @Override
+    public int size() {
+      return CompactMap.this.size();
+    }
+
+    @Override
+    public void clear() {
+      CompactMap.this.clear();
+    }
+  }
+
+  /** Iterates over the entries of a map in compact mode. */
+  private final class EntryIterator implements Iterator<Entry<String, NSObject>> {
+    private int next;
+    private int last = -1;
+    private int expectedModCount = CompactMap.this.modCount;
+
+    @Override
+    public boolean hasNext() {
+      return this.next < CompactMap.this.size;
+    }
+
+    @Override
+    public Entry<String, NSObject> next() {
+      this.checkForComodification();
+      if (this.next >= CompactMap.this.size) {
+        throw new NoSuchElementException();
+      }
+      this.last = this.next++;
+      return new ArrayEntry(this.last);
+    }
+
+    @Override
+    public void remove() {
+      if (this.last < 0) {
+        throw new IllegalStateException();
+      }
+      this.checkForComodification();
+      CompactMap.this.removeAt(this.last);
+      this.next = this.last;
+      this.last = -1;
+      this.expectedModCount = CompactMap.this.modCount;
+    }
+
+    private void checkForComodification() {
+      if (CompactMap.this.modCount != this.expectedModCount) {
+        throw new ConcurrentModificationException();
+      }
+    }
+  }
+
+  /** An entry of a map in compact mode. Setting its value writes through to the map. */
+  private final class ArrayEntry implements Entry<String, NSObject> {
+    private final int index;
+    private final String key;
+
+    ArrayEntry(int index) {
+      this.index = index;
+      this.key = CompactMap.this.keys[index];
+    }
+
+    @Override
+    public String getKey() {
+      return this.key;
+    }
+
+    @Override
+    public NSObject getValue() {
+      return this.isCurrent() ? CompactMap.this.values[this.index] : CompactMap.this.get(this.key);
+    }
+
+    @Override
+    public NSObject setValue(NSObject value) {
+      if (!this.isCurrent()) {
+        throw new ConcurrentModificationException();
+      }
+      NSObject previous = CompactMap.this.values[this.index];
+      CompactMap.this.values[this.index] = value;
+      return previous;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (!(o instanceof Entry)) {
+        return false;
+      }
+      Entry<?, ?> other = (Entry<?, ?>) o;
+      return this.key.equals(other.getKey()) && Objects.equals(this.getValue(), other.getValue());
+    }
+
+    @Override
+    public int hashCode() {
+      return this.key.hashCode() ^ Objects.hashCode(this.getValue());
+    }
+
+    @Override
+    public String toString() {
+      return this.key + "=" + this.getValue();
+    }
+
+    /** Checks whether the entry is still stored at the same position of the arrays. */
+    private boolean isCurrent() {
+      return CompactMap.this.map == null
+          && this.index < CompactMap.this.size
+          && CompactMap.this.keys[this.index] == this.key;
+    }
+  }
+}
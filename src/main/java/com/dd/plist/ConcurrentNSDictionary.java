@@ -0,0 +1,428 @@
+/*
+ * plist - An open source library to parse and generate property lists
+ * Copyright (C) 2026 Daniel Dreibrodt
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.dd.plist;
+
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+import java.util.function.UnaryOperator;
+
+/**
+ * A dictionary that can be read and modified by multiple threads, for example a configuration that
+ * is read by many threads while other threads update it. Like {@link NSDictionary}, it preserves
+ * the order in which the keys were inserted.
+ *
+ * <p>The entries are stored in a {@link ConcurrentHashMap}, together with the position of each key
+ * in the insertion order. Looking up, putting and removing a key do not lock the dictionary and
+ * take constant time, also while other threads modify other keys. {@link #putIfAbsent}, {@link
+ * #compute}, {@link #computeIfAbsent}, {@link #computeIfPresent}, {@link #merge}, {@link #replace}
+ * and {@link #remove(Object, Object)} are atomic. The functions passed to them are called while the
+ * key is locked, so they should be short and must not modify this dictionary.
+ *
+ * <p>Iterating over the dictionary, comparing it and writing it as a property list work on a
+ * snapshot of the entries in insertion order. The snapshot is created on the first such read after
+ * a modification and reused until the next one. It reflects the entries at some point during its
+ * creation, like the iterators of a {@link ConcurrentHashMap}. {@link #keySet()}, {@link #values()}
+ * and {@link #entrySet()} return unmodifiable views of a snapshot, which do not reflect later
+ * modifications, and {@link #getHashMap()} returns a copy of the entries. Each dictionary in a
+ * property list is written from a single snapshot, but nested concurrent dictionaries may be
+ * captured at different points in time. To write a property list that is consistent as a whole
+ * while other threads modify it, write a clone.
+ *
+ * <p>Only the dictionary itself is thread-safe. Values stored in it that are modified while other
+ * threads read them must be thread-safe as well, or frozen (see {@link NSObject#freeze()}) and
+ * replaced instead of modified.
+ *
+ * @author Daniel Dreibrodt
+ * @see NSDictionary
+ */
+public class ConcurrentNSDictionary extends NSDictionary {
+
+  /** The entries of this dictionary. */
+  private final ConcurrentHashMap<String, Node> entries = new ConcurrentHashMap<>();
+
+  /** The position of the next key that is inserted. */
+  private final AtomicLong nextPosition = new AtomicLong();
+
+  /** The number of modifications, which invalidate the snapshot. */
+  private final AtomicLong version = new AtomicLong();
+
+  /** The last snapshot of the entries, or null if none has been created yet. */
+  private volatile Snapshot snapshot;
+
+  /** Creates a new, empty dictionary. */
+  public ConcurrentNSDictionary() {
+    super(0);
+  }
+
+  /**
+   * Creates a new dictionary with the entries of the given dictionary. The values are not copied.
+   *
+   * @param values The entries.
+   */
+  public ConcurrentNSDictionary(Map<String, ? extends NSObject> values) {
+    this();
+    this.putAll(values);
+  }
+
+  /**
+   * Gets a snapshot of the entries of this dictionary in insertion order.
+   *
+   * @return The entries, which must not be modified.
+   */
+  @Override
+  CompactMap contents() {
+    long version = this.version.get();
+    Snapshot snapshot = this.snapshot;
+    if (snapshot != null && snapshot.version == version) {
+      return snapshot.entries;
+    }
+
+    // The entries returned by the iterator of the map are not affected by later modifications
+    List<Map.Entry<String, Node>> nodes = new ArrayList<>(this.entries.entrySet());
+    nodes.sort((a, b) -> Long.compare(a.getValue().position, b.getValue().position));
+    CompactMap entries = new CompactMap(nodes.size());
+    for (Map.Entry<String, Node> node : nodes) {
+      entries.put(node.getKey(), node.getValue().value);
+    }
+
+    this.snapshot = new Snapshot(version, entries);
+    return entries;
+  }
+
+  /**
+   * Gets a dictionary that holds a snapshot of the entries of this dictionary. The values are not
+   * copied.
+   *
+   * @return The dictionary, which must not be modified.
+   */
+  NSDictionary snapshot() {
+    return new NSDictionary(this.contents());
+  }
+
+  @Override
+  CompactMap exposedContents() {
+    // The dictionary never shares its values, so they can be exposed as they are
+    return this.contents();
+  }
+
+  @Override
+  public ConcurrentNSDictionary freeze() {
+    super.freeze();
+    return this;
+  }
+
+  /**
+   * Gets a copy of the entries of this dictionary in a hash map. Unlike in an {@link NSDictionary},
+   * changes to the hash map are not reflected in this dictionary.
+   *
+   * @return A copy of the entries.
+   */
+  @Override
+  public HashMap<String, NSObject> getHashMap() {
+    return new LinkedHashMap<>(this.contents());
+  }
+
+  @Override
+  public Set<String> keySet() {
+    return Collections.unmodifiableSet(this.contents().keySet());
+  }
+
+  @Override
+  public Collection<NSObject> values() {
+    return Collections.unmodifiableCollection(this.contents().values());
+  }
+
+  @Override
+  public Set<Entry<String, NSObject>> entrySet() {
+    return Collections.unmodifiableMap(this.contents()).entrySet();
+  }
+
+  @Override
+  public NSObject objectForKey(String key) {
+    return this.get(key);
+  }
+
+  @Override
+  public NSObject get(Object key) {
+    Node node = key != null ? this.entries.get(key) : null;
+    return node != null ? node.value : null;
+  }
+
+  @Override
+  public boolean containsKey(Object key) {
+    return key != null && this.entries.containsKey(key);
+  }
+
+  @Override
+  public boolean containsKey(String key) {
+    return this.containsKey((Object) key);
+  }
+
+  @Override
+  public int size() {
+    return this.entries.size();
+  }
+
+  @Override
+  public boolean isEmpty() {
+    return this.entries.isEmpty();
+  }
+
+  @Override
+  public int count() {
+    return this.entries.size();
+  }
+
+  @Override
+  public NSObject put(String key, NSObject obj) {
+    this.checkMutable();
+    if (key == null) return null;
+    if (obj == null) return this.get(key);
+    return this.update(key, value -> obj)[0];
+  }
+
+  @Override
+  public NSObject remove(String key) {
+    this.checkMutable();
+    return key != null ? this.update(key, value -> null)[0] : null;
+  }
+
+  @Override
+  public NSObject remove(Object key) {
+    return key instanceof String ? this.remove((String) key) : null;
+  }
+
+  @Override
+  public void clear() {
+    this.checkMutable();
+    this.entries.clear();
+    this.version.incrementAndGet();
+  }
+
+  /**
+   * Atomically puts a value into this dictionary if no value is stored for the key.
+   *
+   * @param key The key.
+   * @param value The value.
+   * @return The value stored for the key, or null if the given value was put into the dictionary.
+   */
+  @Override
+  public NSObject putIfAbsent(String key, NSObject value) {
+    this.checkMutable();
+    if (key == null || value == null) return this.get(key);
+    return this.update(key, current -> current != null ? current : value)[0];
+  }
+
+  @Override
+  public boolean remove(Object key, Object value) {
+    this.checkMutable();
+    if (!(key instanceof String) || value == null) return false;
+    NSObject[] values =
+        this.update((String) key, current -> value.equals(current) ? null : current);
+    return values[0] != null && values[1] == null;
+  }
+
+  @Override
+  public boolean replace(String key, NSObject oldValue, NSObject newValue) {
+    this.checkMutable();
+    if (key == null || oldValue == null || newValue == null) return false;
+    NSObject[] values = this.update(key, current -> oldValue.equals(current) ? newValue : current);
+    return values[0] != null && values[0].equals(oldValue);
+  }
+
+  @Override
+  public NSObject replace(String key, NSObject value) {
+    this.checkMutable();
+    if (key == null || value == null) return this.get(key);
+    return this.update(key, current -> current != null ? value : null)[0];
+  }
+
+  /**
+   * Atomically computes the value for a key if no value is stored for it.
+   *
+   * @param key The key.
+   * @param mappingFunction The function that computes the value. It is called while the key is
+   *     locked.
+   * @return The value stored for the key, which may be the computed value, or null if no value is
+   *     stored for the key and the function returned null.
+   */
+  @Override
+  public NSObject computeIfAbsent(
+      String key, Function<? super String, ? extends NSObject> mappingFunction) {
+    Objects.requireNonNull(mappingFunction);
+    this.checkMutable();
+    if (key == null) return null;
+    return this.update(key, current -> current != null ? current : mappingFunction.apply(key))[1];
+  }
+
+  /**
+   * Atomically computes a new value for a key if a value is stored for it.
+   *
+   * @param key The key.
+   * @param remappingFunction The function that computes the new value from the key and the stored
+   *     value. It is called while the key is locked. If it returns null, the key is removed.
+   * @return The new value, or null if the key is not contained in this dictionary or was removed.
+   */
+  @Override
+  public NSObject computeIfPresent(
+      String key,
+      BiFunction<? super String, ? super NSObject, ? extends NSObject> remappingFunction) {
+    Objects.requireNonNull(remappingFunction);
+    this.checkMutable();
+    if (key == null) return null;
+    return this.update(
+        key, current -> current != null ? remappingFunction.apply(key, current) : null)[1];
+  }
+
+  /**
+   * Atomically computes a new value for a key.
+   *
+   * @param key The key.
+   * @param remappingFunction The function that computes the new value from the key and the stored
+   *     value, or null if no value is stored. It is called while the key is locked. If it returns
+   *     null, the key is removed.
+   * @return The new value, or null if the key was removed.
+   */
+  @Override
+  public NSObject compute(
+      String key,
+      BiFunction<? super String, ? super NSObject, ? extends NSObject> remappingFunction) {
+    Objects.requireNonNull(remappingFunction);
+    this.checkMutable();
+    if (key == null) return null;
+    return this.update(key, current -> remappingFunction.apply(key, current))[1];
+  }
+
+  /**
+   * Atomically puts a value into this dictionary or combines it with the stored value.
+   *
+   * @param key The key.
+   * @param value The value to put into the dictionary if no value is stored for the key.
+   * @param remappingFunction The function that combines the stored value with the given value. It
+   *     is called while the key is locked. If it returns null, the key is removed.
+   * @return The new value, or null if the key was removed.
+   */
+  @Override
+  public NSObject merge(
+      String key,
+      NSObject value,
+      BiFunction<? super NSObject, ? super NSObject, ? extends NSObject> remappingFunction) {
+    Objects.requireNonNull(value);
+    Objects.requireNonNull(remappingFunction);
+    this.checkMutable();
+    if (key == null) return null;
+    return this.update(
+        key, current -> current != null ? remappingFunction.apply(current, value) : value)[1];
+  }
+
+  @Override
+  public void replaceAll(
+      BiFunction<? super String, ? super NSObject, ? extends NSObject> function) {
+    Objects.requireNonNull(function);
+    this.checkMutable();
+    for (String key : this.entries.keySet()) {
+      this.update(
+          key,
+          current -> current != null ? Objects.requireNonNull(function.apply(key, current)) : null);
+    }
+  }
+
+  /**
+   * Atomically replaces the value stored for a key. A new key is appended to the insertion order,
+   * while a key that is already contained in this dictionary keeps its position.
+   *
+   * @param key The key.
+   * @param function The function that computes the new value from the stored value, or null if no
+   *     value is stored. It returns null to remove the key.
+   * @return The stored value and the new value.
+   */
+  private NSObject[] update(String key, UnaryOperator<NSObject> function) {
+    NSObject[] values = new NSObject[2];
+    this.entries.compute(
+        key,
+        (k, node) -> {
+          NSObject previous = node != null ? node.value : null;
+          NSObject value = function.apply(previous);
+          values[0] = previous;
+          values[1] = value;
+          if (value == previous) {
+            return node;
+          } else if (value == null) {
+            return null;
+          } else if (node == null) {
+            return new Node(this.nextPosition.getAndIncrement(), value);
+          }
+          node.value = value;
+          return node;
+        });
+    if (values[0] != values[1]) {
+      this.version.incrementAndGet();
+    }
+    return values;
+  }
+
+  @Override
+  void assignIDs(BinaryPropertyListWriter out) {
+    out.writtenObject(this).assignIDs(out);
+  }
+
+  @Override
+  void toBinary(BinaryPropertyListWriter out) throws IOException {
+    out.writtenObject(this).toBinary(out);
+  }
+
+  @Override
+  public ConcurrentNSDictionary clone() {
+    ConcurrentNSDictionary clone = new ConcurrentNSDictionary();
+    for (Entry<String, NSObject> entry : this.contents().entrySet()) {
+      clone.put(entry.getKey(), entry.getValue().clone());
+    }
+    return clone;
+  }
+
+  /** The value stored for a key and the position of the key in the insertion order. */
+  private static final class Node {
+    final long position;
+    volatile NSObject value;
+
+    Node(long position, NSObject value) {
+      this.position = position;
+      this.value = value;
+    }
+  }
+
+  /** The entries of a dictionary in insertion order at a specific version of the dictionary. */
+  private static final class Snapshot {
+    final long version;
+    final CompactMap entries;
+
+    Snapshot(long version, CompactMap entries) {
+      this.version = version;
+      this.entries = entries;
+    }
+  }
+}
@@ -0,0 +1,269 @@
+/*
+ * plist - An open source library to parse and generate property lists
+ * Copyright (C) 2026 Daniel Dreibrodt
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.dd.plist;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+/**
+ * Writes an ASCII property list that was parsed with its source retained. Objects that have not
+ * been modified since parsing are copied verbatim from the source. Modified dictionaries and arrays
+ * are generated anew, but their unmodified entries are still copied from the source. All other
+ * modified or added objects are generated in the Apple ASCII format.
+ *
+ * <p>An object is considered modified if it is a string whose content has changed, or if it is a
+ * dictionary or array whose entries have been added, removed, replaced or modified. Changes to the
+ * byte array returned by {@link NSData#bytes()} are not detected.
+ *
+ * @author Daniel Dreibrodt
+ * @see ASCIIPropertyListParser#parse(CharSequence, boolean)
+ */
+final class IncrementalASCIIWriter {
+
+  private final TextOutput ascii;
+
+  /**
+   * Caches whether dictionaries and arrays are unmodified, as each subtree would be checked again
+   * at each level. Other objects are cheap enough to check directly.
+   */
+  private final Map<NSObject, Boolean> unmodified = new IdentityHashMap<>();
+
+  /**
+   * Creates a new writer.
+   *
+   * @param ascii The output.
+   */
+  IncrementalASCIIWriter(TextOutput ascii) {
+    this.ascii = ascii;
+  }
+
+  /**
+   * Writes a property list. If the root object was not parsed with its source retained, the
+   * complete property list is generated anew.
+   *
+   * @param root The root object.
+   * @throws IOException If the output cannot be written.
+   */
+  void write(NSObject root) throws IOException {
+    ASCIILocationInformation loc = sourceLocation(root);
+    if (loc == null) {
+      root.toASCIIPropertyList(this.ascii, false);
+      return;
+    }
+
+    // Keep the header comment and everything else around the root object
+    String source = loc.snapshot.source;
+    this.ascii.append(source, 0, loc.getOffset());
+    this.write(root, loc, 0);
+    this.ascii.append(source, loc.getEndOffset(), source.length());
+  }
+
+  private void write(NSObject obj, ASCIILocationInformation loc, int level) throws IOException {
+    if (this.isUnmodified(obj)) {
+      this.ascii.append(loc.snapshot.source, loc.getOffset(), loc.getEndOffset());
+    } else if (obj instanceof NSDictionary) {
+      this.writeDictionary((NSDictionary) obj, loc, level);
+    } else if (obj instanceof NSArray) {
+      this.writeArray((NSArray) obj, loc, level);
+    } else {
+      obj.toASCII(this.ascii, 0);
+    }
+  }
+
+  private void writeDictionary(NSDictionary dict, ASCIILocationInformation loc, int level)
+      throws IOException {
+    ASCIISourceSnapshot snapshot = loc.snapshot;
+    Map<String, Integer> entries = new HashMap<>();
+    for (int i = 0; i < snapshot.count(); i++) {
+      entries.put(snapshot.key(i), i);
+    }
+
+    this.ascii.append(ASCIIPropertyListParser.DICTIONARY_BEGIN_TOKEN);
+    boolean lastEntryGenerated = false;
+    for (Map.Entry<String, NSObject> entry : dict.entrySet()) {
+      Integer i = entries.get(entry.getKey());
+      if (i != null && snapshot.value(i) == entry.getValue()) {
+        this.writeEntry(loc, i, level);
+        lastEntryGenerated = false;
+      } else {
+        this.ascii.newline();
+        NSDictionary.toASCIIEntry(
+            this.ascii, entry.getKey(), NSNull.wrap(entry.getValue()), level, false);
+        lastEntryGenerated = true;
+      }
+    }
+
+    this.writeClosingGap(loc, level, lastEntryGenerated);
+    this.ascii.append(ASCIIPropertyListParser.DICTIONARY_END_TOKEN);
+  }
+
+  private void writeArray(NSArray array, ASCIILocationInformation loc, int level)
+      throws IOException {
+    ASCIISourceSnapshot snapshot = loc.snapshot;
+    Map<NSObject, Integer> entries = new IdentityHashMap<>();
+    for (int i = snapshot.count() - 1; i >= 0; i--) {
+      entries.put(snapshot.value(i), i);
+    }
+
+    // Generated elements follow the style of the source, which may delimit the last element
+    boolean delimitGenerated = snapshot.count() > 0 && snapshot.isDelimited(snapshot.count() - 1);
+    this.ascii.append(ASCIIPropertyListParser.ARRAY_BEGIN_TOKEN);
+    boolean delimiterMissing = false, lastEntryGenerated = false;
+    for (NSObject value : array.getArray()) {
+      if (delimiterMissing) {
+        this.ascii.append(ASCIIPropertyListParser.ARRAY_ITEM_DELIMITER_TOKEN);
+      }
+
+      Integer i = value == null ? null : entries.get(value);
+      if (i != null) {
+        this.writeEntry(loc, i, level);
+        delimiterMissing = !snapshot.isDelimited(i);
+        lastEntryGenerated = false;
+      } else {
+        NSObject entry = NSNull.wrap(value);
+        this.ascii.newline();
+        if (entry instanceof NSDictionary || entry instanceof NSArray || entry instanceof NSData) {
+          entry.toASCII(this.ascii, level + 1);
+        } else {
+          this.ascii.indent(level + 1);
+          entry.toASCII(this.ascii, 0);
+        }
+
+        if (delimitGenerated) {
+          this.ascii.append(ASCIIPropertyListParser.ARRAY_ITEM_DELIMITER_TOKEN);
+        }
+        delimiterMissing = !delimitGenerated;
+        lastEntryGenerated = true;
+      }
+    }
+
+    this.writeClosingGap(loc, level, lastEntryGenerated);
+    this.ascii.append(ASCIIPropertyListParser.ARRAY_END_TOKEN);
+  }
+
+  /**
+   * Writes an unmodified entry of a dictionary or array, that is everything from the end of the
+   * previous entry in the source, including whitespace and comments, to the end of the entry.
+   */
+  private void writeEntry(ASCIILocationInformation containerLoc, int i, int level)
+      throws IOException {
+    ASCIISourceSnapshot snapshot = containerLoc.snapshot;
+    NSObject value = snapshot.value(i);
+    ASCIILocationInformation valueLoc = (ASCIILocationInformation) value.getLocationInformation();
+    int entryStart = i == 0 ? containerLoc.getOffset() + 1 : snapshot.entryEnd(i - 1);
+    this.ascii.append(snapshot.source, entryStart, valueLoc.getOffset());
+    this.write(value, valueLoc, level + 1);
+    this.ascii.append(snapshot.source, valueLoc.getEndOffset(), snapshot.entryEnd(i));
+  }
+
+  /**
+   * Writes everything from the end of the last entry in the source up to the end token of a
+   * dictionary or array. If the last written entry was generated, but the source does not end the
+   * last entry with a line break, the end token is put on a new line.
+   */
+  private void writeClosingGap(ASCIILocationInformation loc, int level, boolean lastEntryGenerated)
+      throws IOException {
+    ASCIISourceSnapshot snapshot = loc.snapshot;
+    int gapStart =
+        snapshot.count() > 0 ? snapshot.entryEnd(snapshot.count() - 1) : loc.getOffset() + 1;
+    int gapEnd = loc.getEndOffset() - 1;
+    String gap = snapshot.source.substring(gapStart, gapEnd);
+    if (lastEntryGenerated && gap.indexOf('\n') < 0 && gap.indexOf('\r') < 0) {
+      this.ascii.newline();
+      this.ascii.indent(level);
+    } else {
+      this.ascii.append(gap);
+    }
+  }
+
+  private boolean isUnmodified(NSObject obj) {
+    if (!(obj instanceof NSDictionary) && !(obj instanceof NSArray)) {
+      return this.checkUnmodified(obj);
+    }
+
+    Boolean cached = this.unmodified.get(obj);
+    if (cached == null) {
+      cached = this.checkUnmodified(obj);
+      this.unmodified.put(obj, cached);
+    }
+    return cached;
+  }
+
+  private boolean checkUnmodified(NSObject obj) {
+    ASCIILocationInformation loc = sourceLocation(obj);
+    if (loc == null) {
+      return false;
+    }
+
+    ASCIISourceSnapshot snapshot = loc.snapshot;
+    if (obj instanceof NSDictionary) {
+      NSDictionary dict = (NSDictionary) obj;
+      if (dict.count() != snapshot.count()) {
+        return false;
+      }
+
+      int i = 0;
+      for (Map.Entry<String, NSObject> entry : dict.entrySet()) {
+        if (!entry.getKey().equals(snapshot.key(i))
+            || entry.getValue() != snapshot.value(i)
+            || !this.isUnmodified(entry.getValue())) {
+          return false;
+        }
+        i++;
+      }
+      return true;
+    } else if (obj instanceof NSArray) {
+      NSObject[] array = ((NSArray) obj).getArray();
+      if (array.length != snapshot.count()) {
+        return false;
+      }
+
+      for (int i = 0; i < array.length; i++) {
+        if (array[i] != snapshot.value(i) || !this.isUnmodified(array[i])) {
+          return false;
+        }
+      }
+      return true;
+    } else if (obj instanceof NSString) {
+      return ((NSString) obj).getContent() == snapshot.content;
+    }
+    return true;
+  }
+
+  /**
+   * Gets the location of an object that was parsed with its source retained.
+   *
+   * @param obj The object.
+   * @return The location or {@code null} if the object was not parsed with its source retained.
+   */
+  private static ASCIILocationInformation sourceLocation(NSObject obj) {
+    LocationInformation loc = obj.getLocationInformation();
+    if (loc instanceof ASCIILocationInformation
+        && ((ASCIILocationInformation) loc).snapshot != null) {
+      return (ASCIILocationInformation) loc;
+    }
+    return null;
+  }
+}
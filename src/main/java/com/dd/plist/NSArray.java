@@ -24,36 +24,81 @@
 package com.dd.plist;
 
 import java.io.IOException;
-import java.util.Arrays;
-import java.util.Objects;
+import java.lang.reflect.Array;
+import java.util.*;
+import java.util.function.Predicate;
 
 /**
  * The NSArray class is a wrapper for an array of NSObject instances.
  *
+ * <p>The array grows as elements are added to it, through {@link #add(NSObject)}, {@link
+ * #insert(int, Object)} and the other methods of the {@link List} interface. Appending and removing
+ * elements at the end of the array take amortized constant time.
+ *
+ * <p>Arrays that are parsed from binary or XML property lists and only contain numbers of a single
+ * type store these numbers as primitive values. Writing, comparing and converting such an array
+ * work on the primitive values. The {@link NSNumber} objects are created when the first element is
+ * accessed or the array is modified, which converts it to an array of objects, so the returned
+ * elements are the same across accesses. They carry no location information, so the parsers keep
+ * the elements as objects when location information is requested.
+ *
  * @author Daniel Dreibrodt
  * @see <a href="https://developer.apple.com/reference/foundation/nsarray"
  *     target="_blank">Foundation NSArray documentation</a>
  */
-public class NSArray extends NSObject {
+public class NSArray extends NSObject implements List<NSObject>, RandomAccess {
 
+  /**
+   * The storage for the elements of this array, which may be larger than the number of elements, or
+   * null if they are stored in {@link #numbers}.
+   */
   private NSObject[] array;
 
+  /** The number of elements stored in {@link #array}. */
+  private int size;
+
+  /**
+   * The elements of this array if they are stored as primitive values, otherwise null. It is read
+   * before {@link #array}, which it replaces when the elements are converted to objects.
+   */
+  private volatile NumberArray numbers;
+
   /**
-   * Creates a new NSArray instance of the specified size.
+   * Whether {@link #array} and its elements are shared with the frozen array this array was cloned
+   * from. They are copied before they are exposed or modified.
+   */
+  private volatile boolean shared;
+
+  /** The hash code of a frozen array, or 0 if it has not been computed yet. */
+  private int frozenHashCode;
+
+  /** The number of structural modifications, used to detect concurrent changes. */
+  private int modCount;
+
+  /**
+   * Creates a new NSArray instance of the specified size. All elements are initially null and have
+   * to be set through {@link #setValue(int, Object)}.
    *
-   * @param length The number of elements the NSArray instance will be able to hold.
+   * @param length The number of elements of the NSArray instance.
    */
   public NSArray(int length) {
     this.array = new NSObject[length];
+    this.size = length;
   }
 
   /**
-   * Creates a new NSArray instance containing the specified elements.
+   * Creates a new NSArray instance containing the specified elements. The given array is used to
+   * store the elements until the NSArray grows.
    *
    * @param a The elements to be contained by the NSArray instance.
    */
   public NSArray(NSObject... a) {
     this.array = a;
+    this.size = a.length;
+  }
+
+  private NSArray(NumberArray numbers) {
+    this.numbers = numbers;
   }
 
   /**
@@ -61,24 +106,78 @@ public class NSArray extends NSObject {
    *
    * @param i The index of the object.
    * @return The object at the given index.
+   * @throws ArrayIndexOutOfBoundsException If the index is out of bounds.
    */
   public NSObject objectAtIndex(int i) {
-    return this.array[i];
+    this.unpackNumbers();
+    this.unshare();
+    return this.storedObjectAtIndex(i);
+  }
+
+  /**
+   * Returns the object stored at the given index without copying the elements that are shared with
+   * the frozen array this array was cloned from. The object must not be modified.
+   *
+   * @param i The index of the object.
+   * @return The object at the given index.
+   * @throws ArrayIndexOutOfBoundsException If the index is out of bounds.
+   */
+  NSObject storedObjectAtIndex(int i) {
+    NumberArray numbers = this.numbers;
+    if (numbers == null) {
+      if (i >= this.size) {
+        throw new ArrayIndexOutOfBoundsException(i);
+      }
+      return this.storage()[i];
+    }
+
+    NSNumber number = numbers.get(i);
+    if (this.isFrozen()) {
+      number.freeze();
+    }
+    return number;
   }
 
   /**
-   * Removes the i-th element from the array. The array will be resized.
+   * Removes the i-th element from the array. The following elements are moved to the front.
    *
    * @param i The index of the object
+   * @return The removed object.
+   * @throws ArrayIndexOutOfBoundsException If the index is out of bounds.
    */
-  public void remove(int i) {
-    if ((i >= this.array.length) || (i < 0))
+  @Override
+  public NSObject remove(int i) {
+    this.prepareModification();
+    if ((i >= this.size) || (i < 0))
       throw new ArrayIndexOutOfBoundsException(
-          "invalid index:" + i + ";the array length is " + this.array.length);
-    NSObject[] newArray = new NSObject[this.array.length - 1];
-    System.arraycopy(this.array, 0, newArray, 0, i);
-    System.arraycopy(this.array, i + 1, newArray, i, this.array.length - i - 1);
-    this.array = newArray;
+          "invalid index:" + i + ";the array length is " + this.size);
+    NSObject removed = this.array[i];
+    this.removeRange(i, i + 1);
+    return removed;
+  }
+
+  /**
+   * Removes the elements from <code>fromIndex</code>, inclusive, to <code>toIndex</code>,
+   * exclusive. The following elements are moved to the front.
+   *
+   * @param fromIndex The index of the first element to remove.
+   * @param toIndex The index after the last element to remove.
+   * @throws IndexOutOfBoundsException If <code>fromIndex</code> is negative, <code>toIndex</code>
+   *     is larger than the number of elements or <code>fromIndex</code> is larger than <code>
+   *     toIndex</code>.
+   */
+  public void removeRange(int fromIndex, int toIndex) {
+    this.prepareModification();
+    if (fromIndex < 0 || toIndex > this.size || fromIndex > toIndex) {
+      throw new IndexOutOfBoundsException(
+          "invalid range:" + fromIndex + "-" + toIndex + ";the array length is " + this.size);
+    }
+
+    System.arraycopy(this.array, toIndex, this.array, fromIndex, this.size - toIndex);
+    int newSize = this.size - (toIndex - fromIndex);
+    Arrays.fill(this.array, newSize, this.size, null);
+    this.size = newSize;
+    this.modCount++;
   }
 
   /**
@@ -87,28 +186,406 @@ public class NSArray extends NSObject {
    *
    * @param key The index where to store the object.
    * @param value The object.
+   * @throws ArrayIndexOutOfBoundsException If the index is out of bounds.
    */
   public void setValue(int key, Object value) {
-    this.array[key] = NSObject.fromJavaObject(value);
+    this.set(key, NSObject.fromJavaObject(value));
+  }
+
+  /**
+   * Inserts an object at the specified index. The element at that index and the following elements
+   * are moved to the back.
+   *
+   * @param index The index where to insert the object. If it is equal to the number of elements,
+   *     the object is appended to the array.
+   * @param value The object. Supported object types are numbers, byte-arrays, dates, strings and
+   *     arrays or sets of those.
+   * @throws IndexOutOfBoundsException If the index is out of bounds.
+   */
+  public void insert(int index, Object value) {
+    this.add(index, NSObject.fromJavaObject(value));
   }
 
   /**
    * Returns the array of NSObjects represented by this NSArray. Any changes to the values of this
-   * array will also affect the NSArray.
+   * array will also affect the NSArray, until elements are added to or removed from the NSArray. If
+   * this NSArray is frozen, a copy of the array is returned instead.
    *
    * @return The actual array represented by this NSArray.
    */
   public NSObject[] getArray() {
+    this.unpackNumbers();
+    if (this.isFrozen()) {
+      NSObject[] copy = new NSObject[this.count()];
+      for (int i = 0; i < copy.length; i++) {
+        copy[i] = this.storedObjectAtIndex(i);
+      }
+      return copy;
+    }
+
+    this.unshare();
+    this.trimToSize();
+    return this.array;
+  }
+
+  /**
+   * Makes sure that the array can hold the specified number of elements without growing.
+   *
+   * @param minCapacity The number of elements.
+   */
+  public void ensureCapacity(int minCapacity) {
+    this.prepareModification();
+    if (minCapacity > this.array.length) {
+      int capacity = this.array.length + (this.array.length >> 1) + 1;
+      this.array = Arrays.copyOf(this.array, Math.max(capacity, minCapacity));
+    }
+  }
+
+  /** Shrinks the storage of this array to the current number of elements. */
+  public void trimToSize() {
+    if (this.array != null && this.size < this.array.length && !this.isFrozen()) {
+      this.array = Arrays.copyOf(this.array, this.size);
+    }
+  }
+
+  /**
+   * Stores the elements of this array as primitive values, if they are all numbers of the same
+   * type. The location information of the numbers is discarded.
+   */
+  void packNumbers() {
+    if (this.array != null) {
+      NumberArray packed = NumberArray.of(this.getArray());
+      if (packed != null) {
+        this.numbers = packed;
+        this.array = null;
+        this.size = 0;
+      }
+    }
+  }
+
+  /** Converts the elements of this array to objects if they are stored as primitive values. */
+  private void unpackNumbers() {
+    if (this.numbers != null) {
+      this.unpackNumbersLocked();
+    }
+  }
+
+  /**
+   * Creates the objects for the primitive values. Threads that only read this array, which may be
+   * frozen, may call this concurrently, so the objects are created and published while holding the
+   * lock of this array.
+   */
+  private synchronized void unpackNumbersLocked() {
+    NumberArray numbers = this.numbers;
+    if (numbers != null) {
+      NSObject[] elements = numbers.toArray();
+      if (this.isFrozen()) {
+        for (NSObject element : elements) {
+          element.freeze();
+        }
+      }
+      this.array = elements;
+      this.size = elements.length;
+      this.numbers = null;
+    }
+  }
+
+  /**
+   * Stops sharing the elements with the frozen array this array was cloned from. The elements are
+   * replaced by their clones, which share the contents of frozen elements in turn, so that only the
+   * path to an accessed element is copied.
+   */
+  private void unshare() {
+    if (this.shared && !this.isFrozen()) {
+      this.unshareElements();
+    }
+  }
+
+  /**
+   * Replaces the shared elements by their clones. Threads that only read a clone may call this
+   * concurrently, so the clones are created and published while holding the lock of this array.
+   */
+  private synchronized void unshareElements() {
+    if (this.shared) {
+      NSObject[] elements = new NSObject[this.size];
+      for (int i = 0; i < this.size; i++) {
+        elements[i] = this.array[i] != null ? this.array[i].clone() : null;
+      }
+      this.array = elements;
+      this.shared = false;
+    }
+  }
+
+  /**
+   * Gets the storage for the elements of this array. While the elements are shared, another thread
+   * may be replacing the storage in {@link #unshare()}, so it is read while holding the lock.
+   *
+   * @return The storage.
+   */
+  private NSObject[] storage() {
+    if (this.shared && !this.isFrozen()) {
+      synchronized (this) {
+        return this.array;
+      }
+    }
     return this.array;
   }
 
+  /** Prepares this array for a modification of its elements. */
+  private void prepareModification() {
+    this.checkMutable();
+    this.unpackNumbers();
+    this.unshare();
+  }
+
+  @Override
+  public NSArray freeze() {
+    super.freeze();
+    return this;
+  }
+
+  @Override
+  void freezeContents() {
+    if (this.array != null) {
+      if (this.size < this.array.length) {
+        this.array = Arrays.copyOf(this.array, this.size);
+      }
+      for (NSObject o : this.array) {
+        if (o != null) {
+          o.freeze();
+        }
+      }
+    }
+  }
+
   /**
    * Returns the size of the array.
    *
-   * @return The number of elements that this array can store.
+   * @return The number of elements in this array.
    */
   public int count() {
-    return this.array.length;
+    NumberArray numbers = this.numbers;
+    return numbers != null ? numbers.length() : this.size;
+  }
+
+  @Override
+  public int size() {
+    return this.count();
+  }
+
+  @Override
+  public boolean isEmpty() {
+    return this.count() == 0;
+  }
+
+  @Override
+  public NSObject get(int index) {
+    return this.objectAtIndex(index);
+  }
+
+  @Override
+  public NSObject set(int index, NSObject element) {
+    this.prepareModification();
+    NSObject previous = this.storedObjectAtIndex(index);
+    this.array[index] = element;
+    return previous;
+  }
+
+  /**
+   * Appends an object to the end of this array.
+   *
+   * @param element The object.
+   * @return <code>true</code>
+   */
+  @Override
+  public boolean add(NSObject element) {
+    this.ensureCapacity(this.size + 1);
+    this.array[this.size++] = element;
+    this.modCount++;
+    return true;
+  }
+
+  /**
+   * Inserts an object at the specified index. The element at that index and the following elements
+   * are moved to the back.
+   *
+   * @param index The index where to insert the object.
+   * @param element The object.
+   * @throws IndexOutOfBoundsException If the index is out of bounds.
+   */
+  @Override
+  public void add(int index, NSObject element) {
+    this.addAll(index, Collections.singletonList(element));
+  }
+
+  @Override
+  public boolean addAll(Collection<? extends NSObject> c) {
+    return this.addAll(this.count(), c);
+  }
+
+  @Override
+  public boolean addAll(int index, Collection<? extends NSObject> c) {
+    this.prepareModification();
+    if (index < 0 || index > this.size) {
+      throw new IndexOutOfBoundsException(
+          "invalid index:" + index + ";the array length is " + this.size);
+    }
+
+    Object[] added = c.toArray();
+    this.ensureCapacity(this.size + added.length);
+    System.arraycopy(this.array, index, this.array, index + added.length, this.size - index);
+    System.arraycopy(added, 0, this.array, index, added.length);
+    this.size += added.length;
+    this.modCount++;
+    return added.length != 0;
+  }
+
+  @Override
+  public boolean remove(Object o) {
+    int index = this.indexOf(o);
+    if (index < 0) {
+      return false;
+    }
+    this.remove(index);
+    return true;
+  }
+
+  @Override
+  public boolean removeAll(Collection<?> c) {
+    Objects.requireNonNull(c);
+    return this.removeIf(c::contains);
+  }
+
+  @Override
+  public boolean retainAll(Collection<?> c) {
+    Objects.requireNonNull(c);
+    return this.removeIf(o -> !c.contains(o));
+  }
+
+  @Override
+  public boolean removeIf(Predicate<? super NSObject> filter) {
+    Objects.requireNonNull(filter);
+    this.prepareModification();
+    int kept = 0;
+    for (int i = 0; i < this.size; i++) {
+      NSObject element = this.array[i];
+      if (!filter.test(element)) {
+        this.array[kept++] = element;
+      }
+    }
+    if (kept == this.size) {
+      return false;
+    }
+
+    Arrays.fill(this.array, kept, this.size, null);
+    this.size = kept;
+    this.modCount++;
+    return true;
+  }
+
+  @Override
+  public void clear() {
+    this.checkMutable();
+    if (this.numbers != null || this.shared) {
+      // The storage may be shared with a frozen array, so it is replaced instead of cleared
+      this.numbers = null;
+      this.array = new NSObject[0];
+      this.shared = false;
+    } else {
+      Arrays.fill(this.array, 0, this.size, null);
+    }
+    this.size = 0;
+    this.modCount++;
+  }
+
+  @Override
+  public boolean contains(Object o) {
+    return this.indexOf(o) >= 0;
+  }
+
+  @Override
+  public boolean containsAll(Collection<?> c) {
+    for (Object o : c) {
+      if (!this.contains(o)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  @Override
+  public int indexOf(Object o) {
+    for (int i = 0; i < this.count(); i++) {
+      if (Objects.equals(o, this.storedObjectAtIndex(i))) {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  @Override
+  public int lastIndexOf(Object o) {
+    for (int i = this.count() - 1; i >= 0; i--) {
+      if (Objects.equals(o, this.storedObjectAtIndex(i))) {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  @Override
+  public Object[] toArray() {
+    return this.toArray(new Object[this.count()]);
+  }
+
+  @Override
+  @SuppressWarnings("unchecked")
+  public <T> T[] toArray(T[] a) {
+    int count = this.count();
+    if (a.length < count) {
+      a = (T[]) Array.newInstance(a.getClass().getComponentType(), count);
+    }
+
+    this.unpackNumbers();
+    this.unshare();
+    System.arraycopy(this.array, 0, a, 0, count);
+
+    if (a.length > count) {
+      a[count] = null;
+    }
+    return a;
+  }
+
+  @Override
+  public Iterator<NSObject> iterator() {
+    return new ListItr(0);
+  }
+
+  @Override
+  public ListIterator<NSObject> listIterator() {
+    return new ListItr(0);
+  }
+
+  @Override
+  public ListIterator<NSObject> listIterator(int index) {
+    if (index < 0 || index > this.count()) {
+      throw new IndexOutOfBoundsException(
+          "invalid index:" + index + ";the array length is " + this.count());
+    }
+    return new ListItr(index);
+  }
+
+  /**
+   * Returns a view of a range of this array. Changes to the view are reflected in this array. The
+   * view must not be used after elements have been added to or removed from this array directly.
+   *
+   * @param fromIndex The index of the first element of the view.
+   * @param toIndex The index after the last element of the view.
+   * @return The view of the range.
+   */
+  @Override
+  public List<NSObject> subList(int fromIndex, int toIndex) {
+    return new ListView().subList(fromIndex, toIndex);
   }
 
   /**
@@ -121,7 +598,8 @@ public class NSArray extends NSObject {
    */
   public boolean containsObject(Object obj) {
     NSObject nso = NSObject.fromJavaObject(obj);
-    for (NSObject elem : this.array) {
+    for (int i = 0; i < this.count(); i++) {
+      NSObject elem = this.storedObjectAtIndex(i);
       if (elem == null) {
         if (obj == null) return true;
         continue;
@@ -144,8 +622,8 @@ public class NSArray extends NSObject {
    */
   public int indexOfObject(Object obj) {
     NSObject nso = NSObject.fromJavaObject(obj);
-    for (int i = 0; i < this.array.length; i++) {
-      if (this.array[i].equals(nso)) {
+    for (int i = 0; i < this.count(); i++) {
+      if (this.storedObjectAtIndex(i).equals(nso)) {
         return i;
       }
     }
@@ -162,7 +640,9 @@ public class NSArray extends NSObject {
    */
   public int indexOfIdenticalObject(Object obj) {
     NSObject nso = NSObject.fromJavaObject(obj);
-    for (int i = 0; i < this.array.length; i++) {
+    this.unpackNumbers();
+    this.unshare();
+    for (int i = 0; this.array != null && i < this.size; i++) {
       if (this.array[i] == nso) {
         return i;
       }
@@ -177,7 +657,7 @@ public class NSArray extends NSObject {
    * @return The value of the highest index in the array.
    */
   public NSObject lastObject() {
-    return this.array[this.array.length - 1];
+    return this.objectAtIndex(this.count() - 1);
   }
 
   /**
@@ -190,35 +670,76 @@ public class NSArray extends NSObject {
   public NSObject[] objectsAtIndexes(int... indexes) {
     NSObject[] result = new NSObject[indexes.length];
     Arrays.sort(indexes);
-    for (int i = 0; i < indexes.length; i++) result[i] = this.array[indexes[i]];
+    for (int i = 0; i < indexes.length; i++) result[i] = this.objectAtIndex(indexes[i]);
     return result;
   }
 
   @Override
   public boolean equals(Object obj) {
+    if (obj == this) return true;
     if (obj == null) return false;
     if (obj.getClass().equals(NSArray.class)) {
-      return Arrays.equals(((NSArray) obj).getArray(), this.array);
+      NSArray other = (NSArray) obj;
+      if (this.isFrozen() && other.isFrozen() && this.hashCode() != other.hashCode()) {
+        return false;
+      }
+      return this.contentEquals(other);
     } else {
       NSObject nso = NSObject.fromJavaObject(obj);
       if (nso.getClass().equals(NSArray.class)) {
-        return Arrays.equals(((NSArray) nso).getArray(), this.array);
+        return this.contentEquals((NSArray) nso);
       }
     }
     return false;
   }
 
+  private boolean contentEquals(NSArray other) {
+    if (this.count() != other.count()) {
+      return false;
+    }
+
+    for (int i = 0; i < this.count(); i++) {
+      if (!Objects.equals(this.storedObjectAtIndex(i), other.storedObjectAtIndex(i))) {
+        return false;
+      }
+    }
+    return true;
+  }
+
   @Override
   public int hashCode() {
-    int hash = 7;
-    hash = 89 * hash + Arrays.deepHashCode(this.array);
+    int hash = this.frozenHashCode;
+    if (hash == 0) {
+      // Computed as specified by List.hashCode()
+      hash = 1;
+      for (int i = 0; i < this.count(); i++) {
+        hash = 31 * hash + Objects.hashCode(this.storedObjectAtIndex(i));
+      }
+      if (this.isFrozen()) {
+        this.frozenHashCode = hash;
+      }
+    }
     return hash;
   }
 
   @Override
   public NSArray clone() {
-    NSObject[] clonedArray = new NSObject[this.array.length];
-    for (int i = 0; i < this.array.length; i++) {
+    NumberArray numbers = this.numbers;
+    if (numbers != null) {
+      // The primitive values are never modified, so they can be shared
+      return new NSArray(numbers);
+    }
+
+    if (this.isFrozen() || this.shared) {
+      // The elements are frozen, so they are only copied when they are accessed
+      NSArray clone = new NSArray(this.storage());
+      clone.size = this.size;
+      clone.shared = true;
+      return clone;
+    }
+
+    NSObject[] clonedArray = new NSObject[this.size];
+    for (int i = 0; i < this.size; i++) {
       clonedArray[i] = this.array[i] != null ? this.array[i].clone() : null;
     }
 
@@ -227,9 +748,10 @@ public class NSArray extends NSObject {
 
   @Override
   public Object toJavaObject() {
-    Object[] clonedArray = new Object[this.array.length];
-    for (int i = 0; i < this.array.length; i++) {
-      clonedArray[i] = this.array[i] == null ? null : this.array[i].toJavaObject();
+    Object[] clonedArray = new Object[this.count()];
+    for (int i = 0; i < clonedArray.length; i++) {
+      NSObject element = this.storedObjectAtIndex(i);
+      clonedArray[i] = element == null ? null : element.toJavaObject();
     }
 
     return clonedArray;
@@ -246,8 +768,10 @@ public class NSArray extends NSObject {
         return Integer.compare(this.count(), other.count());
       }
 
-      for (int i = 0; i < this.array.length; i++) {
-        int itemDiff = NSNull.wrap(this.array[i]).compareTo(NSNull.wrap((other.array[i])));
+      for (int i = 0; i < this.count(); i++) {
+        int itemDiff =
+            NSNull.wrap(this.storedObjectAtIndex(i))
+                .compareTo(NSNull.wrap(other.storedObjectAtIndex(i)));
         if (itemDiff != 0) {
           return itemDiff;
         }
@@ -255,36 +779,36 @@ public class NSArray extends NSObject {
 
       return 0;
     } else {
-      return this.getClass().getName().compareTo(o.getClass().getName());
+      return compareTypes(this, o);
     }
   }
 
   @Override
-  void toXML(StringBuilder xml, int level) {
-    this.indent(xml, level);
+  void toXML(TextOutput xml, int level) throws IOException {
+    xml.indent(level);
     xml.append("<array>");
-    xml.append(NSObject.NEWLINE);
-    for (NSObject o : this.array) {
-      NSNull.wrap(o).toXML(xml, level + 1);
-      xml.append(NSObject.NEWLINE);
+    xml.newline();
+    for (int i = 0; i < this.count(); i++) {
+      NSNull.wrap(this.storedObjectAtIndex(i)).toXML(xml, level + 1);
+      xml.newline();
     }
-    this.indent(xml, level);
+    xml.indent(level);
     xml.append("</array>");
   }
 
   @Override
   void assignIDs(BinaryPropertyListWriter out) {
     super.assignIDs(out);
-    for (NSObject obj : this.array) {
-      obj.assignIDs(out);
+    for (int i = 0; i < this.count(); i++) {
+      this.storedObjectAtIndex(i).assignIDs(out);
     }
   }
 
   @Override
   void toBinary(BinaryPropertyListWriter out) throws IOException {
-    out.writeIntHeader(0xA, this.array.length);
-    for (NSObject obj : this.array) {
-      out.writeID(out.getID(obj));
+    out.writeIntHeader(0xA, this.count());
+    for (int i = 0; i < this.count(); i++) {
+      out.writeID(out.getID(this.storedObjectAtIndex(i)));
     }
   }
 
@@ -297,10 +821,7 @@ public class NSArray extends NSObject {
    * @return ASCII representation of this object.
    */
   public String toASCIIPropertyList() {
-    StringBuilder ascii = new StringBuilder();
-    this.toASCII(ascii, 0);
-    ascii.append(NEWLINE);
-    return ascii.toString();
+    return this.toASCIIPropertyList(false);
   }
 
   /**
@@ -312,35 +833,27 @@ public class NSArray extends NSObject {
    * @return GnuStep ASCII representation of this object.
    */
   public String toGnuStepASCIIPropertyList() {
-    StringBuilder ascii = new StringBuilder();
-    this.toASCIIGnuStep(ascii, 0);
-    ascii.append(NEWLINE);
-    return ascii.toString();
+    return this.toASCIIPropertyList(true);
   }
 
   @Override
-  protected void toASCII(StringBuilder ascii, int level) {
+  protected void toASCII(TextOutput ascii, int level) throws IOException {
     this.toASCII(ascii, level, false);
   }
 
   @Override
-  protected void toASCIIGnuStep(StringBuilder ascii, int level) {
+  protected void toASCIIGnuStep(TextOutput ascii, int level) throws IOException {
     this.toASCII(ascii, level, true);
   }
 
-  private void toASCII(StringBuilder ascii, int level, boolean gnustep) {
-    this.indent(ascii, level);
+  private void toASCII(TextOutput ascii, int level, boolean gnustep) throws IOException {
+    ascii.indent(level);
     ascii.append(ASCIIPropertyListParser.ARRAY_BEGIN_TOKEN);
-    int indexOfLastNewLine = ascii.lastIndexOf(NEWLINE);
-    for (int i = 0; i < this.array.length; i++) {
-      NSObject entry = NSNull.wrap(this.array[i]);
-      Class<?> objClass = entry.getClass();
-      if ((objClass.equals(NSDictionary.class)
-              || objClass.equals(NSArray.class)
-              || objClass.equals(NSData.class))
-          && indexOfLastNewLine != ascii.length()) {
-        ascii.append(NEWLINE);
-        indexOfLastNewLine = ascii.length();
+    for (int i = 0; i < this.count(); i++) {
+      NSObject entry = NSNull.wrap(this.storedObjectAtIndex(i));
+      if ((entry instanceof NSDictionary || entry instanceof NSArray || entry instanceof NSData)
+          && ascii.column() != 0) {
+        ascii.newline();
         if (gnustep) {
           entry.toASCIIGnuStep(ascii, level + 1);
         } else {
@@ -358,14 +871,135 @@ public class NSArray extends NSObject {
         }
       }
 
-      if (i != this.array.length - 1)
-        ascii.append(ASCIIPropertyListParser.ARRAY_ITEM_DELIMITER_TOKEN);
+      if (i != this.count() - 1) ascii.append(ASCIIPropertyListParser.ARRAY_ITEM_DELIMITER_TOKEN);
 
-      if (ascii.length() - indexOfLastNewLine > ASCII_LINE_LENGTH) {
-        ascii.append(NEWLINE);
-        indexOfLastNewLine = ascii.length();
+      if (ascii.column() > ASCII_LINE_LENGTH) {
+        ascii.newline();
       }
     }
     ascii.append(ASCIIPropertyListParser.ARRAY_END_TOKEN);
   }
+
+  /** Iterates over the elements of an array. */
+  private final class ListItr implements ListIterator<NSObject> {
+    private int cursor;
+    private int last = -1;
+    private int expectedModCount = NSArray.this.modCount;
+
+    ListItr(int index) {
+      this.cursor = index;
+    }
+
+    @Override
+    public boolean hasNext() {
+      return this.cursor < NSArray.this.count();
+    }
+
+    @Override
+    public NSObject next() {
+      this.checkForComodification();
+      if (this.cursor >= NSArray.this.count()) {
+        throw new NoSuchElementException();
+      }
+      this.last = this.cursor++;
+      return NSArray.this.objectAtIndex(this.last);
+    }
+
+    @Override
+    public boolean hasPrevious() {
+      return this.cursor > 0;
+    }
+
+    @Override
+    public NSObject previous() {
+      this.checkForComodification();
+      if (this.cursor <= 0) {
+        throw new NoSuchElementException();
+      }
+      this.last = --this.cursor;
+      return NSArray.this.objectAtIndex(this.last);
+    }
+
+    @Override
+    public int nextIndex() {
+      return this.cursor;
+    }
+
+    @Override
+    public int previousIndex() {
+      return this.cursor - 1;
+    }
+
+    @Override
+    public void remove() {
+      if (this.last < 0) {
+        throw new IllegalStateException();
+      }
+      this.checkForComodification();
+      NSArray.this.remove(this.last);
+      this.cursor = this.last;
+      this.last = -1;
+      this.expectedModCount = NSArray.this.modCount;
+    }
+
+    @Override
+    public void set(NSObject element) {
+      if (this.last < 0) {
+        throw new IllegalStateException();
+      }
+      this.checkForComodification();
+      NSArray.this.set(this.last, element);
+    }
+
+    @Override
+    public void add(NSObject element) {
+      this.checkForComodification();
+      NSArray.this.add(this.cursor++, element);
+      this.last = -1;
+      this.expectedModCount = NSArray.this.modCount;
+    }
+
+    private void checkForComodification() {
+      if (NSArray.this.modCount != this.expectedModCount) {
+        throw new ConcurrentModificationException();
+      }
+    }
+  }
+
+  /** A list view of an array, which provides the implementation of sub lists. */
+  private final class ListView extends AbstractList<NSObject> implements RandomAccess {
+    @Override
+    public NSObject get(int index) {
+      return NSArray.this.objectAtIndex(index);
+    }
+
+    @Override
+    public NSObject set(int index, NSObject element) {
+      return NSArray.this.set(index, element);
+    }
+
+    @Override
+    public void add(int index, NSObject element) {
+      NSArray.this.add(index, element);
+      this.modCount++;
+    }
+
+    @Override
+    public NSObject remove(int index) {
+      NSObject removed = NSArray.this.remove(index);
+      this.modCount++;
+      return removed;
+    }
+
+    @Override
+    protected void removeRange(int fromIndex, int toIndex) {
+      NSArray.this.removeRange(fromIndex, toIndex);
+      this.modCount++;
+    }
+
+    @Override
+    public int size() {
+      return NSArray.this.count();
+    }
+  }
 }
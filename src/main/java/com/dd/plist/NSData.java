@@ -39,6 +39,24 @@ import java.util.Objects;
  */
 public class NSData extends NSObject {
 
+  /** The number of Base64 characters per line in XML property lists. */
+  private static final int BASE64_LINE_LENGTH = 76;
+
+  /** The size of the buffer in which hex digits are collected for ASCII property lists. */
+  private static final int HEX_BUFFER_SIZE = 128;
+
+  private static final char[] BASE64_ALPHABET =
+      "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/".toCharArray();
+
+  private static final byte[] BASE64_VALUES = new byte[128];
+
+  static {
+    Arrays.fill(BASE64_VALUES, (byte) -1);
+    for (int i = 0; i < BASE64_ALPHABET.length; i++) {
+      BASE64_VALUES[BASE64_ALPHABET[i]] = (byte) i;
+    }
+  }
+
   private final byte[] bytes;
 
   /**
@@ -57,14 +75,7 @@ public class NSData extends NSObject {
    * @throws IOException When the given string is not a proper Base64 formatted string.
    */
   public NSData(String base64) throws IOException {
-    // Remove all white spaces from the string so that it is parsed completely
-    // and not just until the first white space occurs.
-    String data = base64.replaceAll("\\s+", "");
-    try {
-      this.bytes = java.util.Base64.getDecoder().decode(data);
-    } catch (IllegalArgumentException ex) {
-      throw new IOException("The given string is not properly Base64 encoded.", ex);
-    }
+    this.bytes = decodeBase64(base64, 0, base64.length());
   }
 
   /**
@@ -82,12 +93,13 @@ public class NSData extends NSObject {
   }
 
   /**
-   * Returns the bytes contained in this instance.
+   * Returns the bytes contained in this instance. If this instance is frozen, a copy of the bytes
+   * is returned.
    *
    * @return The data as bytes
    */
   public byte[] bytes() {
-    return this.bytes;
+    return this.isFrozen() ? this.bytes.clone() : this.bytes;
   }
 
   /**
@@ -173,22 +185,26 @@ public class NSData extends NSObject {
 
       return 0;
     } else {
-      return this.getClass().getName().compareTo(o.getClass().getName());
+      return compareTypes(this, o);
     }
   }
 
   @Override
-  void toXML(StringBuilder xml, int level) {
-    this.indent(xml, level);
+  void toXML(TextOutput xml, int level) throws IOException {
+    xml.indent(level);
     xml.append("<data>");
-    xml.append(NSObject.NEWLINE);
-    String base64 = this.getBase64EncodedData();
-    for (String line : base64.split("\n")) {
-      this.indent(xml, level + 1);
-      xml.append(line);
-      xml.append(NSObject.NEWLINE);
+    xml.newline();
+    char[] line = new char[BASE64_LINE_LENGTH];
+    int bytesPerLine = BASE64_LINE_LENGTH / 4 * 3;
+    for (int offset = 0; offset < this.bytes.length; offset += bytesPerLine) {
+      int lineLength =
+          encodeBase64(
+              this.bytes, offset, Math.min(this.bytes.length, offset + bytesPerLine), line);
+      xml.indent(level + 1);
+      xml.append(line, 0, lineLength);
+      xml.newline();
     }
-    this.indent(xml, level);
+    xml.indent(level);
     xml.append("</data>");
   }
 
@@ -199,26 +215,131 @@ public class NSData extends NSObject {
   }
 
   @Override
-  protected void toASCII(StringBuilder ascii, int level) {
-    this.indent(ascii, level);
+  protected void toASCII(TextOutput ascii, int level) throws IOException {
+    ascii.indent(level);
     ascii.append(ASCIIPropertyListParser.DATA_BEGIN_TOKEN);
-    int indexOfLastNewLine = ascii.lastIndexOf(NEWLINE);
+
+    // The hex digits are collected in a buffer that is appended at each line break or when full
+    char[] buffer = new char[HEX_BUFFER_SIZE];
+    int length = 0;
+    boolean compact = ascii.isCompact();
     for (int i = 0; i < this.bytes.length; i++) {
+      if (length > HEX_BUFFER_SIZE - 3) {
+        ascii.append(buffer, 0, length);
+        length = 0;
+      }
+
       int b = this.bytes[i] & 0xFF;
-      if (b < 16) ascii.append('0');
-      ascii.append(Integer.toHexString(b));
-      if (ascii.length() - indexOfLastNewLine > ASCII_LINE_LENGTH) {
-        ascii.append(NEWLINE);
-        indexOfLastNewLine = ascii.length();
+      buffer[length++] = TextOutput.HEX_DIGITS[b >>> 4];
+      buffer[length++] = TextOutput.HEX_DIGITS[b & 0xF];
+      if (compact) {
+        continue;
+      }
+
+      if (ascii.column() + length > ASCII_LINE_LENGTH) {
+        ascii.append(buffer, 0, length);
+        length = 0;
+        ascii.newline();
       } else if ((i + 1) % 2 == 0 && i != this.bytes.length - 1) {
-        ascii.append(' ');
+        buffer[length++] = ' ';
       }
     }
+    ascii.append(buffer, 0, length);
     ascii.append(ASCIIPropertyListParser.DATA_END_TOKEN);
   }
 
   @Override
-  protected void toASCIIGnuStep(StringBuilder ascii, int level) {
+  protected void toASCIIGnuStep(TextOutput ascii, int level) throws IOException {
     this.toASCII(ascii, level);
   }
+
+  /**
+   * Decodes Base64 encoded data. Whitespace anywhere in the input is ignored. The input is scanned
+   * twice, once to determine the exact length of the decoded data and once to decode it, so that no
+   * intermediate copies of the input are created.
+   *
+   * @param base64 The character sequence containing the Base64 encoded data.
+   * @param start The index of the first character of the encoded data.
+   * @param end The index after the last character of the encoded data.
+   * @return The decoded data.
+   * @throws IOException When the given characters are not properly Base64 encoded.
+   */
+  static byte[] decodeBase64(CharSequence base64, int start, int end) throws IOException {
+    int significant = 0;
+    int padding = 0;
+    for (int i = start; i < end; i++) {
+      char c = base64.charAt(i);
+      if (!isWhitespace(c)) {
+        significant++;
+        padding = c == '=' ? padding + 1 : 0;
+      }
+    }
+
+    int length = significant - padding;
+    if (padding > 2 || (padding > 0 && significant % 4 != 0) || length % 4 == 1) {
+      throw new IOException("The given string is not properly Base64 encoded.");
+    }
+
+    byte[] decoded = new byte[length / 4 * 3 + Math.max(0, length % 4 - 1)];
+    int quantum = 0;
+    int decodedIndex = 0;
+    for (int i = start, read = 0; read < length; i++) {
+      char c = base64.charAt(i);
+      if (isWhitespace(c)) {
+        continue;
+      }
+
+      int value = c < BASE64_VALUES.length ? BASE64_VALUES[c] : -1;
+      if (value < 0) {
+        throw new IOException("The given string is not properly Base64 encoded.");
+      }
+
+      quantum = quantum << 6 | value;
+      if (++read % 4 == 0) {
+        decoded[decodedIndex++] = (byte) (quantum >> 16);
+        decoded[decodedIndex++] = (byte) (quantum >> 8);
+        decoded[decodedIndex++] = (byte) quantum;
+        quantum = 0;
+      }
+    }
+
+    if (length % 4 == 2) {
+      decoded[decodedIndex] = (byte) (quantum >> 4);
+    } else if (length % 4 == 3) {
+      decoded[decodedIndex++] = (byte) (quantum >> 10);
+      decoded[decodedIndex] = (byte) (quantum >> 2);
+    }
+
+    return decoded;
+  }
+
+  /**
+   * Base64 encodes a range of bytes, including padding.
+   *
+   * @param bytes The byte array.
+   * @param start The index of the first byte to encode.
+   * @param end The index after the last byte to encode.
+   * @param encoded The array into which the encoded characters are written. It must be large enough
+   *     to hold 4 characters for every 3 started bytes.
+   * @return The number of encoded characters.
+   */
+  private static int encodeBase64(byte[] bytes, int start, int end, char[] encoded) {
+    int encodedIndex = 0;
+    for (int i = start; i < end; i += 3) {
+      int remaining = end - i;
+      int quantum = (bytes[i] & 0xFF) << 16;
+      if (remaining > 1) quantum |= (bytes[i + 1] & 0xFF) << 8;
+      if (remaining > 2) quantum |= bytes[i + 2] & 0xFF;
+
+      encoded[encodedIndex++] = BASE64_ALPHABET[quantum >> 18 & 0x3F];
+      encoded[encodedIndex++] = BASE64_ALPHABET[quantum >> 12 & 0x3F];
+      encoded[encodedIndex++] = remaining > 1 ? BASE64_ALPHABET[quantum >> 6 & 0x3F] : '=';
+      encoded[encodedIndex++] = remaining > 2 ? BASE64_ALPHABET[quantum & 0x3F] : '=';
+    }
+    return encodedIndex;
+  }
+
+  private static boolean isWhitespace(char c) {
+    return c == ' ' || c == '\t' || c == '\n' || c == '\r' || c == '\f' || c == 0x0B;
+  }
 }
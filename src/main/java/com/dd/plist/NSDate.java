@@ -25,13 +25,12 @@ package com.dd.plist;
 
 import java.io.IOException;
 import java.text.ParseException;
-import java.text.SimpleDateFormat;
 import java.util.Date;
 import java.util.Objects;
-import java.util.TimeZone;
 
 /**
- * The NSDate class wraps a date.
+ * The NSDate class wraps a date. The date is stored as the number of seconds since January 1, 2001,
+ * 00:00:00 GMT, which is also its representation in binary property lists.
  *
  * @author Daniel Dreibrodt
  * @see <a href="https://developer.apple.com/reference/foundation/nsdate" target="_blank">Foundation
@@ -39,16 +38,19 @@ import java.util.TimeZone;
  */
 public class NSDate extends NSObject {
 
-  private final Date date;
+  /** The number of seconds since January 1, 2001, 00:00:00 GMT. */
+  private final double seconds;
 
   // EPOCH = new SimpleDateFormat("yyyy MM dd zzz").parse("2001 01 01 GMT").getTime();
   // ...but that's annoying in a static initializer because it can throw exceptions, ick.
   // So we just hardcode the correct value.
   private static final long EPOCH = 978307200000L;
 
-  private static final SimpleDateFormat sdfDefault =
-      new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss'Z'");
-  private static final SimpleDateFormat sdfGnuStep = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss Z");
+  private static final long MILLIS_PER_SECOND = 1000;
+  private static final long SECONDS_PER_DAY = 24 * 60 * 60;
+
+  /** Value returned by {@link #parseDateMillis(CharSequence)} if a string is not a valid date. */
+  static final long INVALID_DATE = Long.MIN_VALUE;
 
   /**
    * Creates new NSDate instance from its binary representation.
@@ -68,11 +70,7 @@ public class NSDate extends NSObject {
    */
   public NSDate(byte[] bytes, final int startIndex, final int endIndex) {
     // dates are 8 byte big-endian double, seconds since the epoch
-    this.date =
-        new Date(
-            EPOCH
-                + (long)
-                    (1000 * BinaryPropertyListParser.parseDouble(bytes, startIndex, endIndex)));
+    this(BinaryPropertyListParser.parseDouble(bytes, startIndex, endIndex));
   }
 
   /**
@@ -85,101 +83,258 @@ public class NSDate extends NSObject {
    *     pattern.
    */
   public NSDate(String textRepresentation) throws ParseException {
-    this.date = parseDateString(textRepresentation);
+    this(toSeconds(parseDateString(textRepresentation)));
   }
 
   /**
-   * Creates a new NSDate instance.
+   * Creates a new NSDate instance. Changes to the given date do not affect the NSDate instance.
    *
    * @param d The date.
    */
   public NSDate(Date d) {
+    this(toSeconds(requireDate(d).getTime()));
+  }
+
+  private NSDate(double seconds) {
+    this.seconds = seconds;
+  }
+
+  private static Date requireDate(Date d) {
     if (d == null) throw new IllegalArgumentException("Date cannot be null");
-    this.date = d;
+    return d;
   }
 
-  static {
-    sdfDefault.setTimeZone(TimeZone.getTimeZone("GMT"));
-    sdfGnuStep.setTimeZone(TimeZone.getTimeZone("GMT"));
+  /**
+   * Creates a new NSDate instance from a point in time, e.g. one returned by {@link
+   * #parseDateMillis(CharSequence)}.
+   *
+   * @param millis The number of milliseconds since January 1, 1970, 00:00:00 GMT.
+   * @return The date.
+   */
+  static NSDate fromMillis(long millis) {
+    return new NSDate(toSeconds(millis));
   }
 
   /**
-   * Parses a date string and creates a Java Date object from it. This function is synchronized
-   * because the underlying SimpleDateFormat instances are not thread-safe.
+   * Gets a value indicating whether this date is fully described by {@link #getTime()}, i.e.
+   * whether it has no fractions of a millisecond that only binary property lists can store.
+   *
+   * @return Whether two dates with the same time are indistinguishable from this date.
+   */
+  boolean hasMillisecondPrecision() {
+    return toSeconds(toMillis(this.seconds)) == this.seconds;
+  }
+
+  private static double toSeconds(long millis) {
+    return (millis - EPOCH) / 1000.0;
+  }
+
+  /**
+   * Converts a number of seconds since 2001 to milliseconds since 1970. Fractions of a millisecond
+   * are truncated, but the milliseconds of a date that was created from milliseconds are restored
+   * exactly, even if they cannot be represented exactly as a fraction of a second.
+   */
+  private static long toMillis(double seconds) {
+    long millis = Math.round(seconds * MILLIS_PER_SECOND);
+    double restored = millis / 1000.0;
+    if (seconds >= 0 ? restored > seconds : restored < seconds) {
+      millis -= Long.signum(millis);
+    }
+    return EPOCH + millis;
+  }
+
+  /**
+   * Parses a date string.
    *
    * @param textRepresentation The date string as found in an ASCII or XML property list
-   * @return The parsed Date
+   * @return The number of milliseconds since January 1, 1970, 00:00:00 GMT.
    * @throws ParseException If the given string cannot be parsed.
-   * @see SimpleDateFormat#parse(java.lang.String)
+   * @see #parseDateMillis(CharSequence)
    */
-  private static synchronized Date parseDateString(String textRepresentation)
-      throws ParseException {
-    try {
-      return sdfDefault.parse(textRepresentation);
-    } catch (ParseException ex) {
-      return sdfGnuStep.parse(textRepresentation);
+  private static long parseDateString(String textRepresentation) throws ParseException {
+    long millis = parseDateMillis(textRepresentation);
+    if (millis == INVALID_DATE) {
+      throw new ParseException("Unparseable date: \"" + textRepresentation + "\"", 0);
     }
+    return millis;
   }
 
   /**
-   * Generates a string representation of a Java Date object. The string is formatted according to
-   * the specification for XML property list dates.
+   * Parses a date string in the XML property list format (<code>yyyy-MM-dd'T'HH:mm:ss'Z'</code>) or
+   * in the GnuStep format (<code>yyyy-MM-dd HH:mm:ss Z</code>). The time zone of a GnuStep date is
+   * either a numeric offset like <code>+0100</code> or <code>+01:00</code>, or <code>GMT</code> or
+   * <code>UTC</code>, optionally followed by such an offset. As with a lenient {@link
+   * java.util.Calendar}, out-of-range field values roll over into the next larger field.
+   *
+   * <p>This method is thread-safe and does not throw an exception if the string is not a date.
    *
-   * @param date The date which should be represented.
-   * @return The string representation of the date.
+   * @param s The date string.
+   * @return The number of milliseconds since January 1, 1970, 00:00:00 GMT, or {@link
+   *     #INVALID_DATE} if the string is not a valid date.
    */
-  private static synchronized String makeDateString(Date date) {
-    return sdfDefault.format(date);
+  static long parseDateMillis(CharSequence s) {
+    DateScanner scanner = new DateScanner(s);
+    long year = scanner.number(8);
+    if (year < 0 || !scanner.accept('-')) return INVALID_DATE;
+    long month = scanner.number(2);
+    if (month < 0 || !scanner.accept('-')) return INVALID_DATE;
+    long day = scanner.number(2);
+    if (day < 0) return INVALID_DATE;
+
+    boolean gnuStep;
+    if (scanner.accept('T')) {
+      gnuStep = false;
+    } else if (scanner.accept(' ')) {
+      gnuStep = true;
+    } else {
+      return INVALID_DATE;
+    }
+
+    long hour = scanner.number(2);
+    if (hour < 0 || !scanner.accept(':')) return INVALID_DATE;
+    long minute = scanner.number(2);
+    if (minute < 0 || !scanner.accept(':')) return INVALID_DATE;
+    long second = scanner.number(2);
+    if (second < 0) return INVALID_DATE;
+
+    long offsetSeconds = 0;
+    if (!gnuStep) {
+      if (!scanner.accept('Z')) return INVALID_DATE;
+    } else {
+      if (!scanner.accept(' ')) return INVALID_DATE;
+      if (scanner.accept('G')) {
+        if (!scanner.accept('M') || !scanner.accept('T')) return INVALID_DATE;
+      } else if (scanner.accept('U')) {
+        if (!scanner.accept('T') || !scanner.accept('C')) return INVALID_DATE;
+      } else if (scanner.atEnd()) {
+        return INVALID_DATE;
+      }
+
+      if (!scanner.atEnd()) {
+        offsetSeconds = scanner.timeZoneOffset();
+        if (offsetSeconds == INVALID_DATE) return INVALID_DATE;
+      }
+    }
+
+    if (!scanner.atEnd()) {
+      return INVALID_DATE;
+    }
+
+    long days = daysFromCivil(year, month, 1) + day - 1;
+    long seconds = days * SECONDS_PER_DAY + hour * 3600 + minute * 60 + second - offsetSeconds;
+    return seconds * MILLIS_PER_SECOND;
   }
 
   /**
-   * Generates a string representation of a Java Date object. The string is formatted according to
-   * the specification for GnuStep ASCII property list dates.
+   * Formats a point in time as <code>yyyy-MM-dd'T'HH:mm:ss'Z'</code> or, in GnuStep format, as
+   * <code>yyyy-MM-dd HH:mm:ss +0000</code>. Fractions of a second are discarded.
    *
-   * @param date The date which should be represented.
-   * @return The string representation of the date.
+   * @param millis The number of milliseconds since January 1, 1970, 00:00:00 GMT.
+   * @param gnuStep Whether the GnuStep format should be used.
+   * @return The formatted date.
    */
-  private static synchronized String makeDateStringGnuStep(Date date) {
-    return sdfGnuStep.format(date);
+  private static String formatDate(long millis, boolean gnuStep) {
+    long seconds = Math.floorDiv(millis, MILLIS_PER_SECOND);
+    long days = Math.floorDiv(seconds, SECONDS_PER_DAY);
+    int secondOfDay = (int) Math.floorMod(seconds, SECONDS_PER_DAY);
+
+    // Civil date from days since 1970-01-01, see
+    // http://howardhinnant.github.io/date_algorithms.html
+    long z = days + 719468;
+    long era = Math.floorDiv(z, 146097);
+    long dayOfEra = z - era * 146097;
+    long yearOfEra = (dayOfEra - dayOfEra / 1460 + dayOfEra / 36524 - dayOfEra / 146096) / 365;
+    long dayOfYear = dayOfEra - (365 * yearOfEra + yearOfEra / 4 - yearOfEra / 100);
+    long shiftedMonth = (5 * dayOfYear + 2) / 153;
+    int day = (int) (dayOfYear - (153 * shiftedMonth + 2) / 5 + 1);
+    int month = (int) (shiftedMonth < 10 ? shiftedMonth + 3 : shiftedMonth - 9);
+    long year = yearOfEra + era * 400 + (month <= 2 ? 1 : 0);
+
+    StringBuilder sb = new StringBuilder(gnuStep ? 25 : 20);
+    String yearString = Long.toString(Math.abs(year));
+    if (year < 0) sb.append('-');
+    for (int i = yearString.length(); i < 4; i++) sb.append('0');
+    sb.append(yearString).append('-');
+    appendTwoDigits(sb, month).append('-');
+    appendTwoDigits(sb, day).append(gnuStep ? ' ' : 'T');
+    appendTwoDigits(sb, secondOfDay / 3600).append(':');
+    appendTwoDigits(sb, secondOfDay / 60 % 60).append(':');
+    appendTwoDigits(sb, secondOfDay % 60);
+    return sb.append(gnuStep ? " +0000" : "Z").toString();
+  }
+
+  private static StringBuilder appendTwoDigits(StringBuilder sb, int value) {
+    return sb.append((char) ('0' + value / 10)).append((char) ('0' + value % 10));
   }
 
   /**
-   * Gets the date.
+   * Calculates the number of days since 1970-01-01 in the proleptic Gregorian calendar. Months
+   * outside the range 1 to 12 roll over into the adjacent years.
    *
-   * @return The date.
+   * @param year The year.
+   * @param month The month.
+   * @param day The day of the month.
+   * @return The number of days since the epoch.
+   * @see <a href="http://howardhinnant.github.io/date_algorithms.html">chrono-Compatible Low-Level
+   *     Date Algorithms</a>
+   */
+  private static long daysFromCivil(long year, long month, long day) {
+    year += Math.floorDiv(month - 1, 12);
+    month = Math.floorMod(month - 1, 12) + 1;
+    if (month <= 2) year--;
+    long era = Math.floorDiv(year, 400);
+    long yearOfEra = year - era * 400;
+    long dayOfYear = (153 * (month > 2 ? month - 3 : month + 9) + 2) / 5 + day - 1;
+    long dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+    return era * 146097 + dayOfEra - 719468;
+  }
+
+  /**
+   * Gets the date. Changes to the returned date do not affect this NSDate.
+   *
+   * @return A new Java Date object for the date.
    */
   public Date getDate() {
-    return this.date;
+    return new Date(this.getTime());
+  }
+
+  /**
+   * Gets the date as the number of milliseconds since January 1, 1970, 00:00:00 GMT.
+   *
+   * @return The number of milliseconds.
+   */
+  public long getTime() {
+    return toMillis(this.seconds);
   }
 
   @Override
   public boolean equals(Object obj) {
     if (obj == null) return false;
-    return obj.getClass().equals(this.getClass()) && this.date.equals(((NSDate) obj).getDate());
+    return obj.getClass().equals(this.getClass()) && this.getTime() == ((NSDate) obj).getTime();
   }
 
   @Override
   public int hashCode() {
-    return this.date.hashCode();
+    return Long.hashCode(this.getTime());
   }
 
   @Override
   public NSDate clone() {
-    return new NSDate((Date) this.getDate().clone());
+    return new NSDate(this.seconds);
   }
 
   @Override
-  void toXML(StringBuilder xml, int level) {
-    this.indent(xml, level);
+  void toXML(TextOutput xml, int level) throws IOException {
+    xml.indent(level);
     xml.append("<date>");
-    xml.append(makeDateString(this.date));
+    xml.append(formatDate(this.getTime(), false));
     xml.append("</date>");
   }
 
   @Override
   void toBinary(BinaryPropertyListWriter out) throws IOException {
     out.write(0x33);
-    out.writeDouble((this.date.getTime() - EPOCH) / 1000.0);
+    out.writeDouble(this.seconds);
   }
 
   /**
@@ -190,12 +345,12 @@ public class NSDate extends NSObject {
    */
   @Override
   public String toString() {
-    return this.date.toString();
+    return this.getDate().toString();
   }
 
   @Override
   public Object toJavaObject() {
-    return this.date;
+    return this.getDate();
   }
 
   @Override
@@ -204,25 +359,93 @@ public class NSDate extends NSObject {
     if (o == this) {
       return 0;
     } else if (o instanceof NSDate) {
-      return this.getDate().compareTo(((NSDate) o).getDate());
+      return Long.compare(this.getTime(), ((NSDate) o).getTime());
     } else {
-      return this.getClass().getName().compareTo(o.getClass().getName());
+      return compareTypes(this, o);
     }
   }
 
   @Override
-  protected void toASCII(StringBuilder ascii, int level) {
-    this.indent(ascii, level);
+  protected void toASCII(TextOutput ascii, int level) throws IOException {
+    ascii.indent(level);
     ascii.append('"');
-    ascii.append(makeDateString(this.date));
+    ascii.append(formatDate(this.getTime(), false));
     ascii.append('"');
   }
 
   @Override
-  protected void toASCIIGnuStep(StringBuilder ascii, int level) {
-    this.indent(ascii, level);
+  protected void toASCIIGnuStep(TextOutput ascii, int level) throws IOException {
+    ascii.indent(level);
     ascii.append("<*D");
-    ascii.append(makeDateStringGnuStep(this.date));
+    ascii.append(formatDate(this.getTime(), true));
     ascii.append('>');
   }
+
+  /** Sequential reader for the fields of a date string. */
+  private static final class DateScanner {
+    private final CharSequence s;
+    private int index;
+
+    DateScanner(CharSequence s) {
+      this.s = s;
+    }
+
+    boolean atEnd() {
+      return this.index == this.s.length();
+    }
+
+    boolean accept(char c) {
+      if (this.index < this.s.length() && this.s.charAt(this.index) == c) {
+        this.index++;
+        return true;
+      }
+      return false;
+    }
+
+    /**
+     * Reads an unsigned decimal number.
+     *
+     * @param maxDigits The maximum number of digits.
+     * @return The number, or -1 if there is no number at the current position.
+     */
+    long number(int maxDigits) {
+      long value = 0;
+      int start = this.index;
+      while (this.index < this.s.length() && this.index - start < maxDigits) {
+        char c = this.s.charAt(this.index);
+        if (c < '0' || c > '9') break;
+        value = value * 10 + (c - '0');
+        this.index++;
+      }
+      return this.index == start ? -1 : value;
+    }
+
+    /**
+     * Reads a time zone offset of the form <code>+hhmm</code>, <code>+hh:mm</code> or <code>+h
+     * </code>.
+     *
+     * @return The offset in seconds, or {@link #INVALID_DATE} if there is no valid offset at the
+     *     current position.
+     */
+    long timeZoneOffset() {
+      int sign;
+      if (this.accept('+')) {
+        sign = 1;
+      } else if (this.accept('-')) {
+        sign = -1;
+      } else {
+        return INVALID_DATE;
+      }
+
+      int start = this.index;
+      long hours = this.number(2);
+      if (hours < 0) return INVALID_DATE;
+      long minutes = 0;
+      if (this.accept(':') || (this.index - start == 2 && !this.atEnd())) {
+        minutes = this.number(2);
+        if (minutes < 0) return INVALID_DATE;
+      }
+      return sign * (hours * 3600 + minutes * 60);
+    }
+  }
 }
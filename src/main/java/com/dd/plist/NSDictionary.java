@@ -25,13 +25,12 @@ package com.dd.plist;
 
 import java.io.IOException;
 import java.util.*;
-import java.util.stream.Collectors;
 
 /**
  * The NSDictionary class is a collection of NSObject instances that are identified by strings. It
- * represents a hash map where the keys are strings and the values NSObject instances. The
- * implementation is based on a linked hash map, so that the order of the elements in the dictionary
- * is preserved.
+ * represents a hash map where the keys are strings and the values NSObject instances. The order of
+ * the elements in the dictionary is preserved. Small dictionaries store their elements in compact
+ * arrays, larger ones in a linked hash map.
  *
  * <p>You can access the keys through the function <code>allKeys()</code>. Access to the objects
  * stored for each key is given through the function <code>objectForKey(String key)</code>.
@@ -43,23 +42,171 @@ import java.util.stream.Collectors;
  */
 public class NSDictionary extends NSObject implements Map<String, NSObject> {
 
-  private final HashMap<String, NSObject> dict;
+  private CompactMap dict;
+
+  /**
+   * Whether the storage and the values of this dictionary are shared with the frozen dictionary it
+   * was cloned from. They are copied before they are exposed or modified.
+   */
+  private volatile boolean shared;
+
+  /** The hash code of a frozen dictionary, or 0 if it has not been computed yet. */
+  private int frozenHashCode;
+
+  /** The sorted entries of a frozen dictionary, or null if they have not been sorted yet. */
+  private SortedEntries frozenSortedEntries;
 
   /** Creates a new NSDictionary instance. */
   public NSDictionary() {
-    this.dict = new LinkedHashMap<>();
+    this.dict = new CompactMap();
+  }
+
+  /**
+   * Creates a new NSDictionary instance that can hold the specified number of key-value pairs
+   * without growing.
+   *
+   * @param capacity The expected number of key-value pairs.
+   * @throws IllegalArgumentException If the capacity is negative.
+   */
+  public NSDictionary(int capacity) {
+    this.dict = new CompactMap(capacity);
+  }
+
+  /**
+   * Creates a dictionary that shares storage which is not modified anymore, such as the storage of
+   * a frozen dictionary.
+   *
+   * @param dict The storage.
+   */
+  NSDictionary(CompactMap dict) {
+    this.dict = dict;
+    this.shared = true;
   }
 
   /**
    * Gets the hash map which stores the keys and values of this dictionary. Changes to the hash map
-   * are directly reflected in this dictionary.
+   * are directly reflected in this dictionary. If this dictionary is frozen, a copy of the hash map
+   * is returned instead.
+   *
+   * <p>Small dictionaries do not store their contents in a hash map. Calling this method moves
+   * their contents into a hash map, which uses more memory. Use the {@link Map} methods of the
+   * dictionary instead where possible.
    *
    * @return The hash map which is used by this dictionary to store its contents.
    */
   public HashMap<String, NSObject> getHashMap() {
+    if (this.isFrozen()) {
+      return new LinkedHashMap<>(this.contents());
+    }
+    return this.exposedContents().toHashMap();
+  }
+
+  /** Shrinks the storage of this dictionary to the current number of key-value pairs. */
+  void trimToSize() {
+    if (!this.shared) {
+      this.dict.trimToSize();
+    }
+  }
+
+  /**
+   * Gets the values of this dictionary without copying the values that are shared with the frozen
+   * dictionary this dictionary was cloned from. The values must not be modified.
+   *
+   * @return The values of this dictionary.
+   */
+  Collection<NSObject> storedValues() {
+    return this.contents().values();
+  }
+
+  /**
+   * Gets the storage of this dictionary for reading it without copying the values that are shared
+   * with the frozen dictionary this dictionary was cloned from. The storage must not be modified.
+   *
+   * @return The storage.
+   */
+  CompactMap contents() {
+    if (this.shared && !this.isFrozen()) {
+      // Another thread may be replacing the storage in unshare()
+      synchronized (this) {
+        return this.dict;
+      }
+    }
+    return this.dict;
+  }
+
+  /**
+   * Gets the storage of this dictionary for exposing its values, after replacing the values that
+   * are shared with the frozen dictionary this dictionary was cloned from by their clones.
+   *
+   * @return The storage.
+   */
+  CompactMap exposedContents() {
+    this.unshare();
     return this.dict;
   }
 
+  /**
+   * Gets the storage of this dictionary for modifying it.
+   *
+   * @return The storage.
+   * @throws UnsupportedOperationException If this dictionary is frozen.
+   */
+  CompactMap modifiableContents() {
+    this.checkMutable();
+    this.unshare();
+    return this.dict;
+  }
+
+  /**
+   * Replaces the storage of this dictionary.
+   *
+   * @param contents The new storage.
+   */
+  void replaceContents(CompactMap contents) {
+    this.dict = contents;
+    this.shared = false;
+  }
+
+  /**
+   * Stops sharing the storage and the values with the frozen dictionary this dictionary was cloned
+   * from. The values are replaced by their clones, which share the contents of frozen values in
+   * turn, so that only the path to an accessed value is copied.
+   */
+  private void unshare() {
+    if (this.shared && !this.isFrozen()) {
+      this.unshareValues();
+    }
+  }
+
+  /**
+   * Replaces the shared values by their clones. Threads that only read a clone may call this
+   * concurrently, so the clones are created and published while holding the lock of this
+   * dictionary.
+   */
+  private synchronized void unshareValues() {
+    if (this.shared) {
+      CompactMap values = new CompactMap(this.dict.size());
+      for (Entry<String, NSObject> entry : this.dict.entrySet()) {
+        values.put(entry.getKey(), entry.getValue() != null ? entry.getValue().clone() : null);
+      }
+      this.dict = values;
+      this.shared = false;
+    }
+  }
+
+  @Override
+  public NSDictionary freeze() {
+    super.freeze();
+    return this;
+  }
+
+  @Override
+  void freezeContents() {
+    for (NSObject value : this.contents().values()) {
+      value.freeze();
+    }
+  }
+
   /**
    * Gets the NSObject stored for the given key.
    *
@@ -67,29 +214,29 @@ public class NSDictionary extends NSObject implements Map<String, NSObject> {
    * @return The object.
    */
   public NSObject objectForKey(String key) {
-    return this.dict.get(key);
+    return this.exposedContents().get(key);
   }
 
   public int size() {
-    return this.dict.size();
+    return this.contents().size();
   }
 
   public boolean isEmpty() {
-    return this.dict.isEmpty();
+    return this.contents().isEmpty();
   }
 
   public boolean containsKey(Object key) {
-    return this.dict.containsKey(key);
+    return this.contents().containsKey(key);
   }
 
   public boolean containsValue(Object value) {
     if (value == null) return false;
     NSObject wrap = NSObject.fromJavaObject(value);
-    return this.dict.containsValue(wrap);
+    return this.contents().containsValue(wrap);
   }
 
   public NSObject get(Object key) {
-    return this.dict.get(key);
+    return this.exposedContents().get(key);
   }
 
   public void putAll(Map<? extends String, ? extends NSObject> values) {
@@ -110,9 +257,10 @@ public class NSDictionary extends NSObject implements Map<String, NSObject> {
    *     to it.
    */
   public NSObject put(String key, NSObject obj) {
+    CompactMap contents = this.modifiableContents();
     if (key == null) return null;
-    if (obj == null) return this.dict.get(key);
-    return this.dict.put(key, obj);
+    if (obj == null) return contents.get(key);
+    return contents.put(key, obj);
   }
 
   /**
@@ -136,11 +284,11 @@ public class NSDictionary extends NSObject implements Map<String, NSObject> {
    * @return the value previously associated to the given key.
    */
   public NSObject remove(String key) {
-    return this.dict.remove(key);
+    return this.modifiableContents().remove(key);
   }
 
   public NSObject remove(Object key) {
-    return this.dict.remove(key);
+    return this.modifiableContents().remove(key);
   }
 
   /**
@@ -149,19 +297,33 @@ public class NSDictionary extends NSObject implements Map<String, NSObject> {
    * @see java.util.Map#clear()
    */
   public void clear() {
-    this.dict.clear();
+    this.checkMutable();
+    if (this.shared) {
+      this.replaceContents(new CompactMap());
+    } else {
+      this.dict.clear();
+    }
   }
 
   public Set<String> keySet() {
-    return this.dict.keySet();
+    if (this.isFrozen()) {
+      return Collections.unmodifiableMap(this.contents()).keySet();
+    }
+    return this.exposedContents().keySet();
   }
 
   public Collection<NSObject> values() {
-    return this.dict.values();
+    if (this.isFrozen()) {
+      return Collections.unmodifiableMap(this.contents()).values();
+    }
+    return this.exposedContents().values();
   }
 
   public Set<Entry<String, NSObject>> entrySet() {
-    return this.dict.entrySet();
+    if (this.isFrozen()) {
+      return Collections.unmodifiableMap(this.contents()).entrySet();
+    }
+    return this.exposedContents().entrySet();
   }
 
   /**
@@ -171,7 +333,7 @@ public class NSDictionary extends NSObject implements Map<String, NSObject> {
    * @return Whether the key is contained in this dictionary.
    */
   public boolean containsKey(String key) {
-    return this.dict.containsKey(key);
+    return this.contents().containsKey(key);
   }
 
   /**
@@ -181,7 +343,7 @@ public class NSDictionary extends NSObject implements Map<String, NSObject> {
    * @return Whether the key is contained in this dictionary.
    */
   public boolean containsValue(NSObject val) {
-    return val != null && this.dict.containsValue(val);
+    return val != null && this.contents().containsValue(val);
   }
 
   /**
@@ -191,7 +353,7 @@ public class NSDictionary extends NSObject implements Map<String, NSObject> {
    * @return Whether the key is contained in this dictionary.
    */
   public boolean containsValue(String val) {
-    for (NSObject o : this.dict.values()) {
+    for (NSObject o : this.contents().values()) {
       if (o.getClass().equals(NSString.class)) {
         NSString str = (NSString) o;
         if (str.getContent().equals(val)) return true;
@@ -207,7 +369,7 @@ public class NSDictionary extends NSObject implements Map<String, NSObject> {
    * @return Whether the key is contained in this dictionary.
    */
   public boolean containsValue(long val) {
-    for (NSObject o : this.dict.values()) {
+    for (NSObject o : this.contents().values()) {
       if (o.getClass().equals(NSNumber.class)) {
         NSNumber num = (NSNumber) o;
         if (num.isInteger() && num.intValue() == val) return true;
@@ -223,7 +385,7 @@ public class NSDictionary extends NSObject implements Map<String, NSObject> {
    * @return Whether the key is contained in this dictionary.
    */
   public boolean containsValue(double val) {
-    for (NSObject o : this.dict.values()) {
+    for (NSObject o : this.contents().values()) {
       if (o.getClass().equals(NSNumber.class)) {
         NSNumber num = (NSNumber) o;
         if (num.isReal() && num.doubleValue() == val) return true;
@@ -239,7 +401,7 @@ public class NSDictionary extends NSObject implements Map<String, NSObject> {
    * @return Whether the key is contained in this dictionary.
    */
   public boolean containsValue(boolean val) {
-    for (NSObject o : this.dict.values()) {
+    for (NSObject o : this.contents().values()) {
       if (o.getClass().equals(NSNumber.class)) {
         NSNumber num = (NSNumber) o;
         if (num.isBoolean() && num.boolValue() == val) return true;
@@ -255,7 +417,7 @@ public class NSDictionary extends NSObject implements Map<String, NSObject> {
    * @return Whether the key is contained in this dictionary.
    */
   public boolean containsValue(Date val) {
-    for (NSObject o : this.dict.values()) {
+    for (NSObject o : this.contents().values()) {
       if (o.getClass().equals(NSDate.class)) {
         NSDate dat = (NSDate) o;
         if (dat.getDate().equals(val)) return true;
@@ -271,7 +433,7 @@ public class NSDictionary extends NSObject implements Map<String, NSObject> {
    * @return Whether the key is contained in this dictionary.
    */
   public boolean containsValue(byte[] val) {
-    for (NSObject o : this.dict.values()) {
+    for (NSObject o : this.contents().values()) {
       if (o.getClass().equals(NSData.class)) {
         NSData dat = (NSData) o;
         if (Arrays.equals(dat.bytes(), val)) return true;
@@ -286,13 +448,16 @@ public class NSDictionary extends NSObject implements Map<String, NSObject> {
    * @return The size of this NSDictionary.
    */
   public int count() {
-    return this.dict.size();
+    return this.contents().size();
   }
 
   @Override
   public boolean equals(Object obj) {
-    if (obj == null) return false;
-    return obj.getClass().equals(this.getClass()) && ((NSDictionary) obj).dict.equals(this.dict);
+    if (obj == this) return true;
+    if (!(obj instanceof NSDictionary)) return false;
+    NSDictionary other = (NSDictionary) obj;
+    if (this.isFrozen() && other.isFrozen() && this.hashCode() != other.hashCode()) return false;
+    return other.contents().equals(this.contents());
   }
 
   /**
@@ -301,19 +466,30 @@ public class NSDictionary extends NSObject implements Map<String, NSObject> {
    * @return The list of all keys used in this NSDictionary.
    */
   public String[] allKeys() {
-    return this.dict.keySet().toArray(new String[this.count()]);
+    return this.contents().keySet().toArray(new String[0]);
   }
 
   @Override
   public int hashCode() {
-    int hash = 7;
-    hash = 83 * hash + this.dict.hashCode();
+    int hash = this.frozenHashCode;
+    if (hash == 0) {
+      hash = 7;
+      hash = 83 * hash + this.contents().hashCode();
+      if (this.isFrozen()) {
+        this.frozenHashCode = hash;
+      }
+    }
     return hash;
   }
 
   @Override
   public NSDictionary clone() {
-    NSDictionary clone = new NSDictionary();
+    if (this.isFrozen() || this.shared) {
+      // The values are frozen, so they are only copied when they are accessed
+      return new NSDictionary(this.contents());
+    }
+
+    NSDictionary clone = new NSDictionary(this.dict.size());
     for (Entry<String, NSObject> entry : this.dict.entrySet()) {
       clone.dict.put(entry.getKey(), entry.getValue() != null ? entry.getValue().clone() : null);
     }
@@ -323,9 +499,10 @@ public class NSDictionary extends NSObject implements Map<String, NSObject> {
 
   @Override
   public Object toJavaObject() {
-    HashMap<String, Object> clonedMap = new HashMap<>(this.dict.size());
-    for (String key : this.dict.keySet()) {
-      clonedMap.put(key, this.dict.get(key).toJavaObject());
+    CompactMap contents = this.contents();
+    HashMap<String, Object> clonedMap = new HashMap<>(contents.size());
+    for (Entry<String, NSObject> entry : contents.entrySet()) {
+      clonedMap.put(entry.getKey(), entry.getValue().toJavaObject());
     }
 
     return clonedMap;
@@ -338,22 +515,35 @@ public class NSDictionary extends NSObject implements Map<String, NSObject> {
       return 0;
     } else if (o instanceof NSDictionary) {
       NSDictionary other = (NSDictionary) o;
-
-      long uniqueForMe =
-          this.dict.keySet().stream().filter(e -> !other.dict.containsKey(e)).count();
-      long uniqueForOther =
-          other.dict.keySet().stream().filter(e -> !this.dict.containsKey(e)).count();
-
-      int keyDifference = Long.compare(uniqueForMe, uniqueForOther);
-      if (keyDifference != 0) {
-        return keyDifference;
+      SortedEntries entries = this.sortedEntries();
+      SortedEntries otherEntries = other.sortedEntries();
+      String[] keys = entries.keys;
+      String[] otherKeys = otherEntries.keys;
+
+      // The dictionary with more keys that the other one does not contain is greater
+      int common = 0;
+      for (int i = 0, j = 0; i < keys.length && j < otherKeys.length; ) {
+        int keyDifference = keys[i].compareTo(otherKeys[j]);
+        if (keyDifference == 0) {
+          common++;
+        }
+        i += keyDifference <= 0 ? 1 : 0;
+        j += keyDifference >= 0 ? 1 : 0;
+      }
+      int uniqueDifference = Integer.compare(keys.length - common, otherKeys.length - common);
+      if (uniqueDifference != 0) {
+        return uniqueDifference;
       }
 
-      for (String key :
-          this.dict.keySet().stream()
-              .sorted(String::compareTo)
-              .collect(Collectors.toCollection(LinkedList::new))) {
-        int itemDifference = this.objectForKey(key).compareTo(other.objectForKey(key));
+      // Otherwise, the values are compared in the order of their keys. If a key is only contained
+      // in one of the dictionaries, the dictionary containing the smaller key is greater.
+      for (int i = 0, j = 0; i < keys.length && j < otherKeys.length; i++, j++) {
+        int keyDifference = keys[i].compareTo(otherKeys[j]);
+        if (keyDifference != 0) {
+          return keyDifference < 0 ? 1 : -1;
+        }
+
+        int itemDifference = entries.values[i].compareTo(otherEntries.values[j]);
         if (itemDifference != 0) {
           return itemDifference;
         }
@@ -361,34 +551,50 @@ public class NSDictionary extends NSObject implements Map<String, NSObject> {
 
       return 0;
     } else {
-      return this.getClass().getName().compareTo(o.getClass().getName());
+      return compareTypes(this, o);
     }
   }
 
+  /**
+   * Gets the entries of this dictionary in the ascending order of their keys. The entries of a
+   * frozen dictionary are only sorted once.
+   *
+   * @return The sorted entries.
+   */
+  private SortedEntries sortedEntries() {
+    SortedEntries entries = this.frozenSortedEntries;
+    if (entries == null) {
+      CompactMap contents = this.contents();
+      String[] keys = contents.keySet().toArray(new String[0]);
+      Arrays.sort(keys);
+      NSObject[] values = new NSObject[keys.length];
+      for (int i = 0; i < keys.length; i++) {
+        values[i] = contents.get(keys[i]);
+      }
+
+      entries = new SortedEntries(keys, values);
+      if (this.isFrozen()) {
+        this.frozenSortedEntries = entries;
+      }
+    }
+    return entries;
+  }
+
   @Override
-  void toXML(StringBuilder xml, int level) {
-    this.indent(xml, level);
+  void toXML(TextOutput xml, int level) throws IOException {
+    xml.indent(level);
     xml.append("<dict>");
-    xml.append(NSObject.NEWLINE);
-    for (String key : this.dict.keySet()) {
-      NSObject val = this.objectForKey(key);
-      this.indent(xml, level + 1);
+    xml.newline();
+    for (Entry<String, NSObject> entry : this.contents().entrySet()) {
+      xml.indent(level + 1);
       xml.append("<key>");
-      // According to http://www.w3.org/TR/REC-xml/#syntax node values must not
-      // contain the characters < or &. Also the > character should be escaped.
-      if (key.contains("&") || key.contains("<") || key.contains(">")) {
-        xml.append("<![CDATA[");
-        xml.append(key.replaceAll("]]>", "]]]]><![CDATA[>"));
-        xml.append("]]>");
-      } else {
-        xml.append(key);
-      }
+      NSString.appendXmlText(xml, entry.getKey());
       xml.append("</key>");
-      xml.append(NSObject.NEWLINE);
-      val.toXML(xml, level + 1);
-      xml.append(NSObject.NEWLINE);
+      xml.newline();
+      entry.getValue().toXML(xml, level + 1);
+      xml.newline();
     }
-    this.indent(xml, level);
+    xml.indent(level);
     xml.append("</dict>");
   }
 
@@ -396,19 +602,21 @@ public class NSDictionary extends NSObject implements Map<String, NSObject> {
   void assignIDs(BinaryPropertyListWriter out) {
     super.assignIDs(out);
 
-    for (Map.Entry<String, NSObject> entry : this.dict.entrySet()) {
+    Set<Map.Entry<String, NSObject>> entries = this.contents().entrySet();
+    for (Map.Entry<String, NSObject> entry : entries) {
       new NSString(entry.getKey()).assignIDs(out);
     }
 
-    for (Map.Entry<String, NSObject> entry : this.dict.entrySet()) {
+    for (Map.Entry<String, NSObject> entry : entries) {
       entry.getValue().assignIDs(out);
     }
   }
 
   @Override
   void toBinary(BinaryPropertyListWriter out) throws IOException {
-    out.writeIntHeader(0xD, this.dict.size());
-    Set<Map.Entry<String, NSObject>> entries = this.dict.entrySet();
+    CompactMap contents = this.contents();
+    out.writeIntHeader(0xD, contents.size());
+    Set<Map.Entry<String, NSObject>> entries = contents.entrySet();
     for (Map.Entry<String, NSObject> entry : entries) {
       out.writeID(out.getID(new NSString(entry.getKey())));
     }
@@ -426,10 +634,7 @@ public class NSDictionary extends NSObject implements Map<String, NSObject> {
    * @return ASCII representation of this object.
    */
   public String toASCIIPropertyList() {
-    StringBuilder ascii = new StringBuilder();
-    this.toASCII(ascii, 0);
-    ascii.append(NEWLINE);
-    return ascii.toString();
+    return this.toASCIIPropertyList(false);
   }
 
   /**
@@ -441,67 +646,80 @@ public class NSDictionary extends NSObject implements Map<String, NSObject> {
    * @return GnuStep ASCII representation of this object.
    */
   public String toGnuStepASCIIPropertyList() {
-    StringBuilder ascii = new StringBuilder();
-    this.toASCIIGnuStep(ascii, 0);
-    ascii.append(NEWLINE);
-    return ascii.toString();
+    return this.toASCIIPropertyList(true);
   }
 
   @Override
-  protected void toASCII(StringBuilder ascii, int level) {
-    this.indent(ascii, level);
+  protected void toASCII(TextOutput ascii, int level) throws IOException {
+    ascii.indent(level);
     ascii.append(ASCIIPropertyListParser.DICTIONARY_BEGIN_TOKEN);
-    ascii.append(NEWLINE);
-    String[] keys = this.allKeys();
-    for (String key : keys) {
-      NSObject val = this.objectForKey(key);
-      this.indent(ascii, level + 1);
-      ascii.append('"');
-      ascii.append(NSString.escapeStringForASCII(key));
-      ascii.append("\" =");
-      Class<?> objClass = val.getClass();
-      if (objClass.equals(NSDictionary.class)
-          || objClass.equals(NSArray.class)
-          || objClass.equals(NSData.class)) {
-        ascii.append(NEWLINE);
-        val.toASCII(ascii, level + 2);
-      } else {
-        ascii.append(' ');
-        val.toASCII(ascii, 0);
-      }
-      ascii.append(ASCIIPropertyListParser.DICTIONARY_ITEM_DELIMITER_TOKEN);
-      ascii.append(NEWLINE);
+    ascii.newline();
+    for (Entry<String, NSObject> entry : this.contents().entrySet()) {
+      toASCIIEntry(ascii, entry.getKey(), entry.getValue(), level, false);
+      ascii.newline();
     }
-    this.indent(ascii, level);
+    ascii.indent(level);
     ascii.append(ASCIIPropertyListParser.DICTIONARY_END_TOKEN);
   }
 
   @Override
-  protected void toASCIIGnuStep(StringBuilder ascii, int level) {
-    this.indent(ascii, level);
+  protected void toASCIIGnuStep(TextOutput ascii, int level) throws IOException {
+    ascii.indent(level);
     ascii.append(ASCIIPropertyListParser.DICTIONARY_BEGIN_TOKEN);
-    ascii.append(NEWLINE);
-    String[] keys = this.dict.keySet().toArray(new String[0]);
-    for (String key : keys) {
-      NSObject val = this.objectForKey(key);
-      this.indent(ascii, level + 1);
-      ascii.append('"');
-      ascii.append(NSString.escapeStringForASCII(key));
-      ascii.append("\" =");
-      Class<?> objClass = val.getClass();
-      if (objClass.equals(NSDictionary.class)
-          || objClass.equals(NSArray.class)
-          || objClass.equals(NSData.class)) {
-        ascii.append(NEWLINE);
+    ascii.newline();
+    for (Entry<String, NSObject> entry : this.contents().entrySet()) {
+      toASCIIEntry(ascii, entry.getKey(), entry.getValue(), level, true);
+      ascii.newline();
+    }
+    ascii.indent(level);
+    ascii.append(ASCIIPropertyListParser.DICTIONARY_END_TOKEN);
+  }
+
+  /**
+   * Generates the ASCII representation of a dictionary entry, without a trailing line break.
+   *
+   * @param ascii The output.
+   * @param key The key of the entry.
+   * @param val The value of the entry.
+   * @param level The nesting level of the dictionary.
+   * @param gnuStep Whether the GnuStep format should be used.
+   * @throws IOException If the output cannot be written.
+   */
+  static void toASCIIEntry(TextOutput ascii, String key, NSObject val, int level, boolean gnuStep)
+      throws IOException {
+    ascii.indent(level + 1);
+    ascii.append('"');
+    NSString.appendASCIIText(ascii, key);
+    ascii.append("\" =");
+    if (val instanceof NSDictionary || val instanceof NSArray || val instanceof NSData) {
+      ascii.newline();
+      if (gnuStep) {
         val.toASCIIGnuStep(ascii, level + 2);
       } else {
-        ascii.append(' ');
+        val.toASCII(ascii, level + 2);
+      }
+    } else {
+      ascii.append(' ');
+      if (gnuStep) {
         val.toASCIIGnuStep(ascii, 0);
+      } else {
+        val.toASCII(ascii, 0);
       }
-      ascii.append(ASCIIPropertyListParser.DICTIONARY_ITEM_DELIMITER_TOKEN);
-      ascii.append(NEWLINE);
     }
-    this.indent(ascii, level);
-    ascii.append(ASCIIPropertyListParser.DICTIONARY_END_TOKEN);
+    ascii.append(ASCIIPropertyListParser.DICTIONARY_ITEM_DELIMITER_TOKEN);
+  }
+
+  /**
+   * The keys of a dictionary in ascending order and the values stored for them. The fields are
+   * final, so that the entries of a frozen dictionary can be shared by multiple threads.
+   */
+  private static final class SortedEntries {
+    final String[] keys;
+    final NSObject[] values;
+
+    SortedEntries(String[] keys, NSObject[] values) {
+      this.keys = keys;
+      this.values = values;
+    }
   }
 }
@@ -67,7 +67,7 @@ public final class NSNull extends NSObject {
   }
 
   @Override
-  void toXML(StringBuilder xml, int level) {
+  void toXML(TextOutput xml, int level) {
     throw new NullPointerException("A null value cannot be represented in an XML property list.");
   }
 
@@ -77,12 +77,12 @@ public final class NSNull extends NSObject {
   }
 
   @Override
-  protected void toASCII(StringBuilder ascii, int level) {
+  protected void toASCII(TextOutput ascii, int level) {
     throw new NullPointerException("A null value cannot be represented in an ASCII property list.");
   }
 
   @Override
-  protected void toASCIIGnuStep(StringBuilder ascii, int level) {
+  protected void toASCIIGnuStep(TextOutput ascii, int level) {
     throw new NullPointerException("A null value cannot be represented in an ASCII property list.");
   }
 
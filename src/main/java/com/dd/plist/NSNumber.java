@@ -59,12 +59,61 @@ public class NSNumber extends NSObject {
   private static final String FALSE_SYMBOL = "false";
   private static final String NO_SYMOBL = "NO";
 
+  /** The number of decimal digits that can always be represented exactly by a double. */
+  private static final int MAX_EXACT_DIGITS = 15;
+
+  /** The largest power of ten that can be represented exactly by a double. */
+  private static final int MAX_EXACT_POWER_OF_TEN = 22;
+
+  private static final double[] POWERS_OF_TEN = new double[MAX_EXACT_POWER_OF_TEN + 1];
+
+  static {
+    POWERS_OF_TEN[0] = 1;
+    for (int i = 1; i < POWERS_OF_TEN.length; i++) {
+      POWERS_OF_TEN[i] = POWERS_OF_TEN[i - 1] * 10;
+    }
+  }
+
+  /** The smallest integer value of the cached numbers. */
+  private static final int CACHE_LOW = -128;
+
+  /** The largest integer value of the cached numbers. */
+  private static final int CACHE_HIGH = 127;
+
+  private static final NSNumber[] CACHE = new NSNumber[CACHE_HIGH - CACHE_LOW + 1];
+
+  /**
+   * The boolean value <code>true</code>. This instance is frozen and carries no location
+   * information.
+   */
+  public static final NSNumber TRUE = (NSNumber) new NSNumber(true).freeze();
+
+  /**
+   * The boolean value <code>false</code>. This instance is frozen and carries no location
+   * information.
+   */
+  public static final NSNumber FALSE = (NSNumber) new NSNumber(false).freeze();
+
+  static {
+    for (int i = 0; i < CACHE.length; i++) {
+      CACHE[i] = (NSNumber) new NSNumber(CACHE_LOW + i).freeze();
+    }
+  }
+
   /** Holds the current type of this number */
-  private int type;
+  private byte type;
+
+  /**
+   * Whether the integer value of a real number is truncated, as for numbers created from a <code>
+   * double</code>, instead of rounded, as for parsed numbers.
+   */
+  private boolean truncated;
 
-  private long longValue;
-  private double doubleValue;
-  private boolean boolValue;
+  /**
+   * The value of this number. Integers are stored as they are, real numbers as the bits of their
+   * <code>double</code> value and boolean values as 1 or 0.
+   */
+  private long value;
 
   /**
    * Creates a new NSNumber instance from its binary representation.
@@ -94,14 +143,14 @@ public class NSNumber extends NSObject {
     switch (type) {
       case INTEGER:
         {
-          this.doubleValue =
-              this.longValue = BinaryPropertyListParser.parseLong(bytes, startIndex, endIndex);
+          this.value = BinaryPropertyListParser.parseLong(bytes, startIndex, endIndex);
           break;
         }
       case REAL:
         {
-          this.doubleValue = BinaryPropertyListParser.parseDouble(bytes, startIndex, endIndex);
-          this.longValue = Math.round(this.doubleValue);
+          this.value =
+              Double.doubleToRawLongBits(
+                  BinaryPropertyListParser.parseDouble(bytes, startIndex, endIndex));
           break;
         }
       default:
@@ -109,7 +158,7 @@ public class NSNumber extends NSObject {
           throw new IllegalArgumentException("Type argument is not valid.");
         }
     }
-    this.type = type;
+    this.type = (byte) type;
   }
 
   /**
@@ -128,47 +177,254 @@ public class NSNumber extends NSObject {
           "The given string is null and cannot be parsed as number.");
     }
 
-    if (text.equalsIgnoreCase(TRUE_SYMBOL) || text.equalsIgnoreCase(YES_SYMBOL)) {
+    if (!this.scan(text, 0, text.length())) {
+      throw new IllegalArgumentException(
+          "The given string neither represents a double, an int nor a boolean value.");
+    }
+  }
+
+  private NSNumber() {}
+
+  /**
+   * Parses the textual representation of a number from a range of characters, e.g. from the buffer
+   * of a property list parser. The same representations as in {@link #NSNumber(String)} are
+   * accepted.
+   *
+   * @param text The characters.
+   * @param start The index of the first character of the number.
+   * @param end The index after the last character of the number.
+   * @return The parsed number or <code>null</code>, if the characters do not represent an integer,
+   *     real number or boolean value.
+   */
+  static NSNumber parse(CharSequence text, int start, int end) {
+    NSNumber number = new NSNumber();
+    return number.scan(text, start, end) ? number : null;
+  }
+
+  /**
+   * Classifies and parses the textual representation of a number in a single pass. Booleans,
+   * special real values, decimal and hexadecimal integers and decimal real numbers are recognized
+   * without creating intermediate strings or throwing exceptions. Only uncommon real number formats
+   * that are accepted by {@link Double#parseDouble(String)} are left to that method.
+   *
+   * @param text The characters.
+   * @param start The index of the first character of the number.
+   * @param end The index after the last character of the number.
+   * @return Whether the characters represent a number.
+   */
+  private boolean scan(CharSequence text, int start, int end) {
+    if (start == end) {
+      return false;
+    }
+
+    if (this.scanInteger(text, start, end) || this.scanReal(text, start, end)) {
+      return true;
+    }
+
+    if (matchesIgnoreCase(text, start, end, TRUE_SYMBOL)
+        || matchesIgnoreCase(text, start, end, YES_SYMBOL)) {
       this.type = BOOLEAN;
-      this.boolValue = true;
-      this.doubleValue = this.longValue = 1;
-    } else if (text.equalsIgnoreCase(FALSE_SYMBOL) || text.equalsIgnoreCase(NO_SYMOBL)) {
+      this.value = 1;
+    } else if (matchesIgnoreCase(text, start, end, FALSE_SYMBOL)
+        || matchesIgnoreCase(text, start, end, NO_SYMOBL)) {
       this.type = BOOLEAN;
-      this.boolValue = false;
-      this.doubleValue = this.longValue = 0;
-    } else if (text.equalsIgnoreCase(NAN_SYMBOL)) {
-      this.doubleValue = Double.NaN;
-      this.longValue = 0;
-      this.type = REAL;
-    } else if (text.equalsIgnoreCase(POSTIIVE_INFINITY_SYMBOL)) {
-      this.doubleValue = Double.POSITIVE_INFINITY;
-      this.longValue = 0;
-      this.type = REAL;
-    } else if (text.equalsIgnoreCase(NEGATIVE_INFINITY_SYMBOL)) {
-      this.doubleValue = Double.NEGATIVE_INFINITY;
-      this.longValue = 0;
-      this.type = REAL;
+      this.value = 0;
+    } else if (matchesIgnoreCase(text, start, end, NAN_SYMBOL)) {
+      this.setReal(Double.NaN);
+    } else if (matchesIgnoreCase(text, start, end, POSTIIVE_INFINITY_SYMBOL)) {
+      this.setReal(Double.POSITIVE_INFINITY);
+    } else if (matchesIgnoreCase(text, start, end, NEGATIVE_INFINITY_SYMBOL)) {
+      this.setReal(Double.NEGATIVE_INFINITY);
     } else {
+      // Formats such as hexadecimal floating point literals, "Infinity" or a trailing "d"
       try {
-        long l;
-        if (text.startsWith("0x")) {
-          l = Long.parseLong(text.substring(2), 16);
-        } else {
-          l = Long.parseLong(text);
+        this.setReal(Double.parseDouble(text.subSequence(start, end).toString()));
+      } catch (NumberFormatException ex) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Parses an optionally signed decimal integer or a hexadecimal integer that is prefixed with
+   * "0x".
+   */
+  private boolean scanInteger(CharSequence text, int start, int end) {
+    int radix = 10;
+    int i = start;
+    if (end - start > 2 && text.charAt(i) == '0' && text.charAt(i + 1) == 'x') {
+      radix = 16;
+      i += 2;
+    }
+
+    boolean negative = false;
+    char c = text.charAt(i);
+    if (c == '-' || c == '+') {
+      negative = c == '-';
+      i++;
+    }
+
+    if (i == end) {
+      return false;
+    }
+
+    // Accumulate negatively, so that Long.MIN_VALUE can be represented
+    long value = 0;
+    long limit = negative ? Long.MIN_VALUE : -Long.MAX_VALUE;
+    for (; i < end; i++) {
+      int digit = Character.digit(text.charAt(i), radix);
+      if (digit < 0) {
+        return false;
+      }
+      if (value < (limit + digit) / radix) {
+        // Decimal integers that are too large are parsed as real number instead
+        return false;
+      }
+      value = value * radix - digit;
+    }
+
+    this.value = negative ? value : -value;
+    this.type = INTEGER;
+    return true;
+  }
+
+  /**
+   * Parses an optionally signed decimal real number with an optional fraction and exponent. If the
+   * significand has at most 15 significant digits and the decimal exponent is small, the value is
+   * computed directly, since both operands and thus the correctly rounded result are exact doubles.
+   */
+  private boolean scanReal(CharSequence text, int start, int end) {
+    int i = start;
+    boolean negative = false;
+    char c = text.charAt(i);
+    if (c == '-' || c == '+') {
+      negative = c == '-';
+      i++;
+    }
+
+    long significand = 0;
+    int significantDigits = 0, digits = 0, exponent = 0;
+    boolean fraction = false;
+    for (; i < end; i++) {
+      c = text.charAt(i);
+      if (c >= '0' && c <= '9') {
+        digits++;
+        if (significantDigits > 0 || c != '0') {
+          significantDigits++;
+          if (significantDigits <= MAX_EXACT_DIGITS) {
+            significand = significand * 10 + (c - '0');
+          }
+        }
+        if (fraction) {
+          exponent--;
         }
-        this.doubleValue = this.longValue = l;
-        this.type = INTEGER;
-      } catch (Exception ex) {
-        try {
-          this.doubleValue = Double.parseDouble(text);
-          this.longValue = Math.round(this.doubleValue);
-          this.type = REAL;
-        } catch (Exception ex2) {
-          throw new IllegalArgumentException(
-              "The given string neither represents a double, an int nor a boolean value.");
+      } else if (c == '.' && !fraction) {
+        fraction = true;
+      } else {
+        break;
+      }
+    }
+
+    if (digits == 0) {
+      return false;
+    }
+
+    if (i < end && (text.charAt(i) == 'e' || text.charAt(i) == 'E')) {
+      i++;
+      boolean negativeExponent = false;
+      if (i < end && (text.charAt(i) == '-' || text.charAt(i) == '+')) {
+        negativeExponent = text.charAt(i) == '-';
+        i++;
+      }
+
+      int exponentStart = i;
+      int explicitExponent = 0;
+      for (; i < end && text.charAt(i) >= '0' && text.charAt(i) <= '9'; i++) {
+        if (explicitExponent < 100000) {
+          explicitExponent = explicitExponent * 10 + (text.charAt(i) - '0');
         }
       }
+      if (i == exponentStart) {
+        return false;
+      }
+      exponent += negativeExponent ? -explicitExponent : explicitExponent;
     }
+
+    if (i != end) {
+      return false;
+    }
+
+    double value;
+    if (significand == 0) {
+      value = 0;
+    } else if (significantDigits <= MAX_EXACT_DIGITS
+        && exponent >= -MAX_EXACT_POWER_OF_TEN
+        && exponent <= MAX_EXACT_POWER_OF_TEN) {
+      value =
+          exponent < 0
+              ? significand / POWERS_OF_TEN[-exponent]
+              : significand * POWERS_OF_TEN[exponent];
+    } else {
+      value = Double.parseDouble(text.subSequence(start, end).toString());
+      negative = false;
+    }
+    this.setReal(negative ? -value : value);
+    return true;
+  }
+
+  /**
+   * Creates a real number the same way the parsers do, i.e. with an integer value that is rounded
+   * instead of truncated.
+   *
+   * @param d The real value.
+   * @return The number.
+   */
+  static NSNumber parsedReal(double d) {
+    NSNumber number = new NSNumber();
+    number.setReal(d);
+    return number;
+  }
+
+  private void setReal(double d) {
+    this.value = Double.doubleToRawLongBits(d);
+    this.type = REAL;
+  }
+
+  /**
+   * Gets a number with the specified value. Small integers are cached, so the returned object may
+   * be a shared instance that is frozen and carries no location information.
+   *
+   * @param l The integer value.
+   * @return A number with the value.
+   */
+  public static NSNumber valueOf(long l) {
+    return l >= CACHE_LOW && l <= CACHE_HIGH ? CACHE[(int) l - CACHE_LOW] : new NSNumber(l);
+  }
+
+  /**
+   * Gets the shared number with the specified value.
+   *
+   * @param b The boolean value.
+   * @return {@link #TRUE} or {@link #FALSE}.
+   */
+  public static NSNumber valueOf(boolean b) {
+    return b ? TRUE : FALSE;
+  }
+
+  private static boolean matchesIgnoreCase(CharSequence text, int start, int end, String symbol) {
+    if (end - start != symbol.length()) {
+      return false;
+    }
+
+    for (int i = 0; i < symbol.length(); i++) {
+      char c = text.charAt(start + i);
+      char s = symbol.charAt(i);
+      if (c != s && Character.toLowerCase(c) != Character.toLowerCase(s)) {
+        return false;
+      }
+    }
+    return true;
   }
 
   /**
@@ -177,7 +433,7 @@ public class NSNumber extends NSObject {
    * @param i The integer value.
    */
   public NSNumber(int i) {
-    this.doubleValue = this.longValue = i;
+    this.value = i;
     this.type = INTEGER;
   }
 
@@ -187,7 +443,7 @@ public class NSNumber extends NSObject {
    * @param l The long integer value.
    */
   public NSNumber(long l) {
-    this.doubleValue = this.longValue = l;
+    this.value = l;
     this.type = INTEGER;
   }
 
@@ -197,8 +453,8 @@ public class NSNumber extends NSObject {
    * @param d The real value.
    */
   public NSNumber(double d) {
-    this.longValue = (long) (this.doubleValue = d);
-    this.type = REAL;
+    this.setReal(d);
+    this.truncated = true;
   }
 
   /**
@@ -207,8 +463,7 @@ public class NSNumber extends NSObject {
    * @param b The boolean value.
    */
   public NSNumber(boolean b) {
-    this.boolValue = b;
-    this.doubleValue = this.longValue = b ? 1 : 0;
+    this.value = b ? 1 : 0;
     this.type = BOOLEAN;
   }
 
@@ -259,9 +514,10 @@ public class NSNumber extends NSObject {
    */
   public boolean boolValue() {
     if (this.type == BOOLEAN) {
-      return this.boolValue;
+      return this.value != 0;
     } else {
-      return !Double.isNaN(this.doubleValue) && this.doubleValue != 0;
+      double d = this.doubleValue();
+      return !Double.isNaN(d) && d != 0;
     }
   }
 
@@ -274,7 +530,7 @@ public class NSNumber extends NSObject {
    */
   public long longValue() {
     this.throwIfIntegerValueNotAvailable();
-    return this.longValue;
+    return this.integerValue();
   }
 
   /**
@@ -288,7 +544,7 @@ public class NSNumber extends NSObject {
    */
   public int intValue() {
     this.throwIfIntegerValueNotAvailable();
-    return (int) this.longValue;
+    return (int) this.integerValue();
   }
 
   /**
@@ -297,7 +553,23 @@ public class NSNumber extends NSObject {
    * @return The value of the number as a <code>double</code>.
    */
   public double doubleValue() {
-    return this.doubleValue;
+    return this.type == REAL ? Double.longBitsToDouble(this.value) : this.value;
+  }
+
+  /**
+   * Gets the integer value without checking whether it is available. The integer value of a real
+   * number that is NaN or infinite is 0.
+   */
+  private long integerValue() {
+    if (this.type != REAL) {
+      return this.value;
+    }
+
+    double d = Double.longBitsToDouble(this.value);
+    if (Double.isNaN(d) || Double.isInfinite(d)) {
+      return 0;
+    }
+    return this.truncated ? (long) d : Math.round(d);
   }
 
   /**
@@ -307,7 +579,7 @@ public class NSNumber extends NSObject {
    * @return The value of the number as a <code>float</code>.
    */
   public float floatValue() {
-    return (float) this.doubleValue;
+    return (float) this.doubleValue();
   }
 
   /**
@@ -321,7 +593,7 @@ public class NSNumber extends NSObject {
     switch (this.type) {
       case INTEGER:
         {
-          return String.valueOf(this.longValue);
+          return String.valueOf(this.value);
         }
       case REAL:
         {
@@ -329,7 +601,7 @@ public class NSNumber extends NSObject {
         }
       case BOOLEAN:
         {
-          return String.valueOf(this.boolValue);
+          return String.valueOf(this.value != 0);
         }
       default:
         {
@@ -350,46 +622,32 @@ public class NSNumber extends NSObject {
     if (obj == null) return false;
     if (this.getClass() != obj.getClass()) return false;
     NSNumber n = (NSNumber) obj;
-    return this.type == n.type
-        && this.longValue == n.longValue
-        && this.doubleValue == n.doubleValue
-        && this.boolValue == n.boolValue;
+    if (this.type != n.type) {
+      return false;
+    } else if (this.type != REAL) {
+      return this.value == n.value;
+    }
+    return this.doubleValue() == n.doubleValue() && this.integerValue() == n.integerValue();
   }
 
   @Override
   public int hashCode() {
+    long longValue = this.integerValue();
+    long doubleBits = Double.doubleToLongBits(this.doubleValue());
     int hash = this.type;
-    hash = 37 * hash + (int) (this.longValue ^ (this.longValue >>> 32));
-    hash =
-        37 * hash
-            + (int)
-                (Double.doubleToLongBits(this.doubleValue)
-                    ^ (Double.doubleToLongBits(this.doubleValue) >>> 32));
+    hash = 37 * hash + (int) (longValue ^ (longValue >>> 32));
+    hash = 37 * hash + (int) (doubleBits ^ (doubleBits >>> 32));
     hash = 37 * hash + (this.boolValue() ? 1 : 0);
     return hash;
   }
 
   @Override
   public NSNumber clone() {
-    switch (this.type) {
-      case INTEGER:
-        {
-          return new NSNumber(this.longValue);
-        }
-      case REAL:
-        {
-          return new NSNumber(this.doubleValue);
-        }
-      case BOOLEAN:
-        {
-          return new NSNumber(this.boolValue);
-        }
-      default:
-        {
-          throw new IllegalStateException(
-              "The NSNumber instance has an invalid type: " + this.type);
-        }
-    }
+    NSNumber clone = new NSNumber();
+    clone.type = this.type;
+    clone.truncated = this.truncated;
+    clone.value = this.value;
+    return clone;
   }
 
   @Override
@@ -397,7 +655,7 @@ public class NSNumber extends NSObject {
     switch (this.type()) {
       case INTEGER:
         {
-          return String.valueOf(this.longValue);
+          return String.valueOf(this.value);
         }
       case REAL:
         {
@@ -405,7 +663,7 @@ public class NSNumber extends NSObject {
         }
       case BOOLEAN:
         {
-          return String.valueOf(this.boolValue);
+          return String.valueOf(this.value != 0);
         }
       default:
         {
@@ -444,20 +702,20 @@ public class NSNumber extends NSObject {
       return 0;
     } else if (o instanceof NSNumber) {
       NSNumber other = (NSNumber) o;
-      return Double.compare(this.doubleValue, other.doubleValue);
+      return Double.compare(this.doubleValue(), other.doubleValue());
     } else {
-      return this.getClass().getName().compareTo(o.getClass().getName());
+      return compareTypes(this, o);
     }
   }
 
   @Override
-  void toXML(StringBuilder xml, int level) {
-    this.indent(xml, level);
+  void toXML(TextOutput xml, int level) throws IOException {
+    xml.indent(level);
     switch (this.type()) {
       case INTEGER:
         {
           xml.append("<integer>");
-          xml.append(this.longValue);
+          xml.append(this.value);
           xml.append("</integer>");
           break;
         }
@@ -470,7 +728,7 @@ public class NSNumber extends NSObject {
         }
       case BOOLEAN:
         {
-          if (this.boolValue) xml.append("<true/>");
+          if (this.value != 0) xml.append("<true/>");
           else xml.append("<false/>");
           break;
         }
@@ -487,33 +745,33 @@ public class NSNumber extends NSObject {
     switch (this.type()) {
       case INTEGER:
         {
-          if (this.longValue() < 0) {
+          if (this.value < 0) {
             out.write(0x13);
-            out.writeBytes(this.longValue, 8);
-          } else if (this.longValue <= 0xff) {
+            out.writeBytes(this.value, 8);
+          } else if (this.value <= 0xff) {
             out.write(0x10);
-            out.writeBytes(this.longValue(), 1);
-          } else if (this.longValue <= 0xffff) {
+            out.writeBytes(this.value, 1);
+          } else if (this.value <= 0xffff) {
             out.write(0x11);
-            out.writeBytes(this.longValue(), 2);
-          } else if (this.longValue <= 0xffffffffL) {
+            out.writeBytes(this.value, 2);
+          } else if (this.value <= 0xffffffffL) {
             out.write(0x12);
-            out.writeBytes(this.longValue, 4);
+            out.writeBytes(this.value, 4);
           } else {
             out.write(0x13);
-            out.writeBytes(this.longValue, 8);
+            out.writeBytes(this.value, 8);
           }
           break;
         }
       case REAL:
         {
           out.write(0x23);
-          out.writeDouble(this.doubleValue);
+          out.writeDouble(this.doubleValue());
           break;
         }
       case BOOLEAN:
         {
-          out.write(this.boolValue ? 0x09 : 0x08);
+          out.write(this.value != 0 ? 0x09 : 0x08);
           break;
         }
       default:
@@ -525,23 +783,23 @@ public class NSNumber extends NSObject {
   }
 
   @Override
-  protected void toASCII(StringBuilder ascii, int level) {
-    this.indent(ascii, level);
+  protected void toASCII(TextOutput ascii, int level) throws IOException {
+    ascii.indent(level);
     if (this.isBoolean()) {
-      ascii.append(this.boolValue ? YES_SYMBOL : NO_SYMOBL);
+      ascii.append(this.value != 0 ? YES_SYMBOL : NO_SYMOBL);
     } else {
       ascii.append(this.stringValue());
     }
   }
 
   @Override
-  protected void toASCIIGnuStep(StringBuilder ascii, int level) {
-    this.indent(ascii, level);
+  protected void toASCIIGnuStep(TextOutput ascii, int level) throws IOException {
+    ascii.indent(level);
     switch (this.type()) {
       case INTEGER:
         {
           ascii.append("<*I");
-          ascii.append(this.longValue);
+          ascii.append(this.value);
           ascii.append('>');
           break;
         }
@@ -571,13 +829,14 @@ public class NSNumber extends NSObject {
 
   private void throwIfIntegerValueNotAvailable() {
     if (this.type == REAL) {
-      if (Double.isNaN(this.doubleValue)) {
+      double d = this.doubleValue();
+      if (Double.isNaN(d)) {
         throw new IllegalStateException(
             "The integer value is not available because the value of this NSNumber instance is NaN.");
-      } else if (this.doubleValue == Double.POSITIVE_INFINITY) {
+      } else if (d == Double.POSITIVE_INFINITY) {
         throw new IllegalStateException(
             "The integer value is not available because the value of this NSNumber instance is positive infinity.");
-      } else if (this.doubleValue == Double.NEGATIVE_INFINITY) {
+      } else if (d == Double.NEGATIVE_INFINITY) {
         throw new IllegalStateException(
             "The integer value is not available because the value of this NSNumber instance is negative infinity.");
       }
@@ -585,14 +844,15 @@ public class NSNumber extends NSObject {
   }
 
   private String getRealStringRepresentation() {
-    if (Double.isNaN(this.doubleValue)) {
+    double d = this.doubleValue();
+    if (Double.isNaN(d)) {
       return NAN_SYMBOL;
-    } else if (this.doubleValue == Double.POSITIVE_INFINITY) {
+    } else if (d == Double.POSITIVE_INFINITY) {
       return POSTIIVE_INFINITY_SYMBOL;
-    } else if (this.doubleValue == Double.NEGATIVE_INFINITY) {
+    } else if (d == Double.NEGATIVE_INFINITY) {
       return NEGATIVE_INFINITY_SYMBOL;
     } else {
-      return String.valueOf(this.doubleValue);
+      return String.valueOf(d);
     }
   }
 }
@@ -49,10 +49,28 @@ public abstract class NSObject implements Cloneable, Comparable<NSObject> {
   /**
    * The indentation character used for generating the XML output. This is the tabulator character.
    */
-  private static final String INDENT = "\t";
+  static final String INDENT = "\t";
+
+  /**
+   * The classes of this library in the alphabetical order of their names, which determines the
+   * order of objects of different types.
+   */
+  private static final Class<?>[] TYPE_ORDER = {
+    NSArray.class,
+    NSData.class,
+    NSDate.class,
+    NSDictionary.class,
+    NSNull.class,
+    NSNumber.class,
+    NSSet.class,
+    NSString.class,
+    UID.class
+  };
 
   private LocationInformation locationInformation;
 
+  private boolean frozen;
+
   /**
    * Gets information about the location of this NSObject within the parsed property list, if
    * available.
@@ -73,7 +91,88 @@ public abstract class NSObject implements Cloneable, Comparable<NSObject> {
   }
 
   /**
-   * Creates and returns a deep copy of this instance.
+   * Makes this object and all objects contained in it immutable. Any attempt to modify a frozen
+   * object throws an {@link UnsupportedOperationException}, and methods that would otherwise expose
+   * mutable internal state, such as {@link NSArray#getArray()}, return copies instead.
+   *
+   * <p>Frozen dictionaries, arrays and sets compute their hash code only once. A frozen object tree
+   * can be shared by multiple threads without synchronization, as long as the reference to it is
+   * published safely, for example through a final or volatile field.
+   *
+   * @return This object.
+   */
+  public NSObject freeze() {
+    if (!this.frozen) {
+      this.frozen = true;
+      this.freezeContents();
+    }
+    return this;
+  }
+
+  /**
+   * Gets a value indicating whether this object has been frozen.
+   *
+   * @return Whether this object is immutable.
+   * @see #freeze()
+   */
+  public boolean isFrozen() {
+    return this.frozen;
+  }
+
+  /** Freezes all objects contained in this object. Called once by {@link #freeze()}. */
+  void freezeContents() {
+    // Only collections contain other objects
+  }
+
+  /**
+   * Ensures that this object can be modified.
+   *
+   * @throws UnsupportedOperationException If this object has been frozen.
+   */
+  void checkMutable() {
+    if (this.frozen) {
+      throw new UnsupportedOperationException(
+          "The " + this.getClass().getSimpleName() + " is frozen and cannot be modified.");
+    }
+  }
+
+  /**
+   * Compares two objects of different types by the names of their classes, without looking the
+   * names up for the classes of this library. Subclasses of these classes are ordered like the
+   * class they extend.
+   *
+   * @param a The first object.
+   * @param b The second object.
+   * @return A negative integer, zero, or a positive integer if the class name of the first object
+   *     is less than, equal to, or greater than the class name of the second object.
+   */
+  static int compareTypes(NSObject a, NSObject b) {
+    int typeA = typeOrdinal(a.getClass());
+    int typeB = typeOrdinal(b.getClass());
+    if (typeA < 0 || typeB < 0) {
+      return a.getClass().getName().compareTo(b.getClass().getName());
+    }
+    return Integer.compare(typeA, typeB);
+  }
+
+  private static int typeOrdinal(Class<?> type) {
+    for (int i = 0; i < TYPE_ORDER.length; i++) {
+      if (TYPE_ORDER[i].isAssignableFrom(type)) {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  /**
+   * Creates and returns a deep copy of this instance. The copy of a frozen object is not frozen.
+   *
+   * <p>Cloning a frozen dictionary, array or set takes constant time, as the copy shares the
+   * contents of the frozen object. The shared contents are copied one level at a time when they are
+   * accessed or modified through the copy, so that modifying a single value in a copy of a large
+   * frozen tree only copies the dictionaries, arrays and sets on the path to that value. The
+   * contents are copied while holding the lock of the copy, so that multiple threads can read the
+   * same copy concurrently, like any other object that they do not modify.
    *
    * @return A clone of this instance.
    */
@@ -107,26 +206,76 @@ public abstract class NSObject implements Cloneable, Comparable<NSObject> {
    *     information.
    */
   public String toXMLPropertyList() {
-    StringBuilder xml =
-        new StringBuilder("<?xml version=\"1.0\" encoding=\"UTF-8\"?>")
-            .append(NSObject.NEWLINE)
-            .append(
-                "<!DOCTYPE plist PUBLIC \"-//Apple//DTD PLIST 1.0//EN\" \"http://www.apple.com/DTDs/PropertyList-1.0.dtd\">")
-            .append(NSObject.NEWLINE)
-            .append("<plist version=\"1.0\">")
-            .append(NSObject.NEWLINE);
-    this.toXML(xml, 0);
-    xml.append(NSObject.NEWLINE).append("</plist>");
+    StringBuilder xml = new StringBuilder();
+    try {
+      this.toXMLPropertyList(new TextOutput(xml));
+    } catch (IOException ex) {
+      // Appending to a StringBuilder never causes an I/O error
+      throw new IllegalStateException(ex);
+    }
     return xml.toString();
   }
 
+  /**
+   * Generates a valid XML property list including headers using this object as root.
+   *
+   * @param xml The output onto which the XML property list is written.
+   * @throws IOException If an I/O error occurs while writing to the output.
+   */
+  void toXMLPropertyList(TextOutput xml) throws IOException {
+    xml.append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>")
+        .newline()
+        .append(
+            "<!DOCTYPE plist PUBLIC \"-//Apple//DTD PLIST 1.0//EN\" \"http://www.apple.com/DTDs/PropertyList-1.0.dtd\">")
+        .newline()
+        .append("<plist version=\"1.0\">")
+        .newline();
+    this.toXML(xml, 0);
+    xml.newline().append("</plist>");
+  }
+
+  /**
+   * Generates an ASCII property list with this object as root.
+   *
+   * @param gnuStep Whether the GnuStep format should be used.
+   * @return The ASCII representation of the property list.
+   */
+  String toASCIIPropertyList(boolean gnuStep) {
+    StringBuilder ascii = new StringBuilder();
+    try {
+      this.toASCIIPropertyList(new TextOutput(ascii), gnuStep);
+    } catch (IOException ex) {
+      // Appending to a StringBuilder never causes an I/O error
+      throw new IllegalStateException(ex);
+    }
+    return ascii.toString();
+  }
+
+  /**
+   * Generates an ASCII property list with this object as root. The generated property list ends
+   * with a newline.
+   *
+   * @param ascii The output onto which the ASCII property list is written.
+   * @param gnuStep Whether the GnuStep format should be used.
+   * @throws IOException If an I/O error occurs while writing to the output.
+   */
+  void toASCIIPropertyList(TextOutput ascii, boolean gnuStep) throws IOException {
+    if (gnuStep) {
+      this.toASCIIGnuStep(ascii, 0);
+    } else {
+      this.toASCII(ascii, 0);
+    }
+    ascii.newline();
+  }
+
   /**
    * Generates the XML representation of the object (without XML headers or enclosing plist-tags).
    *
-   * @param xml The {@link StringBuilder} onto which the XML representation is appended.
+   * @param xml The output onto which the XML representation is appended.
    * @param level The indentation level of the object.
+   * @throws IOException If an I/O error occurs while writing to the output.
    */
-  abstract void toXML(StringBuilder xml, int level);
+  abstract void toXML(TextOutput xml, int level) throws IOException;
 
   /**
    * Assigns IDs to all the objects in this NSObject subtree.
@@ -152,19 +301,21 @@ public abstract class NSObject implements Cloneable, Comparable<NSObject> {
    * href="https://developer.apple.com/library/content/documentation/Cocoa/Conceptual/PropertyLists/OldStylePlists/OldStylePLists.html"
    * target="_blank">Old-Style ASCII Property Lists definition</a>.
    *
-   * @param ascii The {@link StringBuilder} onto which the ASCII representation is appended.
+   * @param ascii The output onto which the ASCII representation is appended.
    * @param level The indentation level of the object.
+   * @throws IOException If an I/O error occurs while writing to the output.
    */
-  abstract void toASCII(StringBuilder ascii, int level);
+  abstract void toASCII(TextOutput ascii, int level) throws IOException;
 
   /**
    * Generates the ASCII representation of this object in the GnuStep format. The generated ASCII
    * representation does not end with a newline.
    *
-   * @param ascii The {@link StringBuilder} onto which the ASCII representation is appended.
+   * @param ascii The output onto which the ASCII representation is appended.
    * @param level The indentation level of the object.
+   * @throws IOException If an I/O error occurs while writing to the output.
    */
-  abstract void toASCIIGnuStep(StringBuilder ascii, int level);
+  abstract void toASCIIGnuStep(TextOutput ascii, int level) throws IOException;
 
   /**
    * Helper method that adds correct indentation to the xml output. Calling this method will add
@@ -172,7 +323,10 @@ public abstract class NSObject implements Cloneable, Comparable<NSObject> {
    *
    * @param xml The {@link StringBuilder} onto which the XML representation is appended.
    * @param level The level of indentation.
+   * @deprecated The property list writers indent their output themselves and no longer call this
+   *     method.
    */
+  @Deprecated
   protected void indent(StringBuilder xml, int level) {
     for (int i = 0; i < level; i++) xml.append(INDENT);
   }
@@ -338,7 +492,7 @@ public abstract class NSObject implements Cloneable, Comparable<NSObject> {
   }
 
   private Object deserializeObject(NSDictionary payload, Class<?> clazz, Type[] types) {
-    Map<String, NSObject> map = payload.getHashMap();
+    Map<String, NSObject> map = payload;
 
     if (Map.class.isAssignableFrom(clazz)) {
       return this.deserializeMap(clazz, types, map);
@@ -443,8 +597,9 @@ public abstract class NSObject implements Cloneable, Comparable<NSObject> {
     }
 
     if (payload instanceof NSArray) {
-      for (NSObject nsObject : ((NSArray) payload).getArray()) {
-        result.add(this.toJavaObject(nsObject, elemClass, elemTypes));
+      NSArray array = (NSArray) payload;
+      for (int i = 0; i < array.count(); i++) {
+        result.add(this.toJavaObject(array.objectAtIndex(i), elemClass, elemTypes));
       }
 
       return result;
@@ -476,10 +631,10 @@ public abstract class NSObject implements Cloneable, Comparable<NSObject> {
     Class<?> elementClass = getClassForName(clazz.getComponentType().getName());
 
     if (payload instanceof NSArray) {
-      NSObject[] array = ((NSArray) payload).getArray();
-      Object result = Array.newInstance(elementClass, array.length);
-      for (int i = 0; i < array.length; i++) {
-        Array.set(result, i, this.toJavaObject(array[i], elementClass, null));
+      NSArray array = (NSArray) payload;
+      Object result = Array.newInstance(elementClass, array.count());
+      for (int i = 0; i < array.count(); i++) {
+        Array.set(result, i, this.toJavaObject(array.objectAtIndex(i), elementClass, null));
       }
       return result;
     }
@@ -549,7 +704,7 @@ public abstract class NSObject implements Cloneable, Comparable<NSObject> {
     }
 
     Date result = (Date) getInstance(clazz);
-    result.setTime(date.getDate().getTime());
+    result.setTime(date.getTime());
     return result;
   }
 
@@ -681,7 +836,7 @@ public abstract class NSObject implements Cloneable, Comparable<NSObject> {
   }
 
   private static NSDictionary fromMap(Map<?, ?> map) {
-    NSDictionary result = new NSDictionary();
+    NSDictionary result = new NSDictionary(map.size());
     for (Map.Entry<?, ?> entry : map.entrySet()) {
       if (!(entry.getKey() instanceof String)) {
         throw new IllegalArgumentException("Maps need a String key for mapping to NSDictionary.");
@@ -718,12 +873,14 @@ public abstract class NSObject implements Cloneable, Comparable<NSObject> {
   }
 
   private static NSArray fromCollection(Collection<?> collection) {
-    List<NSObject> payload = new ArrayList<>(collection.size());
+    NSArray array = new NSArray();
+    array.ensureCapacity(collection.size());
     for (Object elem : collection) {
-      payload.add(fromJavaObject(elem));
+      array.add(fromJavaObject(elem));
     }
 
-    return new NSArray(payload.toArray(new NSObject[0]));
+    array.trimToSize();
+    return array;
   }
 
   private static NSSet fromSet(Set<?> set) {
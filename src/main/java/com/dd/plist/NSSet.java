@@ -25,21 +25,51 @@ package com.dd.plist;
 
 import java.io.IOException;
 import java.util.*;
-import java.util.stream.Collectors;
 
 /**
  * The NSSet class is an unordered collection of NSObject instances. This implementation uses a
  * <code>LinkedHashSet</code> or <code>TreeSet</code>as the underlying data structure.
  *
+ * <p>A set can be read and modified by multiple threads. Iterating over the set and other reads
+ * that visit all elements do not lock the set: they work on a snapshot of the elements, which is
+ * published on the first such read after a modification. Lookups use the published snapshot as
+ * well. If the set has been modified since, they lock the set briefly instead, until the set has
+ * been looked up about as often as it contains elements without being modified. A modification that
+ * follows the publication of a snapshot copies the elements once, so that snapshots held by readers
+ * never change, and the cost of this copy is bounded by the cost of the reads before it. Iterators
+ * iterate over a snapshot without copying it and do not reflect later modifications.
+ *
  * @author Daniel Dreibrodt
  * @see LinkedHashSet
  */
 public class NSSet extends NSObject {
 
-  private final Set<NSObject> set;
+  /**
+   * The elements of this set, guarded by the lock of this set. While the elements are published as
+   * {@link #snapshot}, they must not be modified.
+   */
+  private Set<NSObject> set;
+
+  /** The published elements of this set, or null if they have been modified since. */
+  private volatile Set<NSObject> snapshot;
 
   private boolean ordered = false;
 
+  /**
+   * Whether the storage and the elements of this set are shared with the frozen set it was cloned
+   * from. They are copied before they are exposed or modified.
+   */
+  private volatile boolean shared;
+
+  /**
+   * The number of lookups since the last modification that did not use a snapshot, guarded by the
+   * lock of this set.
+   */
+  private int lookupsSinceModification;
+
+  /** The hash code of a frozen set, or 0 if it has not been computed yet. */
+  private int frozenHashCode;
+
   /**
    * Creates a new NSSet instance. The created set is unordered.
    *
@@ -82,8 +112,104 @@ public class NSSet extends NSObject {
    */
   public NSSet(boolean ordered, NSObject... objects) {
     this(ordered);
-    this.set.addAll(
-        Arrays.stream(objects).map(NSNull::wrap).collect(Collectors.toCollection(ArrayList::new)));
+    for (NSObject object : objects) {
+      this.set.add(NSNull.wrap(object));
+    }
+  }
+
+  /**
+   * Creates a set that shares the storage of a frozen set.
+   *
+   * @param ordered Whether the frozen set is ordered.
+   * @param set The storage of the frozen set.
+   */
+  private NSSet(boolean ordered, Set<NSObject> set) {
+    this.ordered = ordered;
+    this.set = set;
+    this.shared = true;
+  }
+
+  /**
+   * Gets the published elements of this set, publishing them if they have been modified since they
+   * were last published.
+   *
+   * @return The elements, which must not be modified.
+   */
+  private Set<NSObject> snapshot() {
+    Set<NSObject> snapshot = this.snapshot;
+    return snapshot != null ? snapshot : this.publish();
+  }
+
+  private synchronized Set<NSObject> publish() {
+    if (this.snapshot == null) {
+      this.snapshot = this.set;
+    }
+    return this.snapshot;
+  }
+
+  /**
+   * Finds out whether the given element is contained in this set, without publishing the elements
+   * unless the set has been looked up often enough to pay for copying them on the next
+   * modification.
+   *
+   * @param element The element, with null represented by {@link NSNull}.
+   * @return Whether the element is contained in this set.
+   */
+  private boolean containsElement(NSObject element) {
+    Set<NSObject> snapshot = this.snapshot;
+    if (snapshot != null) {
+      return snapshot.contains(element);
+    }
+
+    synchronized (this) {
+      if (this.snapshot == null && ++this.lookupsSinceModification < this.set.size()) {
+        return this.set.contains(element);
+      }
+    }
+    return this.snapshot().contains(element);
+  }
+
+  /**
+   * Gets the published elements of this set, after replacing the elements that are shared with the
+   * frozen set this set was cloned from by their clones.
+   *
+   * @return The elements, which must not be modified.
+   */
+  private Set<NSObject> exposedSnapshot() {
+    if (this.shared) {
+      this.unshare();
+    }
+    return this.snapshot();
+  }
+
+  /**
+   * Stops sharing the storage and the elements with the frozen set this set was cloned from. The
+   * elements are replaced by their clones, which share the contents of frozen elements in turn.
+   */
+  private synchronized void unshare() {
+    if (this.shared && !this.isFrozen()) {
+      Set<NSObject> elements = this.ordered ? new TreeSet<>() : new LinkedHashSet<>();
+      for (NSObject o : this.set) {
+        elements.add(o.clone());
+      }
+      this.set = elements;
+      this.snapshot = null;
+      this.shared = false;
+    }
+  }
+
+  /**
+   * Prepares this set for a modification of its elements. The published elements are copied, as
+   * readers may still use them. Must be called while holding the lock of this set.
+   */
+  private void prepareModification() {
+    this.checkMutable();
+    this.unshare();
+    this.lookupsSinceModification = 0;
+    if (this.snapshot != null) {
+      this.set = this.ordered ? new TreeSet<>(this.set) : new LinkedHashSet<>(this.set);
+      this.snapshot = null;
+    }
   }
 
   /**
@@ -92,7 +218,13 @@ public class NSSet extends NSObject {
    * @param obj The object to add.
    */
   public synchronized void addObject(NSObject obj) {
-    this.set.add(NSNull.wrap(obj));
+    NSObject element = NSNull.wrap(obj);
+    if (this.snapshot == null || !this.snapshot.contains(element)) {
+      this.prepareModification();
+      this.set.add(element);
+    } else {
+      this.checkMutable();
+    }
   }
 
   /**
@@ -101,7 +233,13 @@ public class NSSet extends NSObject {
    * @param obj The object to remove.
    */
   public synchronized void removeObject(NSObject obj) {
-    this.set.remove(NSNull.wrap(obj));
+    NSObject element = NSNull.wrap(obj);
+    if (this.snapshot == null || this.snapshot.contains(element)) {
+      this.prepareModification();
+      this.set.remove(element);
+    } else {
+      this.checkMutable();
+    }
   }
 
   /**
@@ -109,8 +247,33 @@ public class NSSet extends NSObject {
    *
    * @return An array of all objects in the set.
    */
-  public synchronized NSObject[] allObjects() {
-    return this.set.stream().map(NSNull::unwrap).toArray(NSObject[]::new);
+  public NSObject[] allObjects() {
+    return toArray(this.exposedSnapshot());
+  }
+
+  /**
+   * Gets the objects contained in the set without copying the objects that are shared with the
+   * frozen set this set was cloned from. Null elements are represented by {@link NSNull}.
+   *
+   * @return The objects in the set, which must not be modified.
+   */
+  Set<NSObject> storedObjects() {
+    return this.snapshot();
+  }
+
+  /**
+   * Copies the elements of a set into an array.
+   *
+   * @param elements The elements.
+   * @return The elements, with null elements represented by <code>null</code>.
+   */
+  private static NSObject[] toArray(Set<NSObject> elements) {
+    NSObject[] array = new NSObject[elements.size()];
+    int i = 0;
+    for (NSObject o : elements) {
+      array[i++] = NSNull.unwrap(o);
+    }
+    return array;
   }
 
   /**
@@ -118,9 +281,10 @@ public class NSSet extends NSObject {
    *
    * @return The first object in the set, or <code>null</code> if the set is empty.
    */
-  public synchronized NSObject anyObject() {
-    if (this.set.isEmpty()) return null;
-    else return NSNull.unwrap(this.set.iterator().next());
+  public NSObject anyObject() {
+    Set<NSObject> elements = this.exposedSnapshot();
+    if (elements.isEmpty()) return null;
+    else return NSNull.unwrap(elements.iterator().next());
   }
 
   /**
@@ -130,7 +294,7 @@ public class NSSet extends NSObject {
    * @return <code>true</code>, when the object was found, <code>false</code> otherwise.
    */
   public boolean containsObject(NSObject obj) {
-    return this.set.contains(NSNull.wrap(obj));
+    return this.containsElement(NSNull.wrap(obj));
   }
 
   /**
@@ -140,9 +304,14 @@ public class NSSet extends NSObject {
    * @param obj The object to look for.
    * @return The object if it is present, <code>null</code> otherwise.
    */
-  public synchronized NSObject member(NSObject obj) {
-    for (NSObject o : this.set) {
-      if (o.equals(NSNull.wrap(obj))) return o;
+  public NSObject member(NSObject obj) {
+    NSObject element = NSNull.wrap(obj);
+    if (!this.containsElement(element)) {
+      return null;
+    }
+
+    for (NSObject o : this.exposedSnapshot()) {
+      if (o.equals(element)) return o;
     }
     return null;
   }
@@ -154,9 +323,9 @@ public class NSSet extends NSObject {
    * @return <code>false</code> if the intersection of both sets is empty, <code>true</code>
    *     otherwise.
    */
-  public synchronized boolean intersectsSet(NSSet otherSet) {
-    for (NSObject o : this.set) {
-      if (otherSet.containsObject(o)) return true;
+  public boolean intersectsSet(NSSet otherSet) {
+    for (NSObject o : this.snapshot()) {
+      if (otherSet.containsElement(o)) return true;
     }
     return false;
   }
@@ -168,27 +337,59 @@ public class NSSet extends NSObject {
    * @return <code>true</code> if all elements in this set are also present in the other set, <code>
    *     false</code> otherwise.
    */
-  public synchronized boolean isSubsetOfSet(NSSet otherSet) {
-    for (NSObject o : this.set) {
-      if (!otherSet.containsObject(o)) return false;
+  public boolean isSubsetOfSet(NSSet otherSet) {
+    for (NSObject o : this.snapshot()) {
+      if (!otherSet.containsElement(o)) return false;
     }
     return true;
   }
 
   /**
    * Returns an iterator object that lets you iterate over all elements of the set. This is the
-   * equivalent to <code>objectEnumerator</code> in the Cocoa implementation of NSSet.
+   * equivalent to <code>objectEnumerator</code> in the Cocoa implementation of NSSet. The iterator
+   * iterates over the elements the set contained when this method was called and does not support
+   * removal.
    *
    * @return The iterator for the set.
    */
-  public synchronized Iterator<NSObject> objectIterator() {
-    return this.set.stream().map(NSNull::unwrap).iterator();
+  public Iterator<NSObject> objectIterator() {
+    Iterator<NSObject> elements = this.exposedSnapshot().iterator();
+    return new Iterator<NSObject>() {
+      @Override
+      public boolean hasNext() {
+        return elements.hasNext();
+      }
+
+      @Override
+      public NSObject next() {
+        return NSNull.unwrap(elements.next());
+      }
+    };
+  }
+
+  @Override
+  public NSSet freeze() {
+    super.freeze();
+    return this;
+  }
+
+  @Override
+  synchronized void freezeContents() {
+    for (NSObject o : this.set) {
+      o.freeze();
+    }
   }
 
   @Override
   public int hashCode() {
-    int hash = 7;
-    hash = 29 * hash + (this.set != null ? this.set.hashCode() : 0);
+    int hash = this.frozenHashCode;
+    if (hash == 0) {
+      hash = 7;
+      hash = 29 * hash + this.snapshot().hashCode();
+      if (this.isFrozen()) {
+        this.frozenHashCode = hash;
+      }
+    }
     return hash;
   }
 
@@ -201,6 +402,11 @@ public class NSSet extends NSObject {
       return false;
     }
 
+    NSSet other = (NSSet) obj;
+    if (this.isFrozen() && other.isFrozen() && this.hashCode() != other.hashCode()) {
+      return false;
+    }
+
     return this.compareTo((NSObject) obj) == 0;
   }
 
@@ -210,16 +416,15 @@ public class NSSet extends NSObject {
     if (o == this) {
       return 0;
     } else if (o instanceof NSSet) {
-      NSSet other = (NSSet) o;
-      if (other.count() != this.count()) {
-        return Integer.compare(this.count(), other.count());
+      Set<NSObject> elements = this.snapshot();
+      Set<NSObject> otherElements = ((NSSet) o).snapshot();
+      if (otherElements.size() != elements.size()) {
+        return Integer.compare(elements.size(), otherElements.size());
       }
 
-      NSObject[] thisObjects = this.allObjects();
-      NSObject[] otherObjects = other.allObjects();
-
-      for (int i = 0; i < this.count(); i++) {
-        int itemDiff = NSNull.wrap(thisObjects[i]).compareTo(NSNull.wrap((otherObjects[i])));
+      Iterator<NSObject> otherIterator = otherElements.iterator();
+      for (NSObject element : elements) {
+        int itemDiff = element.compareTo(otherIterator.next());
         if (itemDiff != 0) {
           return itemDiff;
         }
@@ -227,7 +432,7 @@ public class NSSet extends NSObject {
 
       return 0;
     } else {
-      return this.getClass().getName().compareTo(o.getClass().getName());
+      return compareTypes(this, o);
     }
   }
 
@@ -237,12 +442,27 @@ public class NSSet extends NSObject {
    * @return The number of elements in the set.
    * @see Set#size()
    */
-  public synchronized int count() {
-    return this.set.size();
+  public int count() {
+    Set<NSObject> snapshot = this.snapshot;
+    if (snapshot != null) {
+      return snapshot.size();
+    }
+
+    synchronized (this) {
+      if (this.snapshot == null && ++this.lookupsSinceModification < this.set.size()) {
+        return this.set.size();
+      }
+    }
+    return this.snapshot().size();
   }
 
   @Override
-  public NSSet clone() {
+  public synchronized NSSet clone() {
+    if (this.isFrozen() || this.shared) {
+      // The elements are frozen, so they are only copied when they are accessed
+      return new NSSet(this.ordered, this.set);
+    }
+
     NSObject[] clonedSet = new NSObject[this.set.size()];
     int i = 0;
     for (NSObject element : this.set) {
@@ -254,8 +474,9 @@ public class NSSet extends NSObject {
 
   @Override
   public Object toJavaObject() {
-    Set<Object> clonedSet = this.ordered ? new TreeSet<>() : new LinkedHashSet<>(this.set.size());
-    for (NSObject o : this.set) {
+    Set<NSObject> elements = this.snapshot();
+    Set<Object> clonedSet = this.ordered ? new TreeSet<>() : new LinkedHashSet<>(elements.size());
+    for (NSObject o : elements) {
       clonedSet.add(o.toJavaObject());
     }
     return clonedSet;
@@ -265,30 +486,31 @@ public class NSSet extends NSObject {
    * Returns the XML representation for this set. There is no official XML representation specified
    * for sets. In this implementation it is represented by an array.
    *
-   * @param xml The XML StringBuilder
+   * @param xml The XML output
    * @param level The indentation level
    */
   @Override
-  void toXML(StringBuilder xml, int level) {
-    new NSArray(this.allObjects()).toXML(xml, level);
+  void toXML(TextOutput xml, int level) throws IOException {
+    new NSArray(toArray(this.snapshot())).toXML(xml, level);
   }
 
   @Override
   void assignIDs(BinaryPropertyListWriter out) {
     super.assignIDs(out);
-    for (NSObject obj : this.set) {
+    for (NSObject obj : this.snapshot()) {
       obj.assignIDs(out);
     }
   }
 
   @Override
   void toBinary(BinaryPropertyListWriter out) throws IOException {
+    Set<NSObject> elements = this.snapshot();
     if (this.ordered) {
-      out.writeIntHeader(0xB, this.set.size());
+      out.writeIntHeader(0xB, elements.size());
     } else {
-      out.writeIntHeader(0xC, this.set.size());
+      out.writeIntHeader(0xC, elements.size());
     }
-    for (NSObject obj : this.set) {
+    for (NSObject obj : elements) {
       out.writeID(out.getID(obj));
     }
   }
@@ -297,23 +519,23 @@ public class NSSet extends NSObject {
    * Returns the ASCII representation of this set. There is no official ASCII representation for
    * sets. In this implementation sets are represented as arrays.
    *
-   * @param ascii The ASCII file string builder
+   * @param ascii The ASCII output
    * @param level The indentation level
    */
   @Override
-  protected void toASCII(StringBuilder ascii, int level) {
-    new NSArray(this.allObjects()).toASCII(ascii, level);
+  protected void toASCII(TextOutput ascii, int level) throws IOException {
+    new NSArray(toArray(this.snapshot())).toASCII(ascii, level);
   }
 
   /**
    * Returns the ASCII representation of this set according to the GnuStep format. There is no
    * official ASCII representation for sets. In this implementation sets are represented as arrays.
    *
-   * @param ascii The ASCII file string builder
+   * @param ascii The ASCII output
    * @param level The indentation level
    */
   @Override
-  protected void toASCIIGnuStep(StringBuilder ascii, int level) {
-    new NSArray(this.allObjects()).toASCIIGnuStep(ascii, level);
+  protected void toASCIIGnuStep(TextOutput ascii, int level) throws IOException {
+    new NSArray(toArray(this.snapshot())).toASCIIGnuStep(ascii, level);
   }
 }
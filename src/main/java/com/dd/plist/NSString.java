@@ -40,7 +40,7 @@ import java.util.Scanner;
  *     target="_blank">Foundation NSString documentation</a>
  */
 public class NSString extends NSObject {
-  private static CharsetEncoder asciiEncoder, utf16beEncoder, utf8Encoder;
+  private static CharsetEncoder asciiEncoder, utf16beEncoder;
 
   private String content;
 
@@ -172,6 +172,7 @@ public class NSString extends NSObject {
    * @param c The new content of this string object.
    */
   public void setContent(String c) {
+    this.checkMutable();
     this.content = c;
   }
 
@@ -190,6 +191,7 @@ public class NSString extends NSObject {
    * @param s The string to append.
    */
   public void append(String s) {
+    this.checkMutable();
     this.content += s;
   }
 
@@ -199,6 +201,7 @@ public class NSString extends NSObject {
    * @param s The string to prepend.
    */
   public void prepend(String s) {
+    this.checkMutable();
     this.content = s + this.content;
   }
 
@@ -239,38 +242,10 @@ public class NSString extends NSObject {
   }
 
   @Override
-  void toXML(StringBuilder xml, int level) {
-    this.indent(xml, level);
+  void toXML(TextOutput xml, int level) throws IOException {
+    xml.indent(level);
     xml.append("<string>");
-
-    // Make sure that the string is encoded in UTF-8 for the XML output
-    synchronized (NSString.class) {
-      if (utf8Encoder == null) utf8Encoder = StandardCharsets.UTF_8.newEncoder();
-      else utf8Encoder.reset();
-
-      try {
-        ByteBuffer byteBuf = utf8Encoder.encode(CharBuffer.wrap(this.content));
-        byte[] bytes = new byte[byteBuf.remaining()];
-        byteBuf.get(bytes);
-        this.content = new String(bytes, StandardCharsets.UTF_8);
-      } catch (Exception ex) {
-        throw new RuntimeException("Could not encode the NSString into UTF-8: " + ex.getMessage());
-      }
-    }
-
-    String cleanedContent = escapeStringForXml(this.content);
-
-    // According to http://www.w3.org/TR/REC-xml/#syntax node values must not
-    // contain the characters < or &. Also the > character should be escaped.
-    if (cleanedContent.contains("&")
-        || cleanedContent.contains("<")
-        || cleanedContent.contains(">")) {
-      xml.append("<![CDATA[");
-      xml.append(cleanedContent.replaceAll("]]>", "]]]]><![CDATA[>"));
-      xml.append("]]>");
-    } else {
-      xml.append(cleanedContent);
-    }
+    appendXmlText(xml, this.content);
     xml.append("</string>");
   }
 
@@ -301,8 +276,8 @@ public class NSString extends NSObject {
   }
 
   @Override
-  protected void toASCII(StringBuilder ascii, int level) {
-    this.indent(ascii, level);
+  protected void toASCII(TextOutput ascii, int level) throws IOException {
+    ascii.indent(level);
     ascii.append("\"");
     // According to
     // https://developer.apple.com/library/mac/#documentation/Cocoa/Conceptual/PropertyLists/OldStylePlists/OldStylePLists.html
@@ -310,15 +285,15 @@ public class NSString extends NSObject {
     // file, thus actually violating the ASCII plain text format.
     // We will escape the string anyway because current Xcode project files (ASCII property lists)
     // also escape their strings.
-    ascii.append(escapeStringForASCII(this.content));
+    appendASCIIText(ascii, this.content);
     ascii.append("\"");
   }
 
   @Override
-  protected void toASCIIGnuStep(StringBuilder ascii, int level) {
-    this.indent(ascii, level);
+  protected void toASCIIGnuStep(TextOutput ascii, int level) throws IOException {
+    ascii.indent(level);
     ascii.append("\"");
-    ascii.append(escapeStringForASCII(this.content));
+    appendASCIIText(ascii, this.content);
     ascii.append("\"");
   }
 
@@ -330,62 +305,147 @@ public class NSString extends NSObject {
     } else if (o instanceof NSString) {
       return this.getContent().compareTo(((NSString) o).getContent());
     } else {
-      return this.getClass().getName().compareTo(o.getClass().getName());
+      return compareTypes(this, o);
     }
   }
 
   /**
-   * Escapes a string for use in ASCII property lists.
+   * Appends a string to an ASCII property list, escaping quotes, backslashes, some control
+   * characters and all non-ASCII characters. Runs of characters that need no escaping are appended
+   * as a whole.
    *
+   * @param ascii The output onto which the escaped string is appended.
    * @param s The unescaped string.
-   * @return The escaped string.
+   * @throws IOException If an I/O error occurs while writing to the output.
    */
-  static String escapeStringForASCII(String s) {
-    StringBuilder out = new StringBuilder();
-    for (char c : s.toCharArray()) {
-      if (c > 127) {
-        // non-ASCII Unicode
-        out.append("\\U");
-        String hex = Integer.toHexString(c);
-        while (hex.length() < 4) hex = "0" + hex;
-        out.append(hex);
-      } else if (c == '\\') {
-        out.append("\\\\");
-      } else if (c == '\"') {
-        out.append("\\\"");
-      } else if (c == '\b') {
-        out.append("\\b");
-      } else if (c == '\n') {
-        out.append("\\n");
-      } else if (c == '\r') {
-        out.append("\\r");
-      } else if (c == '\t') {
-        out.append("\\t");
+  static void appendASCIIText(TextOutput ascii, String s) throws IOException {
+    int runStart = 0;
+    for (int i = 0; i < s.length(); i++) {
+      char c = s.charAt(i);
+      String escape;
+      switch (c) {
+        case '\\':
+          escape = "\\\\";
+          break;
+        case '"':
+          escape = "\\\"";
+          break;
+        case '\b':
+          escape = "\\b";
+          break;
+        case '\n':
+          escape = "\\n";
+          break;
+        case '\r':
+          escape = "\\r";
+          break;
+        case '\t':
+          escape = "\\t";
+          break;
+        default:
+          if (c <= 127) {
+            continue;
+          }
+          escape = null;
+      }
+
+      ascii.append(s, runStart, i);
+      if (escape != null) {
+        ascii.append(escape);
       } else {
-        out.append(c);
+        // non-ASCII Unicode
+        ascii.append("\\U").appendHex(c, 4);
       }
+      runStart = i + 1;
     }
-    return out.toString();
+    ascii.append(s, runStart, s.length());
   }
 
-  static String escapeStringForXml(String s) {
-    StringBuilder sb = new StringBuilder();
+  /**
+   * Appends a string as XML character data. Characters that are not allowed in XML documents are
+   * omitted. If the string contains markup characters it is wrapped in a CDATA section. The string
+   * is scanned once and, in the common case of plain text, appended as a whole.
+   *
+   * @param xml The output onto which the character data is appended.
+   * @param s The string.
+   * @throws IOException If an I/O error occurs while writing to the output.
+   */
+  static void appendXmlText(TextOutput xml, String s) throws IOException {
+    boolean markup = false;
+    boolean clean = true;
     for (int i = 0; i < s.length(); i++) {
-      int codePoint = s.codePointAt(i);
-      if (codePoint > 0xFFFF) {
+      char c = s.charAt(i);
+      int length = xmlCharLength(s, i);
+      if (length == 0) {
+        clean = false;
+      } else if (c == '&' || c == '<' || c == '>') {
+        // According to http://www.w3.org/TR/REC-xml/#syntax node values must not
+        // contain the characters < or &. Also the > character should be escaped.
+        markup = true;
+      } else if (length == 2) {
         i++;
       }
+    }
+
+    if (clean && !markup) {
+      xml.append(s);
+      return;
+    }
+
+    if (markup) {
+      xml.append("<![CDATA[");
+    }
+
+    // Copies runs of valid characters, skipping invalid ones and splitting the CDATA section
+    // wherever the content contains its terminator "]]>".
+    int runStart = 0;
+    char previous = 0, beforePrevious = 0;
+    for (int i = 0; i < s.length(); i++) {
+      char c = s.charAt(i);
+      int length = xmlCharLength(s, i);
+      if (length == 0) {
+        xml.append(s, runStart, i);
+        runStart = i + 1;
+        continue;
+      }
 
-      if ((codePoint == 0x9)
-          || (codePoint == 0xA)
-          || (codePoint == 0xD)
-          || ((codePoint >= 0x20) && (codePoint <= 0xD7FF))
-          || ((codePoint >= 0xE000) && (codePoint <= 0xFFFD))
-          || ((codePoint >= 0x10000) && (codePoint <= 0x10FFFF))) {
-        sb.appendCodePoint(codePoint);
+      if (markup && c == '>' && previous == ']' && beforePrevious == ']') {
+        xml.append(s, runStart, i);
+        xml.append("]]><![CDATA[");
+        runStart = i;
       }
+
+      i += length - 1;
+      beforePrevious = previous;
+      previous = s.charAt(i);
     }
+    xml.append(s, runStart, s.length());
 
-    return sb.toString();
+    if (markup) {
+      xml.append("]]>");
+    }
+  }
+
+  /**
+   * Determines whether the character at the specified index may occur in an XML document.
+   *
+   * @param s The string.
+   * @param i The index of the character.
+   * @return The number of chars that make up the valid character at the given index (2 for a
+   *     surrogate pair), or 0 if the character is not allowed in XML.
+   */
+  private static int xmlCharLength(String s, int i) {
+    char c = s.charAt(i);
+    if (c >= 0x20 && c <= 0xD7FF) {
+      return 1;
+    } else if (c == 0x9 || c == 0xA || c == 0xD || (c >= 0xE000 && c <= 0xFFFD)) {
+      return 1;
+    } else if (Character.isHighSurrogate(c)
+        && i + 1 < s.length()
+        && Character.isLowSurrogate(s.charAt(i + 1))) {
+      return 2;
+    } else {
+      return 0;
+    }
   }
 }
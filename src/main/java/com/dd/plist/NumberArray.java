@@ -0,0 +1,149 @@
+/*
+ * plist - An open source library to parse and generate property lists
+ * Copyright (C) 2026 Daniel Dreibrodt
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.dd.plist;
+
+/**
+ * Immutable storage for the elements of an array that only contains numbers of a single type.
+ * Integers are stored in a <code>long[]</code>, real numbers in a <code>double[]</code> and boolean
+ * values as bits of a <code>long[]</code>. The {@link NSNumber} objects are created on access.
+ *
+ * @author Daniel Dreibrodt
+ */
+final class NumberArray {
+
+  private final int type;
+  private final int length;
+  private final long[] longs;
+  private final double[] doubles;
+
+  private NumberArray(int type, int length, long[] longs, double[] doubles) {
+    this.type = type;
+    this.length = length;
+    this.longs = longs;
+    this.doubles = doubles;
+  }
+
+  /**
+   * Stores the specified numbers as primitive values.
+   *
+   * @param elements The elements of an array.
+   * @return The primitive storage for the numbers, or <code>null</code> if the array is empty or
+   *     contains other objects than numbers of a single type.
+   */
+  static NumberArray of(NSObject[] elements) {
+    if (elements.length == 0 || !(elements[0] instanceof NSNumber)) {
+      return null;
+    }
+
+    int type = ((NSNumber) elements[0]).type();
+    NumberArray numbers;
+    switch (type) {
+      case NSNumber.INTEGER:
+        numbers = new NumberArray(type, elements.length, new long[elements.length], null);
+        break;
+      case NSNumber.REAL:
+        numbers = new NumberArray(type, elements.length, null, new double[elements.length]);
+        break;
+      case NSNumber.BOOLEAN:
+        numbers =
+            new NumberArray(type, elements.length, new long[(elements.length + 63) >>> 6], null);
+        break;
+      default:
+        return null;
+    }
+
+    for (int i = 0; i < elements.length; i++) {
+      NSObject element = elements[i];
+      if (element == null
+          || element.getClass() != NSNumber.class
+          || ((NSNumber) element).type() != type) {
+        return null;
+      }
+
+      NSNumber number = (NSNumber) element;
+      switch (type) {
+        case NSNumber.INTEGER:
+          numbers.longs[i] = number.longValue();
+          break;
+        case NSNumber.REAL:
+          numbers.doubles[i] = number.doubleValue();
+          break;
+        default:
+          if (number.boolValue()) {
+            numbers.longs[i >>> 6] |= 1L << i;
+          }
+          break;
+      }
+
+      // Only store numbers that can be restored without changing their value
+      if (!number.equals(numbers.get(i))) {
+        return null;
+      }
+    }
+    return numbers;
+  }
+
+  /**
+   * Gets the number of elements.
+   *
+   * @return The number of elements.
+   */
+  int length() {
+    return this.length;
+  }
+
+  /**
+   * Creates a number object for an element.
+   *
+   * @param i The index of the element.
+   * @return A number object with the value of the element, which may be a shared instance.
+   * @throws ArrayIndexOutOfBoundsException If the index is out of bounds.
+   */
+  NSNumber get(int i) {
+    if (i < 0 || i >= this.length) {
+      throw new ArrayIndexOutOfBoundsException(i);
+    }
+
+    switch (this.type) {
+      case NSNumber.INTEGER:
+        return NSNumber.valueOf(this.longs[i]);
+      case NSNumber.REAL:
+        return NSNumber.parsedReal(this.doubles[i]);
+      default:
+        return NSNumber.valueOf((this.longs[i >>> 6] & (1L << i)) != 0);
+    }
+  }
+
+  /**
+   * Creates number objects for all elements.
+   *
+   * @return An array containing number objects with the values of the elements.
+   */
+  NSObject[] toArray() {
+    NSObject[] array = new NSObject[this.length];
+    for (int i = 0; i < this.length; i++) {
+      array[i] = this.get(i);
+    }
+    return array;
+  }
+}
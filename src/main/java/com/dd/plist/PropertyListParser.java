@@ -23,17 +23,19 @@
 package com.dd.plist;
 
 import java.io.BufferedInputStream;
-import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
-import java.nio.charset.Charset;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.SeekableByteChannel;
 import java.nio.file.FileSystems;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.text.ParseException;
+import java.util.Arrays;
 import java.util.Objects;
 import javax.xml.parsers.ParserConfigurationException;
 import org.xml.sax.SAXException;
@@ -51,95 +53,144 @@ public class PropertyListParser {
   private static final int TYPE_ASCII = 2;
   private static final int TYPE_ERROR_BLANK = 10;
   private static final int TYPE_ERROR_UNKNOWN = 11;
+  private static final int TYPE_UNDETERMINED = 12;
+
+  /** The length of the longest Byte Order Mark. */
+  private static final int MAX_BOM_LENGTH = 4;
+
+  private static final byte[] BINARY_MAGIC = {'b', 'p', 'l', 'i', 's', 't'};
 
   private static final int READ_BUFFER_LENGTH = 4096;
 
+  /** The maximum number of bytes that are read from a file at once. */
+  private static final int FILE_READ_CHUNK_LENGTH = 1 << 20;
+
+  /** The maximum length of an array, some virtual machines reserve a few header words. */
+  private static final int MAX_ARRAY_LENGTH = Integer.MAX_VALUE - 8;
+
   /** Prevent instantiation. */
   protected PropertyListParser() {
     /* empty */
   }
 
   /**
-   * Determines the property list type by means of the first bytes of its data.
+   * Determines the property list type by means of the first bytes of its data. The data between the
+   * position and the limit of the buffer is inspected in place, the position is not changed.
    *
-   * @param dataBeginning The very first bytes of data of the property list (minus any whitespace)
-   *     as a string.
+   * @param data The beginning of the property list data.
+   * @param complete Whether the buffer contains all of the property list data. Otherwise, {@link
+   *     #TYPE_UNDETERMINED} is returned if the type cannot be determined without more data.
    * @return The type of the property list.
    */
-  private static int determineType(String dataBeginning) {
-    dataBeginning = dataBeginning.trim();
-    if (dataBeginning.length() == 0) {
-      return TYPE_ERROR_BLANK;
+  private static int determineType(ByteBuffer data, boolean complete) {
+    int index = data.position();
+    int end = data.limit();
+    if (!complete && end - index < MAX_BOM_LENGTH) {
+      return TYPE_UNDETERMINED;
     }
 
-    if (dataBeginning.startsWith("bplist")) {
-      return TYPE_BINARY;
+    // Skip the byte order mark, which also determines the size and byte order of the code units
+    ByteOrderMarkReader bomReader = new ByteOrderMarkReader();
+    for (int i = index; i < end && i < index + MAX_BOM_LENGTH; i++) {
+      if (!bomReader.readByte(data.get(i) & 0xFF)) {
+        break;
+      }
     }
 
-    if (dataBeginning.startsWith("(")
-        || dataBeginning.startsWith("{")
-        || dataBeginning.startsWith("/")) {
-      return TYPE_ASCII;
+    String charset = bomReader.getDetectedCharset();
+    int unitLength = 1;
+    if (charset != null && charset.startsWith("UTF-16")) {
+      unitLength = 2;
+    } else if (charset != null && charset.startsWith("UTF-32")) {
+      unitLength = 4;
+    }
+    boolean littleEndian = charset != null && charset.endsWith("LE");
+    index += bomReader.getDetectedLength();
+
+    // Skip whitespace, along with all other control characters, so that the zero bytes of property
+    // lists that are encoded in UTF-16 or UTF-32 without a byte order mark are skipped as well
+    int c = -1;
+    for (; index + unitLength <= end; index += unitLength) {
+      c = codeUnit(data, index, unitLength, littleEndian);
+      if (c < 0 || c > ' ') {
+        break;
+      }
     }
 
-    if (dataBeginning.startsWith("<")) {
-      return TYPE_XML;
+    if (index + unitLength > end) {
+      return complete ? TYPE_ERROR_BLANK : TYPE_UNDETERMINED;
+    }
+
+    switch (c) {
+      case '(':
+      case '{':
+      case '/':
+        return TYPE_ASCII;
+      case '<':
+        return TYPE_XML;
+      case 'b':
+        if (end - index < BINARY_MAGIC.length) {
+          return complete ? TYPE_ERROR_UNKNOWN : TYPE_UNDETERMINED;
+        }
+
+        for (int i = 0; i < BINARY_MAGIC.length; i++) {
+          if (data.get(index + i) != BINARY_MAGIC[i]) {
+            return TYPE_ERROR_UNKNOWN;
+          }
+        }
+        return TYPE_BINARY;
+      default:
+        return TYPE_ERROR_UNKNOWN;
     }
-    return TYPE_ERROR_UNKNOWN;
   }
 
   /**
-   * Determines the property list type by means of the first bytes of its data.
+   * Reads a code unit of the given length from a buffer.
    *
-   * @param is An input stream pointing to the beginning of the property list data. If the stream
-   *     supports marking it will be reset to the beginning of the property list data after the type
-   *     has been determined.
-   * @param offset The number of bytes to skip in the stream.
-   * @return The type of the property list.
+   * @param data The buffer.
+   * @param index The index of the first byte of the code unit.
+   * @param length The length of the code unit in bytes.
+   * @param littleEndian Whether the least significant byte comes first.
+   * @return The code unit.
    */
-  private static int determineType(InputStream is, int offset) throws IOException {
-    int index = offset;
-    int readLimit = index + 1024;
-    if (is.markSupported()) {
-      is.mark(readLimit);
+  private static int codeUnit(ByteBuffer data, int index, int length, boolean littleEndian) {
+    int unit = 0;
+    for (int i = 0; i < length; i++) {
+      unit = (unit << 8) | (data.get(littleEndian ? index + length - 1 - i : index + i) & 0xFF);
     }
+    return unit;
+  }
 
-    is.skip(offset);
-    int b;
-    ByteOrderMarkReader bomReader = new ByteOrderMarkReader();
-    boolean bom = true;
-    // Skip any possible whitespace at the beginning of the file
-    do {
-      if (++index > readLimit) {
-        is.reset();
-        return determineType(is, readLimit);
+  /**
+   * Determines the property list type by means of the first bytes of its data.
+   *
+   * @param is An input stream pointing to the beginning of the property list data. The stream must
+   *     support marking, it is reset to the beginning of the property list data after the type has
+   *     been determined.
+   * @return The type of the property list.
+   * @throws IOException If an I/O error occurs while reading from the input stream.
+   */
+  private static int determineType(InputStream is) throws IOException {
+    // The property list may begin with any amount of whitespace, so the mark must not expire
+    is.mark(Integer.MAX_VALUE);
+    byte[] head = new byte[64];
+    int length = 0;
+    int type = TYPE_UNDETERMINED;
+    while (type == TYPE_UNDETERMINED) {
+      if (length == head.length) {
+        head = Arrays.copyOf(head, length * 2);
       }
-      b = is.read();
-      // Check if we are reading the Unicode byte order mark (BOM) and skip it
-      bom &= bomReader.readByte(b);
-    } while (b != -1 && (b == ' ' || b == '\t' || b == '\r' || b == '\n' || b == '\f' || bom));
 
-    if (b == -1) {
-      return TYPE_ERROR_BLANK;
-    }
-
-    String charset = bomReader.getDetectedCharset();
-    if (charset == null) {
-      charset = "UTF-8";
-    }
-
-    byte[] magicBytes = new byte[8];
-    magicBytes[0] = (byte) b;
-    int read = is.read(magicBytes, 1, 7);
-    if (read == -1) {
-      return TYPE_ERROR_UNKNOWN;
-    }
-
-    int type = determineType(new String(magicBytes, 0, read, Charset.forName(charset)));
-    if (is.markSupported()) {
-      is.reset();
+      int read = is.read(head, length, head.length - length);
+      if (read < 0) {
+        type = determineType(ByteBuffer.wrap(head, 0, length), true);
+      } else {
+        length += read;
+        type = determineType(ByteBuffer.wrap(head, 0, length), false);
+      }
     }
 
+    is.reset();
     return type;
   }
 
@@ -163,6 +214,53 @@ public class PropertyListParser {
     return outputStream.toByteArray();
   }
 
+  /**
+   * Reads all bytes from a file. The array is allocated once with the size of the file and filled
+   * by reading large chunks directly from the file. If the size of the file is not known in advance
+   * or the file grows while it is read, the remaining bytes are read as from an input stream.
+   *
+   * @param path The path to the file.
+   * @return An array containing all bytes of the file.
+   * @throws java.io.IOException If an I/O error occurs while reading from the file or the file is
+   *     too large to be stored in an array.
+   */
+  static byte[] readAll(Path path) throws IOException {
+    try (SeekableByteChannel channel = Files.newByteChannel(path)) {
+      long size = channel.size();
+      if (size > MAX_ARRAY_LENGTH) {
+        throw new IOException("The file " + path + " is too large to be read into memory.");
+      }
+
+      byte[] bytes = new byte[(int) size];
+      int length = 0;
+      while (length < bytes.length) {
+        int chunkLength = Math.min(FILE_READ_CHUNK_LENGTH, bytes.length - length);
+        int read = channel.read(ByteBuffer.wrap(bytes, length, chunkLength));
+        if (read < 0) {
+          // The file was truncated while it was read
+          return Arrays.copyOf(bytes, length);
+        }
+        length += read;
+      }
+
+      InputStream in = Channels.newInputStream(channel);
+      int next = in.read();
+      if (next < 0) {
+        return bytes;
+      }
+
+      byte[] rest = readAll(in);
+      if (rest.length >= MAX_ARRAY_LENGTH - length) {
+        throw new IOException("The file " + path + " is too large to be read into memory.");
+      }
+
+      byte[] all = Arrays.copyOf(bytes, length + 1 + rest.length);
+      all[length] = (byte) next;
+      System.arraycopy(rest, 0, all, length + 1, rest.length);
+      return all;
+    }
+  }
+
   /**
    * Parses a property list from a file.
    *
@@ -229,9 +327,7 @@ public class PropertyListParser {
           ParseException,
           ParserConfigurationException,
           SAXException {
-    try (InputStream fileInputStream = Files.newInputStream(path)) {
-      return parse(fileInputStream);
-    }
+    return parse(readAll(path));
   }
 
   /**
@@ -254,7 +350,115 @@ public class PropertyListParser {
           ParseException,
           ParserConfigurationException,
           SAXException {
-    return parse(new ByteArrayInputStream(bytes));
+    return parse(bytes, 0, bytes.length);
+  }
+
+  /**
+   * Parses a property list from a byte array, sharing equal dictionary keys, strings, numbers,
+   * dates and UIDs through a canonicalization table. Use a new table to share them within a single
+   * property list, or the same table for many parses to also share them among the property lists.
+   * Shared values are frozen and have no location information.
+   *
+   * @param bytes The property list data as a byte array.
+   * @param table The table of canonical keys and values.
+   * @return The root object in the property list. This is usually a {@link NSDictionary} but can
+   *     also be a {@link NSArray}.
+   * @throws javax.xml.parsers.ParserConfigurationException If a document builder for parsing an XML
+   *     property list could not be created. This should not occur.
+   * @throws java.io.IOException If any I/O error occurs while reading the byte array.
+   * @throws org.xml.sax.SAXException If any parse error occurs.
+   * @throws com.dd.plist.PropertyListFormatException If the given property list has an invalid
+   *     format.
+   * @throws java.text.ParseException If the given property list has an invalid format.
+   * @see CanonicalizationTable
+   */
+  public static NSObject parse(byte[] bytes, CanonicalizationTable table)
+      throws IOException,
+          PropertyListFormatException,
+          ParseException,
+          ParserConfigurationException,
+          SAXException {
+    Objects.requireNonNull(table, "The specified canonicalization table is null");
+    return parse(ByteBuffer.wrap(bytes), table);
+  }
+
+  /**
+   * Parses a property list from a part of a byte array. The property list is parsed in place, so
+   * that a property list embedded in a larger array does not need to be copied.
+   *
+   * @param bytes The array containing the property list data.
+   * @param offset The index of the first byte of the property list.
+   * @param length The length of the property list.
+   * @return The root object in the property list. This is usually a {@link NSDictionary} but can
+   *     also be a {@link NSArray}.
+   * @throws javax.xml.parsers.ParserConfigurationException If a document builder for parsing an XML
+   *     property list could not be created. This should not occur.
+   * @throws java.io.IOException If any I/O error occurs while reading the byte array.
+   * @throws org.xml.sax.SAXException If any parse error occurs.
+   * @throws com.dd.plist.PropertyListFormatException If the given property list has an invalid
+   *     format.
+   * @throws java.text.ParseException If the given property list has an invalid format.
+   */
+  public static NSObject parse(byte[] bytes, int offset, int length)
+      throws IOException,
+          PropertyListFormatException,
+          ParseException,
+          ParserConfigurationException,
+          SAXException {
+    return parse(ByteBuffer.wrap(bytes, offset, length));
+  }
+
+  /**
+   * Parses a property list from the data between the position and the limit of a byte buffer. The
+   * format is detected by inspecting the first bytes in place, and the data is passed to the parser
+   * of the detected format without being copied. Thus, property lists embedded in larger buffers,
+   * for example in archives or network frames, can be parsed in place. Only binary property lists
+   * in buffers that are not backed by an array, such as direct buffers, are copied, as the binary
+   * parser needs random access to an array. The position of the buffer is not changed.
+   *
+   * @param buffer The buffer containing the property list data.
+   * @return The root object in the property list. This is usually a {@link NSDictionary} but can
+   *     also be a {@link NSArray}.
+   * @throws javax.xml.parsers.ParserConfigurationException If a document builder for parsing an XML
+   *     property list could not be created. This should not occur.
+   * @throws java.io.IOException If any I/O error occurs while reading the buffer.
+   * @throws org.xml.sax.SAXException If any parse error occurs.
+   * @throws com.dd.plist.PropertyListFormatException If the given property list has an invalid
+   *     format.
+   * @throws java.text.ParseException If the given property list has an invalid format.
+   */
+  public static NSObject parse(ByteBuffer buffer)
+      throws IOException,
+          PropertyListFormatException,
+          ParseException,
+          ParserConfigurationException,
+          SAXException {
+    Objects.requireNonNull(buffer, "The specified buffer is null");
+    return parse(buffer, null);
+  }
+
+  private static NSObject parse(ByteBuffer buffer, CanonicalizationTable table)
+      throws IOException,
+          PropertyListFormatException,
+          ParseException,
+          ParserConfigurationException,
+          SAXException {
+    switch (determineType(buffer, true)) {
+      case TYPE_BINARY:
+        return BinaryPropertyListParser.parse(buffer, table);
+      case TYPE_XML:
+        InputStream is = new ByteBufferInputStream(buffer);
+        return table != null
+            ? XMLPropertyListParser.parse(is, table)
+            : XMLPropertyListParser.parse(is);
+      case TYPE_ASCII:
+        return ASCIIPropertyListParser.parse(buffer, table);
+      case TYPE_ERROR_BLANK:
+        return null;
+      default:
+        throw new PropertyListFormatException(
+            "The given data is not a property list of a supported format.");
+    }
   }
 
   /**
@@ -282,7 +486,7 @@ public class PropertyListParser {
       is = new BufferedInputStream(is);
     }
 
-    switch (determineType(is, 0)) {
+    switch (determineType(is)) {
       case TYPE_BINARY:
         return BinaryPropertyListParser.parse(is);
       case TYPE_XML:
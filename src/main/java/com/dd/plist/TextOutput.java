@@ -0,0 +1,290 @@
+/*
+ * plist - An open source library to parse and generate property lists
+ * Copyright (C) 2026 Daniel Dreibrodt
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.dd.plist;
+
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * Character sink used when generating textual property lists. The output is either collected in a
+ * {@link StringBuilder} or written to a {@link Writer} through a fixed-size buffer, so that a
+ * property list can be streamed without ever holding the complete document in memory.
+ *
+ * <p>The output is either pretty-printed, with each nesting level indented by a tab character, or
+ * compact, in which case all indentation and line breaks are omitted.
+ *
+ * @author Daniel Dreibrodt
+ */
+final class TextOutput {
+
+  private static final int BUFFER_SIZE = 8192;
+
+  /** The lowercase hexadecimal digits. */
+  static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+  /** Precomputed indentation strings, the element at index i contains i indentation characters. */
+  private static final String[] INDENTS = new String[16];
+
+  static {
+    StringBuilder indent = new StringBuilder();
+    for (int i = 0; i < INDENTS.length; i++) {
+      INDENTS[i] = indent.toString();
+      indent.append(NSObject.INDENT);
+    }
+  }
+
+  private final StringBuilder builder;
+  private final Writer writer;
+  private final char[] buffer;
+  private final boolean compact;
+  private int position;
+  private long count, lineStart;
+
+  /**
+   * Creates a new pretty-printing text output that appends all generated characters to a string
+   * builder.
+   *
+   * @param builder The string builder.
+   */
+  TextOutput(StringBuilder builder) {
+    this(builder, false);
+  }
+
+  /**
+   * Creates a new text output that appends all generated characters to a string builder.
+   *
+   * @param builder The string builder.
+   * @param compact Whether indentation and line breaks should be omitted.
+   */
+  TextOutput(StringBuilder builder, boolean compact) {
+    this.builder = builder;
+    this.writer = null;
+    this.buffer = null;
+    this.compact = compact;
+  }
+
+  /**
+   * Creates a new pretty-printing text output that writes all generated characters to a writer. The
+   * characters are buffered internally, call {@link #flush()} once the output is complete.
+   *
+   * @param writer The writer.
+   */
+  TextOutput(Writer writer) {
+    this(writer, false);
+  }
+
+  /**
+   * Creates a new text output that writes all generated characters to a writer. The characters are
+   * buffered internally, call {@link #flush()} once the output is complete.
+   *
+   * @param writer The writer.
+   * @param compact Whether indentation and line breaks should be omitted.
+   */
+  TextOutput(Writer writer, boolean compact) {
+    this.builder = null;
+    this.writer = writer;
+    this.buffer = new char[BUFFER_SIZE];
+    this.compact = compact;
+  }
+
+  /**
+   * Appends a single character.
+   *
+   * @param c The character.
+   * @return This instance.
+   * @throws IOException If the underlying writer throws an exception.
+   */
+  TextOutput append(char c) throws IOException {
+    this.count++;
+    if (this.builder != null) {
+      this.builder.append(c);
+    } else {
+      if (this.position == BUFFER_SIZE) {
+        this.flushBuffer();
+      }
+      this.buffer[this.position++] = c;
+    }
+    return this;
+  }
+
+  /**
+   * Appends a string.
+   *
+   * @param s The string.
+   * @return This instance.
+   * @throws IOException If the underlying writer throws an exception.
+   */
+  TextOutput append(String s) throws IOException {
+    return this.append(s, 0, s.length());
+  }
+
+  /**
+   * Appends a part of a string.
+   *
+   * @param s The string.
+   * @param start The index of the first character to append.
+   * @param end The index after the last character to append.
+   * @return This instance.
+   * @throws IOException If the underlying writer throws an exception.
+   */
+  TextOutput append(String s, int start, int end) throws IOException {
+    this.count += end - start;
+    if (this.builder != null) {
+      this.builder.append(s, start, end);
+      return this;
+    }
+
+    while (start < end) {
+      if (this.position == BUFFER_SIZE) {
+        this.flushBuffer();
+      }
+      int chunk = Math.min(end - start, BUFFER_SIZE - this.position);
+      s.getChars(start, start + chunk, this.buffer, this.position);
+      this.position += chunk;
+      start += chunk;
+    }
+    return this;
+  }
+
+  /**
+   * Appends characters from an array.
+   *
+   * @param chars The character array.
+   * @param offset The index of the first character to append.
+   * @param length The number of characters to append.
+   * @return This instance.
+   * @throws IOException If the underlying writer throws an exception.
+   */
+  TextOutput append(char[] chars, int offset, int length) throws IOException {
+    this.count += length;
+    if (this.builder != null) {
+      this.builder.append(chars, offset, length);
+      return this;
+    }
+
+    if (length > BUFFER_SIZE - this.position) {
+      this.flushBuffer();
+      if (length > BUFFER_SIZE) {
+        this.writer.write(chars, offset, length);
+        return this;
+      }
+    }
+    System.arraycopy(chars, offset, this.buffer, this.position, length);
+    this.position += length;
+    return this;
+  }
+
+  /**
+   * Appends the decimal representation of a long integer.
+   *
+   * @param l The number.
+   * @return This instance.
+   * @throws IOException If the underlying writer throws an exception.
+   */
+  TextOutput append(long l) throws IOException {
+    return this.append(String.valueOf(l));
+  }
+
+  /**
+   * Appends the lowercase hexadecimal representation of a number, padded with leading zeros.
+   *
+   * @param value The number.
+   * @param digits The number of digits to append. Higher digits of the number are omitted.
+   * @return This instance.
+   * @throws IOException If the underlying writer throws an exception.
+   */
+  TextOutput appendHex(int value, int digits) throws IOException {
+    for (int shift = (digits - 1) * 4; shift >= 0; shift -= 4) {
+      this.append(HEX_DIGITS[(value >>> shift) & 0xF]);
+    }
+    return this;
+  }
+
+  /**
+   * Appends a line break. In compact mode, nothing is appended.
+   *
+   * @return This instance.
+   * @throws IOException If the underlying writer throws an exception.
+   */
+  TextOutput newline() throws IOException {
+    if (!this.compact) {
+      this.append(NSObject.NEWLINE);
+      this.lineStart = this.count;
+    }
+    return this;
+  }
+
+  /**
+   * Appends the indentation for the specified nesting level. In compact mode, nothing is appended.
+   *
+   * @param level The level of indentation.
+   * @return This instance.
+   * @throws IOException If the underlying writer throws an exception.
+   */
+  TextOutput indent(int level) throws IOException {
+    if (this.compact) {
+      return this;
+    }
+
+    int deepest = INDENTS.length - 1;
+    for (; level > deepest; level -= deepest) {
+      this.append(INDENTS[deepest]);
+    }
+    return this.append(INDENTS[level]);
+  }
+
+  /**
+   * Gets a value indicating whether indentation and line breaks are omitted.
+   *
+   * @return Whether this output is compact.
+   */
+  boolean isCompact() {
+    return this.compact;
+  }
+
+  /**
+   * Gets the number of characters that were appended since the last line break.
+   *
+   * @return The current column.
+   */
+  int column() {
+    return (int) (this.count - this.lineStart);
+  }
+
+  /**
+   * Writes all buffered characters to the underlying writer and flushes it.
+   *
+   * @throws IOException If the underlying writer throws an exception.
+   */
+  void flush() throws IOException {
+    if (this.writer != null) {
+      this.flushBuffer();
+      this.writer.flush();
+    }
+  }
+
+  private void flushBuffer() throws IOException {
+    this.writer.write(this.buffer, 0, this.position);
+    this.position = 0;
+  }
+}
@@ -24,6 +24,7 @@ package com.dd.plist;
 
 import java.io.IOException;
 import java.math.BigInteger;
+import java.util.Arrays;
 import java.util.Objects;
 
 /**
@@ -33,7 +34,12 @@ import java.util.Objects;
  * @author Daniel Dreibrodt
  */
 public class UID extends NSObject {
-  private final BigInteger uid;
+  /** The value of this UID if it is less than 2<sup>63</sup>, otherwise 0. */
+  private final long value;
+
+  /** The value of this UID if it is not less than 2<sup>63</sup>, otherwise null. */
+  private final BigInteger bigValue;
+
   private final String name;
 
   /**
@@ -46,14 +52,22 @@ public class UID extends NSObject {
    */
   public UID(String name, BigInteger value) {
     this.name = name;
-    this.uid = Objects.requireNonNull(value);
-    if (this.uid.bitLength() > 128) {
+    Objects.requireNonNull(value);
+    if (value.bitLength() > 128) {
       throw new IllegalArgumentException(
           "The specified UID exceeds the maximum length of 128-bit.");
     }
-    if (this.uid.signum() < 0) {
+    if (value.signum() < 0) {
       throw new IllegalArgumentException("The specified value is negative.");
     }
+
+    if (value.bitLength() < Long.SIZE) {
+      this.value = value.longValue();
+      this.bigValue = null;
+    } else {
+      this.value = 0;
+      this.bigValue = value;
+    }
   }
 
   /**
@@ -66,7 +80,46 @@ public class UID extends NSObject {
    *     (leading zero bytes are ignored).
    */
   public UID(String name, byte[] bytes) {
-    this(name, new BigInteger(1, Objects.requireNonNull(bytes)));
+    this(name, bytes, 0, Objects.requireNonNull(bytes).length);
+  }
+
+  /**
+   * Creates a new UID instance from a range of an array, e.g. the buffer of the binary property
+   * list parser.
+   *
+   * @param name The UID name.
+   * @param bytes The array containing the big-endian UID value.
+   * @param start The index of the first byte of the value.
+   * @param end The index after the last byte of the value.
+   * @throws IllegalArgumentException If the value has a length of more than 128-bit.
+   */
+  UID(String name, byte[] bytes, int start, int end) {
+    while (start < end && bytes[start] == 0) {
+      start++;
+    }
+
+    if (end - start < 8 || (end - start == 8 && bytes[start] >= 0)) {
+      long value = 0;
+      for (int i = start; i < end; i++) {
+        value = (value << 8) | (bytes[i] & 0xFF);
+      }
+      this.name = name;
+      this.value = value;
+      this.bigValue = null;
+    } else if (end - start > 16) {
+      throw new IllegalArgumentException(
+          "The specified UID exceeds the maximum length of 128-bit.");
+    } else {
+      this.name = name;
+      this.value = 0;
+      this.bigValue = new BigInteger(1, Arrays.copyOfRange(bytes, start, end));
+    }
+  }
+
+  private UID(String name, long value, BigInteger bigValue) {
+    this.name = name;
+    this.value = value;
+    this.bigValue = bigValue;
   }
 
   /**
@@ -75,7 +128,18 @@ public class UID extends NSObject {
    * @return The UID's value in big-endian representation, encoded on 1, 2, 4, 8 or 16 bytes.
    */
   public byte[] getBytes() {
-    byte[] data = this.uid.toByteArray();
+    if (this.bigValue == null) {
+      // Same length as the two's complement representation, padded to 1, 2, 4 or 8 bytes
+      int length = (Long.SIZE - Long.numberOfLeadingZeros(this.value)) / 8 + 1;
+      length = length == 3 ? 4 : length > 4 ? 8 : length;
+      byte[] data = new byte[length];
+      for (int i = 0; i < length; i++) {
+        data[length - 1 - i] = (byte) (this.value >>> (8 * i));
+      }
+      return data;
+    }
+
+    byte[] data = this.bigValue.toByteArray();
     if (data.length == 3) {
       byte[] paddedData = new byte[4];
       System.arraycopy(data, 0, paddedData, 1, 3);
@@ -104,7 +168,7 @@ public class UID extends NSObject {
 
   @Override
   public UID clone() {
-    return new UID(this.name, this.uid.toByteArray());
+    return new UID(this.name, this.value, this.bigValue);
   }
 
   @Override
@@ -118,13 +182,14 @@ public class UID extends NSObject {
    * <p>Typically, it is represented in XML as a dictionary with only one entry, where the key is
    * "CF$UID" and the value is the integer representation of the UID.
    *
-   * @param xml The XML StringBuilder
+   * @param xml The XML output
    * @param level The indentation level
    */
   @Override
-  void toXML(StringBuilder xml, int level) {
+  void toXML(TextOutput xml, int level) throws IOException {
     NSDictionary uidDict = new NSDictionary();
-    uidDict.put("CF$UID", new NSNumber(this.uid.longValue()));
+    uidDict.put(
+        "CF$UID", new NSNumber(this.bigValue == null ? this.value : this.bigValue.longValue()));
     uidDict.toXML(xml, level);
   }
 
@@ -136,13 +201,13 @@ public class UID extends NSObject {
   }
 
   @Override
-  protected void toASCII(StringBuilder ascii, int level) {
-    new NSString(this.uid.toString(16)).toASCII(ascii, level);
+  protected void toASCII(TextOutput ascii, int level) throws IOException {
+    new NSString(this.toHexString()).toASCII(ascii, level);
   }
 
   @Override
-  protected void toASCIIGnuStep(StringBuilder ascii, int level) {
-    new NSString(this.uid.toString(16)).toASCIIGnuStep(ascii, level);
+  protected void toASCIIGnuStep(TextOutput ascii, int level) throws IOException {
+    new NSString(this.toHexString()).toASCIIGnuStep(ascii, level);
   }
 
   @Override
@@ -152,7 +217,10 @@ public class UID extends NSObject {
       return 0;
     } else if (o instanceof UID) {
       UID other = (UID) o;
-      int diff = this.uid.compareTo(other.uid);
+      int diff =
+          this.bigValue == null && other.bigValue == null
+              ? Long.compare(this.value, other.value)
+              : this.toBigInteger().compareTo(other.toBigInteger());
       if (diff == 0) {
         if (this.name == null) {
           return other.name != null ? 1 : 0;
@@ -165,7 +233,7 @@ public class UID extends NSObject {
 
       return diff;
     } else {
-      return this.getClass().getName().compareTo(o.getClass().getName());
+      return compareTypes(this, o);
     }
   }
 
@@ -174,18 +242,30 @@ public class UID extends NSObject {
     if (this == o) return true;
     if (o == null || this.getClass() != o.getClass()) return false;
     UID uid = (UID) o;
-    return this.uid.equals(((UID) o).uid) && Objects.equals(this.name, uid.name);
+    return this.value == uid.value
+        && Objects.equals(this.bigValue, uid.bigValue)
+        && Objects.equals(this.name, uid.name);
   }
 
   @Override
   public int hashCode() {
     int result = Objects.hash(this.name);
-    result = 31 * result + this.uid.hashCode();
+    result =
+        31 * result
+            + (this.bigValue == null ? Long.hashCode(this.value) : this.bigValue.hashCode());
     return result;
   }
 
   @Override
   public String toString() {
-    return this.uid.toString(16) + (this.name != null ? " (" + this.name + ")" : "");
+    return this.toHexString() + (this.name != null ? " (" + this.name + ")" : "");
+  }
+
+  private BigInteger toBigInteger() {
+    return this.bigValue == null ? BigInteger.valueOf(this.value) : this.bigValue;
+  }
+
+  private String toHexString() {
+    return this.bigValue == null ? Long.toHexString(this.value) : this.bigValue.toString(16);
   }
 }
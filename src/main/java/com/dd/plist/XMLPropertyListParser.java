@@ -31,6 +31,7 @@ import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Objects;
 import javax.xml.XMLConstants;
 import javax.xml.parsers.*;
 import javax.xml.transform.Transformer;
@@ -284,6 +285,53 @@ public class XMLPropertyListParser {
     }
   }
 
+  /**
+   * Parses an XML property list from a byte array, sharing equal keys and values through a
+   * canonicalization table. Shared values are frozen and have no location information.
+   *
+   * @param bytes The byte array containing the property list's data.
+   * @param table The table of canonical keys and values, which may be shared with other parses.
+   * @return The root object of the property list. This is usually a {@link NSDictionary} but can
+   *     also be a {@link NSArray}.
+   * @throws javax.xml.parsers.ParserConfigurationException If a document builder for parsing an XML
+   *     property list could not be created. This should not occur.
+   * @throws java.io.IOException If any I/O error occurs while reading the file.
+   * @throws org.xml.sax.SAXException If any XML parsing error occurs.
+   * @throws com.dd.plist.PropertyListFormatException If the given property list has an invalid
+   *     format.
+   * @see CanonicalizationTable
+   */
+  public static NSObject parse(final byte[] bytes, CanonicalizationTable table)
+      throws ParserConfigurationException, SAXException, PropertyListFormatException, IOException {
+    try (InputStream inputStream = new ByteArrayInputStream(bytes)) {
+      return parse(inputStream, table);
+    }
+  }
+
+  /**
+   * Parses an XML property list from an input stream, sharing equal keys and values through a
+   * canonicalization table. Shared values are frozen and have no location information. This method
+   * does not close the specified input stream.
+   *
+   * @param is The input stream pointing to the property list's data.
+   * @param table The table of canonical keys and values, which may be shared with other parses.
+   * @return The root object of the property list. This is usually a {@link NSDictionary} but can
+   *     also be a {@link NSArray}.
+   * @throws javax.xml.parsers.ParserConfigurationException If a document builder for parsing an XML
+   *     property list could not be created. This should not occur.
+   * @throws java.io.IOException If any I/O error occurs while reading the file.
+   * @throws org.xml.sax.SAXException If any XML parsing error occurs.
+   * @throws com.dd.plist.PropertyListFormatException If the given property list has an invalid
+   *     format.
+   * @see CanonicalizationTable
+   */
+  public static NSObject parse(InputStream is, CanonicalizationTable table)
+      throws ParserConfigurationException, IOException, SAXException, PropertyListFormatException {
+    Objects.requireNonNull(table, "The specified canonicalization table is null");
+    InputStream filteredInputStream = new ByteOrderMarkFilterInputStream(is, false);
+    return parse(parseXml(new InputSource(filteredInputStream), false), table);
+  }
+
   /**
    * Parses an XML property list from an input stream. This method does not close the specified
    * input stream.
@@ -340,6 +388,11 @@ public class XMLPropertyListParser {
    *     format.
    */
   public static NSObject parse(Document doc) throws PropertyListFormatException, IOException {
+    return parse(doc, null);
+  }
+
+  private static NSObject parse(Document doc, CanonicalizationTable table)
+      throws PropertyListFormatException, IOException {
     DocumentType docType = doc.getDoctype();
     if (docType == null) {
       if (!doc.getDocumentElement().getNodeName().equals("plist")) {
@@ -370,7 +423,7 @@ public class XMLPropertyListParser {
       xpath = "";
     }
 
-    return parseObject(rootNode, xpath + "/" + rootNode.getNodeName(), 1);
+    return parseObject(rootNode, xpath + "/" + rootNode.getNodeName(), 1, table);
   }
 
   private static Document parseXml(InputSource inputSource, boolean withLineInformation)
@@ -420,10 +473,11 @@ public class XMLPropertyListParser {
    *
    * @param n The XML node.
    * @param depth The current nesting depth, used to guard against excessively nested structures.
+   * @param table The table of canonical keys and values, may be {@code null}.
    * @return The corresponding NSObject.
    * @throws PropertyListFormatException A parsing error occurred.
    */
-  private static NSObject parseObject(Node n, String xpath, int depth)
+  private static NSObject parseObject(Node n, String xpath, int depth, CanonicalizationTable table)
       throws PropertyListFormatException {
     if (depth > MAX_NESTING_DEPTH) {
       throw new PropertyListFormatException(
@@ -439,17 +493,20 @@ public class XMLPropertyListParser {
       switch (type) {
         case "dict":
           {
-            NSDictionary dict = new NSDictionary();
+            List<Node> children = filterElementNodes(n.getChildNodes());
+            NSDictionary dict = new NSDictionary(children.size() / 2);
             parsedObject = dict;
 
-            List<Node> children = filterElementNodes(n.getChildNodes());
             for (int i = 0; i < children.size(); i += 2) {
               Node key = children.get(i);
               String keyString = getNodeTextContents(key);
+              if (table != null) {
+                keyString = table.key(keyString);
+              }
 
               Node value = children.get(i + 1);
               String childPath = xpath + "/*[" + (1 + i + 1) + "]";
-              dict.put(keyString, parseObject(value, childPath, depth + 1));
+              dict.put(keyString, parseObject(value, childPath, depth + 1, table));
             }
 
             break;
@@ -462,7 +519,12 @@ public class XMLPropertyListParser {
 
             for (int i = 0; i < children.size(); i++) {
               String childPath = xpath + "/*[" + (i + 1) + "]";
-              array.setValue(i, parseObject(children.get(i), childPath, depth + 1));
+              array.setValue(i, parseObject(children.get(i), childPath, depth + 1, table));
+            }
+
+            // Keep the locations of the elements if line information was requested
+            if (!loc.hasLineInformation()) {
+              array.packNumbers();
             }
 
             break;
@@ -504,7 +566,10 @@ public class XMLPropertyListParser {
           ex);
     }
 
-    if (parsedObject != null) {
+    NSObject canonical = table != null ? table.canonicalize(parsedObject) : null;
+    if (canonical != null) {
+      return canonical;
+    } else if (parsedObject != null) {
       parsedObject.setLocationInformation(loc);
     }
 
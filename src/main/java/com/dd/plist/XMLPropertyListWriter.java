@@ -26,6 +26,7 @@ import java.io.File;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.io.OutputStreamWriter;
+import java.io.Writer;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
@@ -64,8 +65,21 @@ public class XMLPropertyListWriter {
    * @throws IOException If an error occurs during the writing process.
    */
   public static void write(NSObject root, Path path) throws IOException {
+    write(root, path, false);
+  }
+
+  /**
+   * Saves a property list with the given object as root into an XML file.
+   *
+   * @param root The root object.
+   * @param path The output file path.
+   * @param compact Whether the property list should be written without indentation and line breaks.
+   *     Otherwise, each nesting level is put on its own line and indented by a tab.
+   * @throws IOException If an error occurs during the writing process.
+   */
+  public static void write(NSObject root, Path path, boolean compact) throws IOException {
     try (OutputStream fileOutputStream = Files.newOutputStream(path)) {
-      write(root, fileOutputStream);
+      write(root, fileOutputStream, compact);
     }
   }
 
@@ -78,10 +92,55 @@ public class XMLPropertyListWriter {
    * @throws IOException If an error occurs during the writing process.
    */
   public static void write(NSObject root, OutputStream out) throws IOException {
+    write(root, out, false);
+  }
+
+  /**
+   * Saves a property list with the given object as root in XML format into an output stream. This
+   * method does not close the specified output stream.
+   *
+   * @param root The root object.
+   * @param out The output stream.
+   * @param compact Whether the property list should be written without indentation and line breaks.
+   *     Otherwise, each nesting level is put on its own line and indented by a tab.
+   * @throws IOException If an error occurs during the writing process.
+   */
+  public static void write(NSObject root, OutputStream out, boolean compact) throws IOException {
+    write(root, new OutputStreamWriter(out, StandardCharsets.UTF_8), compact);
+  }
+
+  /**
+   * Saves a property list with the given object as root in XML format into a writer. The property
+   * list is generated while the object tree is traversed, so that the complete document is never
+   * held in memory. This method does not close the specified writer.
+   *
+   * <p>The XML header declares the document to be UTF-8 encoded, so the writer should encode its
+   * output accordingly.
+   *
+   * @param root The root object.
+   * @param out The writer.
+   * @throws IOException If an error occurs during the writing process.
+   */
+  public static void write(NSObject root, Writer out) throws IOException {
+    write(root, out, false);
+  }
+
+  /**
+   * Saves a property list with the given object as root in XML format into a writer. This method
+   * does not close the specified writer.
+   *
+   * @param root The root object.
+   * @param out The writer.
+   * @param compact Whether the property list should be written without indentation and line breaks.
+   *     Otherwise, each nesting level is put on its own line and indented by a tab.
+   * @throws IOException If an error occurs during the writing process.
+   * @see #write(NSObject, Writer)
+   */
+  public static void write(NSObject root, Writer out, boolean compact) throws IOException {
     Objects.requireNonNull(root, "The root object is null.");
 
-    OutputStreamWriter w = new OutputStreamWriter(out, StandardCharsets.UTF_8);
-    w.write(root.toXMLPropertyList());
-    w.flush();
+    TextOutput xml = new TextOutput(out, compact);
+    root.toXMLPropertyList(xml);
+    xml.flush();
   }
 }
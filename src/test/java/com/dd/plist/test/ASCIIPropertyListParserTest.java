@@ -17,6 +17,9 @@ import com.dd.plist.NSObject;
 import com.dd.plist.NSString;
 import com.dd.plist.PropertyListParser;
 import java.io.File;
+import java.io.Reader;
+import java.io.StringReader;
+import java.nio.CharBuffer;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.text.ParseException;
@@ -254,6 +257,33 @@ public class ASCIIPropertyListParserTest {
     assertEquals("ǽ", dict.get("h").toString());
   }
 
+  @Test
+  public void parse_canHandleLongStringsWithEscapedCharacters() throws Exception {
+    StringBuilder expected = new StringBuilder();
+    StringBuilder escaped = new StringBuilder();
+    for (int i = 0; i < 1000; i++) {
+      expected.append("line ").append(i).append("\n\"\u00e9\t");
+      escaped.append("line ").append(i).append("\\n\\\"\\u00e9\\t");
+    }
+    String asciiPropertyList =
+        "{\na = \"" + escaped + "\";\nb = \"x\\\\y\";\nc = \"multi\nline\";\nd = \"\\101\";\n}";
+    NSDictionary dict = (NSDictionary) ASCIIPropertyListParser.parse(asciiPropertyList);
+    assertEquals(expected.toString(), dict.get("a").toString());
+    assertEquals("x\\y", dict.get("b").toString());
+    assertEquals("multi\nline", dict.get("c").toString());
+    assertEquals("A", dict.get("d").toString());
+    assertEquals(
+        6, ((ASCIILocationInformation) dict.get("d").getLocationInformation()).getLineNumber());
+  }
+
+  @Test
+  public void parse_reportsInvalidEscapeSequence() {
+    String asciiPropertyList = "{a = \"abc\\q\";}";
+    ParseException ex =
+        assertThrows(ParseException.class, () -> ASCIIPropertyListParser.parse(asciiPropertyList));
+    assertEquals(asciiPropertyList.indexOf('\\'), ex.getErrorOffset());
+  }
+
   @Test
   public void parse_canHandleIncompleteEscapeSequence() {
     String asciiPropertyList = "{\n" + "a = \"\\u123\";\n" + "}";
@@ -267,6 +297,111 @@ public class ASCIIPropertyListParserTest {
     assertEquals(asciiPropertyList.indexOf('\\'), ex.getErrorOffset());
   }
 
+  @Test
+  public void parse_terminatesUnquotedStringsAtDelimiters() throws Exception {
+    String asciiPropertyList =
+        "{a=b;c\t=\td-e.f/g;h // comment\n= (i,j\r\n,k) /* x */;\"l\"\n=m_n$o;}";
+    NSDictionary dict = (NSDictionary) ASCIIPropertyListParser.parse(asciiPropertyList);
+    assertEquals(4, dict.count());
+    assertEquals("b", dict.get("a").toString());
+    assertEquals("d-e.f/g", dict.get("c").toString());
+    NSArray array = (NSArray) dict.get("h");
+    assertEquals(3, array.count());
+    assertEquals("i", array.objectAtIndex(0).toString());
+    assertEquals("j", array.objectAtIndex(1).toString());
+    assertEquals("k", array.objectAtIndex(2).toString());
+    assertEquals("m_n$o", dict.get("l").toString());
+    assertEquals(
+        4, ((ASCIILocationInformation) dict.get("l").getLocationInformation()).getLineNumber());
+  }
+
+  @Test
+  public void parse_distinguishesDatesFromHyphenatedStrings() throws Exception {
+    String asciiPropertyList =
+        "{a = 2011-11-28T09:21:30Z; b = 2011-11-28; c = 1234-abcd-5678; d = \"2011-11-28T09:21:30Z\";"
+            + " e = \"2011-11-28T09:21:30X\"; f = 12;}";
+    NSDictionary dict = (NSDictionary) ASCIIPropertyListParser.parse(asciiPropertyList);
+    NSDate date = new NSDate("2011-11-28T09:21:30Z");
+    assertEquals(date, dict.get("a"));
+    assertEquals(new NSString("2011-11-28"), dict.get("b"));
+    assertEquals(new NSString("1234-abcd-5678"), dict.get("c"));
+    assertEquals(date, dict.get("d"));
+    assertEquals(new NSString("2011-11-28T09:21:30X"), dict.get("e"));
+    assertEquals(new NSString("12"), dict.get("f"));
+
+    assertThrows(ParseException.class, () -> ASCIIPropertyListParser.parse("(<*D2011-11>)"));
+  }
+
+  @Test
+  public void parse_canParseHexDataWithWhitespace() throws Exception {
+    NSArray array =
+        (NSArray) ASCIIPropertyListParser.parse("(<00 01\n\t0a\r\nFf >, <>, <0 a\u000Bb\fc>)");
+    assertArrayEquals(new byte[] {0, 1, 10, -1}, ((NSData) array.objectAtIndex(0)).bytes());
+    assertArrayEquals(new byte[0], ((NSData) array.objectAtIndex(1)).bytes());
+    assertArrayEquals(new byte[] {10, -68}, ((NSData) array.objectAtIndex(2)).bytes());
+
+    assertThrows(ParseException.class, () -> ASCIIPropertyListParser.parse("(<00 0g>)"));
+  }
+
+  @Test
+  public void parse_canParseFromReaderInSmallChunks() throws Exception {
+    String content =
+        new String(
+            Files.readAllBytes(new File("test-files/test1-ascii-gnustep.plist").toPath()),
+            StandardCharsets.UTF_8);
+    StringBuilder largeContent = new StringBuilder("(");
+    for (int i = 0; i < 100; i++) {
+      largeContent.append(content).append(',');
+    }
+    largeContent.append(content).append(')');
+
+    NSObject expected = ASCIIPropertyListParser.parse(largeContent.toString());
+    Reader reader =
+        new StringReader(largeContent.toString()) {
+          @Override
+          public int read(char[] buffer, int offset, int length) throws java.io.IOException {
+            return super.read(buffer, offset, Math.min(length, 7));
+          }
+        };
+    NSObject actual = ASCIIPropertyListParser.parse(reader);
+    assertEquals(expected, actual);
+    assertEquals(
+        ((NSArray) expected).toGnuStepASCIIPropertyList(),
+        ((NSArray) actual).toGnuStepASCIIPropertyList());
+
+    ASCIILocationInformation location =
+        (ASCIILocationInformation) ((NSArray) actual).objectAtIndex(100).getLocationInformation();
+    assertEquals(100 * (content.length() + 1) + 1, location.getOffset());
+  }
+
+  @Test
+  public void parse_canParseCharBufferInPlace() throws Exception {
+    char[] chars = "xx{a = (1, \"two\", <0fab>);}yy".toCharArray();
+    CharBuffer buffer = CharBuffer.wrap(chars, 2, chars.length - 4).slice();
+    NSDictionary dict = (NSDictionary) ASCIIPropertyListParser.parse(buffer);
+    assertEquals(ASCIIPropertyListParser.parse("{a = (1, \"two\", <0fab>);}"), dict);
+    assertEquals(
+        5, ((ASCIILocationInformation) dict.get("a").getLocationInformation()).getOffset());
+    assertEquals(dict, ASCIIPropertyListParser.parse(new StringBuilder(buffer)));
+  }
+
+  @Test
+  public void parse_reportsErrorPositionAfterBufferRefill() {
+    StringBuilder padding = new StringBuilder();
+    for (int i = 0; i < 20000; i++) {
+      padding.append(' ');
+    }
+    String asciiPropertyList = "{\n" + padding + "a = \"\\u123\";\n" + "}";
+
+    ParseException ex =
+        assertThrows(
+            ParseException.class,
+            () -> ASCIIPropertyListParser.parse(new StringReader(asciiPropertyList)));
+    assertEquals(asciiPropertyList.indexOf('\\'), ex.getErrorOffset());
+    assertThrows(
+        ParseException.class, () -> ASCIIPropertyListParser.parse(new StringReader("{a = \"abc")));
+  }
+
   private void testAsciiUnicode(String filename) throws Exception {
     // contains BOM, encoding shall be automatically detected
     NSDictionary dict =
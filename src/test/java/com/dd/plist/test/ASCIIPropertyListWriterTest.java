@@ -1,12 +1,27 @@
 package com.dd.plist.test;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
+import com.dd.plist.ASCIILocationInformation;
+import com.dd.plist.ASCIIPropertyListParser;
 import com.dd.plist.ASCIIPropertyListWriter;
+import com.dd.plist.NSArray;
+import com.dd.plist.NSData;
+import com.dd.plist.NSDate;
 import com.dd.plist.NSDictionary;
+import com.dd.plist.NSNumber;
 import com.dd.plist.NSObject;
+import com.dd.plist.NSString;
 import com.dd.plist.PropertyListParser;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Date;
 import org.junit.jupiter.api.Test;
 
 /**
@@ -40,4 +55,163 @@ public class ASCIIPropertyListWriterTest {
     NSObject y = PropertyListParser.parse(out);
     assertEquals(x, y);
   }
+
+  @Test
+  public void write_canWriteCompactFormat() throws Exception {
+    File in = new File("test-files/test1.plist");
+    File out = new File("test-files/out-test1-ascii-compact.plist");
+    File outGnuStep = new File("test-files/out-test1-ascii-gnustep-compact.plist");
+    NSDictionary x = (NSDictionary) PropertyListParser.parse(in);
+    ASCIIPropertyListWriter.write(x, out.toPath(), true);
+    ASCIIPropertyListWriter.writeGnuStep(x, outGnuStep.toPath(), true);
+
+    String ascii = new String(Files.readAllBytes(out.toPath()), StandardCharsets.US_ASCII);
+    assertFalse(ascii.contains("\t"));
+    assertFalse(ascii.contains(System.lineSeparator()));
+
+    NSDictionary y = (NSDictionary) PropertyListParser.parse(out);
+    NSDictionary z =
+        (NSDictionary) PropertyListParser.parse(new File("test-files/test1-ascii.plist"));
+    assertEquals(y, z);
+    assertEquals(x, PropertyListParser.parse(outGnuStep));
+  }
+
+  @Test
+  public void write_canWriteToStreams() throws Exception {
+    NSDictionary x = (NSDictionary) PropertyListParser.parse(new File("test-files/test1.plist"));
+    StringWriter writer = new StringWriter();
+    ASCIIPropertyListWriter.write(x, writer);
+    assertEquals(x.toASCIIPropertyList(), writer.toString());
+
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    ASCIIPropertyListWriter.writeGnuStep(x, out);
+    assertEquals(
+        x.toGnuStepASCIIPropertyList(), new String(out.toByteArray(), StandardCharsets.US_ASCII));
+    assertEquals(x, PropertyListParser.parse(out.toByteArray()));
+  }
+
+  @Test
+  public void write_rejectsRootsOtherThanDictionariesAndArrays() throws Exception {
+    NSObject[] roots = {
+      new NSString("text"), new NSNumber(1), new NSData(new byte[] {1}), new NSDate(new Date(0))
+    };
+    for (NSObject root : roots) {
+      ByteArrayOutputStream out = new ByteArrayOutputStream();
+      StringWriter writer = new StringWriter();
+      assertThrows(IllegalArgumentException.class, () -> ASCIIPropertyListWriter.write(root, out));
+      assertThrows(
+          IllegalArgumentException.class, () -> ASCIIPropertyListWriter.write(root, writer, true));
+      assertThrows(
+          IllegalArgumentException.class, () -> ASCIIPropertyListWriter.writeGnuStep(root, out));
+      assertThrows(
+          IllegalArgumentException.class,
+          () -> ASCIIPropertyListWriter.writeGnuStep(root, writer, true));
+      assertThrows(
+          IllegalArgumentException.class,
+          () -> ASCIIPropertyListWriter.writeIncremental(root, writer));
+      assertEquals(0, out.size());
+      assertEquals("", writer.toString());
+    }
+
+    StringWriter writer = new StringWriter();
+    ASCIIPropertyListWriter.write(new NSArray(new NSString("text")), writer);
+    assertEquals(
+        new NSArray(new NSString("text")),
+        ASCIIPropertyListParser.parse(writer.toString().getBytes(StandardCharsets.US_ASCII)));
+  }
+
+  @Test
+  public void write_escapesStringsAndData() throws Exception {
+    NSDictionary dict = new NSDictionary();
+    dict.put("k\u00e9y\"", "a\\b\"c\n\r\t\b\u20ac\uffff\u0001");
+    dict.put("data", new NSData(new byte[] {0, 0x0f, (byte) 0xab, (byte) 0xff, 0x10}));
+
+    String ascii = dict.toASCIIPropertyList();
+    assertTrue(
+        ascii.contains("\"k\\U00e9y\\\"\" = \"a\\\\b\\\"c\\n\\r\\t\\b\\U20ac\\Uffff\u0001\";"));
+    assertTrue(ascii.contains("<000f abff 10>"));
+    assertEquals(dict, ASCIIPropertyListParser.parse(ascii.getBytes(StandardCharsets.US_ASCII)));
+  }
+
+  @Test
+  public void writeIncremental_copiesUnmodifiedPropertyList() throws Exception {
+    String source = readProjectFile();
+    NSObject root = ASCIIPropertyListParser.parse(source, true);
+    assertEquals(source, writeIncremental(root));
+  }
+
+  @Test
+  public void writeIncremental_onlyReplacesModifiedString() throws Exception {
+    String source = readProjectFile();
+    NSDictionary root = (NSDictionary) ASCIIPropertyListParser.parse(source, true);
+    NSDictionary objects = (NSDictionary) root.get("objects");
+    NSDictionary mainFile = (NSDictionary) objects.get("65541AA716D13B8C00A968D5");
+    NSString path = (NSString) mainFile.get("path");
+    ASCIILocationInformation loc = (ASCIILocationInformation) path.getLocationInformation();
+    assertEquals("main.m", source.substring(loc.getOffset(), loc.getEndOffset()));
+
+    path.setContent("Main Program.m");
+    String expected =
+        source.substring(0, loc.getOffset())
+            + "\"Main Program.m\""
+            + source.substring(loc.getEndOffset());
+    assertEquals(expected, writeIncremental(root));
+  }
+
+  @Test
+  public void writeIncremental_keepsCommentsOfUnmodifiedEntries() throws Exception {
+    String source = readProjectFile();
+    NSDictionary root = (NSDictionary) ASCIIPropertyListParser.parse(source, true);
+    NSDictionary objects = (NSDictionary) root.get("objects");
+    NSDictionary buildFile = new NSDictionary();
+    buildFile.put("isa", "PBXBuildFile");
+    buildFile.put("fileRef", "65541AA716D13B8C00A968D5");
+    objects.put("0123456789ABCDEF01234567", buildFile);
+    objects.remove("65541AB216D13B8C00A968D5");
+    root.put("objectVersion", "50");
+
+    String written = writeIncremental(root);
+    assertEquals(root, ASCIIPropertyListParser.parse(written));
+    assertTrue(written.startsWith("// !$*UTF8*$!\n{\n\tarchiveVersion = 1;"));
+    assertTrue(written.contains("/* Begin PBXBuildFile section */"));
+    assertTrue(written.contains("65541AA816D13B8C00A968D5 /* main.m in Sources */ = {"));
+    assertFalse(written.contains("65541AB216D13B8C00A968D5 /* MainMenu.xib in Resources */ = {"));
+    assertTrue(written.contains("\t};\n\t\"objectVersion\" = \"50\";\n\tobjects = {\n"));
+    assertTrue(
+        written.endsWith(
+            "\t\t\"0123456789ABCDEF01234567\" =\n\t\t\t{\n"
+                + "\t\t\t\t\"isa\" = \"PBXBuildFile\";\n"
+                + "\t\t\t\t\"fileRef\" = \"65541AA716D13B8C00A968D5\";\n\t\t\t};\n"
+                + "/* End XCConfigurationList section */\n\t};\n"
+                + "\trootObject = 65541A9016D13B8C00A968D5 /* Project object */;\n}\n"));
+  }
+
+  @Test
+  public void writeIncremental_handlesArraysWithoutTrailingDelimiter() throws Exception {
+    String source = "( a, /* b */ b , c )";
+    NSArray root = (NSArray) ASCIIPropertyListParser.parse(source, true);
+    root.setValue(1, "d");
+    assertEquals("( a,\n\t\"d\", c )", writeIncremental(root));
+    root.setValue(2, "e");
+    assertEquals("( a,\n\t\"d\",\n\t\"e\"\n)", writeIncremental(root));
+  }
+
+  @Test
+  public void writeIncremental_writesObjectsWithoutSource() throws Exception {
+    NSDictionary dict = new NSDictionary();
+    dict.put("a", "b");
+    assertEquals(dict.toASCIIPropertyList(), writeIncremental(dict));
+  }
+
+  private static String readProjectFile() throws Exception {
+    return new String(
+        Files.readAllBytes(new File("test-files/issue33.pbxproj").toPath()),
+        StandardCharsets.UTF_8);
+  }
+
+  private static String writeIncremental(NSObject root) throws Exception {
+    StringWriter out = new StringWriter();
+    ASCIIPropertyListWriter.writeIncremental(root, out);
+    return out.toString();
+  }
 }
@@ -0,0 +1,121 @@
+package com.dd.plist.test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import com.dd.plist.*;
+import java.nio.charset.StandardCharsets;
+import java.util.Date;
+import org.junit.jupiter.api.Test;
+
+/** Tests for parsing with a {@link CanonicalizationTable}. */
+public class CanonicalizationTableTest {
+  private static NSArray createRecords() {
+    NSArray records = new NSArray();
+    for (int i = 0; i < 50; i++) {
+      NSDictionary record = new NSDictionary();
+      record.put("isa", "PBXBuildFile");
+      record.put("index", i);
+      record.put("size", 100000);
+      record.put("ratio", 0.25);
+      record.put("negativeZero", -0.0);
+      record.put("date", new NSDate(new Date(1234567890000L)));
+      record.put("data", new NSData(new byte[] {1, 2, 3}));
+      record.put("settings", new NSDictionary());
+      records.add(record);
+    }
+    return records;
+  }
+
+  @Test
+  public void parse_sharesKeysAndValues() throws Exception {
+    NSArray records = createRecords();
+    byte[][] encodings = {
+      BinaryPropertyListWriter.writeToArray(records),
+      records.toXMLPropertyList().getBytes(StandardCharsets.UTF_8),
+      records.toGnuStepASCIIPropertyList().getBytes(StandardCharsets.UTF_8)
+    };
+
+    for (byte[] bytes : encodings) {
+      boolean binary = bytes == encodings[0];
+      NSArray parsed = (NSArray) PropertyListParser.parse(bytes, new CanonicalizationTable());
+      assertEquals(records, parsed);
+
+      NSDictionary first = (NSDictionary) parsed.objectAtIndex(0);
+      NSDictionary last = (NSDictionary) parsed.objectAtIndex(49);
+      assertSame(first.allKeys()[0], last.allKeys()[0]);
+      for (String key : new String[] {"isa", "size", "ratio", "date"}) {
+        NSObject value = first.get(key);
+        assertSame(value, last.get(key), key);
+        assertTrue(value.isFrozen(), key);
+        assertNull(value.getLocationInformation(), key);
+      }
+
+      // Values that cannot be shared and containers keep their location, but the binary writer
+      // already stores equal values only once
+      for (String key : new String[] {"negativeZero", "data", "settings"}) {
+        if (!binary) {
+          assertNotSame(first.get(key), last.get(key), key);
+        }
+        assertFalse(first.get(key).isFrozen(), key);
+        assertNotNull(first.get(key).getLocationInformation(), key);
+      }
+      assertNotNull(first.getLocationInformation());
+      first.put("isa", "PBXFileReference");
+      assertEquals(new NSString("PBXBuildFile"), last.get("isa"));
+    }
+  }
+
+  @Test
+  public void parse_sharesValuesAcrossParses() throws Exception {
+    NSArray records = createRecords();
+    CanonicalizationTable table = new CanonicalizationTable();
+    NSDictionary fromXml =
+        (NSDictionary)
+            ((NSArray)
+                    XMLPropertyListParser.parse(
+                        records.toXMLPropertyList().getBytes(StandardCharsets.UTF_8), table))
+                .objectAtIndex(0);
+    NSDictionary fromAscii =
+        (NSDictionary)
+            ((NSArray) ASCIIPropertyListParser.parse(records.toGnuStepASCIIPropertyList(), table))
+                .objectAtIndex(0);
+    NSDictionary fromBinary =
+        (NSDictionary)
+            ((NSArray)
+                    BinaryPropertyListParser.parse(
+                        BinaryPropertyListWriter.writeToArray(records), table))
+                .objectAtIndex(0);
+
+    assertSame(fromXml.get("isa"), fromAscii.get("isa"));
+    assertSame(fromXml.get("isa"), fromBinary.get("isa"));
+    assertSame(fromXml.get("date"), fromBinary.get("date"));
+    assertSame(fromXml.allKeys()[0], fromBinary.allKeys()[0]);
+
+    table.clear();
+    assertEquals(0, table.size());
+    NSDictionary afterClear =
+        (NSDictionary)
+            ((NSArray) ASCIIPropertyListParser.parse(records.toGnuStepASCIIPropertyList(), table))
+                .objectAtIndex(0);
+    assertEquals(fromAscii.get("isa"), afterClear.get("isa"));
+    assertNotSame(fromAscii.get("isa"), afterClear.get("isa"));
+  }
+
+  @Test
+  public void parse_doesNotGrowFullTable() throws Exception {
+    CanonicalizationTable table = new CanonicalizationTable(1);
+    NSArray records = createRecords();
+    NSArray parsed =
+        (NSArray)
+            PropertyListParser.parse(
+                records.toXMLPropertyList().getBytes(StandardCharsets.UTF_8), table);
+    assertEquals(records, parsed);
+    assertEquals(1, table.size());
+
+    NSDictionary first = (NSDictionary) parsed.objectAtIndex(0);
+    NSDictionary last = (NSDictionary) parsed.objectAtIndex(49);
+    assertNotSame(first.get("isa"), last.get("isa"));
+    assertNotNull(first.get("isa").getLocationInformation());
+    assertThrows(IllegalArgumentException.class, () -> new CanonicalizationTable(-1));
+  }
+}
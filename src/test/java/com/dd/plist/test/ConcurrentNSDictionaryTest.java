@@ -0,0 +1,206 @@
+package com.dd.plist.test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import com.dd.plist.*;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import org.junit.jupiter.api.Test;
+
+/** Tests for the {@link ConcurrentNSDictionary} class. */
+public class ConcurrentNSDictionaryTest {
+  @Test
+  public void put_preservesInsertionOrderWhenWritten() throws Exception {
+    NSDictionary expected = new NSDictionary();
+    ConcurrentNSDictionary dict = new ConcurrentNSDictionary();
+    for (int i = 19; i >= 0; i--) {
+      expected.put("key" + i, i);
+      dict.put("key" + i, i);
+      // Writing the dictionary creates a snapshot, which the next modification must not change
+      assertEquals(expected.toXMLPropertyList(), dict.toXMLPropertyList());
+      assertEquals(20 - i, dict.count());
+    }
+
+    assertEquals(expected, dict);
+    assertEquals(dict, expected);
+    assertEquals(expected.hashCode(), dict.hashCode());
+    assertArrayEquals(expected.allKeys(), dict.allKeys());
+    assertEquals(expected.toXMLPropertyList(), dict.toXMLPropertyList());
+    assertEquals(expected.toASCIIPropertyList(), dict.toASCIIPropertyList());
+    assertEquals(
+        expected.toXMLPropertyList(),
+        XMLPropertyListParser.parse(dict.toXMLPropertyList().getBytes(StandardCharsets.UTF_8))
+            .toXMLPropertyList());
+    assertArrayEquals(
+        BinaryPropertyListWriter.writeToArray(expected),
+        BinaryPropertyListWriter.writeToArray(dict));
+    assertEquals(0, expected.compareTo(dict));
+  }
+
+  @Test
+  public void put_keepsPositionOfExistingKey() {
+    ConcurrentNSDictionary dict = new ConcurrentNSDictionary();
+    for (String key : new String[] {"a", "b", "c"}) {
+      dict.put(key, key);
+    }
+    dict.put("a", "x");
+    dict.remove("b");
+    dict.put("b", "y");
+
+    assertEquals(Arrays.asList("a", "c", "b"), new ArrayList<>(dict.keySet()));
+    assertEquals(new NSString("x"), dict.get("a"));
+    assertNull(dict.put(null, "z"));
+    assertEquals(new NSString("x"), dict.put("a", (NSObject) null));
+    assertNull(dict.get(null));
+    assertFalse(dict.containsKey(null));
+    assertNull(dict.remove(null));
+    assertEquals(3, dict.count());
+    dict.clear();
+    assertTrue(dict.isEmpty());
+    assertEquals(0, dict.keySet().size());
+  }
+
+  @Test
+  public void keySet_iteratesOverSnapshot() {
+    ConcurrentNSDictionary dict = new ConcurrentNSDictionary();
+    dict.put("a", 1);
+    dict.put("b", 2);
+    Set<String> keys = dict.keySet();
+    Collection<NSObject> values = dict.values();
+    dict.remove("a");
+    dict.put("c", 3);
+
+    assertEquals(Arrays.asList("a", "b"), new ArrayList<>(keys));
+    assertEquals(Arrays.asList(new NSNumber(1), new NSNumber(2)), new ArrayList<>(values));
+    assertEquals(Arrays.asList("b", "c"), new ArrayList<>(dict.keySet()));
+    assertThrows(UnsupportedOperationException.class, () -> dict.keySet().remove("b"));
+    assertThrows(
+        UnsupportedOperationException.class,
+        () -> dict.entrySet().iterator().next().setValue(new NSNumber(4)));
+    dict.getHashMap().clear();
+    assertEquals(2, dict.size());
+  }
+
+  @Test
+  public void atomicOperations_behaveLikeMap() {
+    ConcurrentNSDictionary dict = new ConcurrentNSDictionary();
+    Map<String, NSObject> expected = new LinkedHashMap<>();
+    NSNumber one = new NSNumber(1);
+    NSNumber two = new NSNumber(2);
+    for (Map<String, NSObject> map : Arrays.asList(dict, expected)) {
+      assertNull(map.putIfAbsent("a", one));
+      assertEquals(one, map.putIfAbsent("a", two));
+      assertEquals(two, map.computeIfAbsent("b", key -> two));
+      assertEquals(two, map.computeIfAbsent("b", key -> one));
+      assertNull(map.computeIfPresent("c", (key, value) -> one));
+      assertEquals(one, map.compute("c", (key, value) -> value == null ? one : two));
+      assertEquals(two, map.compute("c", (key, value) -> value == null ? one : two));
+      assertNull(map.compute("c", (key, value) -> null));
+      assertEquals(one, map.merge("d", one, (a, b) -> two));
+      assertEquals(two, map.merge("d", one, (a, b) -> two));
+      assertFalse(map.replace("d", one, two));
+      assertTrue(map.replace("d", two, one));
+      assertEquals(one, map.replace("d", two));
+      assertFalse(map.remove("d", one));
+      assertTrue(map.remove("d", two));
+      map.replaceAll((key, value) -> new NSString(key));
+    }
+
+    assertEquals(expected, dict);
+    assertEquals(new ArrayList<>(expected.keySet()), new ArrayList<>(dict.keySet()));
+    assertThrows(UnsupportedOperationException.class, () -> dict.freeze().putIfAbsent("e", one));
+  }
+
+  @Test
+  public void compute_concurrentUpdates_areAtomic() throws Exception {
+    ConcurrentNSDictionary dict = new ConcurrentNSDictionary();
+    AtomicReference<Throwable> failure = new AtomicReference<>();
+    Thread[] threads = new Thread[4];
+    for (int t = 0; t < threads.length; t++) {
+      threads[t] =
+          new Thread(
+              () -> {
+                try {
+                  for (int i = 0; i < 1000; i++) {
+                    String key = "counter" + i % 10;
+                    dict.merge(
+                        key,
+                        new NSNumber(1),
+                        (a, b) ->
+                            new NSNumber(((NSNumber) a).intValue() + ((NSNumber) b).intValue()));
+                    for (Map.Entry<String, NSObject> entry : dict.entrySet()) {
+                      assertTrue(((NSNumber) entry.getValue()).intValue() > 0);
+                    }
+                    dict.toXMLPropertyList();
+                  }
+                } catch (Throwable e) {
+                  failure.set(e);
+                }
+              });
+      threads[t].start();
+    }
+    for (Thread thread : threads) {
+      thread.join();
+    }
+
+    assertNull(failure.get());
+    assertEquals(10, dict.size());
+    for (NSObject value : dict.values()) {
+      assertEquals(400, ((NSNumber) value).intValue());
+    }
+  }
+
+  @Test
+  public void writeBinary_whileOtherThreadPuts_writesOneSnapshot() throws Exception {
+    ConcurrentNSDictionary dict = new ConcurrentNSDictionary();
+    NSDictionary root = new NSDictionary();
+    root.put("config", dict);
+    AtomicBoolean done = new AtomicBoolean();
+    AtomicReference<Throwable> failure = new AtomicReference<>();
+    Thread writer =
+        new Thread(
+            () -> {
+              try {
+                for (int i = 0; !done.get(); i++) {
+                  dict.put("key" + i, new NSArray(new NSNumber(i), new NSString("value" + i)));
+                  dict.remove("key" + (i - 50));
+                }
+              } catch (Throwable e) {
+                failure.set(e);
+              }
+            });
+    writer.start();
+    try {
+      for (int i = 0; i < 500; i++) {
+        NSDictionary parsed =
+            (NSDictionary)
+                BinaryPropertyListParser.parse(BinaryPropertyListWriter.writeToArray(root));
+        for (Map.Entry<String, NSObject> entry : ((NSDictionary) parsed.get("config")).entrySet()) {
+          String index = entry.getKey().substring(3);
+          assertEquals(new NSString("value" + index), ((NSArray) entry.getValue()).lastObject());
+        }
+        Thread.yield();
+      }
+    } finally {
+      done.set(true);
+      writer.join();
+    }
+
+    assertNull(failure.get());
+  }
+
+  @Test
+  public void clone_copiesEntries() {
+    NSArray array = new NSArray(new NSString("x"));
+    ConcurrentNSDictionary dict = new ConcurrentNSDictionary(Collections.singletonMap("a", array));
+    ConcurrentNSDictionary clone = dict.clone();
+    ((NSArray) clone.get("a")).add(new NSString("y"));
+    clone.put("b", 1);
+
+    assertEquals(1, dict.size());
+    assertEquals(1, array.count());
+    assertEquals(2, clone.size());
+  }
+}
@@ -0,0 +1,214 @@
+package com.dd.plist.test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import com.dd.plist.*;
+import java.io.File;
+import java.util.Map;
+import org.junit.jupiter.api.Test;
+
+/** Tests for {@link NSObject#freeze()}. */
+public class FreezeTest {
+  @Test
+  public void freeze_freezesAllContainedObjects() throws Exception {
+    NSDictionary root = (NSDictionary) PropertyListParser.parse(new File("test-files/test1.plist"));
+    assertFalse(root.isFrozen());
+    assertSame(root, root.freeze());
+
+    assertTrue(root.isFrozen());
+    assertTrue(root.get("keyA").isFrozen());
+    NSArray array = (NSArray) root.get("array");
+    assertTrue(array.isFrozen());
+    assertTrue(array.objectAtIndex(0).isFrozen());
+  }
+
+  @Test
+  public void freeze_rejectsModifications() throws Exception {
+    NSDictionary root = (NSDictionary) PropertyListParser.parse(new File("test-files/test1.plist"));
+    NSSet set = new NSSet(new NSString("a"));
+    root.put("set", set);
+    root.freeze();
+
+    assertThrows(UnsupportedOperationException.class, () -> root.put("keyA", "b"));
+    assertThrows(UnsupportedOperationException.class, () -> root.remove("keyA"));
+    assertThrows(UnsupportedOperationException.class, root::clear);
+    assertThrows(UnsupportedOperationException.class, () -> root.keySet().remove("keyA"));
+    for (Map.Entry<String, NSObject> entry : root.entrySet()) {
+      assertThrows(UnsupportedOperationException.class, () -> entry.setValue(null));
+    }
+    root.getHashMap().clear();
+    assertEquals(6, root.count());
+
+    NSArray array = (NSArray) root.get("array");
+    assertThrows(UnsupportedOperationException.class, () -> array.setValue(0, "b"));
+    assertThrows(UnsupportedOperationException.class, () -> array.remove(0));
+    array.getArray()[0] = null;
+    assertNotNull(array.objectAtIndex(0));
+
+    assertThrows(UnsupportedOperationException.class, () -> set.addObject(new NSString("b")));
+    assertThrows(UnsupportedOperationException.class, () -> set.removeObject(new NSString("a")));
+
+    NSString string = (NSString) root.get("keyA");
+    assertThrows(UnsupportedOperationException.class, () -> string.setContent("b"));
+    assertThrows(UnsupportedOperationException.class, () -> string.append("b"));
+    assertThrows(UnsupportedOperationException.class, () -> string.prepend("b"));
+
+    NSData data = (NSData) root.get("data");
+    data.bytes()[0] = 0x42;
+    assertEquals(0x00, data.bytes()[0]);
+
+    NSDate date = (NSDate) root.get("date");
+    date.getDate().setTime(42);
+    assertNotEquals(42, date.getDate().getTime());
+  }
+
+  @Test
+  public void freeze_keepsEqualityAndHashCode() throws Exception {
+    NSDictionary root = (NSDictionary) PropertyListParser.parse(new File("test-files/test1.plist"));
+    NSDictionary frozen = root.clone().freeze();
+    assertEquals(root, frozen);
+    assertEquals(root.hashCode(), frozen.hashCode());
+    assertEquals(frozen.hashCode(), frozen.hashCode());
+
+    NSDictionary other = root.clone();
+    other.put("keyA", "other");
+    other.freeze();
+    assertNotEquals(frozen, other);
+    assertEquals(frozen, root.clone().freeze());
+  }
+
+  @Test
+  public void clone_createsMutableCopy() throws Exception {
+    NSDictionary root = (NSDictionary) PropertyListParser.parse(new File("test-files/test1.plist"));
+    root.freeze();
+    NSDictionary clone = root.clone();
+    assertFalse(clone.isFrozen());
+    assertFalse(clone.get("array").isFrozen());
+    clone.put("keyA", "b");
+    ((NSArray) clone.get("array")).setValue(0, "b");
+    assertEquals(new NSString("valueA"), root.get("keyA"));
+  }
+
+  @Test
+  public void clone_copiesOnlyModifiedPath() throws Exception {
+    NSDictionary leaf = new NSDictionary();
+    leaf.put("value", 1);
+    NSDictionary inner = new NSDictionary();
+    inner.put("leaf", leaf);
+    inner.put("other", new NSArray(new NSString("a"), new NSDictionary()));
+    NSDictionary root = new NSDictionary();
+    root.put("inner", inner);
+    root.put("array", new NSArray(inner.clone(), new NSString("b")));
+    root.put("set", new NSSet(new NSString("c"), new NSNumber(2)));
+    root.freeze();
+    NSDictionary expected = root.clone();
+    NSDictionary clone = root.clone();
+    NSDictionary cloneOfClone = clone.clone();
+
+    NSDictionary clonedInner = (NSDictionary) clone.get("inner");
+    ((NSDictionary) clonedInner.get("leaf")).put("value", 2);
+    NSArray clonedArray = (NSArray) clone.get("array");
+    ((NSDictionary) clonedArray.objectAtIndex(0)).remove("other");
+    ((NSString) clonedArray.getArray()[1]).setContent("x");
+    ((NSSet) clone.get("set")).addObject(new NSString("d"));
+
+    assertFalse(clonedInner.isFrozen());
+    assertFalse(clonedInner.get("other").isFrozen());
+    assertEquals(new NSNumber(2), ((NSDictionary) clonedInner.get("leaf")).get("value"));
+    assertEquals(1, ((NSDictionary) clonedArray.objectAtIndex(0)).count());
+    assertEquals(new NSString("x"), clonedArray.objectAtIndex(1));
+    assertEquals(3, ((NSSet) clone.get("set")).count());
+    assertNotEquals(root, clone);
+
+    // The frozen tree and other clones are not affected
+    assertEquals(root, expected);
+    assertEquals(root, cloneOfClone);
+    assertEquals(root.hashCode(), cloneOfClone.hashCode());
+    assertEquals(root.toXMLPropertyList(), cloneOfClone.toXMLPropertyList());
+    assertEquals(new NSNumber(1), ((NSDictionary) inner.get("leaf")).get("value"));
+    for (NSObject value : cloneOfClone.values()) {
+      assertFalse(value.isFrozen());
+    }
+  }
+
+  @Test
+  public void clone_exposesMutableElements() throws Exception {
+    NSArray array = new NSArray(new NSArray(new NSNumber(1)), new NSSet(new NSString("a")));
+    array.freeze();
+
+    NSArray clone = array.clone();
+    for (NSObject element : clone) {
+      assertFalse(element.isFrozen());
+    }
+    ((NSArray) clone.toArray(new NSObject[0])[0]).add(new NSNumber(2));
+    assertFalse(((NSSet) clone.get(1)).anyObject().isFrozen());
+    assertEquals(2, ((NSArray) clone.get(0)).count());
+    assertEquals(1, ((NSArray) array.get(0)).count());
+
+    NSArray frozenClone = array.clone().freeze();
+    assertTrue(frozenClone.isFrozen());
+    assertEquals(array, frozenClone);
+    assertFalse(frozenClone.clone().get(0).isFrozen());
+  }
+
+  @Test
+  public void clone_clearDoesNotModifyFrozenArray() {
+    NSArray array = new NSArray(new NSString("a"), new NSString("b")).freeze();
+    NSArray other = array.clone();
+
+    NSArray cleared = array.clone();
+    cleared.clear();
+    NSArray removed = array.clone();
+    removed.removeRange(0, removed.count());
+    NSArray trimmed = array.clone();
+    trimmed.trimToSize();
+
+    assertEquals(0, cleared.count());
+    assertEquals(0, removed.count());
+    assertEquals(2, trimmed.count());
+    assertEquals(new NSString("a"), trimmed.objectAtIndex(0));
+    for (NSArray unchanged : new NSArray[] {array, other}) {
+      assertEquals(2, unchanged.count());
+      assertEquals(new NSString("a"), unchanged.objectAtIndex(0));
+      assertEquals(new NSString("b"), unchanged.objectAtIndex(1));
+    }
+  }
+
+  @Test
+  public void clone_concurrentReads_exposeSameElements() throws Exception {
+    for (int round = 0; round < 50; round++) {
+      NSArray elements = new NSArray();
+      NSDictionary values = new NSDictionary();
+      for (int i = 0; i < 100; i++) {
+        elements.add(new NSArray(new NSNumber(i)));
+        values.put("key" + i, new NSArray(new NSNumber(i)));
+      }
+      elements.freeze();
+      values.freeze();
+      NSArray clonedElements = elements.clone();
+      NSDictionary clonedValues = values.clone();
+
+      NSObject[][] read = new NSObject[2][];
+      Thread[] threads = new Thread[2];
+      for (int t = 0; t < threads.length; t++) {
+        int index = t;
+        threads[t] =
+            new Thread(
+                () ->
+                    read[index] =
+                        new NSObject[] {
+                          clonedElements.objectAtIndex(99), clonedValues.get("key99")
+                        });
+        threads[t].start();
+      }
+      for (Thread thread : threads) {
+        thread.join();
+      }
+
+      assertSame(read[0][0], read[1][0]);
+      assertSame(read[0][1], read[1][1]);
+      assertSame(read[0][0], clonedElements.objectAtIndex(99));
+      assertFalse(read[0][0].isFrozen());
+    }
+  }
+}
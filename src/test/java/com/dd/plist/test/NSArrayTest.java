@@ -0,0 +1,250 @@
+package com.dd.plist.test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import com.dd.plist.*;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import org.junit.jupiter.api.Test;
+
+/** Tests for the {@link NSArray} class. */
+public class NSArrayTest {
+  @Test
+  public void parse_restoresNumbersOfHomogeneousArrays() throws Exception {
+    NSArray integers = new NSArray(130);
+    NSArray reals = new NSArray(130);
+    NSArray booleans = new NSArray(130);
+    for (int i = 0; i < 130; i++) {
+      integers.setValue(i, i % 2 == 0 ? (long) i << 40 : -i);
+      reals.setValue(i, i + 0.25);
+      booleans.setValue(i, i % 3 == 0);
+    }
+    NSArray mixed = new NSArray(new NSNumber(1), new NSNumber(2.25), new NSNumber(true));
+    NSDictionary root = new NSDictionary();
+    root.put("integers", integers);
+    root.put("reals", reals);
+    root.put("booleans", booleans);
+    root.put("mixed", mixed);
+    root.put("empty", new NSArray(0));
+
+    NSObject fromBinary =
+        BinaryPropertyListParser.parse(BinaryPropertyListWriter.writeToArray(root));
+    NSObject fromXml =
+        XMLPropertyListParser.parse(root.toXMLPropertyList().getBytes(StandardCharsets.UTF_8));
+    for (NSObject parsed : new NSObject[] {fromBinary, fromXml}) {
+      assertEquals(root, parsed);
+      assertEquals(parsed, root);
+      assertEquals(root.hashCode(), parsed.hashCode());
+      assertEquals(root.toXMLPropertyList(), parsed.toXMLPropertyList());
+      assertEquals(
+          root.toGnuStepASCIIPropertyList(), ((NSDictionary) parsed).toGnuStepASCIIPropertyList());
+      assertEquals(
+          root, BinaryPropertyListParser.parse(BinaryPropertyListWriter.writeToArray(parsed)));
+
+      NSArray parsedIntegers = (NSArray) ((NSDictionary) parsed).get("integers");
+      assertEquals(integers.objectAtIndex(128), parsedIntegers.objectAtIndex(128));
+      assertEquals(integers.lastObject(), parsedIntegers.lastObject());
+      assertEquals(3, parsedIntegers.indexOfObject(-3));
+      assertTrue(parsedIntegers.containsObject(-129));
+      assertEquals(parsedIntegers, parsedIntegers.clone());
+      assertThrows(ArrayIndexOutOfBoundsException.class, () -> parsedIntegers.objectAtIndex(130));
+    }
+  }
+
+  @Test
+  public void objectAtIndex_returnsSameNumbersOfParsedArray() throws Exception {
+    NSArray array = new NSArray(new NSNumber(1.25), new NSNumber(2.25), new NSNumber(1.25));
+    NSArray fromBinary =
+        (NSArray) BinaryPropertyListParser.parse(BinaryPropertyListWriter.writeToArray(array));
+    NSArray fromXml =
+        (NSArray)
+            XMLPropertyListParser.parse(array.toXMLPropertyList().getBytes(StandardCharsets.UTF_8));
+    NSArray frozen = fromBinary.clone().freeze();
+    for (NSArray parsed : new NSArray[] {fromBinary, fromXml, frozen}) {
+      NSObject second = parsed.objectAtIndex(1);
+      assertSame(second, parsed.objectAtIndex(1));
+      assertSame(second, parsed.getArray()[1]);
+      assertEquals(1, parsed.indexOfIdenticalObject(second));
+      assertEquals(2, parsed.indexOfIdenticalObject(parsed.lastObject()));
+      assertEquals(-1, parsed.indexOfIdenticalObject(new NSNumber(2.25)));
+      assertEquals(array, parsed);
+    }
+  }
+
+  @Test
+  public void parse_keepsLocationsOfNumbersWhenRequested() throws Exception {
+    NSArray array = new NSArray(new NSNumber(1), new NSNumber(2));
+    byte[] binary = BinaryPropertyListWriter.writeToArray(array);
+    byte[] xml = array.toXMLPropertyList().getBytes(StandardCharsets.UTF_8);
+
+    NSArray fromBinary = (NSArray) BinaryPropertyListParser.parse(binary, true);
+    BinaryLocationInformation binaryLoc =
+        assertInstanceOf(
+            BinaryLocationInformation.class, fromBinary.objectAtIndex(1).getLocationInformation());
+    assertTrue(binaryLoc.getOffset() > 0);
+    NSArray fromXml = (NSArray) XMLPropertyListParser.parse(xml, true);
+    XMLLocationInformation xmlLoc =
+        assertInstanceOf(
+            XMLLocationInformation.class, fromXml.objectAtIndex(1).getLocationInformation());
+    assertTrue(xmlLoc.hasLineInformation());
+
+    assertNull(
+        ((NSArray) BinaryPropertyListParser.parse(binary, false))
+            .objectAtIndex(1)
+            .getLocationInformation());
+    assertNull(
+        ((NSArray) BinaryPropertyListParser.parse(binary))
+            .objectAtIndex(1)
+            .getLocationInformation());
+    assertNull(
+        ((NSArray) XMLPropertyListParser.parse(xml)).objectAtIndex(1).getLocationInformation());
+  }
+
+  @Test
+  public void setValue_modifiesParsedNumberArray() throws Exception {
+    NSArray array = new NSArray(new NSNumber(1), new NSNumber(2), new NSNumber(3));
+    NSArray parsed =
+        (NSArray) BinaryPropertyListParser.parse(BinaryPropertyListWriter.writeToArray(array));
+    NSArray clone = parsed.clone();
+
+    parsed.setValue(1, "two");
+    assertEquals(new NSString("two"), parsed.objectAtIndex(1));
+    assertEquals(new NSNumber(2), clone.objectAtIndex(1));
+
+    clone.getArray()[0] = new NSNumber(4);
+    assertEquals(new NSNumber(4), clone.objectAtIndex(0));
+    clone.remove(2);
+    assertEquals(new NSArray(new NSNumber(4), new NSNumber(2)), clone);
+  }
+
+  @Test
+  public void freeze_freezesRestoredNumbers() throws Exception {
+    NSArray array = new NSArray(new NSNumber(1.5), new NSNumber(2.5));
+    NSArray parsed =
+        (NSArray) BinaryPropertyListParser.parse(BinaryPropertyListWriter.writeToArray(array));
+    parsed.freeze();
+    assertTrue(parsed.objectAtIndex(0).isFrozen());
+    assertTrue(parsed.getArray()[1].isFrozen());
+    assertThrows(UnsupportedOperationException.class, () -> parsed.setValue(0, 1));
+  }
+
+  @Test
+  public void write_canWriteParsedNumberArrayToStream() throws Exception {
+    NSArray array = new NSArray(new NSNumber(true), new NSNumber(false));
+    NSArray parsed =
+        (NSArray)
+            XMLPropertyListParser.parse(array.toXMLPropertyList().getBytes(StandardCharsets.UTF_8));
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    ASCIIPropertyListWriter.write(parsed, out);
+    assertEquals(array.toASCIIPropertyList(), out.toString("US-ASCII"));
+  }
+
+  @Test
+  public void add_behavesLikeList() {
+    NSArray array = new NSArray();
+    List<NSObject> expected = new ArrayList<>();
+    Random random = new Random(42);
+    for (int i = 0; i < 2000; i++) {
+      NSObject value = new NSNumber(random.nextInt(20));
+      int index = expected.isEmpty() ? 0 : random.nextInt(expected.size());
+      switch (random.nextInt(6)) {
+        case 0:
+          if (!expected.isEmpty()) {
+            assertEquals(expected.remove(index), array.remove(index));
+          }
+          break;
+        case 1:
+          assertEquals(expected.remove(value), array.remove(value));
+          break;
+        case 2:
+          expected.add(index, value);
+          array.insert(index, ((NSNumber) value).intValue());
+          break;
+        case 3:
+          List<NSObject> values = Arrays.asList(value, new NSString("s" + i));
+          assertEquals(expected.addAll(index, values), array.addAll(index, values));
+          break;
+        default:
+          assertEquals(expected.add(value), array.add(value));
+          break;
+      }
+
+      assertEquals(expected.size(), array.count());
+      assertEquals(expected, array);
+      assertEquals(array, expected);
+      assertEquals(expected.hashCode(), array.hashCode());
+      assertEquals(expected.indexOf(value), array.indexOf(value));
+      assertEquals(expected.lastIndexOf(value), array.lastIndexOf(value));
+    }
+
+    assertArrayEquals(expected.toArray(), array.getArray());
+    assertEquals(expected.size(), array.getArray().length);
+  }
+
+  @Test
+  public void removeRange_removesElements() {
+    NSArray array = new NSArray(new NSNumber(0), new NSNumber(1), new NSNumber(2), new NSNumber(3));
+    array.removeRange(1, 3);
+    assertEquals(new NSArray(new NSNumber(0), new NSNumber(3)), array);
+    array.removeRange(2, 2);
+    assertEquals(2, array.count());
+    assertThrows(IndexOutOfBoundsException.class, () -> array.removeRange(1, 3));
+    assertThrows(ArrayIndexOutOfBoundsException.class, () -> array.objectAtIndex(2));
+
+    array.subList(0, 1).clear();
+    assertEquals(new NSArray(new NSNumber(3)), array);
+    array.removeIf(o -> true);
+    assertTrue(array.isEmpty());
+  }
+
+  @Test
+  public void listIterator_modifiesArray() {
+    NSArray array = new NSArray();
+    for (int i = 0; i < 5; i++) {
+      array.insert(i, i);
+    }
+
+    ListIterator<NSObject> it = array.listIterator();
+    while (it.hasNext()) {
+      int value = ((NSNumber) it.next()).intValue();
+      if (value % 2 == 0) {
+        it.remove();
+      } else {
+        it.set(new NSString("odd"));
+        it.add(new NSNumber(value * 10));
+      }
+    }
+    assertEquals(
+        Arrays.asList(new NSString("odd"), new NSNumber(10), new NSString("odd"), new NSNumber(30)),
+        array);
+
+    Iterator<NSObject> iterator = array.iterator();
+    array.add(new NSNumber(5));
+    assertThrows(ConcurrentModificationException.class, iterator::next);
+  }
+
+  @Test
+  public void getArray_returnsElementsUntilArrayGrows() {
+    NSObject[] elements = {new NSNumber(1), new NSNumber(2)};
+    NSArray array = new NSArray(elements);
+    assertSame(elements, array.getArray());
+
+    array.add(new NSNumber(3));
+    NSObject[] grown = array.getArray();
+    assertEquals(3, grown.length);
+    grown[0] = new NSString("a");
+    assertEquals(new NSString("a"), array.objectAtIndex(0));
+  }
+
+  @Test
+  public void add_failsForFrozenArray() {
+    NSArray array = new NSArray(new NSNumber(1));
+    array.add(new NSNumber(2));
+    array.freeze();
+    assertThrows(UnsupportedOperationException.class, () -> array.add(new NSNumber(3)));
+    assertThrows(UnsupportedOperationException.class, () -> array.removeRange(0, 1));
+    assertThrows(UnsupportedOperationException.class, array::clear);
+    assertEquals(2, array.getArray().length);
+  }
+}
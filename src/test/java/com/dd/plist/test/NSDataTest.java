@@ -3,10 +3,13 @@ package com.dd.plist.test;
 import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 import com.dd.plist.NSData;
+import com.dd.plist.PropertyListParser;
 import java.io.IOException;
 import java.nio.charset.StandardCharsets;
+import java.util.Base64;
 import org.junit.jupiter.api.Test;
 
 public class NSDataTest {
@@ -36,4 +39,42 @@ public class NSDataTest {
 
     assertEquals("SGVsbG8sIHdvcmxkIQ==", data.getBase64EncodedData());
   }
+
+  @Test
+  public void stringConstructor_decodesAllLengthsWithAndWithoutPadding() throws IOException {
+    for (int length = 0; length < 64; length++) {
+      byte[] bytes = new byte[length];
+      for (int i = 0; i < length; i++) {
+        bytes[i] = (byte) (i * 37 + length);
+      }
+
+      String padded = Base64.getEncoder().encodeToString(bytes);
+      String unpadded = Base64.getEncoder().withoutPadding().encodeToString(bytes);
+      assertArrayEquals(bytes, new NSData(padded).bytes());
+      assertArrayEquals(bytes, new NSData(unpadded).bytes());
+      assertArrayEquals(bytes, new NSData(" " + padded.replaceAll("(.{5})", "$1\r\n")).bytes());
+    }
+  }
+
+  @Test
+  public void stringConstructor_rejectsInvalidPadding() {
+    assertThrows(IOException.class, () -> new NSData("SGVsbG8=="));
+    assertThrows(IOException.class, () -> new NSData("SGVsbA==="));
+    assertThrows(IOException.class, () -> new NSData("SG=VsbA=="));
+    assertThrows(IOException.class, () -> new NSData("SGVsb"));
+  }
+
+  @Test
+  public void toXml_wrapsBase64Lines() throws Exception {
+    byte[] bytes = new byte[1000];
+    for (int i = 0; i < bytes.length; i++) {
+      bytes[i] = (byte) i;
+    }
+
+    String xml = new NSData(bytes).toXMLPropertyList();
+    String base64 = Base64.getEncoder().encodeToString(bytes);
+    assertTrue(xml.contains(base64.substring(0, 76) + System.lineSeparator()));
+    assertTrue(xml.contains(base64.substring(base64.length() - 12) + System.lineSeparator()));
+    assertEquals(new NSData(bytes), PropertyListParser.parse(xml.getBytes(StandardCharsets.UTF_8)));
+  }
 }
@@ -0,0 +1,116 @@
+package com.dd.plist.test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.dd.plist.BinaryPropertyListParser;
+import com.dd.plist.BinaryPropertyListWriter;
+import com.dd.plist.NSDate;
+import com.dd.plist.NSDictionary;
+import java.nio.charset.StandardCharsets;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Random;
+import java.util.TimeZone;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests for the {@link NSDate} class.
+ *
+ * @author Daniel Dreibrodt
+ */
+public class NSDateTest {
+  @Test
+  public void stringConstructor_parsesXmlFormat() throws ParseException {
+    assertEquals(new Date(1322472090000L), new NSDate("2011-11-28T09:21:30Z").getDate());
+  }
+
+  @Test
+  public void stringConstructor_parsesGnuStepFormat() throws ParseException {
+    assertEquals(new Date(1322472090000L), new NSDate("2011-11-28 09:21:30 +0000").getDate());
+    assertEquals(new Date(1322468490000L), new NSDate("2011-11-28 09:21:30 +0100").getDate());
+    assertEquals(new Date(1322474790000L), new NSDate("2011-11-28 09:21:30 -00:45").getDate());
+    assertEquals(new Date(1322472090000L), new NSDate("2011-11-28 09:21:30 GMT").getDate());
+    assertEquals(new Date(1322468490000L), new NSDate("2011-11-28 09:21:30 GMT+01:00").getDate());
+  }
+
+  @Test
+  public void stringConstructor_rollsOverOutOfRangeFields() throws ParseException {
+    assertEquals(
+        new NSDate("2012-03-01T00:00:00Z").getDate(), new NSDate("2012-02-30T00:00:00Z").getDate());
+    assertEquals(
+        new NSDate("2012-03-01T00:00:00Z").getDate(), new NSDate("2012-02-29T24:00:00Z").getDate());
+    assertEquals(
+        new NSDate("2013-01-01T00:00:00Z").getDate(), new NSDate("2012-13-01T00:00:00Z").getDate());
+  }
+
+  @Test
+  public void stringConstructor_rejectsInvalidDates() {
+    assertThrows(ParseException.class, () -> new NSDate(""));
+    assertThrows(ParseException.class, () -> new NSDate("2011-11-28"));
+    assertThrows(ParseException.class, () -> new NSDate("2011-11-28T09:21:30"));
+    assertThrows(ParseException.class, () -> new NSDate("2011-11-28T09:21:30+0000"));
+    assertThrows(ParseException.class, () -> new NSDate("2011-11-28 09:21:30"));
+    assertThrows(ParseException.class, () -> new NSDate("2011-11-28 09:21:30 +01:"));
+    assertThrows(ParseException.class, () -> new NSDate("2011-11-28 09:21:30 PST"));
+    assertThrows(ParseException.class, () -> new NSDate("2011-xx-28T09:21:30Z"));
+    assertThrows(ParseException.class, () -> new NSDate("1234-5678-9abc"));
+  }
+
+  @Test
+  public void toXml_formatsLikeSimpleDateFormat() throws ParseException {
+    SimpleDateFormat xmlFormat = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss'Z'");
+    xmlFormat.setTimeZone(TimeZone.getTimeZone("GMT"));
+    SimpleDateFormat gnuStepFormat = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss Z");
+    gnuStepFormat.setTimeZone(TimeZone.getTimeZone("GMT"));
+
+    Random random = new Random(42);
+    for (int i = 0; i < 1000; i++) {
+      // Dates between 1600 and 2400, after the Julian/Gregorian cutover of SimpleDateFormat
+      Date date = new Date(-11676096000000L + (long) (random.nextDouble() * 25245000000000L));
+      NSDictionary dict = new NSDictionary();
+      dict.put("date", new NSDate(date));
+
+      String expected = xmlFormat.format(date);
+      assertTrue(dict.toXMLPropertyList().contains("<date>" + expected + "</date>"), expected);
+      assertTrue(dict.toASCIIPropertyList().contains('"' + expected + '"'), expected);
+      String expectedGnuStep = gnuStepFormat.format(date);
+      assertTrue(
+          dict.toGnuStepASCIIPropertyList().contains("<*D" + expectedGnuStep + ">"),
+          expectedGnuStep);
+      assertEquals(xmlFormat.parse(expected), new NSDate(expected).getDate());
+    }
+  }
+
+  @Test
+  public void getDate_returnsIndependentCopy() {
+    NSDate date = new NSDate(new Date(1322472090123L));
+    date.getDate().setTime(0);
+    assertEquals(1322472090123L, date.getTime());
+    assertEquals(new Date(1322472090123L), date.toJavaObject());
+  }
+
+  @Test
+  public void binaryRoundTrip_preservesMillisecondsAndFractions() throws Exception {
+    Random random = new Random(42);
+    for (int i = 0; i < 1000; i++) {
+      long millis = random.nextLong() % 10_000_000_000_000L;
+      NSDate date = new NSDate(new Date(millis));
+      NSDate parsed =
+          (NSDate) BinaryPropertyListParser.parse(BinaryPropertyListWriter.writeToArray(date));
+      assertEquals(millis, parsed.getTime());
+      assertEquals(date, parsed);
+      assertEquals(date.hashCode(), parsed.hashCode());
+    }
+
+    // 0.0015 seconds after 2001-01-01, fractions of a millisecond are truncated
+    byte[] bytes = {0x33, 0x3F, 0x58, (byte) 0x93, 0x74, (byte) 0xBC, 0x6A, 0x7E, (byte) 0xFA};
+    NSDate fraction = new NSDate(bytes, 1, 9);
+    assertEquals(978307200001L, fraction.getTime());
+    String written =
+        new String(BinaryPropertyListWriter.writeToArray(fraction), StandardCharsets.ISO_8859_1);
+    assertTrue(written.contains(new String(bytes, StandardCharsets.ISO_8859_1)));
+  }
+}
@@ -0,0 +1,171 @@
+package com.dd.plist.test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import com.dd.plist.*;
+import java.util.*;
+import org.junit.jupiter.api.Test;
+
+/** Tests for the {@link NSDictionary} class. */
+public class NSDictionaryTest {
+  @Test
+  public void put_preservesInsertionOrder() {
+    for (int count : new int[] {0, 1, 8, 9, 100}) {
+      NSDictionary dict = new NSDictionary();
+      Map<String, NSObject> expected = new LinkedHashMap<>();
+      for (int i = count - 1; i >= 0; i--) {
+        dict.put("key" + i, i);
+        expected.put("key" + i, new NSNumber(i));
+      }
+
+      assertEquals(new ArrayList<>(expected.keySet()), new ArrayList<>(dict.keySet()));
+      assertEquals(new ArrayList<>(expected.values()), new ArrayList<>(dict.values()));
+      assertEquals(expected, dict.getHashMap());
+      assertEquals(expected.hashCode(), dict.getHashMap().hashCode());
+      assertEquals(count, dict.count());
+    }
+  }
+
+  @Test
+  public void put_behavesLikeMap() {
+    NSDictionary dict = new NSDictionary(2);
+    Map<String, NSObject> expected = new LinkedHashMap<>();
+    Random random = new Random(42);
+    for (int i = 0; i < 2000; i++) {
+      String key = "k" + random.nextInt(12);
+      switch (random.nextInt(4)) {
+        case 0:
+          assertEquals(expected.remove(key), dict.remove(key));
+          break;
+        case 1:
+          assertEquals(expected.get(key), dict.get(key));
+          assertEquals(expected.containsKey(key), dict.containsKey(key));
+          break;
+        default:
+          NSObject value = new NSNumber(i);
+          assertEquals(expected.put(key, value), dict.put(key, value));
+          break;
+      }
+
+      assertEquals(expected.size(), dict.size());
+      assertEquals(new ArrayList<>(expected.entrySet()), new ArrayList<>(dict.entrySet()));
+      assertEquals(expected.hashCode(), dict.entrySet().hashCode());
+    }
+  }
+
+  @Test
+  public void views_writeThroughToDictionary() {
+    NSDictionary dict = new NSDictionary();
+    Set<String> keys = dict.keySet();
+    for (int i = 0; i < 5; i++) {
+      dict.put("key" + i, i);
+    }
+
+    Iterator<Map.Entry<String, NSObject>> it = dict.entrySet().iterator();
+    it.next().setValue(new NSString("a"));
+    it.next();
+    it.remove();
+    assertEquals(new NSString("a"), dict.get("key0"));
+    assertFalse(dict.containsKey("key1"));
+    assertEquals(Arrays.asList("key0", "key2", "key3", "key4"), new ArrayList<>(keys));
+
+    dict.values().remove(new NSNumber(3));
+    assertEquals(Arrays.asList("key0", "key2", "key4"), new ArrayList<>(keys));
+
+    Iterator<String> keyIterator = keys.iterator();
+    dict.put("key5", 5);
+    assertThrows(ConcurrentModificationException.class, keyIterator::next);
+
+    for (int i = 6; i < 20; i++) {
+      dict.put("key" + i, i);
+    }
+    assertTrue(keys.contains("key19"));
+    keys.remove("key0");
+    assertFalse(dict.containsKey("key0"));
+    assertEquals("key2", dict.allKeys()[0]);
+  }
+
+  @Test
+  public void getHashMap_reflectsChanges() {
+    NSDictionary dict = new NSDictionary();
+    dict.put("a", 1);
+    HashMap<String, NSObject> map = dict.getHashMap();
+    map.put("b", new NSNumber(2));
+    dict.put("c", 3);
+    assertEquals(new NSNumber(2), dict.get("b"));
+    assertEquals(new NSNumber(3), map.get("c"));
+    assertEquals(Arrays.asList("a", "b", "c"), new ArrayList<>(dict.keySet()));
+  }
+
+  @Test
+  public void equals_comparesContentsRegardlessOfStorage() {
+    NSDictionary small = new NSDictionary();
+    NSDictionary large = new NSDictionary(100);
+    for (int i = 0; i < 5; i++) {
+      small.put("key" + i, i);
+      large.put("key" + (4 - i), 4 - i);
+    }
+
+    assertEquals(small, large);
+    assertEquals(large, small);
+    assertEquals(small.hashCode(), large.hashCode());
+    large.put("key0", 1);
+    assertNotEquals(small, large);
+  }
+
+  @Test
+  public void compareTo_ordersDictionariesConsistently() {
+    Random random = new Random(42);
+    List<NSDictionary> dicts = new ArrayList<>();
+    for (int i = 0; i < 300; i++) {
+      NSDictionary dict = new NSDictionary();
+      for (int j = random.nextInt(4); j >= 0; j--) {
+        dict.put("k" + random.nextInt(6), "v" + random.nextInt(3));
+      }
+      dicts.add(i % 2 == 0 ? dict.freeze() : dict);
+    }
+
+    NSSet ordered = new NSSet(true);
+    Set<NSDictionary> distinct = new HashSet<>();
+    for (NSDictionary a : dicts) {
+      for (NSDictionary b : dicts) {
+        int ab = Integer.signum(a.compareTo(b));
+        assertEquals(-ab, Integer.signum(b.compareTo(a)));
+        assertEquals(a.equals(b), ab == 0);
+      }
+      ordered.addObject(a);
+      distinct.add(a);
+    }
+    assertEquals(distinct.size(), ordered.count());
+
+    NSDictionary a = new NSDictionary();
+    a.put("a", 1);
+    NSDictionary b = new NSDictionary();
+    b.put("b", 1);
+    assertTrue(a.compareTo(b) > 0);
+    assertTrue(b.compareTo(a) < 0);
+  }
+
+  @Test
+  public void compareTo_ordersTypesByClassName() throws Exception {
+    NSObject[] objects = {
+      new NSString("a"),
+      new NSNumber(1),
+      new NSDictionary(),
+      new NSArray(0),
+      new NSSet(),
+      new NSData(new byte[0]),
+      new NSDate(new Date(0)),
+      new UID("uid", new byte[] {1})
+    };
+    for (NSObject a : objects) {
+      for (NSObject b : objects) {
+        if (a.getClass() != b.getClass()) {
+          assertEquals(
+              Integer.signum(a.getClass().getName().compareTo(b.getClass().getName())),
+              Integer.signum(a.compareTo(b)));
+        }
+      }
+    }
+  }
+}
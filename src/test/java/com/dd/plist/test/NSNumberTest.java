@@ -9,6 +9,8 @@ import com.dd.plist.BinaryPropertyListWriter;
 import com.dd.plist.NSDictionary;
 import com.dd.plist.NSNumber;
 import java.io.ByteArrayOutputStream;
+import java.util.Locale;
+import java.util.Random;
 import org.junit.jupiter.api.Test;
 
 /**
@@ -229,4 +231,136 @@ public class NSNumberTest {
     NSNumber parsedNegativeInfinity = (NSNumber) parsedDict.get("inf");
     assertEquals(Double.NEGATIVE_INFINITY, parsedNegativeInfinity.doubleValue());
   }
+
+  @Test
+  public void init_parsesIntegerStrings() {
+    String[] values = {
+      "0", "-0", "+17", "00042", "-123456789", "9223372036854775807", "-9223372036854775808"
+    };
+    for (String value : values) {
+      NSNumber number = new NSNumber(value);
+      assertEquals(NSNumber.INTEGER, number.type(), value);
+      assertEquals(Long.parseLong(value), number.longValue(), value);
+    }
+  }
+
+  @Test
+  public void init_parsesHexadecimalIntegerStrings() {
+    assertEquals(255, new NSNumber("0xff").longValue());
+    assertEquals(-16, new NSNumber("0x-10").longValue());
+    assertEquals(Long.MAX_VALUE, new NSNumber("0x7fffffffffffffff").longValue());
+    assertThrows(IllegalArgumentException.class, () -> new NSNumber("0xffffffffffffffff"));
+    assertThrows(IllegalArgumentException.class, () -> new NSNumber("0x"));
+  }
+
+  @Test
+  public void init_parsesRealStrings() {
+    String[] values = {
+      "0.0",
+      "-0.0",
+      "3.14",
+      "-.5",
+      "5.",
+      "+2.5e3",
+      "1E-7",
+      "0.1",
+      "123456789012345.6",
+      "1.7976931348623157e308",
+      "4.9e-324",
+      "2.2250738585072014E-308",
+      "9223372036854775808",
+      " 1.5 ",
+      "1.5d",
+      "0x1p3",
+      "Infinity"
+    };
+    for (String value : values) {
+      NSNumber number = new NSNumber(value);
+      assertEquals(NSNumber.REAL, number.type(), value);
+      assertEquals(Double.parseDouble(value), number.doubleValue(), value);
+      assertEquals(
+          Double.doubleToRawLongBits(Double.parseDouble(value)),
+          Double.doubleToRawLongBits(number.doubleValue()),
+          value);
+    }
+  }
+
+  @Test
+  public void init_parsesRandomRealStringsLikeDoubleParseDouble() {
+    Random random = new Random(42);
+    for (int i = 0; i < 10000; i++) {
+      double d = (random.nextDouble() - 0.5) * Math.pow(10, random.nextInt(40) - 20);
+      String value = i % 2 == 0 ? Double.toString(d) : String.format(Locale.ROOT, "%.6f", d);
+      assertEquals(Double.parseDouble(value), new NSNumber(value).doubleValue(), value);
+    }
+  }
+
+  @Test
+  public void init_parsesBooleanStrings() {
+    for (String value : new String[] {"true", "TRUE", "yes", "YES"}) {
+      NSNumber number = new NSNumber(value);
+      assertEquals(NSNumber.BOOLEAN, number.type(), value);
+      assertTrue(number.boolValue(), value);
+    }
+    for (String value : new String[] {"false", "False", "no", "NO"}) {
+      NSNumber number = new NSNumber(value);
+      assertEquals(NSNumber.BOOLEAN, number.type(), value);
+      assertFalse(number.boolValue(), value);
+    }
+  }
+
+  @Test
+  public void init_rejectsInvalidStrings() {
+    String[] values = {"", "-", "+", ".", "1.2.3", "1e", "1e+", "12a", "abc", "- 1", "0x1g"};
+    for (String value : values) {
+      assertThrows(IllegalArgumentException.class, () -> new NSNumber(value), value);
+    }
+  }
+
+  @Test
+  public void valueOf_returnsSharedFrozenInstances() {
+    assertSame(NSNumber.TRUE, NSNumber.valueOf(true));
+    assertSame(NSNumber.FALSE, NSNumber.valueOf(false));
+    assertSame(NSNumber.valueOf(-128), NSNumber.valueOf(-128));
+    assertSame(NSNumber.valueOf(127), NSNumber.valueOf(127));
+    assertTrue(NSNumber.valueOf(0).isFrozen());
+    assertNull(NSNumber.TRUE.getLocationInformation());
+    assertEquals(new NSNumber(true), NSNumber.TRUE);
+    assertEquals(new NSNumber(42), NSNumber.valueOf(42));
+    assertEquals(new NSNumber(1L << 40), NSNumber.valueOf(1L << 40));
+  }
+
+  @Test
+  public void clone_preservesParsedRealNumbers() throws Exception {
+    NSDictionary dict = new NSDictionary();
+    dict.put("a", 2.5);
+    NSNumber parsed =
+        (NSNumber)
+            ((NSDictionary)
+                    BinaryPropertyListParser.parse(BinaryPropertyListWriter.writeToArray(dict)))
+                .get("a");
+
+    // Parsed real numbers round their integer value, constructed numbers truncate it
+    assertEquals(3, parsed.longValue());
+    assertEquals(2, new NSNumber(2.5).longValue());
+    assertEquals(parsed, parsed.clone());
+    assertEquals(parsed.hashCode(), parsed.clone().hashCode());
+    assertEquals(3, parsed.clone().longValue());
+    assertNotEquals(new NSNumber(2.5), parsed);
+  }
+
+  @Test
+  public void equals_treatsInfinityFromAllSourcesAlike() throws Exception {
+    NSDictionary dict = new NSDictionary();
+    dict.put("a", Double.POSITIVE_INFINITY);
+    NSNumber parsed =
+        (NSNumber)
+            ((NSDictionary)
+                    BinaryPropertyListParser.parse(BinaryPropertyListWriter.writeToArray(dict)))
+                .get("a");
+
+    assertEquals(new NSNumber("+infinity"), parsed);
+    assertEquals(new NSNumber(Double.POSITIVE_INFINITY), parsed);
+    assertEquals(new NSNumber("+infinity").hashCode(), parsed.hashCode());
+  }
 }
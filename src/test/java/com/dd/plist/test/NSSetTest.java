@@ -1,10 +1,15 @@
 package com.dd.plist.test;
 
-import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
-import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.*;
 
+import com.dd.plist.NSNumber;
 import com.dd.plist.NSObject;
 import com.dd.plist.NSSet;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
 import org.junit.jupiter.api.Test;
 
 /**
@@ -44,4 +49,92 @@ public class NSSetTest {
 
     assertNull(set.allObjects()[0]);
   }
+
+  @Test
+  public void objectIterator_modifiedSet_iteratesOverOldElements() {
+    NSSet set = new NSSet(new NSNumber(1), new NSNumber(2));
+    Iterator<NSObject> iterator = set.objectIterator();
+    set.addObject(new NSNumber(3));
+    set.removeObject(new NSNumber(1));
+
+    List<NSObject> iterated = new ArrayList<>();
+    iterator.forEachRemaining(iterated::add);
+    assertEquals(2, iterated.size());
+    assertEquals(new NSNumber(1), iterated.get(0));
+    assertEquals(new NSNumber(2), iterated.get(1));
+    assertEquals(2, set.count());
+    assertTrue(set.containsObject(new NSNumber(3)));
+    assertFalse(set.containsObject(new NSNumber(1)));
+  }
+
+  @Test
+  public void containsObject_concurrentModification_doesNotThrow() throws Exception {
+    NSSet set = new NSSet(true);
+    AtomicReference<Throwable> failure = new AtomicReference<>();
+    Thread writer =
+        new Thread(
+            () -> {
+              for (int i = 0; i < 2000; i++) {
+                set.addObject(new NSNumber(i));
+                if (i % 2 == 1) {
+                  set.removeObject(new NSNumber(i));
+                }
+              }
+            });
+    Thread reader =
+        new Thread(
+            () -> {
+              try {
+                for (int i = 0; i < 2000; i++) {
+                  set.containsObject(new NSNumber(i));
+                  int previous = -1;
+                  Iterator<NSObject> iterator = set.objectIterator();
+                  while (iterator.hasNext()) {
+                    int value = ((NSNumber) iterator.next()).intValue();
+                    assertTrue(value > previous);
+                    previous = value;
+                  }
+                }
+              } catch (Throwable t) {
+                failure.set(t);
+              }
+            });
+    writer.start();
+    reader.start();
+    writer.join();
+    reader.join();
+
+    assertNull(failure.get());
+    assertEquals(1000, set.count());
+  }
+
+  @Test
+  public void addObject_alternatingWithLookups_doesNotCopyElements() {
+    for (boolean ordered : new boolean[] {false, true}) {
+      NSSet set = new NSSet(ordered);
+      // Copying the elements on every modification would take minutes
+      assertTimeout(
+          Duration.ofSeconds(10),
+          () -> {
+            for (int i = 0; i < 40000; i++) {
+              NSNumber number = new NSNumber(i / 2);
+              if (!set.containsObject(number)) {
+                set.addObject(number);
+              }
+              assertEquals(i / 2 + 1, set.count());
+            }
+          });
+
+      assertEquals(20000, set.count());
+      Iterator<NSObject> iterator = set.objectIterator();
+      set.addObject(new NSNumber(-1));
+      assertTrue(set.containsObject(new NSNumber(-1)));
+      int iterated = 0;
+      while (iterator.hasNext()) {
+        iterator.next();
+        iterated++;
+      }
+      assertEquals(20000, iterated);
+    }
+  }
 }
@@ -2,7 +2,10 @@ package com.dd.plist.test;
 
 import static org.junit.jupiter.api.Assertions.*;
 
+import com.dd.plist.NSDictionary;
 import com.dd.plist.NSString;
+import com.dd.plist.PropertyListParser;
+import java.nio.charset.StandardCharsets;
 import org.junit.jupiter.api.Test;
 
 /**
@@ -238,6 +241,33 @@ public class NSStringTest {
     assertEquals("HelloWorld\r\n\tHow are you?I am a \ud83d\udc3b.", getStringFromXml(xml));
   }
 
+  @Test
+  public void toXml_wrapsMarkupInCData() {
+    String xml = new NSString("a < b && c > d").toXMLPropertyList();
+    assertEquals("<![CDATA[a < b && c > d]]>", getStringFromXml(xml));
+  }
+
+  @Test
+  public void toXml_splitsCDataTerminator() throws Exception {
+    String content = "<x>]]></x>]]\0>";
+    String xml = new NSString(content).toXMLPropertyList();
+    assertEquals("<![CDATA[<x>]]]]><![CDATA[></x>]]]]><![CDATA[>]]>", getStringFromXml(xml));
+    assertEquals(
+        new NSString("<x>]]></x>]]>"),
+        PropertyListParser.parse(xml.getBytes(StandardCharsets.UTF_8)));
+  }
+
+  @Test
+  public void toXml_escapesDictionaryKeys() throws Exception {
+    NSDictionary dict = new NSDictionary();
+    dict.put("a&b\0", "value");
+    String xml = dict.toXMLPropertyList();
+    assertTrue(xml.contains("<key><![CDATA[a&b]]></key>"));
+    NSDictionary parsed =
+        (NSDictionary) PropertyListParser.parse(xml.getBytes(StandardCharsets.UTF_8));
+    assertEquals("value", parsed.get("a&b").toJavaObject());
+  }
+
   private static String getStringFromXml(String xml) {
     int index = xml.indexOf("<string>");
     int endIndex = xml.indexOf("</string>", index);
@@ -0,0 +1,157 @@
+package com.dd.plist.test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import com.dd.plist.ASCIIPropertyListParser;
+import com.dd.plist.ASCIIPropertyListWriter;
+import com.dd.plist.BinaryLocationInformation;
+import com.dd.plist.BinaryPropertyListParser;
+import com.dd.plist.BinaryPropertyListWriter;
+import com.dd.plist.NSArray;
+import com.dd.plist.NSData;
+import com.dd.plist.NSDictionary;
+import com.dd.plist.NSObject;
+import com.dd.plist.NSString;
+import com.dd.plist.PropertyListFormatException;
+import com.dd.plist.PropertyListParser;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FilterInputStream;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests for the {@link PropertyListParser} class.
+ *
+ * @author Daniel Dreibrodt
+ */
+public class PropertyListParserTest {
+
+  private static final String[] FILES = {
+    "test1.plist",
+    "test1-binary.plist",
+    "test1-ascii.plist",
+    "test1-ascii-gnustep.plist",
+    "test-ascii-utf-16le.plist",
+    "test-xml-utf-16be-bom.plist",
+    "test-xml-utf-32le.plist"
+  };
+
+  @Test
+  public void parse_canParsePartOfByteArray() throws Exception {
+    for (String file : FILES) {
+      byte[] bytes = Files.readAllBytes(new File("test-files/" + file).toPath());
+      NSObject expected = PropertyListParser.parse(bytes);
+
+      byte[] embedded = embed(bytes, 13, 7);
+      assertEquals(expected, PropertyListParser.parse(embedded, 13, bytes.length), file);
+    }
+  }
+
+  @Test
+  public void parse_canParseByteBuffer() throws Exception {
+    for (String file : FILES) {
+      byte[] bytes = Files.readAllBytes(new File("test-files/" + file).toPath());
+      NSObject expected = PropertyListParser.parse(bytes);
+
+      ByteBuffer heap = ByteBuffer.wrap(embed(bytes, 5, 3), 5, bytes.length);
+      assertEquals(expected, PropertyListParser.parse(heap), file);
+      assertEquals(5, heap.position());
+      assertEquals(expected, PropertyListParser.parse(heap.slice()), file);
+
+      ByteBuffer direct = ByteBuffer.allocateDirect(bytes.length + 8);
+      direct.put(embed(bytes, 4, 4)).position(4).limit(4 + bytes.length);
+      assertEquals(expected, PropertyListParser.parse(direct), file);
+      assertEquals(4, direct.position());
+    }
+  }
+
+  @Test
+  public void parse_canParseLargeFiles() throws Exception {
+    NSArray array = new NSArray(300);
+    for (int i = 0; i < array.count(); i++) {
+      byte[] data = new byte[10000];
+      Arrays.fill(data, (byte) i);
+      array.setValue(i, new NSData(data));
+    }
+
+    Path binary = Files.createTempFile("large", ".plist");
+    Path ascii = Files.createTempFile("large-ascii", ".plist");
+    try {
+      BinaryPropertyListWriter.write(array, binary);
+      ASCIIPropertyListWriter.write(array, ascii);
+      assertEquals(array, PropertyListParser.parse(binary));
+      assertEquals(array, BinaryPropertyListParser.parse(binary));
+      assertEquals(array, PropertyListParser.parse(ascii));
+      assertEquals(array, ASCIIPropertyListParser.parse(ascii));
+    } finally {
+      Files.delete(binary);
+      Files.delete(ascii);
+    }
+  }
+
+  @Test
+  public void parse_reportsOffsetsRelativeToEmbeddedBinaryPropertyList() throws Exception {
+    byte[] bytes = Files.readAllBytes(new File("test-files/test1-binary.plist").toPath());
+    NSDictionary expected = (NSDictionary) PropertyListParser.parse(bytes);
+    NSDictionary dict =
+        (NSDictionary) PropertyListParser.parse(embed(bytes, 100, 0), 100, bytes.length);
+    BinaryLocationInformation expectedLoc =
+        assertInstanceOf(
+            BinaryLocationInformation.class, expected.get("keyA").getLocationInformation());
+    BinaryLocationInformation loc =
+        assertInstanceOf(
+            BinaryLocationInformation.class, dict.get("keyA").getLocationInformation());
+    assertEquals(expectedLoc.getOffset(), loc.getOffset());
+  }
+
+  @Test
+  public void parse_detectsFormatAfterWhitespace() throws Exception {
+    byte[] ascii = "\r\n\t  ( a, b )".getBytes(StandardCharsets.UTF_8);
+    NSArray array = (NSArray) PropertyListParser.parse(ascii);
+    assertEquals(new NSString("b"), array.objectAtIndex(1));
+    assertNull(
+        PropertyListParser.parse(ByteBuffer.wrap(" \n\t ".getBytes(StandardCharsets.UTF_8))));
+
+    byte[] padded =
+        embed("<plist><string>a</string></plist>".getBytes(StandardCharsets.UTF_8), 5000, 0);
+    Arrays.fill(padded, 0, 5000, (byte) ' ');
+    InputStream in =
+        new FilterInputStream(new ByteArrayInputStream(padded)) {
+          @Override
+          public boolean markSupported() {
+            return false;
+          }
+        };
+    assertEquals(new NSString("a"), PropertyListParser.parse(in));
+    assertThrows(
+        PropertyListFormatException.class,
+        () -> PropertyListParser.parse("bplis".getBytes(StandardCharsets.UTF_8)));
+    assertThrows(
+        PropertyListFormatException.class,
+        () -> PropertyListParser.parse("plist".getBytes(StandardCharsets.UTF_8)));
+  }
+
+  @Test
+  public void parse_rejectsInvalidBounds() {
+    byte[] bytes = new byte[10];
+    assertThrows(IndexOutOfBoundsException.class, () -> PropertyListParser.parse(bytes, 5, 6));
+    assertThrows(IndexOutOfBoundsException.class, () -> PropertyListParser.parse(bytes, -1, 2));
+  }
+
+  /** Copies data into a larger array, surrounded by garbage bytes. */
+  private static byte[] embed(byte[] data, int before, int after) {
+    byte[] embedded = new byte[before + data.length + after];
+    Arrays.fill(embedded, (byte) 'b');
+    System.arraycopy(data, 0, embedded, before, data.length);
+    return embedded;
+  }
+}
@@ -1,9 +1,13 @@
 package com.dd.plist.test;
 
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 import com.dd.plist.UID;
+import java.math.BigInteger;
+import java.util.Random;
 import java.util.stream.Stream;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.params.ParameterizedTest;
@@ -24,6 +28,31 @@ public class UidTest {
     assertThrows(IllegalArgumentException.class, () -> new UID(null, data));
   }
 
+  @Test
+  public void getBytes_matchesBigIntegerRepresentation() {
+    Random random = new Random(42);
+    for (int i = 0; i < 1000; i++) {
+      byte[] bytes = new byte[1 + random.nextInt(16)];
+      random.nextBytes(bytes);
+      bytes[0] >>>= random.nextInt(8);
+      UID fromBytes = new UID("x", bytes);
+      UID fromBigInteger = new UID("x", new BigInteger(1, bytes));
+      assertEquals(fromBigInteger, fromBytes);
+      assertEquals(fromBigInteger.hashCode(), fromBytes.hashCode());
+      assertEquals(0, fromBigInteger.compareTo(fromBytes));
+      assertArrayEquals(fromBigInteger.getBytes(), fromBytes.getBytes());
+      assertEquals(new BigInteger(1, bytes), new BigInteger(1, fromBytes.getBytes()));
+      assertEquals(new BigInteger(1, bytes).toString(16) + " (x)", fromBytes.toString());
+    }
+
+    UID max = new UID(null, BigInteger.valueOf(Long.MAX_VALUE));
+    UID min = new UID(null, BigInteger.ONE.shiftLeft(63));
+    assertEquals(8, max.getBytes().length);
+    assertEquals(16, min.getBytes().length);
+    assertTrue(max.compareTo(min) < 0);
+    assertTrue(min.compareTo(max) > 0);
+  }
+
   @Test
   public void getBytes_returnsMinimumPossibleLength() {
     assertEquals(1, new UID(null, new byte[] {0x01}).getBytes().length);
@@ -3,8 +3,10 @@ package com.dd.plist.test;
 import static org.junit.jupiter.api.Assertions.*;
 
 import com.dd.plist.*;
+import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.util.Date;
 import java.util.function.BiConsumer;
 import org.junit.jupiter.api.Test;
@@ -112,6 +114,34 @@ public class XMLPropertyListParserTest {
     this.testXmlEncoding("UTF-32LE");
   }
 
+  /** Test that the BOM is removed when an input stream is read in bulk or byte by byte. */
+  @Test
+  public void parse_removesBomFromInputStream() throws Exception {
+    for (String encoding : new String[] {"UTF-16BE", "UTF-16LE", "UTF-32BE", "UTF-32LE"}) {
+      File withoutBom = new File("test-files/test-xml-" + encoding.toLowerCase() + ".plist");
+      File withBom = new File("test-files/test-xml-" + encoding.toLowerCase() + "-bom.plist");
+      NSObject expected = XMLPropertyListParser.parse(withoutBom);
+      byte[] bytes = Files.readAllBytes(withBom.toPath());
+      assertEquals(expected, XMLPropertyListParser.parse(new ByteArrayInputStream(bytes)));
+      assertEquals(expected, XMLPropertyListParser.parse(new ChunkedInputStream(bytes, 1)));
+    }
+
+    String xml =
+        "<?xml version=\"1.0\" encoding=\"UTF-8\"?>"
+            + "<plist version=\"1.0\"><string>\u00e9</string></plist>";
+    byte[] xmlBytes = xml.getBytes(StandardCharsets.UTF_8);
+    byte[] bytes = new byte[xmlBytes.length + 3];
+    bytes[0] = (byte) 0xEF;
+    bytes[1] = (byte) 0xBB;
+    bytes[2] = (byte) 0xBF;
+    System.arraycopy(xmlBytes, 0, bytes, 3, xmlBytes.length);
+    for (int chunkSize = 1; chunkSize <= 8; chunkSize++) {
+      assertEquals(
+          new NSString("\u00e9"),
+          XMLPropertyListParser.parse(new ChunkedInputStream(bytes, chunkSize)));
+    }
+  }
+
   @Test
   public void parse_canHandleNumbersWithInfinityValue() throws Exception {
     // See https://github.com/3breadt/dd-plist/issues/83
@@ -200,4 +230,19 @@ public class XMLPropertyListParserTest {
     assertEquals(a.objectAtIndex(2), new NSNumber(87));
     assertEquals(a.objectAtIndex(3), new NSNumber(3.14159));
   }
+
+  /** An input stream that returns at most a fixed number of bytes per read. */
+  private static class ChunkedInputStream extends ByteArrayInputStream {
+    private final int chunkSize;
+
+    ChunkedInputStream(byte[] bytes, int chunkSize) {
+      super(bytes);
+      this.chunkSize = chunkSize;
+    }
+
+    @Override
+    public synchronized int read(byte[] b, int off, int len) {
+      return super.read(b, off, Math.min(len, this.chunkSize));
+    }
+  }
 }
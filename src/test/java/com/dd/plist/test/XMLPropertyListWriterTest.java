@@ -1,11 +1,18 @@
 package com.dd.plist.test;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
+import com.dd.plist.NSArray;
+import com.dd.plist.NSDictionary;
 import com.dd.plist.NSObject;
 import com.dd.plist.PropertyListParser;
 import com.dd.plist.XMLPropertyListWriter;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
 import org.junit.jupiter.api.Test;
 
 public class XMLPropertyListWriterTest {
@@ -19,4 +26,39 @@ public class XMLPropertyListWriterTest {
     NSObject y = PropertyListParser.parse(new File("test-files/out-testXml.plist"));
     assertEquals(x, y);
   }
+
+  @Test
+  public void write_streamsSameOutputAsToXMLPropertyList() throws Exception {
+    NSArray entries = new NSArray(2000);
+    for (int i = 0; i < entries.count(); i++) {
+      NSDictionary entry = new NSDictionary();
+      entry.put("index", i);
+      entry.put("name", "Entry äöü #" + i);
+      entries.setValue(i, entry);
+    }
+
+    String expected = entries.toXMLPropertyList();
+
+    StringWriter writer = new StringWriter();
+    XMLPropertyListWriter.write(entries, writer);
+    assertEquals(expected, writer.toString());
+
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    XMLPropertyListWriter.write(entries, out);
+    assertEquals(expected, new String(out.toByteArray(), StandardCharsets.UTF_8));
+    assertEquals(entries, PropertyListParser.parse(out.toByteArray()));
+  }
+
+  @Test
+  public void write_canWriteCompactXmlPropertyList() throws Exception {
+    NSObject x = PropertyListParser.parse(new File("test-files/test1.plist"));
+
+    StringWriter writer = new StringWriter();
+    XMLPropertyListWriter.write(x, writer, true);
+    String xml = writer.toString();
+    assertFalse(xml.contains("\t"));
+    assertFalse(xml.contains(System.lineSeparator()));
+    assertTrue(xml.length() < x.toXMLPropertyList().length());
+    assertEquals(x, PropertyListParser.parse(xml.getBytes(StandardCharsets.UTF_8)));
+  }
 }